@@ -22,8 +22,6 @@
 package weka.core.converters;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
@@ -36,15 +34,24 @@ import weka.core.SelectedTag;
 import weka.core.Tag;
 import weka.core.Utils;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -53,12 +60,21 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
 import java.util.Vector;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Reads files in common CSV formats.
@@ -172,20 +188,179 @@ public class CommonCSVLoader
   /** the number of rows to use for detecting the types. */
   protected int m_NumRowsTypeDetection = DEFAULT_NUM_ROWS_TYPE_DETECTION;
 
+  /** the default parsing engine. */
+  public final static int DEFAULT_ENGINE = CommonCsvEngines.COMMONS_CSV;
+
+  /** the parsing engine. */
+  protected int m_Engine = DEFAULT_ENGINE;
+
+  /** the default number of threads for parsing. */
+  public final static int DEFAULT_NUM_THREADS = 1;
+
+  /** the number of threads for parsing in batch mode (1 = sequential, &lt;=0 = all cores). */
+  protected int m_NumThreads = DEFAULT_NUM_THREADS;
+
+  /** the minimum size of chunks in bytes when parsing in parallel. */
+  public final static long MIN_CHUNK_SIZE = 1024 * 1024;
+
+  /** the time in msec between checks whether the background parser has stopped. */
+  public final static long STOP_TIMEOUT = 1000;
+
+  /** the maximum initial capacity of the blocks of instances in incremental mode. */
+  public final static int MAX_INITIAL_CAPACITY = 65536;
+
+  /** whether to read uncompressed files via memory-mapping. */
+  protected boolean m_UseMemoryMapping = false;
+
+  /** the default type of instances to generate in batch mode. */
+  public final static int DEFAULT_INSTANCE_TYPE = CommonCsvInstanceTypes.DENSE;
+
+  /** the type of instances to generate in batch mode. */
+  protected int m_InstanceType = DEFAULT_INSTANCE_TYPE;
+
+  /** the default range of columns to load. */
+  public final static String DEFAULT_COLUMN_RANGE = "first-last";
+
+  /** the range of columns to load. */
+  protected Range m_ColumnRange = new Range(DEFAULT_COLUMN_RANGE);
+
+  /** the names of the columns to load (comma-separated), overrides the range. */
+  protected String m_ColumnNames = "";
+
+  /** the filter expression for rows, empty to load all. */
+  protected String m_RowFilter = "";
+
+  /** the default number of instances to parse ahead in incremental mode. */
+  public final static int DEFAULT_READ_AHEAD = 0;
+
+  /** the number of instances to parse ahead in incremental mode (0 = off). */
+  protected int m_ReadAhead = DEFAULT_READ_AHEAD;
+
+  /** the default charset (empty = platform default). */
+  public final static String DEFAULT_CHARSET = "";
+
+  /** the charset of the source (empty = platform default). */
+  protected String m_Charset = DEFAULT_CHARSET;
+
+  /** whether to decompress on a separate thread. */
+  protected boolean m_PipelinedDecompression = false;
+
+  /** the default block to start loading block-gzipped files at. */
+  public final static int DEFAULT_START_BLOCK = 0;
+
+  /** the block to start loading block-gzipped files at. */
+  protected int m_StartBlock = DEFAULT_START_BLOCK;
+
+  /** the directory for caching the inferred structures (empty = off). */
+  protected String m_SchemaCache = "";
+
+  /** whether to cache the parsed data in a binary columnar file next to the source. */
+  protected boolean m_ColumnarCache = false;
+
+  /** the default number of records between offsets in the index (0 = no index). */
+  public final static int DEFAULT_OFFSET_INDEX = 0;
+
+  /** the number of records between offsets in the index when none is written. */
+  public final static int DEFAULT_RANDOM_ACCESS_INTERVAL = 10000;
+
+  /** the number of records between offsets in the index written during full loads (0 = no index). */
+  protected int m_OffsetIndex = DEFAULT_OFFSET_INDEX;
+
+  /** the default start of the byte range to load. */
+  public final static long DEFAULT_SPLIT_START = 0;
+
+  /** the default end of the byte range to load (-1 = end of file). */
+  public final static long DEFAULT_SPLIT_END = -1;
+
+  /** the start of the byte range to load (inclusive). */
+  protected long m_SplitStart = DEFAULT_SPLIT_START;
+
+  /** the end of the byte range to load (exclusive, -1 = end of file). */
+  protected long m_SplitEnd = DEFAULT_SPLIT_END;
+
+  /** the file with the header to use instead of type detection (empty = none). */
+  protected String m_ExternalHeader = "";
+
+  /** the header to use instead of type detection, null if none or not yet read. */
+  protected transient Instances m_ExternalStructure;
+
+  /** whether to determine the types from a first pass over the whole file. */
+  protected boolean m_TwoPassDetection = false;
+
+  /** the default number of additional windows to sample for type detection. */
+  public final static int DEFAULT_SAMPLE_WINDOWS = 0;
+
+  /** the number of additional windows spread across the file to sample for type detection (0 = first rows only). */
+  protected int m_SampleWindows = DEFAULT_SAMPLE_WINDOWS;
+
+  /** the number of consecutive rows with the expected number of cells that resynchronise a sampled window. */
+  public final static int SAMPLE_RESYNC_ROWS = 2;
+
+  /** the default maximum number of distinct values for automatically nominal columns. */
+  public final static int DEFAULT_NOMINAL_THRESHOLD = 0;
+
+  /** the maximum number of distinct values for turning string columns into nominal ones (0 = off). */
+  protected int m_NominalThreshold = DEFAULT_NOMINAL_THRESHOLD;
+
   /** the url */
   protected String m_URL = "http://";
 
   /** The reader for the source file. */
   protected transient Reader m_sourceReader = null;
 
+  /** the stream underneath the reader, null if reading from a reader. */
+  protected transient InputStream m_SourceStream = null;
+
+  /** whether the current source is a (local) file. */
+  protected transient boolean m_SourceIsFile = false;
+
+  /** the charset of the bytes held by the characters of the source reader (read as ISO-8859-1), null if decoded. */
+  protected transient Charset m_ScannedCharset;
+
+  /** whether the current source is compressed. */
+  protected transient boolean m_SourceIsCompressed = false;
+
+  /** the cached structure of the current source, null if none. */
+  protected transient CommonCsvSchemaCache m_CachedSchema;
+
+  /** whether the data got loaded from the columnar cache. */
+  protected transient boolean m_ColumnarCacheUsed = false;
+
+  /** the offset index of the current source file, null if not yet loaded. */
+  protected transient CommonCsvOffsetIndex m_CurrentOffsetIndex;
+
+  /** whether the current source is a byte range of the file. */
+  protected transient boolean m_SourceIsSplit = false;
+
+  /** the column statistics from the first pass, null if not available. */
+  protected transient CommonCsvColumnStatistics m_Statistics;
+
   /** the data that has been read. */
   protected Instances m_Data;
 
+  /** the indices of the columns to load, null for all. */
+  protected transient int[] m_SelectedColumns;
+
+  /** the number of cells in the first row, before selecting columns. */
+  protected transient int m_NumCells;
+
+  /** the compiled row filter, null if none. */
+  protected transient CommonCsvRowFilter m_Filter;
+
+  /** the background parser in incremental mode, null if not running. */
+  protected transient ReadAhead m_ReadAheadParser;
+
+  /** the layout for compact instances, null for dense ones. */
+  protected transient CommonCsvCompactInstance.Layout m_Layout;
+
   /** the buffer. */
-  protected transient List<CSVRecord> m_Records;
+  protected transient List<CommonCsvRow> m_Records;
+
+  /** the position of the next record to replay from the buffer. */
+  protected transient int m_RecordsPos;
 
   /** the actual parser. */
-  protected transient CSVParser m_Parser;
+  protected transient CommonCsvRowSource m_Parser;
 
   /** the attribute types in use. */
   protected AttributeType[] m_Types;
@@ -767,832 +942,3724 @@ public class CommonCSVLoader
   }
 
   /**
-   * Returns an enumeration describing the available options.
+   * Sets the engine to use for parsing.
    *
-   * @return an enumeration of all the available options.
+   * @param value	the engine
    */
-  public Enumeration listOptions() {
-    Vector result = new Vector();
+  public void setEngine(SelectedTag value) {
+    if (value.getTags() == CommonCsvEngines.TAGS_ENGINES)
+      m_Engine = value.getSelectedTag().getID();
+  }
 
-    result.addElement(new Option("\tThe CSV format to use\n"
-      + "\t(default: DEFAULT)",
-      "F", 1, "-F " + Tag.toOptionList(CommonCsvFormats.TAGS_FORMATS)));
+  /**
+   * Returns the engine to use for parsing.
+   *
+   * @return		the engine
+   */
+  public SelectedTag getEngine() {
+    return new SelectedTag(m_Engine, CommonCsvEngines.TAGS_ENGINES);
+  }
 
-    result.addElement(new Option("\tWhether to use custom field separator\n"
-      + "\t(default: no)",
-      "use-custom-field-separator", 0, "-use-custom-field-separator"));
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String engineTipText() {
+    return "The engine for parsing the CSV file; the native tokenizer avoids creating strings for cells that are not string/nominal/date.";
+  }
 
-    result.addElement(new Option("\tThe custom field separator\n"
-      + "\t(default: " + DEFAULT_CUSTOM_FIELD_SEPARATOR + ")",
-      "custom-field-separator", 1, "-custom-field-separator <separator-char>"));
+  /**
+   * Sets the number of threads to use for parsing files in batch mode.
+   *
+   * @param value	the number of threads, 1 for sequential, &lt;=0 for all cores
+   */
+  public void setNumThreads(int value) {
+    m_NumThreads = value;
+  }
 
-    result.addElement(new Option("\tWhether to use custom quote character\n"
-      + "\t(default: no)",
-      "use-custom-quote-character", 0, "-use-custom-quote-character"));
+  /**
+   * Returns the number of threads to use for parsing files in batch mode.
+   *
+   * @return		the number of threads, 1 for sequential, &lt;=0 for all cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
 
-    result.addElement(new Option("\tThe custom quote character\n"
-      + "\t(default: " + DEFAULT_CUSTOM_QUOTE_CHARACTER + ")",
-      "custom-quote-character", 1, "-custom-quote-character <quote-char>"));
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to use for parsing (uncompressed) files in batch mode "
+      + "and for inflating block-gzipped files; 1 parses sequentially, <=0 uses all available cores.";
+  }
 
-    result.addElement(new Option("\tWhether to use custom quote mode\n"
-      + "\t(default: no)",
-      "use-custom-quote-mode", 0, "-use-custom-quote-mode"));
+  /**
+   * Sets whether to read uncompressed files via memory-mapping.
+   *
+   * @param value	true if to use memory-mapping
+   */
+  public void setUseMemoryMapping(boolean value) {
+    m_UseMemoryMapping = value;
+  }
 
-    result.addElement(new Option("\tThe custom quote mode\n"
-      + "\t(default: MINIMAL)",
-      "custom-quote-mode", 1, "-custom-quote-mode " + Tag.toOptionList(CommonCsvQuoteModes.TAGS_QUOTEMODES)));
+  /**
+   * Returns whether to read uncompressed files via memory-mapping.
+   *
+   * @return		true if to use memory-mapping
+   */
+  public boolean getUseMemoryMapping() {
+    return m_UseMemoryMapping;
+  }
 
-    result.addElement(new Option("\tWhether to use custom escape character\n"
-      + "\t(default: no)",
-      "use-custom-escape-character", 0, "-use-custom-escape-character"));
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useMemoryMappingTipText() {
+    return "If enabled, uncompressed files are read via memory-mapped windows rather than buffered streams; compressed files and streams are not affected.";
+  }
 
-    result.addElement(new Option("\tThe custom escape character\n"
-      + "\t(default: " + DEFAULT_CUSTOM_ESCAPE_CHARACTER + ")",
-      "custom-escape-character", 1, "-custom-escape-character <escape-char>"));
+  /**
+   * Sets the type of instances to generate in batch mode.
+   *
+   * @param value	the type
+   */
+  public void setInstanceType(SelectedTag value) {
+    if (value.getTags() == CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES)
+      m_InstanceType = value.getSelectedTag().getID();
+  }
 
-    result.addElement(new Option("\tWhether there is no header row in the spreadsheet\n"
-      + "\t(default: assumes header row present)",
-      "no-header", 0, "-no-header"));
+  /**
+   * Returns the type of instances to generate in batch mode.
+   *
+   * @return		the type
+   */
+  public SelectedTag getInstanceType() {
+    return new SelectedTag(m_InstanceType, CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES);
+  }
 
-    result.addElement(new Option("\tThe attribute range to treat as nominal\n"
-      + "\t(default: none)",
-      "nominal", 1, "-nominal <range>"));
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String instanceTypeTipText() {
+    return "The type of instances to generate in batch mode; compact instances store nominal, string and integer columns in fewer bytes, the float variant also numeric columns (with loss of precision).";
+  }
 
-    result.add(new Option("\tOptional specification of legal labels for nominal\n"
-      + "\tattributes. May be specified multiple times.\n"
-      + "\tThe spec contains two parts separated by a \":\".\n"
-      + "\tThe first part can be a range of attribute indexes or\n"
-      + "\ta comma-separated list off attruibute names;\n"
-      + "\tthe second part is a comma-separated list of labels. E.g.:\n"
-      + "\t\"1,2,4-6:red,green,blue\" or \"att1,att2:red,green,blue\"",
-      "nominal-label-spec", 1, "-nominal-label-spec <nominal label spec>"));
+  /**
+   * Sets the range of columns to load.
+   *
+   * @param value	the range
+   */
+  public void setColumnRange(Range value) {
+    m_ColumnRange = value;
+  }
 
-    result.addElement(new Option("\tThe attribute range to treat as string\n"
-      + "\t(default: none)",
-      "string", 1, "-string <range>"));
+  /**
+   * Returns the range of columns to load.
+   *
+   * @return		the range
+   */
+  public Range getColumnRange() {
+    return m_ColumnRange;
+  }
 
-    result.addElement(new Option("\tThe attribute range to treat as date\n"
-      + "\t(default: none)",
-      "date", 1, "-date <range>"));
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String columnRangeTipText() {
+    return "The range of columns to load, the others are skipped while parsing; all other attribute ranges refer to the loaded columns.";
+  }
 
-    result.addElement(new Option("\tThe format to use for parsing the date attribute(s)\n"
-      + "\tsee: https://docs.oracle.com/en/java/javase/11/docs/api/java.base/java/time/format/DateTimeFormatter.html\n"
-      + "\t(default: " + DEFAULT_DATE_FORMAT + ")",
-      "date-format", 1, "-date-format <format>"));
+  /**
+   * Sets the names of the columns to load.
+   *
+   * @param value	the column names (comma-separated), empty to use the range
+   */
+  public void setColumnNames(String value) {
+    m_ColumnNames = value;
+  }
 
-    result.addElement(new Option("\tThe string to interpret as missing value\n"
-      + "\t(default: '" + DEFAULT_MISSING_VALUE + "')",
-      "missing-value", 1, "-missing-value <string>"));
+  /**
+   * Returns the names of the columns to load.
+   *
+   * @return		the column names (comma-separated), empty to use the range
+   */
+  public String getColumnNames() {
+    return m_ColumnNames;
+  }
 
-    result.addElement(new Option("\tThe number of rows to use for detecting numeric rows\n"
-      + "\t(default: '" + DEFAULT_NUM_ROWS_TYPE_DETECTION + "')",
-      "num-rows-type-detection", 1, "-num-rows-type-detection <int>"));
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String columnNamesTipText() {
+    return "The comma-separated list of column names to load (as in the header row or custom header), overrides the column range if not empty.";
+  }
 
-    return result.elements();
+  /**
+   * Sets the filter expression for rows.
+   *
+   * @param value	the expression, empty to load all rows
+   */
+  public void setRowFilter(String value) {
+    m_RowFilter = value;
   }
 
   /**
-   * Parses a given list of options.
+   * Returns the filter expression for rows.
    *
+   * @return		the expression, empty to load all rows
+   */
+  public String getRowFilter() {
+    return m_RowFilter;
+  }
+
+  /**
+   * Returns the tip text for this property
    *
-   * @param options the list of options as an array of strings
-   * @throws Exception if an option is not supported
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
    */
-  public void setOptions(String[] options) throws Exception {
-    String 	tmp;
+  public String rowFilterTipText() {
+    return "The filter expression that rows must satisfy to get loaded, applied to the raw cells of the loaded columns; "
+      + "conditions of the form '<column> <op> <value>' are combined with '&&', with column being a name or 1-based index "
+      + "and op one of =, !=, <, <=, >, >=, in (comma-separated values), ~ (regexp), !~; empty to load all rows.";
+  }
 
-    tmp = Utils.getOption('F', options);
-    if (!tmp.isEmpty())
-      setFormat(new SelectedTag(tmp, CommonCsvFormats.TAGS_FORMATS));
-    else
-      setFormat(new SelectedTag(CommonCsvFormats.DEFAULT, CommonCsvFormats.TAGS_FORMATS));
+  /**
+   * Sets the number of instances to parse ahead on a background thread in
+   * incremental mode.
+   *
+   * @param value	the number of instances, 0 to parse on the calling thread
+   */
+  public void setReadAhead(int value) {
+    if (value >= 0)
+      m_ReadAhead = value;
+  }
 
-    setUseCustomFieldSeparator(Utils.getFlag("use-custom-field-separator", options));
+  /**
+   * Returns the number of instances to parse ahead on a background thread in
+   * incremental mode.
+   *
+   * @return		the number of instances, 0 to parse on the calling thread
+   */
+  public int getReadAhead() {
+    return m_ReadAhead;
+  }
 
-    tmp = Utils.getOption("custom-field-separator", options);
-    if (!tmp.isEmpty() && (tmp.length() == 1))
-      setCustomFieldSeparator(tmp);
-    else
-      setCustomFieldSeparator(DEFAULT_CUSTOM_FIELD_SEPARATOR);
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String readAheadTipText() {
+    return "The maximum number of instances to read and parse ahead on a background thread in incremental mode; 0 to parse on the calling thread.";
+  }
 
-    setUseCustomQuoteCharacter(Utils.getFlag("use-custom-quote-character", options));
+  /**
+   * Sets the charset of the source.
+   *
+   * @param value	the charset name, empty for the platform default
+   */
+  public void setCharset(String value) {
+    m_Charset = value;
+  }
 
-    tmp = Utils.getOption("custom-quote-character", options);
-    if (!tmp.isEmpty() && (tmp.length() == 1))
-      setCustomQuoteCharacter(tmp);
-    else
-      setCustomQuoteCharacter(DEFAULT_CUSTOM_QUOTE_CHARACTER);
+  /**
+   * Returns the charset of the source.
+   *
+   * @return		the charset name, empty for the platform default
+   */
+  public String getCharset() {
+    return m_Charset;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String charsetTipText() {
+    return "The name of the charset of the source, e.g., UTF-8 or ISO-8859-1; empty for the platform default.";
+  }
+
+  /**
+   * Sets whether to decompress compressed sources on a separate thread.
+   *
+   * @param value	true if to decompress on a separate thread
+   */
+  public void setPipelinedDecompression(boolean value) {
+    m_PipelinedDecompression = value;
+  }
+
+  /**
+   * Returns whether to decompress compressed sources on a separate thread.
+   *
+   * @return		true if to decompress on a separate thread
+   */
+  public boolean getPipelinedDecompression() {
+    return m_PipelinedDecompression;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String pipelinedDecompressionTipText() {
+    return "If enabled, compressed sources (detected via their magic bytes) get decompressed on a separate thread that fills buffers ahead of the parser.";
+  }
+
+  /**
+   * Sets the block to start loading block-gzipped files at.
+   *
+   * @param value	the 0-based block index
+   */
+  public void setStartBlock(int value) {
+    if (value >= 0)
+      m_StartBlock = value;
+    else
+      System.err.println("Start block must be at least 0, provided: " + value);
+  }
+
+  /**
+   * Returns the block to start loading block-gzipped files at.
+   *
+   * @return		the 0-based block index
+   */
+  public int getStartBlock() {
+    return m_StartBlock;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String startBlockTipText() {
+    return "The 0-based block to start loading block-gzipped files (BGZF or with a .gzi index) at; "
+      + "loading starts with the first record that begins after the block start, the header is read from the start of the file.";
+  }
+
+  /**
+   * Sets the directory for caching the inferred structures.
+   *
+   * @param value	the directory, empty to turn off caching
+   */
+  public void setSchemaCache(String value) {
+    m_SchemaCache = value;
+  }
+
+  /**
+   * Returns the directory for caching the inferred structures.
+   *
+   * @return		the directory, empty if caching is turned off
+   */
+  public String getSchemaCache() {
+    return m_SchemaCache;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String schemaCacheTipText() {
+    return "The directory for caching the structures inferred from files, which avoids type detection on subsequent loads "
+      + "as long as file (path, size, modification time) and options are unchanged; empty to turn off caching.";
+  }
+
+  /**
+   * Sets whether to cache the parsed data in a binary columnar file next
+   * to the source.
+   *
+   * @param value	true if to cache
+   */
+  public void setColumnarCache(boolean value) {
+    m_ColumnarCache = value;
+  }
+
+  /**
+   * Returns whether to cache the parsed data in a binary columnar file next
+   * to the source.
+   *
+   * @return		true if to cache
+   */
+  public boolean getColumnarCache() {
+    return m_ColumnarCache;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String columnarCacheTipText() {
+    return "If enabled, batch loading writes the parsed data to a binary columnar file next to the source ("
+      + CommonCsvColumnarCache.FILE_EXTENSION + "), which subsequent loads read instead of parsing the file, "
+      + "as long as file (size, modification time), options and inferred structure are unchanged.";
+  }
+
+  /**
+   * Sets the number of records between offsets in the index that gets
+   * written during full loads.
+   *
+   * @param value	the number of records, 0 to turn off
+   */
+  public void setOffsetIndex(int value) {
+    if (value >= 0)
+      m_OffsetIndex = value;
+    else
+      System.err.println("Number of records must be at least 0, provided: " + value);
+  }
+
+  /**
+   * Returns the number of records between offsets in the index that gets
+   * written during full loads.
+   *
+   * @return		the number of records, 0 if turned off
+   */
+  public int getOffsetIndex() {
+    return m_OffsetIndex;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String offsetIndexTipText() {
+    return "The number of records between byte offsets in the index file (" + CommonCsvOffsetIndex.FILE_EXTENSION
+      + ") that gets written next to uncompressed source files during full loads, used for random access to rows; 0 to turn off.";
+  }
+
+  /**
+   * Sets the start of the byte range of the file to load.
+   *
+   * @param value	the start (inclusive)
+   */
+  public void setSplitStart(long value) {
+    if (value >= 0)
+      m_SplitStart = value;
+    else
+      System.err.println("Split start must be at least 0, provided: " + value);
+  }
+
+  /**
+   * Returns the start of the byte range of the file to load.
+   *
+   * @return		the start (inclusive)
+   */
+  public long getSplitStart() {
+    return m_SplitStart;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String splitStartTipText() {
+    return "The start of the byte range of the (uncompressed) file to load; loading starts with the first record that "
+      + "begins at or after it, the header is read from the start of the file; without an offset index, the first "
+      + "line start is assumed to be a record start.";
+  }
+
+  /**
+   * Sets the end of the byte range of the file to load.
+   *
+   * @param value	the end (exclusive), -1 for the end of the file
+   */
+  public void setSplitEnd(long value) {
+    if (value >= -1)
+      m_SplitEnd = value;
+    else
+      System.err.println("Split end must be at least -1, provided: " + value);
+  }
+
+  /**
+   * Returns the end of the byte range of the file to load.
+   *
+   * @return		the end (exclusive), -1 for the end of the file
+   */
+  public long getSplitEnd() {
+    return m_SplitEnd;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String splitEndTipText() {
+    return "The end of the byte range of the (uncompressed) file to load; the record that starts before and extends "
+      + "beyond it still gets loaded; -1 for the end of the file.";
+  }
+
+  /**
+   * Sets the file with the header to use instead of type detection.
+   *
+   * @param value	the file (any format Weka can load), empty for none
+   */
+  public void setExternalHeader(String value) {
+    m_ExternalHeader    = value;
+    m_ExternalStructure = null;
+  }
+
+  /**
+   * Returns the file with the header to use instead of type detection.
+   *
+   * @return		the file, empty for none
+   */
+  public String getExternalHeader() {
+    return m_ExternalHeader;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String externalHeaderTipText() {
+    return "The file (any format Weka can load, e.g., ARFF) with the header to use instead of type detection, "
+      + "e.g., for loading byte ranges of a file consistently; empty for none.";
+  }
+
+  /**
+   * Sets whether to determine the types from a first pass over the whole
+   * file rather than from the detection window only.
+   *
+   * @param value	true if to perform a first pass
+   */
+  public void setTwoPassDetection(boolean value) {
+    m_TwoPassDetection = value;
+  }
+
+  /**
+   * Returns whether to determine the types from a first pass over the whole
+   * file rather than from the detection window only.
+   *
+   * @return		true if to perform a first pass
+   */
+  public boolean getTwoPassDetection() {
+    return m_TwoPassDetection;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String twoPassDetectionTipText() {
+    return "If enabled, file sources get read twice: the first pass only classifies the cells of all rows (numeric columns, "
+      + "nominal labels) and counts the rows, the second pass converts the rows into an exactly sized dataset.";
+  }
+
+  /**
+   * Sets the number of additional windows, spread evenly across the file,
+   * to sample for type detection.
+   *
+   * @param value	the number of windows, 0 for the first rows only
+   */
+  public void setSampleWindows(int value) {
+    if (value >= 0)
+      m_SampleWindows = value;
+    else
+      System.err.println("Number of sample windows must be at least 0, provided: " + value);
+  }
+
+  /**
+   * Returns the number of additional windows, spread evenly across the
+   * file, to sample for type detection.
+   *
+   * @return		the number of windows, 0 for the first rows only
+   */
+  public int getSampleWindows() {
+    return m_SampleWindows;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String sampleWindowsTipText() {
+    return "The number of additional windows (with the number of rows for type detection each), spread evenly across "
+      + "the (uncompressed) file, to sample for type detection; 0 to use the first rows only.";
+  }
+
+  /**
+   * Sets the maximum number of distinct values for turning columns that
+   * would become string attributes into nominal ones.
+   *
+   * @param value	the threshold, 0 to turn off
+   */
+  public void setNominalThreshold(int value) {
+    if (value >= 0)
+      m_NominalThreshold = value;
+    else
+      System.err.println("Nominal threshold must be at least 0, provided: " + value);
+  }
+
+  /**
+   * Returns the maximum number of distinct values for turning columns that
+   * would become string attributes into nominal ones.
+   *
+   * @return		the threshold, 0 if turned off
+   */
+  public int getNominalThreshold() {
+    return m_NominalThreshold;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String nominalThresholdTipText() {
+    return "The maximum number of distinct values for turning non-numeric columns that are not explicitly string/date "
+      + "columns into nominal ones instead of string ones; only applied if type detection sees all rows, i.e., with "
+      + "two-pass detection or if the number of rows for type detection covers the whole data; 0 to turn off.";
+  }
+
+  /**
+   * Sets the header to use instead of type detection, e.g., the one
+   * obtained from loading the first split. Takes precedence over the
+   * external header file.
+   *
+   * @param value	the header, null to use the external header file (if any)
+   */
+  public void setExternalStructure(Instances value) {
+    m_ExternalStructure = (value == null) ? null : new Instances(value, 0);
+  }
+
+  /**
+   * Returns the header to use instead of type detection, reading it from
+   * the external header file if necessary.
+   *
+   * @return		the header, null if none
+   * @throws IOException	if reading the header file fails
+   */
+  protected Instances getExternalStructure() throws IOException {
+    if ((m_ExternalStructure == null) && !m_ExternalHeader.isEmpty()) {
+      try {
+	m_ExternalStructure = new Instances(ConverterUtils.DataSource.read(m_ExternalHeader), 0);
+      }
+      catch (Exception e) {
+	throw new IOException("Failed to read external header: " + m_ExternalHeader, e);
+      }
+    }
+    return m_ExternalStructure;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector result = new Vector();
+
+    result.addElement(new Option("\tThe CSV format to use\n"
+      + "\t(default: DEFAULT)",
+      "F", 1, "-F " + Tag.toOptionList(CommonCsvFormats.TAGS_FORMATS)));
+
+    result.addElement(new Option("\tWhether to use custom field separator\n"
+      + "\t(default: no)",
+      "use-custom-field-separator", 0, "-use-custom-field-separator"));
+
+    result.addElement(new Option("\tThe custom field separator\n"
+      + "\t(default: " + DEFAULT_CUSTOM_FIELD_SEPARATOR + ")",
+      "custom-field-separator", 1, "-custom-field-separator <separator-char>"));
+
+    result.addElement(new Option("\tWhether to use custom quote character\n"
+      + "\t(default: no)",
+      "use-custom-quote-character", 0, "-use-custom-quote-character"));
+
+    result.addElement(new Option("\tThe custom quote character\n"
+      + "\t(default: " + DEFAULT_CUSTOM_QUOTE_CHARACTER + ")",
+      "custom-quote-character", 1, "-custom-quote-character <quote-char>"));
+
+    result.addElement(new Option("\tWhether to use custom quote mode\n"
+      + "\t(default: no)",
+      "use-custom-quote-mode", 0, "-use-custom-quote-mode"));
+
+    result.addElement(new Option("\tThe custom quote mode\n"
+      + "\t(default: MINIMAL)",
+      "custom-quote-mode", 1, "-custom-quote-mode " + Tag.toOptionList(CommonCsvQuoteModes.TAGS_QUOTEMODES)));
+
+    result.addElement(new Option("\tWhether to use custom escape character\n"
+      + "\t(default: no)",
+      "use-custom-escape-character", 0, "-use-custom-escape-character"));
+
+    result.addElement(new Option("\tThe custom escape character\n"
+      + "\t(default: " + DEFAULT_CUSTOM_ESCAPE_CHARACTER + ")",
+      "custom-escape-character", 1, "-custom-escape-character <escape-char>"));
+
+    result.addElement(new Option("\tWhether there is no header row in the spreadsheet\n"
+      + "\t(default: assumes header row present)",
+      "no-header", 0, "-no-header"));
+
+    result.addElement(new Option("\tThe attribute range to treat as nominal\n"
+      + "\t(default: none)",
+      "nominal", 1, "-nominal <range>"));
+
+    result.add(new Option("\tOptional specification of legal labels for nominal\n"
+      + "\tattributes. May be specified multiple times.\n"
+      + "\tThe spec contains two parts separated by a \":\".\n"
+      + "\tThe first part can be a range of attribute indexes or\n"
+      + "\ta comma-separated list off attruibute names;\n"
+      + "\tthe second part is a comma-separated list of labels. E.g.:\n"
+      + "\t\"1,2,4-6:red,green,blue\" or \"att1,att2:red,green,blue\"",
+      "nominal-label-spec", 1, "-nominal-label-spec <nominal label spec>"));
+
+    result.addElement(new Option("\tThe attribute range to treat as string\n"
+      + "\t(default: none)",
+      "string", 1, "-string <range>"));
+
+    result.addElement(new Option("\tThe attribute range to treat as date\n"
+      + "\t(default: none)",
+      "date", 1, "-date <range>"));
+
+    result.addElement(new Option("\tThe format to use for parsing the date attribute(s)\n"
+      + "\tsee: https://docs.oracle.com/en/java/javase/11/docs/api/java.base/java/time/format/DateTimeFormatter.html\n"
+      + "\t(default: " + DEFAULT_DATE_FORMAT + ")",
+      "date-format", 1, "-date-format <format>"));
+
+    result.addElement(new Option("\tThe string to interpret as missing value\n"
+      + "\t(default: '" + DEFAULT_MISSING_VALUE + "')",
+      "missing-value", 1, "-missing-value <string>"));
+
+    result.addElement(new Option("\tThe number of rows to use for detecting numeric rows\n"
+      + "\t(default: '" + DEFAULT_NUM_ROWS_TYPE_DETECTION + "')",
+      "num-rows-type-detection", 1, "-num-rows-type-detection <int>"));
+
+    result.addElement(new Option("\tThe engine to use for parsing\n"
+      + "\t(default: COMMONS_CSV)",
+      "engine", 1, "-engine " + Tag.toOptionList(CommonCsvEngines.TAGS_ENGINES)));
+
+    result.addElement(new Option("\tThe number of threads to use for parsing files in batch mode\n"
+      + "\t(1 = sequential, <=0 = all available cores)\n"
+      + "\t(default: " + DEFAULT_NUM_THREADS + ")",
+      "num-threads", 1, "-num-threads <int>"));
+
+    result.addElement(new Option("\tWhether to read uncompressed files via memory-mapping\n"
+      + "\t(default: off)",
+      "memory-mapped", 0, "-memory-mapped"));
+
+    result.addElement(new Option("\tThe type of instances to generate in batch mode\n"
+      + "\t(default: DENSE)",
+      "instance-type", 1, "-instance-type " + Tag.toOptionList(CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES)));
+
+    result.addElement(new Option("\tThe range of columns to load\n"
+      + "\t(default: " + DEFAULT_COLUMN_RANGE + ")",
+      "columns", 1, "-columns <range>"));
+
+    result.addElement(new Option("\tThe comma-separated names of the columns to load,\n"
+      + "\toverrides the column range\n"
+      + "\t(default: none)",
+      "column-names", 1, "-column-names <list>"));
+
+    result.addElement(new Option("\tThe filter expression that rows must satisfy to get loaded,\n"
+      + "\tconditions of the form '<column> <op> <value>' combined with '&&';\n"
+      + "\tcolumn is a name or 1-based index of the loaded columns,\n"
+      + "\top one of =, !=, <, <=, >, >=, in (comma-separated values),\n"
+      + "\t~ (regexp), !~ (negated regexp), e.g.: \"class in a,b && 2 > 1.5\"\n"
+      + "\t(default: none)",
+      "row-filter", 1, "-row-filter <expr>"));
+
+    result.addElement(new Option("\tThe number of instances to parse ahead on a background\n"
+      + "\tthread in incremental mode (0 = parse on calling thread)\n"
+      + "\t(default: " + DEFAULT_READ_AHEAD + ")",
+      "read-ahead", 1, "-read-ahead <int>"));
+
+    result.addElement(new Option("\tThe charset of the source, e.g., UTF-8 or ISO-8859-1\n"
+      + "\t(default: platform default)",
+      "charset", 1, "-charset <name>"));
+
+    result.addElement(new Option("\tWhether to decompress compressed sources on a separate\n"
+      + "\tthread, ahead of the parser\n"
+      + "\t(default: off)",
+      "pipelined-decompression", 0, "-pipelined-decompression"));
+
+    result.addElement(new Option("\tThe 0-based block to start loading block-gzipped files at\n"
+      + "\t(BGZF or with .gzi index)\n"
+      + "\t(default: " + DEFAULT_START_BLOCK + ")",
+      "start-block", 1, "-start-block <int>"));
+
+    result.addElement(new Option("\tThe directory for caching the structures inferred from files\n"
+      + "\t(default: none)",
+      "schema-cache", 1, "-schema-cache <dir>"));
+
+    result.addElement(new Option("\tWhether to cache the parsed data in a binary columnar file\n"
+      + "\tnext to the source (batch mode only)\n"
+      + "\t(default: off)",
+      "columnar-cache", 0, "-columnar-cache"));
+
+    result.addElement(new Option("\tThe number of records between offsets in the index file\n"
+      + "\twritten during full loads for random access, 0 to turn off\n"
+      + "\t(default: " + DEFAULT_OFFSET_INDEX + ")",
+      "offset-index", 1, "-offset-index <int>"));
+
+    result.addElement(new Option("\tThe start of the byte range of the file to load\n"
+      + "\t(first record that begins at or after it, i.e., the first line\n"
+      + "\tstart unless there is an offset index)\n"
+      + "\t(default: " + DEFAULT_SPLIT_START + ")",
+      "split-start", 1, "-split-start <long>"));
+
+    result.addElement(new Option("\tThe end of the byte range of the file to load\n"
+      + "\t(record that extends beyond it still gets loaded), -1 for end of file\n"
+      + "\t(default: " + DEFAULT_SPLIT_END + ")",
+      "split-end", 1, "-split-end <long>"));
+
+    result.addElement(new Option("\tThe file with the header to use instead of type detection\n"
+      + "\t(default: none)",
+      "external-header", 1, "-external-header <file>"));
+
+    result.addElement(new Option("\tWhether to determine the types from a first pass over the\n"
+      + "\twhole file rather than the detection window only (file sources only)\n"
+      + "\t(default: off)",
+      "two-pass-detection", 0, "-two-pass-detection"));
+
+    result.addElement(new Option("\tThe number of additional windows, spread evenly across the\n"
+      + "\tfile, to sample for type detection, 0 for first rows only\n"
+      + "\t(uncompressed file sources only)\n"
+      + "\t(default: " + DEFAULT_SAMPLE_WINDOWS + ")",
+      "sample-windows", 1, "-sample-windows <int>"));
+
+    result.addElement(new Option("\tThe maximum number of distinct values for turning non-numeric\n"
+      + "\tcolumns into nominal instead of string ones, 0 to turn off\n"
+      + "\t(requires type detection to see all rows, e.g., two-pass detection)\n"
+      + "\t(default: " + DEFAULT_NOMINAL_THRESHOLD + ")",
+      "nominal-threshold", 1, "-nominal-threshold <int>"));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+    String 	tmp;
+
+    tmp = Utils.getOption('F', options);
+    if (!tmp.isEmpty())
+      setFormat(new SelectedTag(tmp, CommonCsvFormats.TAGS_FORMATS));
+    else
+      setFormat(new SelectedTag(CommonCsvFormats.DEFAULT, CommonCsvFormats.TAGS_FORMATS));
+
+    setUseCustomFieldSeparator(Utils.getFlag("use-custom-field-separator", options));
+
+    tmp = Utils.getOption("custom-field-separator", options);
+    if (!tmp.isEmpty() && (tmp.length() == 1))
+      setCustomFieldSeparator(tmp);
+    else
+      setCustomFieldSeparator(DEFAULT_CUSTOM_FIELD_SEPARATOR);
+
+    setUseCustomQuoteCharacter(Utils.getFlag("use-custom-quote-character", options));
+
+    tmp = Utils.getOption("custom-quote-character", options);
+    if (!tmp.isEmpty() && (tmp.length() == 1))
+      setCustomQuoteCharacter(tmp);
+    else
+      setCustomQuoteCharacter(DEFAULT_CUSTOM_QUOTE_CHARACTER);
+
+    setUseCustomQuoteMode(Utils.getFlag("use-custom-quote-mode", options));
+
+    tmp = Utils.getOption("custom-quote-mode", options);
+    if (!tmp.isEmpty())
+      setCustomQuoteMode(new SelectedTag(tmp, CommonCsvQuoteModes.TAGS_QUOTEMODES));
+    else
+      setCustomQuoteMode(new SelectedTag(CommonCsvQuoteModes.MINIMAL, CommonCsvQuoteModes.TAGS_QUOTEMODES));
+
+    setUseCustomEscapeCharacter(Utils.getFlag("use-custom-escape-character", options));
+
+    tmp = Utils.getOption("custom-escape-character", options);
+    setCustomEscapeCharacter(tmp);
+
+    setNoHeader(Utils.getFlag("no-header", options));
+
+    tmp = Utils.getOption("custom-header", options);
+    if (!tmp.isEmpty())
+      setCustomHeader(tmp);
+    else
+      setCustomHeader(DEFAULT_CUSTOM_HEADER);
+
+    tmp = Utils.getOption("nominal", options);
+    if (!tmp.isEmpty())
+      setNominalRange(new Range(tmp));
+    else
+      setNominalRange(new Range());
+
+    m_nominalLabelSpecs.clear();
+    while (true) {
+      tmp = Utils.getOption("nominal-label-spec", options);
+      if (tmp.isEmpty())
+	break;
+      m_nominalLabelSpecs.add(tmp);
+    }
+
+    tmp = Utils.getOption("string", options);
+    if (!tmp.isEmpty())
+      setStringRange(new Range(tmp));
+    else
+      setStringRange(new Range());
+
+    tmp = Utils.getOption("date", options);
+    if (!tmp.isEmpty())
+      setDateRange(new Range(tmp));
+    else
+      setDateRange(new Range());
+
+    tmp = Utils.getOption("date-format", options);
+    if (!tmp.isEmpty())
+      setDateFormat(tmp);
+    else
+      setDateFormat(DEFAULT_DATE_FORMAT);
+
+    tmp = Utils.getOption("missing-value", options);
+    if (!tmp.isEmpty())
+      setMissingValue(tmp);
+    else
+      setMissingValue(DEFAULT_MISSING_VALUE);
+
+    tmp = Utils.getOption("num-rows-type-detection", options);
+    if (!tmp.isEmpty())
+      setNumRowsTypeDetection(Integer.parseInt(tmp));
+    else
+      setNumRowsTypeDetection(DEFAULT_NUM_ROWS_TYPE_DETECTION);
+
+    tmp = Utils.getOption("engine", options);
+    if (!tmp.isEmpty())
+      setEngine(new SelectedTag(tmp, CommonCsvEngines.TAGS_ENGINES));
+    else
+      setEngine(new SelectedTag(DEFAULT_ENGINE, CommonCsvEngines.TAGS_ENGINES));
+
+    tmp = Utils.getOption("num-threads", options);
+    if (!tmp.isEmpty())
+      setNumThreads(Integer.parseInt(tmp));
+    else
+      setNumThreads(DEFAULT_NUM_THREADS);
+
+    setUseMemoryMapping(Utils.getFlag("memory-mapped", options));
+
+    tmp = Utils.getOption("instance-type", options);
+    if (!tmp.isEmpty())
+      setInstanceType(new SelectedTag(tmp, CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES));
+    else
+      setInstanceType(new SelectedTag(DEFAULT_INSTANCE_TYPE, CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES));
+
+    tmp = Utils.getOption("columns", options);
+    if (!tmp.isEmpty())
+      setColumnRange(new Range(tmp));
+    else
+      setColumnRange(new Range(DEFAULT_COLUMN_RANGE));
+
+    setColumnNames(Utils.getOption("column-names", options));
+
+    setRowFilter(Utils.getOption("row-filter", options));
+
+    tmp = Utils.getOption("read-ahead", options);
+    if (!tmp.isEmpty())
+      setReadAhead(Integer.parseInt(tmp));
+    else
+      setReadAhead(DEFAULT_READ_AHEAD);
+
+    setCharset(Utils.getOption("charset", options));
+
+    setPipelinedDecompression(Utils.getFlag("pipelined-decompression", options));
+
+    tmp = Utils.getOption("start-block", options);
+    if (!tmp.isEmpty())
+      setStartBlock(Integer.parseInt(tmp));
+    else
+      setStartBlock(DEFAULT_START_BLOCK);
+
+    setSchemaCache(Utils.getOption("schema-cache", options));
+
+    setColumnarCache(Utils.getFlag("columnar-cache", options));
+
+    tmp = Utils.getOption("offset-index", options);
+    if (!tmp.isEmpty())
+      setOffsetIndex(Integer.parseInt(tmp));
+    else
+      setOffsetIndex(DEFAULT_OFFSET_INDEX);
+
+    tmp = Utils.getOption("split-start", options);
+    if (!tmp.isEmpty())
+      setSplitStart(Long.parseLong(tmp));
+    else
+      setSplitStart(DEFAULT_SPLIT_START);
+
+    tmp = Utils.getOption("split-end", options);
+    if (!tmp.isEmpty())
+      setSplitEnd(Long.parseLong(tmp));
+    else
+      setSplitEnd(DEFAULT_SPLIT_END);
+
+    setExternalHeader(Utils.getOption("external-header", options));
+
+    setTwoPassDetection(Utils.getFlag("two-pass-detection", options));
+
+    tmp = Utils.getOption("sample-windows", options);
+    if (!tmp.isEmpty())
+      setSampleWindows(Integer.parseInt(tmp));
+    else
+      setSampleWindows(DEFAULT_SAMPLE_WINDOWS);
+
+    tmp = Utils.getOption("nominal-threshold", options);
+    if (!tmp.isEmpty())
+      setNominalThreshold(Integer.parseInt(tmp));
+    else
+      setNominalThreshold(DEFAULT_NOMINAL_THRESHOLD);
+
+    Utils.checkForRemainingOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the Apriori object.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String[] getOptions() {
+    List<String>	result;
+
+    result = new ArrayList<String>();
+
+    result.add("-F");
+    result.add(getFormat().getSelectedTag().getIDStr());
+
+    if (getUseCustomFieldSeparator()) {
+      result.add("-use-custom-field-separator");
+      result.add("-custom-field-separator");
+      result.add(getCustomFieldSeparator());
+    }
+
+    if (getUseCustomQuoteCharacter()) {
+      result.add("-use-custom-quote-character");
+      result.add("-custom-quote-character");
+      result.add(getCustomQuoteCharacter());
+    }
+
+    if (getUseCustomQuoteMode()) {
+      result.add("-use-custom-quote-mode");
+      result.add("-custom-quote-mode");
+      result.add(getCustomQuoteMode().getSelectedTag().getIDStr());
+    }
+
+    if (getUseCustomEscapeCharacter()) {
+      result.add("-use-custom-escape-character");
+      result.add("-custom-escape-character");
+      result.add(getCustomEscapeCharacter());
+    }
+
+    if (getNoHeader())
+      result.add("-no-header");
+
+    if (!getCustomHeader().isEmpty()) {
+      result.add("-custom-header");
+      result.add(getCustomHeader());
+    }
+
+    if (!getNominalRange().getRanges().isEmpty()) {
+      result.add("-nominal");
+      result.add(getNominalRange().getRanges());
+
+      for (String spec : m_nominalLabelSpecs) {
+	result.add("-nominal-label-spec");
+	result.add(spec);
+      }
+    }
+
+    if (!getStringRange().getRanges().isEmpty()) {
+      result.add("-string");
+      result.add(getStringRange().getRanges());
+    }
+
+    if (!getDateRange().getRanges().isEmpty()) {
+      result.add("-date");
+      result.add(getDateRange().getRanges());
+      result.add("-date-format");
+      result.add(getDateFormat());
+    }
+
+    result.add("-missing-value");
+    result.add(getMissingValue());
+
+    result.add("-num-rows-type-detection");
+    result.add("" + getNumRowsTypeDetection());
+
+    if (m_Engine != DEFAULT_ENGINE) {
+      result.add("-engine");
+      result.add(getEngine().getSelectedTag().getIDStr());
+    }
+
+    if (getNumThreads() != DEFAULT_NUM_THREADS) {
+      result.add("-num-threads");
+      result.add("" + getNumThreads());
+    }
+
+    if (getUseMemoryMapping())
+      result.add("-memory-mapped");
+
+    if (m_InstanceType != DEFAULT_INSTANCE_TYPE) {
+      result.add("-instance-type");
+      result.add(getInstanceType().getSelectedTag().getIDStr());
+    }
+
+    if (!getColumnRange().getRanges().equals(DEFAULT_COLUMN_RANGE)) {
+      result.add("-columns");
+      result.add(getColumnRange().getRanges());
+    }
+
+    if (!getColumnNames().isEmpty()) {
+      result.add("-column-names");
+      result.add(getColumnNames());
+    }
+
+    if (!getRowFilter().isEmpty()) {
+      result.add("-row-filter");
+      result.add(getRowFilter());
+    }
+
+    if (getReadAhead() != DEFAULT_READ_AHEAD) {
+      result.add("-read-ahead");
+      result.add("" + getReadAhead());
+    }
+
+    if (!getCharset().isEmpty()) {
+      result.add("-charset");
+      result.add(getCharset());
+    }
+
+    if (getPipelinedDecompression())
+      result.add("-pipelined-decompression");
+
+    if (getStartBlock() != DEFAULT_START_BLOCK) {
+      result.add("-start-block");
+      result.add("" + getStartBlock());
+    }
+
+    if (!getSchemaCache().isEmpty()) {
+      result.add("-schema-cache");
+      result.add(getSchemaCache());
+    }
+
+    if (getColumnarCache())
+      result.add("-columnar-cache");
+
+    if (getOffsetIndex() != DEFAULT_OFFSET_INDEX) {
+      result.add("-offset-index");
+      result.add("" + getOffsetIndex());
+    }
+
+    if (getSplitStart() != DEFAULT_SPLIT_START) {
+      result.add("-split-start");
+      result.add("" + getSplitStart());
+    }
+
+    if (getSplitEnd() != DEFAULT_SPLIT_END) {
+      result.add("-split-end");
+      result.add("" + getSplitEnd());
+    }
+
+    if (!getExternalHeader().isEmpty()) {
+      result.add("-external-header");
+      result.add(getExternalHeader());
+    }
+
+    if (getTwoPassDetection())
+      result.add("-two-pass-detection");
+
+    if (getSampleWindows() != DEFAULT_SAMPLE_WINDOWS) {
+      result.add("-sample-windows");
+      result.add("" + getSampleWindows());
+    }
+
+    if (getNominalThreshold() != DEFAULT_NOMINAL_THRESHOLD) {
+      result.add("-nominal-threshold");
+      result.add("" + getNominalThreshold());
+    }
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Resets the Loader ready to read a new data set
+   *
+   * @throws IOException        if something goes wrong
+   */
+  public void reset() throws IOException {
+    stopReadAhead();
+    // stops any decompression thread
+    if (m_sourceReader != null) {
+      try {
+	m_sourceReader.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      m_sourceReader = null;
+    }
+    m_SourceStream = null;
+    m_structure    = null;
+    m_Data         = null;
+
+    setRetrieval(NONE);
+
+    if (m_File != null)
+      setFile(new File(m_File));
+    else if ((m_URL != null) && !m_URL.equals("http://"))
+      setURL(m_URL);
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be 
+   * the supplied File object.
+   *
+   * @param file 		the source file.
+   * @throws IOException        if an error occurs
+   */
+  public void setSource(File file) throws IOException {
+    Charset			scanned;
+    CommonCsvBlockGzip.Index	index;
+
+    m_structure = null;
+    m_Data      = null;
+
+    setRetrieval(NONE);
+
+    if (file == null)
+      throw new IOException("Source file object is null!");
+
+    try {
+      if (CommonCsvCodecs.detect(file) != null) {
+	index = null;
+	if ((m_NumThreads != 1) || (m_StartBlock > 0))
+	  index = CommonCsvBlockGzip.getIndex(file);
+	if (index != null) {
+	  setSource(openBlockGzip(file, index));
+	  m_SourceIsCompressed = true;
+	}
+	else if (m_StartBlock > 0) {
+	  throw new IOException("Starting at a block requires a BGZF file or an index file ("
+	    + CommonCsvBlockGzip.getIndexFile(file) + ")!");
+	}
+	else if (isSplit()) {
+	  throw new IOException("Loading a byte range requires an uncompressed file!");
+	}
+	else {
+	  setSource(new FileInputStream(file));
+	}
+      }
+      else if (isSplit()) {
+	setSource(openSplit(file));
+	m_SourceIsSplit = true;
+      }
+      else if (m_UseMemoryMapping) {
+	scanned = determineScannedCharset();
+	setSourceReader(createMappedReader(file, 0, file.length(), scanned), scanned);
+      }
+      else
+	setSource(new FileInputStream(file));
+    }
+    catch (FileNotFoundException ex) {
+      throw new IOException("File not found");
+    }
+
+    m_sourceFile   = file;
+    m_File         = file.getAbsolutePath();
+    m_SourceIsFile = true;
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be 
+   * the supplied url.
+   *
+   * @param url 	the source url.
+   * @throws IOException        if an error occurs
+   */
+  public void setSource(URL url) throws IOException {
+    m_structure = null;
+    m_Data      = null;
+
+    setRetrieval(NONE);
+
+    setSource(url.openStream());
+
+    m_URL = url.toString();
+  }
+
+  /**
+   * Set the url to load from
+   *
+   * @param url 		the url to load from
+   * @throws IOException        if the url can't be set.
+   */
+  public void setURL(String url) throws IOException {
+    m_URL = url;
+    setSource(new URL(url));
+  }
+
+  /**
+   * Return the current url
+   *
+   * @return the current url
+   */
+  public String retrieveURL() {
+    return m_URL;
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be 
+   * the supplied InputStream. Compressed streams get detected via their
+   * magic bytes and decompressed on the fly.
+   *
+   * @param in 			the source InputStream.
+   * @throws IOException        if initialization of reader fails.
+   */
+  public void setSource(InputStream in) throws IOException {
+    Charset		scanned;
+    CommonCsvCodec	codec;
+
+    if (!in.markSupported())
+      in = new BufferedInputStream(in);
+    codec = CommonCsvCodecs.detect(in);
+    if (codec != null) {
+      in = codec.decompress(in);
+      if (m_PipelinedDecompression)
+	in = new CommonCsvAsyncInputStream(in);
+    }
+
+    scanned = determineScannedCharset();
+    setSourceReader(createReader(in, scanned), scanned);
+    m_SourceStream       = in;
+    m_SourceIsCompressed = (codec != null);
+  }
+
+  /**
+   * Opens a block-gzipped file, inflating the blocks in parallel. When
+   * starting at a block other than the first, the header record gets read
+   * from the start of the file and the data starts with the first record
+   * after the first line break at or after the block start (the block is
+   * assumed not to start within a quoted cell spanning multiple lines).
+   *
+   * @param file	the compressed file
+   * @param index	the block index
+   * @return		the stream of the uncompressed data
+   * @throws IOException	if opening fails
+   */
+  protected InputStream openBlockGzip(File file, CommonCsvBlockGzip.Index index) throws IOException {
+    int				numThreads;
+    PushbackInputStream		data;
+    byte[]			header;
+    long			skip;
+    int				b;
+
+    numThreads = (m_NumThreads <= 0) ? Runtime.getRuntime().availableProcessors() : m_NumThreads;
+    if (m_StartBlock == 0)
+      return new CommonCsvBlockGzip.ParallelInputStream(file, index, 0, numThreads);
+    if (m_StartBlock >= index.getNumBlocks())
+      throw new IOException("Start block out of range (0-" + (index.getNumBlocks() - 1) + "): " + m_StartBlock);
+    if (!CommonCsvChunker.isSupported(getSourceCharset()))
+      throw new IOException("Starting at a block requires an ASCII-compatible charset: " + getSourceCharset());
+
+    // header record
+    header = readHeaderRecord(new CommonCsvBlockGzip.ParallelInputStream(file, index, 0, 1));
+
+    // start with the last byte of the previous block, to determine whether
+    // the block starts with a new line
+    data = new PushbackInputStream(new CommonCsvBlockGzip.ParallelInputStream(file, index, m_StartBlock - 1, numThreads), 1);
+    skip = index.getUncompressedOffset(m_StartBlock) - index.getUncompressedOffset(m_StartBlock - 1) - 1;
+    if (data.skip(skip) != skip) {
+      data.close();
+      throw new IOException("Failed to skip to block #" + m_StartBlock + "!");
+    }
+    b = data.read();
+    while ((b != -1) && (b != '\n') && (b != '\r'))
+      b = data.read();
+    if (b == '\r') {
+      b = data.read();
+      if ((b != '\n') && (b != -1))
+	data.unread(b);
+    }
+
+    return new SequenceInputStream(new ByteArrayInputStream(header), data);
+  }
+
+  /**
+   * Reads the bytes of the header record (incl line break) from the start
+   * of the stream, if the data has a header. Closes the stream.
+   *
+   * @param in		the stream to read from
+   * @return		the bytes, empty if no header
+   * @throws IOException	if reading fails
+   */
+  protected byte[] readHeaderRecord(InputStream in) throws IOException {
+    ByteArrayOutputStream	result;
+    CommonCsvChunker		chunker;
+    int				b;
+    int				state;
+
+    result = new ByteArrayOutputStream();
+    try {
+      if (!m_NoHeader) {
+	chunker = new CommonCsvChunker(createFormat());
+	while ((b = in.read()) != -1) {
+	  state = chunker.process(b);
+	  if (state == 1)
+	    break;
+	  result.write(b);
+	  if (state == 0)
+	    break;
+	}
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    return result.toByteArray();
+  }
+
+  /**
+   * Checks whether a byte range of the file is to be loaded.
+   *
+   * @return		true if a byte range
+   */
+  protected boolean isSplit() {
+    return (m_SplitStart != DEFAULT_SPLIT_START) || (m_SplitEnd != DEFAULT_SPLIT_END);
+  }
+
+  /**
+   * Determines the first record start at or after the offset. Uses a valid
+   * offset index of the file for scanning from a known record start, which
+   * handles quoted cells spanning multiple lines. Otherwise the first line
+   * start gets used, i.e., the offset is assumed not to be within such a
+   * cell.
+   *
+   * @param file	the file
+   * @param offset	the offset
+   * @return		the record start, the file length if none
+   * @throws IOException	if scanning fails
+   */
+  protected long findRecordStart(File file, long offset) throws IOException {
+    CSVFormat			format;
+    CommonCsvOffsetIndex	index;
+    CommonCsvChunker		chunker;
+
+    if (offset <= 0)
+      return 0;
+    if (offset >= file.length())
+      return file.length();
+
+    format = createFormat();
+    index  = CommonCsvOffsetIndex.read(file, format);
+    if (index == null)
+      return CommonCsvChunker.findLineStart(file, offset);
+    chunker = new CommonCsvChunker(format);
+    return chunker.findRecordStarts(file, index.getOffsetBefore(offset), new long[]{offset})[0];
+  }
+
+  /**
+   * Opens the byte range of the file, with Hadoop's input split semantics:
+   * the data starts with the first record that begins at or after the split
+   * start and ends with the record that extends beyond the split end. For
+   * ranges not starting at the beginning of the file, the header record
+   * gets read from the start of the file.
+   *
+   * @param file	the uncompressed file
+   * @return		the stream of header and records in the range
+   * @throws IOException	if the charset is not supported or opening fails
+   */
+  protected InputStream openSplit(File file) throws IOException {
+    long	start;
+    long	end;
+    byte[]	header;
+
+    if (!CommonCsvChunker.isSupported(getSourceCharset()))
+      throw new IOException("Loading a byte range requires an ASCII-compatible charset: " + getSourceCharset());
+
+    start = findRecordStart(file, m_SplitStart);
+    end   = findRecordStart(file, (m_SplitEnd == DEFAULT_SPLIT_END) ? file.length() : m_SplitEnd);
+    if (start == 0)
+      return CommonCsvChunker.openRange(file, 0, Math.max(0, end));
+
+    header = readHeaderRecord(CommonCsvChunker.openRange(file, 0, file.length()));
+    return new SequenceInputStream(new ByteArrayInputStream(header), CommonCsvChunker.openRange(file, start, Math.max(start, end)));
+  }
+
+  /**
+   * Plans balanced byte ranges for loading the file in splits, e.g., on
+   * different machines (see the split start/end options). The boundaries
+   * are aligned to record starts, so that splits of tiny files can get
+   * merged. Without a valid offset index, the file gets scanned from the
+   * start to take quoted cells spanning multiple lines into account.
+   *
+   * @param file	the uncompressed file
+   * @param numSplits	the desired number of splits
+   * @return		the boundaries, starting with 0 and ending with the
+   * 			file length (i.e., numSplits + 1 elements at most)
+   * @throws IOException	if the charset is not supported or scanning fails
+   */
+  public long[] planSplits(File file, int numSplits) throws IOException {
+    CSVFormat	format;
+    List<Long>	bounds;
+    long[]	targets;
+    long[]	starts;
+    long[]	result;
+    long	length;
+    int		i;
+
+    if (!CommonCsvChunker.isSupported(getSourceCharset()))
+      throw new IOException("Planning splits requires an ASCII-compatible charset: " + getSourceCharset());
+
+    length  = file.length();
+    targets = new long[Math.max(0, numSplits - 1)];
+    for (i = 0; i < targets.length; i++)
+      targets[i] = length * (i + 1) / numSplits;
+
+    format = createFormat();
+    if (CommonCsvOffsetIndex.read(file, format) == null) {
+      starts = new CommonCsvChunker(format).findRecordStarts(file, 0, targets);
+    }
+    else {
+      starts = new long[targets.length];
+      for (i = 0; i < targets.length; i++)
+	starts[i] = findRecordStart(file, targets[i]);
+    }
+
+    bounds = new ArrayList<Long>();
+    bounds.add(0L);
+    for (long bound: starts) {
+      if ((bound > bounds.get(bounds.size() - 1)) && (bound < length))
+	bounds.add(bound);
+    }
+    bounds.add(length);
+
+    result = new long[bounds.size()];
+    for (i = 0; i < result.length; i++)
+      result[i] = bounds.get(i);
+
+    return result;
+  }
+
+  /**
+   * Returns the charset of the source.
+   *
+   * @return		the charset
+   * @throws IOException	if the charset is not supported
+   */
+  protected Charset getSourceCharset() throws IOException {
+    if (m_Charset.isEmpty())
+      return Charset.defaultCharset();
+    try {
+      return Charset.forName(m_Charset);
+    }
+    catch (Exception e) {
+      throw new IOException("Unsupported charset: " + m_Charset, e);
+    }
+  }
+
+  /**
+   * Checks whether the source can be scanned on the bytes rather than
+   * decoded characters, i.e., native engine, ASCII-compatible charset and
+   * a format with ASCII special characters that does not trim cells
+   * (multi-byte whitespace would go unnoticed).
+   *
+   * @return		true if bytes can be scanned
+   * @throws IOException	if the charset is not supported
+   */
+  protected boolean canScanBytes() throws IOException {
+    CSVFormat	format;
+
+    if ((m_Engine != CommonCsvEngines.NATIVE) || !CommonCsvChunker.isSupported(getSourceCharset()))
+      return false;
+    format = createFormat();
+    if (format.getTrim() || format.getIgnoreSurroundingSpaces())
+      return false;
+    return isAscii(format.getDelimiterString())
+      && ((format.getQuoteCharacter() == null) || (format.getQuoteCharacter() < 0x80))
+      && ((format.getEscapeCharacter() == null) || (format.getEscapeCharacter() < 0x80))
+      && ((format.getCommentMarker() == null) || (format.getCommentMarker() < 0x80))
+      && ((format.getNullString() == null) || isAscii(format.getNullString()));
+  }
+
+  /**
+   * Checks whether the string only consists of ASCII characters.
+   *
+   * @param s		the string to check
+   * @return		true if ASCII
+   */
+  protected static boolean isAscii(String s) {
+    return CommonCsvRow.isAscii(s.toCharArray(), 0, s.length());
+  }
+
+  /**
+   * Determines the charset of the source if its bytes can be scanned.
+   *
+   * @return		the charset, null if the characters need decoding
+   * @throws IOException	if the charset is not supported
+   */
+  protected Charset determineScannedCharset() throws IOException {
+    if (canScanBytes())
+      return getSourceCharset();
+    return null;
+  }
+
+  /**
+   * Creates the reader for the stream.
+   *
+   * @param in		the stream to read from
+   * @param scanned	the charset if the bytes get scanned, null for decoding
+   * @return		the reader
+   * @throws IOException	if the charset is not supported
+   */
+  protected Reader createReader(InputStream in, Charset scanned) throws IOException {
+    if (scanned != null)
+      return new CommonCsvByteReader(in);
+    return new BufferedReader(new InputStreamReader(in, getSourceCharset()));
+  }
+
+  /**
+   * Creates the reader for a range of the file using memory-mapping.
+   *
+   * @param file	the file to read
+   * @param start	the first byte (inclusive)
+   * @param end		the last byte (exclusive)
+   * @param scanned	the charset if the bytes get scanned, null for decoding
+   * @return		the reader
+   * @throws IOException	if the charset is not supported or opening fails
+   */
+  protected Reader createMappedReader(File file, long start, long end, Charset scanned) throws IOException {
+    return new CommonCsvMappedReader(file, start, end, (scanned != null) ? StandardCharsets.ISO_8859_1 : getSourceCharset(), CommonCsvMappedReader.DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Sets the reader to read the data set from.
+   *
+   * @param reader 		the reader to use
+   * @param scanned		the charset of the bytes held by the characters, null if decoded
+   */
+  protected void setSourceReader(Reader reader, Charset scanned) {
+    setSourceReader(reader);
+    m_ScannedCharset = scanned;
+  }
+
+  /**
+   * Sets the reader to read the data set from.
+   *
+   * @param reader 		the reader to use
+   */
+  protected void setSourceReader(Reader reader) {
+    stopReadAhead();
+    m_ScannedCharset = null;
+    m_File = (new File(System.getProperty("user.dir"))).getAbsolutePath();
+    m_URL  = "http://";
+
+    m_sourceReader       = reader;
+    m_SourceStream       = null;
+    m_Data               = null;
+    m_Layout             = null;
+    m_SourceIsFile       = false;
+    m_SourceIsCompressed = false;
+    m_SourceIsSplit      = false;
+    m_CurrentOffsetIndex = null;
+  }
+
+  /**
+   * Checks whether the string is numeric.
+   *
+   * @param s		the string to test
+   * @return		true if numeric
+   */
+  protected boolean isNumeric(String s) {
+    return CommonCsvNumbers.isNumeric(s);
+  }
+
+  /**
+   * Returns the list of custom column names.
+   *
+   * @param max 	the maximum number of columns, -1 just use the custom header ones
+   * @return		the column names
+   */
+  protected List<String> customColumnNames(int max) {
+    List<String> 	result;
+    List<String> 	all;
+    int			i;
+    int			start;
+
+    result = new ArrayList<String>();
+    if (!m_CustomHeader.isEmpty())
+      result.addAll(Arrays.asList(m_CustomHeader.split(",")));
+
+    // names refer to all columns
+    if (m_SelectedColumns != null) {
+      all    = result;
+      result = new ArrayList<String>();
+      for (int index: m_SelectedColumns) {
+	if (index < all.size())
+	  result.add(all.get(index));
+	else if (max > -1)
+	  result.add("att-" + (index + 1));
+      }
+      return result;
+    }
+
+    if (max > -1) {
+      start = result.size();
+      for (i = start; i < max; i++)
+	result.add("att-" + (i + 1));
+    }
+
+    return result;
+  }
+
+  /**
+   * Initializes the m_Data and m_structure member variables.
+   *
+   * @param atts	the attribute definitions to use
+   * @param capacity 	the number of rows to reserve in m_Data
+   */
+  protected void initInstances(ArrayList<Attribute> atts, int capacity) {
+    String	relation;
+
+    if (m_sourceFile != null)
+      relation = m_sourceFile.getName();
+    else
+      relation = "CommonCSV";
+    m_Data = new CommonCsvInstances(relation, atts, capacity);
+    m_structure = new Instances(m_Data, 0);
+  }
+
+  /**
+   * Creates the CSV format from the current settings.
+   *
+   * @return		the format
+   */
+  protected CSVFormat createFormat() {
+    CSVFormat 			format;
+
+    format = CommonCsvFormats.getFormat(m_Format);
+    if (m_Format != CommonCsvFormats.TDF) {
+      if (m_UseCustomFieldSeparator)
+	format = format.withDelimiter(m_CustomFieldSeparator.charAt(0));
+    }
+    if (m_UseCustomQuoteCharacter)
+      format = format.withQuote(m_CustomQuoteCharacter.charAt(0));
+    if (m_UseCustomQuoteMode)
+      format = format.withQuoteMode(CommonCsvQuoteModes.getQuoteMode(m_CustomQuoteMode));
+    if (m_UseCustomEscapeCharacter && m_CustomEscapeCharacter.length() == 1)
+      format = format.withEscape(m_CustomEscapeCharacter.charAt(0));
+    format.withAllowMissingColumnNames();
+
+    return format;
+  }
+
+  /**
+   * Creates the parser for the selected engine.
+   *
+   * @param format	the format to use
+   * @param reader	the reader to parse
+   * @return		the parser
+   * @throws IOException	if initialization fails
+   */
+  protected CommonCsvRowSource createParser(CSVFormat format, Reader reader) throws IOException {
+    CommonCsvRowSource	result;
+
+    if (m_Engine == CommonCsvEngines.NATIVE)
+      result = new CommonCsvTokenizer(format, reader);
+    else
+      result = new CommonCsvParserSource(format, reader);
+    result.setColumns(m_SelectedColumns);
+    result.setEncoding(m_ScannedCharset);
+
+    return result;
+  }
+
+  /**
+   * Determines the columns to load, using the names from the column names
+   * property or the column range.
+   *
+   * @param first	the first row of the file
+   * @return		the sorted column indices, null if all columns
+   * @throws IOException	if a column name cannot be found
+   */
+  protected int[] determineSelectedColumns(CommonCsvRow first) throws IOException {
+    int[]		result;
+    List<String>	names;
+    Set<Integer>	indices;
+    int			index;
+    int			i;
+
+    if (!m_ColumnNames.isEmpty()) {
+      if (m_NoHeader) {
+	names = customColumnNames(first.size());
+      }
+      else {
+	names = customColumnNames(-1);
+	for (i = names.size(); i < first.size(); i++)
+	  names.add(first.get(i));
+      }
+      indices = new TreeSet<Integer>();
+      for (String name: m_ColumnNames.split(",")) {
+	index = names.indexOf(name.trim());
+	if (index == -1)
+	  throw new IOException("Column not found: " + name.trim());
+	indices.add(index);
+      }
+      result = new int[indices.size()];
+      i      = 0;
+      for (int idx: indices)
+	result[i++] = idx;
+    }
+    else {
+      m_ColumnRange.setUpper(first.size() - 1);
+      result = m_ColumnRange.getSelection();
+    }
+
+    // all columns?
+    if (result.length == first.size()) {
+      for (i = 0; i < result.length; i++) {
+	if (result[i] != i)
+	  return result;
+      }
+      return null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Compiles the row filter expression, if any.
+   *
+   * @param first	the first (projected) row of the file
+   * @return		the filter, null if none
+   * @throws IOException	if the expression is invalid
+   */
+  protected CommonCsvRowFilter determineRowFilter(CommonCsvRow first) throws IOException {
+    List<String>	names;
+    int			i;
+
+    if (m_RowFilter.isEmpty())
+      return null;
+
+    if (m_NoHeader) {
+      names = customColumnNames(first.size());
+    }
+    else {
+      names = customColumnNames(-1);
+      for (i = names.size(); i < first.size(); i++)
+	names.add(first.get(i));
+    }
+
+    try {
+      return CommonCsvRowFilter.parse(m_RowFilter, names, m_MissingValue);
+    }
+    catch (IllegalArgumentException e) {
+      throw new IOException("Invalid row filter: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Returns the next row from the parser that satisfies the row filter.
+   *
+   * @param parser	the parser to read from
+   * @return		the row, null if none available
+   * @throws IOException	if parsing fails
+   */
+  protected CommonCsvRow nextFiltered(CommonCsvRowSource parser) throws IOException {
+    CommonCsvRow	result;
+
+    while ((result = parser.next()) != null) {
+      if ((m_Filter == null) || m_Filter.accept(result))
+	break;
+    }
+
+    return result;
+  }
+
+  /**
+   * Initializes the parser and reads the number of rows for detecting the types.
+   *
+   * @throws IOException	if parsing fails
+   */
+  protected void initParser() throws IOException {
+    CommonCsvRow		row;
+
+    m_SelectedColumns = null;
+    m_Filter          = null;
+    m_CachedSchema    = null;
+    m_Statistics      = null;
+    m_Parser          = createParser(createFormat(), m_sourceReader);
+    m_Records         = new ArrayList<CommonCsvRow>();
+    m_RecordsPos      = 0;
+
+    // the first row determines the columns to load
+    row = m_Parser.next();
+    if (row == null)
+      return;
+    m_NumCells        = row.size();
+    m_SelectedColumns = determineSelectedColumns(row);
+    if (m_SelectedColumns != null) {
+      m_Parser.setColumns(m_SelectedColumns);
+      row = new CommonCsvRow.ProjectedRow(row.copy(), m_SelectedColumns);
+    }
+    else {
+      row = row.copy();
+    }
+    m_Filter = determineRowFilter(row);
+    if (!m_NoHeader || (m_Filter == null) || m_Filter.accept(row))
+      m_Records.add(row);
+
+    // no type detection required for external or cached structure
+    if (getExternalStructure() != null)
+      return;
+    m_CachedSchema = readSchemaCache(row);
+    if (m_CachedSchema != null)
+      return;
+
+    while ((m_Records.size() < m_NumRowsTypeDetection) && ((row = nextFiltered(m_Parser)) != null))
+      m_Records.add(row.copy());
+
+    if (m_TwoPassDetection)
+      performFirstPass();
+    else if ((m_SampleWindows > 0) && (m_Records.size() >= m_NumRowsTypeDetection))
+      sampleWindows();
+  }
+
+  /**
+   * Creates empty column statistics.
+   *
+   * @param types	the initial types of the columns
+   * @return		the statistics
+   */
+  protected CommonCsvColumnStatistics createStatistics(AttributeType[] types) {
+    return new CommonCsvColumnStatistics(types, m_MissingValue, isDetectionComplete() ? m_NominalThreshold : 0);
+  }
+
+  /**
+   * Checks whether type detection sees all rows, i.e., two-pass detection
+   * of a file or a detection window covering the whole data. Only then the
+   * labels of columns that get turned nominal automatically are complete.
+   *
+   * @return		true if all rows
+   */
+  protected boolean isDetectionComplete() {
+    return (m_TwoPassDetection && m_SourceIsFile && (m_sourceFile != null))
+      || (m_Records.size() < m_NumRowsTypeDetection);
+  }
+
+  /**
+   * Initializes the column statistics with the data rows of the detection
+   * window.
+   *
+   * @return		the statistics
+   */
+  protected CommonCsvColumnStatistics initStatistics() {
+    CommonCsvColumnStatistics	result;
+    int				n;
+
+    result = createStatistics(determineInitialTypes(m_Records.get(0).size()));
+    for (n = m_NoHeader ? 0 : 1; n < m_Records.size(); n++)
+      result.add(m_Records.get(n));
+
+    return result;
+  }
+
+  /**
+   * Collects the column statistics from additional windows of rows that
+   * start at record boundaries spread evenly across the file and merges
+   * them with the ones of the detection window. The cost is bounded by the
+   * number of windows and rows per window, not the file size.
+   * <br>
+   * Without an offset index, a window starts at a line start, which can be
+   * within a multi-line quoted cell. Therefore, the rows of a window only
+   * get used once {@link #SAMPLE_RESYNC_ROWS} consecutive rows have the
+   * number of cells of the first row. Parsing a window stops at the first
+   * error, as it can also end within a quoted cell.
+   *
+   * @throws IOException	if parsing fails
+   */
+  protected void sampleWindows() throws IOException {
+    CommonCsvColumnStatistics	stats;
+    CommonCsvColumnStatistics	window;
+    CommonCsvRowSource		parser;
+    CommonCsvRow		row;
+    long[]			starts;
+    long			length;
+    int				matched;
+    int				i;
+
+    if (!m_SourceIsFile || (m_sourceFile == null) || m_SourceIsCompressed || m_SourceIsSplit || !isChunkable()) {
+      System.err.println("Sampling windows requires an uncompressed file source, using detection window only!");
+      return;
+    }
+
+    length = m_sourceFile.length();
+    starts = new long[m_SampleWindows + 1];
+    for (i = 0; i < m_SampleWindows; i++)
+      starts[i] = findRecordStart(m_sourceFile, length * (i + 1) / (m_SampleWindows + 1));
+    starts[m_SampleWindows] = length;
+
+    stats = initStatistics();
+    for (i = 0; i < m_SampleWindows; i++) {
+      if (starts[i] >= starts[i + 1])
+	continue;
+      window  = createStatistics(determineInitialTypes(m_Records.get(0).size()));
+      parser  = createParser(createFormat(), openRange(starts[i], starts[i + 1]));
+      matched = 0;
+      try {
+	// all cells are required for resynchronising
+	parser.setColumns(null);
+	while ((window.getNumRows() < m_NumRowsTypeDetection) && ((row = parser.next()) != null)) {
+	  if (matched < SAMPLE_RESYNC_ROWS) {
+	    matched = (row.size() == m_NumCells) ? matched + 1 : 0;
+	    if (matched < SAMPLE_RESYNC_ROWS)
+	      continue;
+	  }
+	  if (m_SelectedColumns != null)
+	    row = new CommonCsvRow.ProjectedRow(row, m_SelectedColumns);
+	  if ((m_Filter == null) || m_Filter.accept(row))
+	    window.add(row);
+	}
+      }
+      catch (IOException e) {
+	// truncated or misaligned quoted cell, use the rows so far
+      }
+      finally {
+	parser.close();
+      }
+      stats.merge(window);
+    }
 
-    setUseCustomQuoteMode(Utils.getFlag("use-custom-quote-mode", options));
+    m_Statistics = stats;
+  }
+
+  /**
+   * Collects the column statistics from all rows, continuing after the
+   * detection window, and then re-opens the source file for the second
+   * pass, positioning the parser after the rows of the detection window.
+   *
+   * @throws IOException	if parsing or re-opening fails
+   */
+  protected void performFirstPass() throws IOException {
+    CommonCsvColumnStatistics	stats;
+    CommonCsvRow		row;
+    int				retrieval;
+    int				first;
+    int				n;
+
+    if (!m_SourceIsFile || (m_sourceFile == null)) {
+      System.err.println("Two-pass type detection requires a file source, using detection window only!");
+      return;
+    }
+    if (m_Records.isEmpty())
+      return;
+
+    // first pass
+    first = m_NoHeader ? 0 : 1;
+    stats = initStatistics();
+    while ((row = nextFiltered(m_Parser)) != null)
+      stats.add(row);
+    m_Parser.close();
+
+    // second pass
+    retrieval = getRetrieval();
+    setSource(m_sourceFile);
+    setRetrieval(retrieval);
+    m_Parser = createParser(createFormat(), m_sourceReader);
+    if (m_SelectedColumns != null)
+      m_Parser.setColumns(m_SelectedColumns);
+    if (!m_NoHeader)
+      m_Parser.next();
+    for (n = first; n < m_Records.size(); n++)
+      nextFiltered(m_Parser);
+
+    m_Statistics = stats;
+  }
+
+  /**
+   * Returns the next record, if possible. First replays the records buffered
+   * for type detection (via a cursor, releasing them along the way), then
+   * continues with the parser.
+   *
+   * @return		the record, null if none available
+   * @throws IOException	if parsing fails
+   */
+  protected CommonCsvRow nextRecord() throws IOException {
+    CommonCsvRow	record;
+    int			skip;
+
+    if (m_Records != null) {
+      // skip non-data records
+      if (m_FirstDataRow > 0) {
+	skip = Math.min(m_FirstDataRow, m_Records.size() - m_RecordsPos);
+	m_RecordsPos   += skip;
+	m_FirstDataRow -= skip;
+      }
+      if (m_RecordsPos < m_Records.size()) {
+	record = m_Records.set(m_RecordsPos, null);
+	m_RecordsPos++;
+	return record;
+      }
+      m_Records = null;
+    }
+
+    if (m_Parser == null)
+      return null;
+
+    // skip header rows
+    while (m_FirstDataRow > 0) {
+      m_FirstDataRow--;
+      if (m_Parser.next() == null) {
+	m_FirstDataRow = 0;
+	return null;
+      }
+    }
+
+    return nextFiltered(m_Parser);
+  }
+
+  /**
+   * Initializes the dataset header.
+   *
+   * @return 			true if continue parsing
+   * @throws IOException	if parsing fails
+   */
+  protected boolean initStructure() throws IOException {
+    List<String> 		names;
+    Set<String>			namesSet;
+    String			nameTmp;
+    Map<String,Integer>		attIndex;
+    int 			i;
+    int				n;
+    int 			numRows;
+    ArrayList<Attribute> 	atts;
+    CommonCsvColumnStatistics	stats;
+    Map<Integer,Collection<String>>	nominalValues;
+    Map<Integer,Boolean>	sortLabels;
+    List<String>		labels;
+    String[]			parts;
+    Range			specRange;
+    String[]			attList;
+
+    numRows = m_Records.size();
+    m_FirstDataRow = m_NoHeader ? 0 : 1;
+    atts = new ArrayList<Attribute>();
+    if (getExternalStructure() != null) {
+      initExternalStructure(numRows);
+      return true;
+    }
+    if (m_CachedSchema != null) {
+      m_Types = m_CachedSchema.getTypes();
+      initInstances(m_CachedSchema.getAttributes(), numRows);
+      return true;
+    }
+    if (numRows == 0) {
+      if (m_NoHeader) {
+	names = customColumnNames(-1);
+	if (names.size() == 0)
+	  throw new IOException("No rows in CSV file and no custom header defined!");
+	for (i = 0; i < names.size(); i++)
+	  atts.add(new Attribute(names.get(i)));
+	initInstances(atts, 0);
+	return false;
+      }
+      else {
+	throw new IOException("No rows in CSV file!");
+      }
+    }
+    if (numRows == 1) {
+      if (!m_NoHeader) {
+	for (i = 0; i < m_Records.get(0).size(); i++)
+	  atts.add(new Attribute(m_Records.get(0).get(i)));
+	initInstances(atts, 0);
+	return false;
+      }
+    }
+
+    // init header names
+    names = new ArrayList<String>();
+    if (m_NoHeader) {
+      names.addAll(customColumnNames(m_Records.get(0).size()));
+    }
+    else {
+      names.addAll(customColumnNames(-1));
+      for (i = names.size(); i < m_Records.get(0).size(); i++)
+	names.add(m_Records.get(0).get(i));
+    }
+
+    // disambiguate names if necessary
+    namesSet = new HashSet<String>();
+    for (i = 0; i < names.size(); i++) {
+      nameTmp = names.get(i);
+      if (!nameTmp.isEmpty() && !namesSet.contains(nameTmp)) {
+	namesSet.add(nameTmp);
+	continue;
+      }
+
+      n = 1;
+      while (nameTmp.isEmpty() || namesSet.contains(nameTmp)) {
+	n++;
+	if (names.get(i).isEmpty())
+	  nameTmp = "att-" + n;
+	else
+	  nameTmp = names.get(i) + "-" + n;
+      }
+      System.err.println("Column #" + i + " required disambiguating: '" + names.get(i) + "' -> '" + nameTmp + "'");
+      namesSet.add(nameTmp);
+      names.set(i, nameTmp);
+    }
+
+    // generate name index for label specs
+    attIndex = new HashMap<String, Integer>();
+    for (String name: names)
+      attIndex.put(name, attIndex.size());
+
+    // init types
+    m_Types = determineInitialTypes(m_Records.get(0).size());
+    nominalValues = new HashMap<Integer, Collection<String>>();
+    sortLabels = new HashMap<Integer, Boolean>();
+
+    if ((numRows == 1) && !m_NoHeader) {
+      for (i = 0; i < names.size(); i++)
+	atts.add(new Attribute(names.get(i)));
+      initInstances(atts, 0);
+      return false;
+    }
+
+    // check numeric columns and collect nominal values, from the whole
+    // file (first pass) or the detection window
+    stats = m_Statistics;
+    if (stats == null) {
+      stats = createStatistics(m_Types);
+      for (n = m_FirstDataRow; n < m_Records.size(); n++)
+	stats.add(m_Records.get(n));
+    }
+    m_Types = stats.getTypes();
+    if ((m_NominalThreshold > 0) && !isDetectionComplete())
+      System.err.println("Nominal threshold requires type detection to see all rows (e.g., two-pass detection), ignored!");
+    for (i = 0; i < m_Types.length; i++) {
+      if (m_Types[i] == AttributeType.NOMINAL) {
+	nominalValues.put(i, stats.getNominalValues(i));
+	sortLabels.put(i, true);  // label specs override this
+      }
+    }
+
+    // label specs
+    for (String labelSpec: m_nominalLabelSpecs) {
+      parts = labelSpec.split(":");
+      if (parts.length != 2)
+	throw new IllegalStateException("Invalid label specification (required: 'indices/names:list,of,labels'): " + labelSpec);
+      labels = new ArrayList<String>(Arrays.asList(parts[1].split(",")));
+      try {
+	specRange = new Range(parts[0]);
+	specRange.setUpper(m_Types.length + 1);
+	for (int index: specRange.getSelection()) {
+	  nominalValues.put(index, labels);
+	  sortLabels.put(index, false);
+	  m_Types[index] = AttributeType.NOMINAL;
+	}
+      }
+      catch (Exception e) {
+	attList = parts[0].split(",");
+	for (String name: attList) {
+	  i = attIndex.get(name);
+	  nominalValues.put(i, labels);
+	  sortLabels.put(i, false);
+	  m_Types[i] = AttributeType.NOMINAL;
+	}
+      }
+    }
+
+    // header
+    for (i = 0; i < names.size(); i++) {
+      switch (m_Types[i]) {
+	case NUMERIC:
+	  atts.add(new Attribute(names.get(i)));
+	  break;
+	case NOMINAL:
+	  labels = new ArrayList<String>(nominalValues.get(i));
+	  if (sortLabels.get(i))
+	    Collections.sort(labels);
+	  atts.add(new Attribute(names.get(i), labels));
+	  break;
+	case STRING:
+	  atts.add(new Attribute(names.get(i), (List<String>) null));
+	  break;
+	case DATE:
+	  atts.add(new Attribute(names.get(i), m_DateFormat));
+	  break;
+	default:
+	  throw new IllegalStateException("Unhandled attribute type: " + m_Types[i]);
+      }
+    }
+    initInstances(atts, m_Records.size());
+    writeSchemaCache(atts);
+
+    return true;
+  }
+
+  /**
+   * Determines the types of the columns from the configured ranges, with
+   * all other columns assumed to be numeric.
+   *
+   * @param numColumns	the number of columns
+   * @return		the types
+   */
+  protected AttributeType[] determineInitialTypes(int numColumns) {
+    AttributeType[]	result;
+    int			i;
+
+    result = new AttributeType[numColumns];
+    m_NominalRange.setUpper(numColumns - 1);
+    m_StringRange.setUpper(numColumns - 1);
+    m_DateRange.setUpper(numColumns - 1);
+    for (i = 0; i < numColumns; i++) {
+      result[i] = AttributeType.NUMERIC;
+      if (m_NominalRange.isInRange(i))
+	result[i] = AttributeType.NOMINAL;
+      else if (m_StringRange.isInRange(i))
+	result[i] = AttributeType.STRING;
+      else if (m_DateRange.isInRange(i))
+	result[i] = AttributeType.DATE;
+    }
+
+    return result;
+  }
+
+  /**
+   * Initializes the dataset with the external header, which must match the
+   * number of columns.
+   *
+   * @param numRows	the number of rows buffered
+   * @throws IOException	if the header does not match or contains unsupported attributes
+   */
+  protected void initExternalStructure(int numRows) throws IOException {
+    Instances			header;
+    ArrayList<Attribute>	atts;
+    Attribute			att;
+    int				i;
+
+    header = getExternalStructure();
+    if ((numRows > 0) && (header.numAttributes() != m_Records.get(0).size()))
+      throw new IOException("External header has " + header.numAttributes() + " attributes, but data has "
+	+ m_Records.get(0).size() + " columns!");
+
+    m_Types = new AttributeType[header.numAttributes()];
+    atts    = new ArrayList<Attribute>();
+    for (i = 0; i < header.numAttributes(); i++) {
+      att = header.attribute(i);
+      if (att.isDate())
+	m_Types[i] = AttributeType.DATE;
+      else if (att.isNumeric())
+	m_Types[i] = AttributeType.NUMERIC;
+      else if (att.isNominal())
+	m_Types[i] = AttributeType.NOMINAL;
+      else if (att.isString())
+	m_Types[i] = AttributeType.STRING;
+      else
+	throw new IOException("Unsupported attribute type in external header: " + att);
+      atts.add((Attribute) att.copy());
+    }
+    initInstances(atts, numRows);
+  }
+
+  /**
+   * Returns the options that influence the inferred structure, i.e.,
+   * without the ones that only affect performance.
+   *
+   * @return		the options
+   */
+  protected String getSchemaCacheOptions() {
+    List<String>	result;
+    String[]		options;
+    int			i;
+
+    result  = new ArrayList<String>();
+    options = getOptions();
+    for (i = 0; i < options.length; i++) {
+      if (options[i].equals("-num-threads") || options[i].equals("-read-ahead")
+	|| options[i].equals("-instance-type") || options[i].equals("-schema-cache")
+	|| options[i].equals("-offset-index"))
+	i++;
+      else if (!options[i].equals("-memory-mapped") && !options[i].equals("-pipelined-decompression")
+	&& !options[i].equals("-columnar-cache"))
+	result.add(options[i]);
+    }
+
+    return Utils.joinOptions(result.toArray(new String[0]));
+  }
+
+  /**
+   * Reads the cached structure for the source file, if caching is enabled.
+   *
+   * @param first	the first row, for validating the cached structure
+   * @return		the cached structure, null if none available or invalid
+   */
+  protected CommonCsvSchemaCache readSchemaCache(CommonCsvRow first) {
+    CommonCsvSchemaCache	result;
+
+    if (m_SchemaCache.isEmpty() || !m_SourceIsFile || (m_sourceFile == null))
+      return null;
+
+    result = CommonCsvSchemaCache.read(new File(m_SchemaCache), m_sourceFile, getSchemaCacheOptions());
+    if ((result != null) && !result.isValid(first))
+      result = null;
+
+    return result;
+  }
+
+  /**
+   * Writes the inferred structure to the cache, if caching is enabled.
+   * Failures only get reported, not thrown.
+   *
+   * @param atts	the inferred attributes
+   */
+  protected void writeSchemaCache(List<Attribute> atts) {
+    CommonCsvSchemaCache	cache;
+
+    if (m_SchemaCache.isEmpty() || !m_SourceIsFile || (m_sourceFile == null))
+      return;
+
+    try {
+      cache = new CommonCsvSchemaCache(m_sourceFile, getSchemaCacheOptions(), m_NoHeader ? null : m_Records.get(0),
+	m_Types, atts, determineIntegerColumns(), determineBytesPerRow());
+      cache.write(new File(m_SchemaCache));
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write schema cache for " + m_sourceFile + ": " + e);
+    }
+  }
+
+  /**
+   * Parses the next record.
+   *
+   * @return		the instance, null if none generated
+   * @throws Exception	if parsing fails
+   */
+  protected Instance parseNext() throws Exception {
+    CommonCsvRow	record;
+
+    record = nextRecord();
+    if (record == null)
+      return null;
+
+    return createInstance(convertRecord(record, null, null));
+  }
+
+  /**
+   * Creates the instance from the converted values.
+   *
+   * @param values	the values
+   * @return		the instance, compact if a layout is available
+   */
+  protected Instance createInstance(double[] values) {
+    if (m_Layout != null)
+      return new CommonCsvCompactInstance(m_Layout, 1.0, values);
+    else
+      return new DenseInstance(1.0, values);
+  }
 
-    tmp = Utils.getOption("custom-quote-mode", options);
-    if (!tmp.isEmpty())
-      setCustomQuoteMode(new SelectedTag(tmp, CommonCsvQuoteModes.TAGS_QUOTEMODES));
+  /**
+   * Adds the instance to m_Data, without copying it if possible.
+   *
+   * @param inst	the instance to add
+   */
+  protected void appendInstance(Instance inst) {
+    if (m_Data instanceof CommonCsvInstances)
+      ((CommonCsvInstances) m_Data).addDirectly(inst);
     else
-      setCustomQuoteMode(new SelectedTag(CommonCsvQuoteModes.MINIMAL, CommonCsvQuoteModes.TAGS_QUOTEMODES));
+      m_Data.add(inst);
+  }
 
-    setUseCustomEscapeCharacter(Utils.getFlag("use-custom-escape-character", options));
+  /**
+   * Loads the data from the columnar cache of the source file, if enabled
+   * and the cache is still valid for the file, the options and the
+   * inferred structure. Not used for byte ranges of the file, as the cache
+   * covers the whole file.
+   *
+   * @return		true if loaded from the cache
+   */
+  protected boolean readColumnarCache() {
+    CommonCsvColumnarCache	cache;
+    List<String>		dict;
+    double[]			values;
+    int				i;
+
+    m_ColumnarCacheUsed = false;
+    if (!m_ColumnarCache || !m_SourceIsFile || (m_sourceFile == null) || m_SourceIsSplit || (m_Data.numInstances() > 0))
+      return false;
 
-    tmp = Utils.getOption("custom-escape-character", options);
-    setCustomEscapeCharacter(tmp);
+    cache = CommonCsvColumnarCache.read(m_sourceFile, getSchemaCacheOptions());
+    if ((cache == null) || (cache.getHeader().equalHeadersMsg(m_structure) != null))
+      return false;
 
-    setNoHeader(Utils.getFlag("no-header", options));
+    for (i = 0; i < m_Data.numAttributes(); i++) {
+      dict = cache.getDictionary(i);
+      if ((dict == null) || !m_Data.attribute(i).isString())
+	continue;
+      for (String value: dict)
+	m_Data.attribute(i).addStringValue(value);
+    }
+    if (m_Data instanceof CommonCsvInstances)
+      ((CommonCsvInstances) m_Data).ensureCapacity(cache.getNumRows());
+    for (i = 0; i < cache.getNumRows(); i++) {
+      values = new double[m_Data.numAttributes()];
+      cache.getValues(i, values);
+      appendInstance(createInstance(values));
+    }
+    m_ColumnarCacheUsed = true;
 
-    tmp = Utils.getOption("custom-header", options);
-    if (!tmp.isEmpty())
-      setCustomHeader(tmp);
-    else
-      setCustomHeader(DEFAULT_CUSTOM_HEADER);
+    return true;
+  }
 
-    tmp = Utils.getOption("nominal", options);
-    if (!tmp.isEmpty())
-      setNominalRange(new Range(tmp));
-    else
-      setNominalRange(new Range());
+  /**
+   * Writes the loaded data to the columnar cache of the source file, if
+   * enabled and the whole file got loaded. Failures only get reported, not
+   * thrown.
+   */
+  protected void writeColumnarCache() {
+    if (!m_ColumnarCache || !m_SourceIsFile || (m_sourceFile == null) || m_SourceIsSplit)
+      return;
 
-    m_nominalLabelSpecs.clear();
-    while (true) {
-      tmp = Utils.getOption("nominal-label-spec", options);
-      if (tmp.isEmpty())
-	break;
-      m_nominalLabelSpecs.add(tmp);
+    try {
+      CommonCsvColumnarCache.write(m_sourceFile, getSchemaCacheOptions(), m_Data);
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write columnar cache for " + m_sourceFile + ": " + e);
     }
+  }
 
-    tmp = Utils.getOption("string", options);
-    if (!tmp.isEmpty())
-      setStringRange(new Range(tmp));
-    else
-      setStringRange(new Range());
+  /**
+   * Determines the average number of bytes per row from the rows buffered
+   * for type detection or the cached structure.
+   *
+   * @return		the average, -1 if not possible
+   */
+  protected double determineBytesPerRow() {
+    CommonCsvRow	row;
+    String		cell;
+    long		numBytes;
+    int			numRows;
+    int			n;
+    int			i;
 
-    tmp = Utils.getOption("date", options);
-    if (!tmp.isEmpty())
-      setDateRange(new Range(tmp));
-    else
-      setDateRange(new Range());
+    if (m_CachedSchema != null)
+      return m_CachedSchema.getBytesPerRow();
+    if (m_Records == null)
+      return -1;
 
-    tmp = Utils.getOption("date-format", options);
-    if (!tmp.isEmpty())
-      setDateFormat(tmp);
-    else
-      setDateFormat(DEFAULT_DATE_FORMAT);
+    numBytes = 0;
+    numRows  = 0;
+    for (n = m_RecordsPos; n < m_Records.size(); n++) {
+      row = m_Records.get(n);
+      if (row == null)
+	continue;
+      numRows++;
+      for (i = 0; i < row.size(); i++) {
+	cell      = row.get(i);
+	numBytes += ((cell == null) ? 0 : cell.length()) + 1;
+      }
+    }
+    if ((numRows == 0) || (numBytes == 0))
+      return -1;
 
-    tmp = Utils.getOption("missing-value", options);
-    if (!tmp.isEmpty())
-      setMissingValue(tmp);
-    else
-      setMissingValue(DEFAULT_MISSING_VALUE);
+    return (double) numBytes / numRows;
+  }
 
-    tmp = Utils.getOption("num-rows-type-detection", options);
-    if (!tmp.isEmpty())
-      setNumRowsTypeDetection(Integer.parseInt(tmp));
-    else
-      setNumRowsTypeDetection(DEFAULT_NUM_ROWS_TYPE_DETECTION);
+  /**
+   * Estimates the number of rows in the source file from its size and the
+   * average size of the rows. Not possible when loading a subset of the
+   * columns, as the size of the rows only covers the loaded cells, or with
+   * a row filter, as the file size covers the rejected rows as well.
+   *
+   * @return		the estimate, -1 if not possible
+   */
+  protected int estimateNumRows() {
+    double	bytesPerRow;
 
-    Utils.checkForRemainingOptions(options);
+    if (m_TwoPassDetection && (m_Statistics != null))
+      return (int) Math.min(Integer.MAX_VALUE - 8, m_Statistics.getNumRows());
+
+    if (!m_SourceIsFile || (m_sourceFile == null) || m_SourceIsCompressed || m_SourceIsSplit)
+      return -1;
+    if ((m_SelectedColumns != null) || (m_Filter != null))
+      return -1;
+
+    bytesPerRow = determineBytesPerRow();
+    if (bytesPerRow <= 0)
+      return -1;
+
+    return (int) Math.min(Integer.MAX_VALUE - 8, m_sourceFile.length() / bytesPerRow);
   }
 
   /**
-   * Gets the current settings of the Apriori object.
+   * Determines which numeric columns contain only integer values in the
+   * rows buffered for type detection.
    *
-   * @return an array of strings suitable for passing to setOptions
+   * @return		the flags
    */
-  public String[] getOptions() {
-    List<String>	result;
+  protected boolean[] determineIntegerColumns() {
+    boolean[]		result;
+    CommonCsvRow	row;
+    double		value;
+    int			i;
+    int			n;
 
-    result = new ArrayList<String>();
+    if (m_CachedSchema != null)
+      return m_CachedSchema.getIntegerColumns();
 
-    result.add("-F");
-    result.add(getFormat().getSelectedTag().getIDStr());
+    result = new boolean[m_Types.length];
+    if (m_Records == null)
+      return result;
+    for (i = 0; i < m_Types.length; i++)
+      result[i] = (m_Types[i] == AttributeType.NUMERIC);
 
-    if (getUseCustomFieldSeparator()) {
-      result.add("-use-custom-field-separator");
-      result.add("-custom-field-separator");
-      result.add(getCustomFieldSeparator());
+    for (n = m_RecordsPos + m_FirstDataRow; n < m_Records.size(); n++) {
+      row = m_Records.get(n);
+      if (row == null)
+	continue;
+      for (i = 0; i < m_Types.length && i < row.size(); i++) {
+	if (!result[i] || row.isMissing(i, m_MissingValue))
+	  continue;
+	try {
+	  value     = row.parseDouble(i);
+	  result[i] = (value == (int) value);
+	}
+	catch (NumberFormatException e) {
+	  result[i] = false;
+	}
+      }
     }
 
-    if (getUseCustomQuoteCharacter()) {
-      result.add("-use-custom-quote-character");
-      result.add("-custom-quote-character");
-      result.add(getCustomQuoteCharacter());
-    }
+    return result;
+  }
 
-    if (getUseCustomQuoteMode()) {
-      result.add("-use-custom-quote-mode");
-      result.add("-custom-quote-mode");
-      result.add(getCustomQuoteMode().getSelectedTag().getIDStr());
+  /**
+   * Converts the record into the internal values.
+   *
+   * @param record	the record to convert
+   * @param atts	the attributes to use for nominal/date values,
+   * 			null to use the ones from m_Data
+   * @param strings	if not null, string values get stored in this
+   * 			array instead of being added to the attributes
+   * @return		the values
+   * @throws Exception	if conversion fails
+   */
+  protected double[] convertRecord(CommonCsvRow record, Attribute[] atts, String[] strings) throws Exception {
+    int 		i;
+    double[] 		values;
+
+    values = new double[m_Types.length];
+    for (i = 0; i < m_Types.length && i < record.size(); i++) {
+      if (record.isMissing(i, m_MissingValue)) {
+	values[i] = Utils.missingValue();
+      }
+      else {
+	switch (m_Types[i]) {
+	  case NUMERIC:
+	    values[i] = record.parseDouble(i);
+	    break;
+	  case NOMINAL:
+	    values[i] = ((atts == null) ? m_Data.attribute(i) : atts[i]).indexOfValue(record.get(i));
+	    break;
+	  case STRING:
+	    if (strings != null)
+	      strings[i] = record.get(i);
+	    else
+	      values[i] = m_Data.attribute(i).addStringValue(record.get(i));
+	    break;
+	  case DATE:
+	    values[i] = ((atts == null) ? m_Data.attribute(i) : atts[i]).parseDate(record.get(i));
+	    break;
+	  default:
+	    throw new IllegalStateException("Unhandled attribute type: " + m_Types[i]);
+	}
+      }
     }
 
-    if (getUseCustomEscapeCharacter()) {
-      result.add("-use-custom-escape-character");
-      result.add("-custom-escape-character");
-      result.add(getCustomEscapeCharacter());
+    return values;
+  }
+
+  /**
+   * Checks whether the remainder of the data can be parsed in parallel,
+   * i.e., an uncompressed file with an ASCII-compatible encoding that
+   * contains more rows than used for type detection.
+   *
+   * @return		true if parallel parsing is possible
+   */
+  protected boolean canParseInParallel() {
+    return (m_NumThreads != 1)
+      && m_SourceIsFile
+      && (m_sourceFile != null)
+      && !m_SourceIsCompressed
+      && !m_SourceIsSplit
+      && (m_Types != null)
+      && (m_Records != null)
+      && ((m_Records.size() >= m_NumRowsTypeDetection) || (m_CachedSchema != null))
+      && isChunkable();
+  }
+
+  /**
+   * Parses the file in chunks (aligned to record boundaries) on a thread
+   * pool and adds the rows to m_Data in their original order.
+   *
+   * @throws Exception	if parsing fails
+   */
+  protected void parseInParallel() throws Exception {
+    CommonCsvChunker		chunker;
+    long[]			bounds;
+    int				numThreads;
+    ForkJoinPool		pool;
+    List<Future<ParsedChunk>>	chunks;
+    int				i;
+
+    numThreads = (m_NumThreads <= 0) ? Runtime.getRuntime().availableProcessors() : m_NumThreads;
+    chunker    = new CommonCsvChunker(createFormat());
+    bounds     = chunker.split(m_sourceFile, numThreads * 4, MIN_CHUNK_SIZE);
+    pool       = new ForkJoinPool(numThreads);
+    try {
+      chunks = new ArrayList<Future<ParsedChunk>>();
+      for (i = 0; i < bounds.length - 1; i++)
+	chunks.add(pool.submit(new ChunkParser(bounds[i], bounds[i + 1], (i == 0) ? m_FirstDataRow : 0)));
+      for (i = 0; i < chunks.size(); i++) {
+	try {
+	  chunks.get(i).get().addTo(m_Data);
+	}
+	catch (ExecutionException e) {
+	  throw new IOException("Failed to parse chunk #" + (i+1) + ": " + bounds[i] + "-" + bounds[i + 1], e.getCause());
+	}
+	chunks.set(i, null);
+      }
+    }
+    finally {
+      pool.shutdownNow();
     }
+    m_Records = null;
+  }
 
-    if (getNoHeader())
-      result.add("-no-header");
+  /**
+   * Determines and returns (if possible) the structure (internally the 
+   * header) of the data set as an empty set of instances.
+   * If not yet read, also reads the full dataset into m_Data.
+   *
+   * @return 			the structure of the data set as an empty set 
+   * 				of Instances
+   * @throws IOException        if an error occurs
+   */
+  public Instances getStructure() throws IOException {
+    if (m_sourceReader == null)
+      throw new IOException("No source has been specified");
 
-    if (!getCustomHeader().isEmpty()) {
-      result.add("-custom-header");
-      result.add(getCustomHeader());
+    if (m_structure != null)
+      return new Instances(m_structure, 0);
+
+    try {
+      initParser();
+      if (!initStructure())
+        System.err.println("Cannot add data after initialization of structure!");
+      return new Instances(m_structure, 0);
+    }
+    catch (IOException ioe) {
+      // just re-throw it
+      throw ioe;
+    }
+    catch (Exception e) {
+      throw new RuntimeException(e);
     }
+  }
 
-    if (!getNominalRange().getRanges().isEmpty()) {
-      result.add("-nominal");
-      result.add(getNominalRange().getRanges());
+  /**
+   * Return the full data set. If the structure hasn't yet been determined
+   * by a call to getStructure then method should do so before processing
+   * the rest of the data set.
+   *
+   * @return 			the structure of the data set as an empty 
+   * 				set of Instances
+   * @throws IOException        if there is no source or parsing fails
+   */
+  public Instances getDataSet() throws IOException {
+    Instance		inst;
+    int			numRows;
 
-      for (String spec : m_nominalLabelSpecs) {
-	result.add("-nominal-label-spec");
-	result.add(spec);
+    if (m_sourceReader == null)
+      throw new IOException("No source has been specified");
+
+    if (getRetrieval() == INCREMENTAL)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+
+    setRetrieval(BATCH);
+    if (m_structure == null)
+      getStructure();
+
+    numRows = estimateNumRows();
+    if ((numRows > 0) && (m_Data instanceof CommonCsvInstances))
+      ((CommonCsvInstances) m_Data).ensureCapacity(numRows);
+
+    if ((m_InstanceType != CommonCsvInstanceTypes.DENSE) && (m_Data != null) && (m_Types != null))
+      m_Layout = CommonCsvCompactInstance.Layout.create(m_Data, determineIntegerColumns(), m_InstanceType == CommonCsvInstanceTypes.COMPACT_FLOAT);
+    else
+      m_Layout = null;
+
+    try {
+      if (readColumnarCache()) {
+	// nothing to parse
+      }
+      else if (canParseInParallel()) {
+	parseInParallel();
+      }
+      else {
+	while ((inst = parseNext()) != null)
+	  appendInstance(inst);
       }
     }
-
-    if (!getStringRange().getRanges().isEmpty()) {
-      result.add("-string");
-      result.add(getStringRange().getRanges());
+    catch (Exception e) {
+      throw new IOException("Failed to parse data row!", e);
     }
-
-    if (!getDateRange().getRanges().isEmpty()) {
-      result.add("-date");
-      result.add(getDateRange().getRanges());
-      result.add("-date-format");
-      result.add(getDateFormat());
+    finally {
+      try {
+	// close the stream
+	m_sourceReader.close();
+      }
+      catch (Exception ex) {
+	// ignored
+      }
     }
 
-    result.add("-missing-value");
-    result.add(getMissingValue());
-
-    result.add("-num-rows-type-detection");
-    result.add("" + getNumRowsTypeDetection());
+    if (!m_ColumnarCacheUsed)
+      writeColumnarCache();
+    writeOffsetIndex();
 
-    return result.toArray(new String[0]);
+    return m_Data;
   }
 
   /**
-   * Resets the Loader ready to read a new data set
+   * Checks whether the source allows random access to its rows, i.e., an
+   * uncompressed file with an ASCII-compatible encoding.
    *
-   * @throws IOException        if something goes wrong
+   * @return		true if random access is possible
    */
-  public void reset() throws IOException {
-    m_structure = null;
-    m_Data      = null;
-
-    setRetrieval(NONE);
-
-    if (m_File != null)
-      setFile(new File(m_File));
-    else if ((m_URL != null) && !m_URL.equals("http://"))
-      setURL(m_URL);
+  protected boolean canAccessRandomly() {
+    return m_SourceIsFile
+      && (m_sourceFile != null)
+      && !m_SourceIsCompressed
+      && isChunkable();
   }
 
   /**
-   * Resets the Loader object and sets the source of the data set to be 
-   * the supplied File object.
-   *
-   * @param file 		the source file.
-   * @throws IOException        if an error occurs
+   * Writes the offset index next to the source file after a full load, if
+   * enabled and no valid index exists. Failures only get reported, not
+   * thrown.
    */
-  public void setSource(File file) throws IOException {
-    m_structure = null;
-    m_Data      = null;
+  protected void writeOffsetIndex() {
+    CSVFormat	format;
 
-    setRetrieval(NONE);
-
-    if (file == null)
-      throw new IOException("Source file object is null!");
+    if ((m_OffsetIndex == 0) || !canAccessRandomly())
+      return;
 
     try {
-      if (file.getName().endsWith(FILE_EXTENSION_COMPRESSED))
-	setSource(new GZIPInputStream(new FileInputStream(file)));
-      else
-	setSource(new FileInputStream(file));
+      format = createFormat();
+      if (CommonCsvOffsetIndex.read(m_sourceFile, format) != null)
+	return;
+      m_CurrentOffsetIndex = CommonCsvOffsetIndex.build(m_sourceFile, format, m_OffsetIndex);
+      m_CurrentOffsetIndex.write(m_sourceFile);
     }
-    catch (FileNotFoundException ex) {
-      throw new IOException("File not found");
+    catch (Exception e) {
+      System.err.println("Failed to write offset index for " + m_sourceFile + ": " + e);
     }
-
-    m_sourceFile = file;
-    m_File       = file.getAbsolutePath();
   }
 
   /**
-   * Resets the Loader object and sets the source of the data set to be 
-   * the supplied url.
+   * Returns the offset index of the source file: either the one already
+   * loaded, the one next to the file or a newly built one (which only gets
+   * written to disk if enabled).
    *
-   * @param url 	the source url.
-   * @throws IOException        if an error occurs
+   * @return		the index
+   * @throws IOException	if random access is not possible or building fails
    */
-  public void setSource(URL url) throws IOException {
-    m_structure = null;
-    m_Data      = null;
-
-    setRetrieval(NONE);
-
-    setSource(url.openStream());
+  protected CommonCsvOffsetIndex getCurrentOffsetIndex() throws IOException {
+    CSVFormat	format;
+
+    if (!canAccessRandomly())
+      throw new IOException("Random access requires an uncompressed file with an ASCII-compatible encoding!");
+
+    format = createFormat();
+    if ((m_CurrentOffsetIndex != null) && m_CurrentOffsetIndex.isValid(m_sourceFile, format))
+      return m_CurrentOffsetIndex;
+
+    m_CurrentOffsetIndex = CommonCsvOffsetIndex.read(m_sourceFile, format);
+    if (m_CurrentOffsetIndex == null) {
+      m_CurrentOffsetIndex = CommonCsvOffsetIndex.build(m_sourceFile, format,
+	(m_OffsetIndex > 0) ? m_OffsetIndex : DEFAULT_RANDOM_ACCESS_INTERVAL);
+      if (m_OffsetIndex > 0)
+	m_CurrentOffsetIndex.write(m_sourceFile);
+    }
 
-    m_URL = url.toString();
+    return m_CurrentOffsetIndex;
   }
 
   /**
-   * Set the url to load from
+   * Returns the specified data row, parsing only the rows between the
+   * closest indexed offset and the row. The row filter does not apply,
+   * i.e., the index refers to the rows in the file (excluding the header).
    *
-   * @param url 		the url to load from
-   * @throws IOException        if the url can't be set.
+   * @param index	the 0-based row
+   * @return		the row, null if beyond the last row
+   * @throws IOException	if random access is not possible or parsing fails
    */
-  public void setURL(String url) throws IOException {
-    m_URL = url;
-    setSource(new URL(url));
-  }
+  public Instance getRow(long index) throws IOException {
+    Instances	rows;
 
-  /**
-   * Return the current url
-   *
-   * @return the current url
-   */
-  public String retrieveURL() {
-    return m_URL;
+    rows = getRows(index, 1);
+    if (rows.numInstances() == 0)
+      return null;
+    return rows.instance(0);
   }
 
   /**
-   * Resets the Loader object and sets the source of the data set to be 
-   * the supplied InputStream.
+   * Returns the specified range of data rows, parsing only the rows between
+   * the closest indexed offset and the end of the range. The row filter
+   * does not apply, i.e., the indices refer to the rows in the file
+   * (excluding the header).
    *
-   * @param in 			the source InputStream.
-   * @throws IOException        if initialization of reader fails.
+   * @param from	the 0-based first row
+   * @param count	the maximum number of rows
+   * @return		the rows, fewer if the file ends before the range
+   * @throws IOException	if random access is not possible or parsing fails
    */
-  public void setSource(InputStream in) throws IOException {
-    m_File = (new File(System.getProperty("user.dir"))).getAbsolutePath();
-    m_URL  = "http://";
+  public Instances getRows(long from, int count) throws IOException {
+    CommonCsvInstances		result;
+    CommonCsvOffsetIndex	index;
+    CommonCsvRowSource		parser;
+    CommonCsvRow		row;
+    long			record;
+    long			skip;
+
+    if (from < 0)
+      throw new IllegalArgumentException("Row index must be at least 0, provided: " + from);
+    if (m_sourceReader == null)
+      throw new IOException("No source has been specified");
+    if (m_structure == null)
+      getStructure();
 
-    m_sourceReader = new BufferedReader(new InputStreamReader(in));
-    m_Data         = null;
+    index  = getCurrentOffsetIndex();
+    result = new CommonCsvInstances(m_structure, count);
+    record = from + (m_NoHeader ? 0 : 1);
+    if (record >= index.getNumRecords())
+      return result;
+
+    skip   = record - index.getIndexedRecord(record);
+    parser = createParser(createFormat(), openRange(index.getOffset(record), m_sourceFile.length()));
+    try {
+      for (; skip > 0; skip--) {
+	if (parser.next() == null)
+	  return result;
+      }
+      while ((result.numInstances() < count) && ((row = parser.next()) != null))
+	result.addDirectly(createInstance(convertRecord(row, null, null)));
+    }
+    catch (IOException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new IOException("Failed to parse data row!", e);
+    }
+    finally {
+      parser.close();
+    }
+
+    return result;
   }
 
   /**
-   * Checks whether the string is numeric.
+   * CommonCSVLoader is unable to process a data set incrementally.
    *
-   * @param s		the string to test
-   * @return		true if numeric
+   * @param structure		ignored
+   * @return 			never returns without throwing an exception
+   * @throws IOException        always. CommonCSVLoader is unable to process a
+   * 				data set incrementally.
    */
-  protected boolean isNumeric(String s) {
+  public Instance getNextInstance(Instances structure) throws IOException {
+    if (useReadAhead())
+      return m_ReadAheadParser.next();
+
     try {
-      Double.parseDouble(s);
-      return true;
+      return parseNext();
     }
     catch (Exception e) {
-      return false;
+      throw new IOException("Failed to parse data row!", e);
     }
   }
 
   /**
-   * Returns the list of custom column names.
+   * Reads the next block of instances in incremental mode, amortizing the
+   * per-row overhead of {@link #getNextInstance(Instances)}. The instances
+   * get added to the returned dataset without copying.
    *
-   * @param max 	the maximum number of columns, -1 just use the custom header ones
-   * @return		the column names
+   * @param structure 		ignored
+   * @param max			the maximum number of instances to read
+   * @return 			the instances, null if no more available
+   * @throws IOException 	if there is an error during parsing
    */
-  protected List<String> customColumnNames(int max) {
-    List<String> 	result;
-    int			i;
-    int			start;
+  public Instances getNextInstances(Instances structure, int max) throws IOException {
+    CommonCsvInstances	result;
+    Instance		inst;
+    boolean		readAhead;
 
-    result = new ArrayList<String>();
-    if (!m_CustomHeader.isEmpty())
-      result.addAll(Arrays.asList(m_CustomHeader.split(",")));
+    if (max < 1)
+      throw new IllegalArgumentException("Maximum number of instances must be at least 1: " + max);
+    if (m_structure == null)
+      getStructure();
 
-    if (max > -1) {
-      start = result.size();
-      for (i = start; i < max; i++)
-	result.add("att-" + (i + 1));
+    result    = new CommonCsvInstances(m_Data, Math.min(max, MAX_INITIAL_CAPACITY));
+    readAhead = useReadAhead();
+    try {
+      while (result.numInstances() < max) {
+	if (readAhead)
+	  inst = m_ReadAheadParser.next();
+	else
+	  inst = parseNext();
+	if (inst == null)
+	  break;
+	result.addDirectly(inst);
+      }
+    }
+    catch (IOException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new IOException("Failed to parse data row!", e);
     }
 
+    if (result.numInstances() == 0)
+      return null;
+
     return result;
   }
 
   /**
-   * Initializes the m_Data and m_structure member variables.
+   * Starts the background parser if enabled and not running yet.
    *
-   * @param atts	the attribute definitions to use
-   * @param capacity 	the number of rows to reserve in m_Data
+   * @return		true if the background parser is to be used
    */
-  protected void initInstances(ArrayList<Attribute> atts, int capacity) {
-    String	relation;
-
-    if (m_sourceFile != null)
-      relation = m_sourceFile.getName();
-    else
-      relation = "CommonCSV";
-    m_Data = new Instances(relation, atts, capacity);
-    m_structure = new Instances(m_Data, 0);
+  protected boolean useReadAhead() {
+    if ((m_ReadAhead > 0) && (m_ReadAheadParser == null) && (m_structure != null) && (m_Types != null)) {
+      m_ReadAheadParser = new ReadAhead(m_ReadAhead);
+      m_ReadAheadParser.start();
+    }
+    return (m_ReadAheadParser != null);
   }
 
   /**
-   * Initializes the parser and reads the number of rows for detecting the types.
-   *
-   * @throws IOException	if parsing fails
+   * Stops the background parser, if running.
    */
-  protected void initParser() throws IOException {
-    CSVFormat 			format;
-    Iterator<CSVRecord>		iter;
-
-    format = CommonCsvFormats.getFormat(m_Format);
-    if (m_Format != CommonCsvFormats.TDF) {
-      if (m_UseCustomFieldSeparator)
-	format = format.withDelimiter(m_CustomFieldSeparator.charAt(0));
+  protected void stopReadAhead() {
+    if (m_ReadAheadParser != null) {
+      m_ReadAheadParser.stop();
+      m_ReadAheadParser = null;
     }
-    if (m_UseCustomQuoteCharacter)
-      format = format.withQuote(m_CustomQuoteCharacter.charAt(0));
-    if (m_UseCustomQuoteMode)
-      format = format.withQuoteMode(CommonCsvQuoteModes.getQuoteMode(m_CustomQuoteMode));
-    if (m_UseCustomEscapeCharacter && m_CustomEscapeCharacter.length() == 1)
-      format = format.withEscape(m_CustomEscapeCharacter.charAt(0));
-    format.withAllowMissingColumnNames();
-    m_Parser = format.parse(m_sourceReader);
-
-    m_Records = new ArrayList<CSVRecord>();
-    iter      = m_Parser.iterator();
-    while (iter.hasNext() && (m_Records.size() < m_NumRowsTypeDetection))
-      m_Records.add(iter.next());
   }
 
   /**
-   * Returns the next record, if possible.
-   *
-   * @return		the record, null if none available
+   * Reads and converts records on a background thread into a bounded queue,
+   * blocking the thread while the queue is full. String values get added to
+   * the attributes on the consuming thread.
    */
-  protected CSVRecord nextRecord() {
-    CSVRecord			record;
-    Iterator<CSVRecord>		iter;
-
-    // skip non-data records
-    while ((m_Records != null) && (m_FirstDataRow > 0) && (m_Records.size() > 0)) {
-      m_Records.remove(0);
-      m_FirstDataRow--;
-    }
+  protected class ReadAhead
+    implements Runnable {
 
-    if ((m_Records != null) && (m_Records.size() > 0))
-      return m_Records.remove(0);
-
-    record = null;
-    if (m_Parser != null) {
-      iter = m_Parser.iterator();
-      // skip header rows
-      if (m_FirstDataRow > 0) {
-	while ((m_FirstDataRow > 0) && iter.hasNext()) {
-	  record = iter.next();
-	  m_FirstDataRow--;
-	  if (record == null) {
-	    m_FirstDataRow = 0;
-	    break;
-	  }
-	}
-      }
-      // data row
-      if ((record == null) && (iter.hasNext()))
-	record = iter.next();
-    }
+    /** the queue of converted rows. */
+    protected BlockingQueue<ParsedRow> m_Queue;
 
-    return record;
-  }
+    /** the thread parsing the records. */
+    protected Thread m_Thread;
 
-  /**
-   * Initializes the dataset header.
-   *
-   * @return 			true if continue parsing
-   * @throws IOException	if parsing fails
-   */
-  protected boolean initStructure() throws IOException {
-    List<String> 		names;
-    Set<String>			namesSet;
-    String			nameTmp;
-    Map<String,Integer>		attIndex;
-    int 			i;
-    int				n;
-    int 			numRows;
-    ArrayList<Attribute> 	atts;
-    boolean 			noNumeric;
-    String 			cell;
-    boolean			hasNominalValues;
-    Map<Integer,Collection<String>>	nominalValues;
-    Map<Integer,Boolean>	sortLabels;
-    List<String>		labels;
-    String[]			parts;
-    Range			specRange;
-    String[]			attList;
+    /** whether the parsing has been stopped. */
+    protected volatile boolean m_Stopped;
 
-    numRows = m_Records.size();
-    m_FirstDataRow = m_NoHeader ? 0 : 1;
-    atts = new ArrayList<Attribute>();
-    if (numRows == 0) {
-      if (m_NoHeader) {
-	names = customColumnNames(-1);
-	if (names.size() == 0)
-	  throw new IOException("No rows in CSV file and no custom header defined!");
-	for (i = 0; i < names.size(); i++)
-	  atts.add(new Attribute(names.get(i)));
-	initInstances(atts, 0);
-	return false;
-      }
-      else {
-	throw new IOException("No rows in CSV file!");
-      }
-    }
-    if (numRows == 1) {
-      if (!m_NoHeader) {
-	for (i = 0; i < m_Records.get(0).size(); i++)
-	  atts.add(new Attribute(m_Records.get(0).get(i)));
-	initInstances(atts, 0);
-	return false;
-      }
-    }
+    /** whether the last row has been consumed. */
+    protected boolean m_Finished;
 
-    // init header names
-    names = new ArrayList<String>();
-    if (m_NoHeader) {
-      names.addAll(customColumnNames(m_Records.get(0).size()));
+    /**
+     * Initializes the background parser.
+     *
+     * @param capacity	the maximum number of rows to parse ahead
+     */
+    public ReadAhead(int capacity) {
+      m_Queue = new ArrayBlockingQueue<ParsedRow>(capacity);
     }
-    else {
-      names.addAll(customColumnNames(-1));
-      for (i = names.size(); i < m_Records.get(0).size(); i++)
-	names.add(m_Records.get(0).get(i));
-    }
-
-    // disambiguate names if necessary
-    namesSet = new HashSet<String>();
-    for (i = 0; i < names.size(); i++) {
-      nameTmp = names.get(i);
-      if (!nameTmp.isEmpty() && !namesSet.contains(nameTmp)) {
-	namesSet.add(nameTmp);
-	continue;
-      }
 
-      n = 1;
-      while (nameTmp.isEmpty() || namesSet.contains(nameTmp)) {
-	n++;
-	if (names.get(i).isEmpty())
-	  nameTmp = "att-" + n;
-	else
-	  nameTmp = names.get(i) + "-" + n;
-      }
-      System.err.println("Column #" + i + " required disambiguating: '" + names.get(i) + "' -> '" + nameTmp + "'");
-      namesSet.add(nameTmp);
-      names.set(i, nameTmp);
+    /**
+     * Starts the background thread.
+     */
+    public void start() {
+      m_Thread = new Thread(this, getClass().getName());
+      m_Thread.setDaemon(true);
+      m_Thread.start();
     }
 
-    // generate name index for label specs
-    attIndex = new HashMap<String, Integer>();
-    for (String name: names)
-      attIndex.put(name, attIndex.size());
+    /**
+     * Reads and converts the records until all have been read, an error
+     * occurred or the parsing got stopped.
+     */
+    public void run() {
+      Attribute[]	atts;
+      boolean		hasStrings;
+      CommonCsvRow	row;
+      String[]		strings;
 
-    // init types
-    m_Types = new AttributeType[m_Records.get(0).size()];
-    m_NominalRange.setUpper(m_Types.length - 1);
-    m_StringRange.setUpper(m_Types.length - 1);
-    m_DateRange.setUpper(m_Types.length - 1);
-    hasNominalValues = false;
-    nominalValues = new HashMap<Integer, Collection<String>>();
-    sortLabels = new HashMap<Integer, Boolean>();
-    for (i = 0; i < m_Types.length; i++) {
-      m_Types[i] = AttributeType.NUMERIC;
-      if (m_NominalRange.isInRange(i)) {
-	m_Types[i] = AttributeType.NOMINAL;
-	hasNominalValues = true;
-      }
-      else if (m_StringRange.isInRange(i)) {
-	m_Types[i] = AttributeType.STRING;
+      try {
+	try {
+	  atts       = createThreadAttributes();
+	  hasStrings = hasStringAttributes();
+	  while (!m_Stopped && ((row = nextRecord()) != null)) {
+	    strings = hasStrings ? new String[m_Types.length] : null;
+	    m_Queue.put(new ParsedRow(convertRecord(row, atts, strings), strings, null));
+	  }
+	  if (!m_Stopped)
+	    m_Queue.put(new ParsedRow(null, null, null));
+	}
+	catch (InterruptedException e) {
+	  throw e;
+	}
+	catch (Exception e) {
+	  if (!m_Stopped)
+	    m_Queue.put(new ParsedRow(null, null, e));
+	}
       }
-      else if (m_DateRange.isInRange(i)) {
-	m_Types[i] = AttributeType.DATE;
+      catch (InterruptedException e) {
+	// stopped
       }
     }
 
-    if ((numRows == 1) && !m_NoHeader) {
-      for (i = 0; i < names.size(); i++)
-	atts.add(new Attribute(names.get(i)));
-      initInstances(atts, 0);
-      return false;
-    }
+    /**
+     * Returns the next instance, blocking until it is available.
+     *
+     * @return		the instance, null if no more available
+     * @throws IOException	if parsing failed
+     */
+    public Instance next() throws IOException {
+      ParsedRow		row;
+      int		i;
 
-    // check numeric columns
-    for (n = m_FirstDataRow; n < m_Records.size(); n++) {
-      noNumeric = true;
-      for (i = 0; i < m_Types.length && i < m_Records.get(n).size(); i++) {
-	if (m_Types[i] == AttributeType.NUMERIC) {
-	  noNumeric = false;
-	  cell = m_Records.get(n).get(i);
-	  if (cell.equals(m_MissingValue))
-	    continue;
-	  if (!isNumeric(cell))
-	    m_Types[i] = AttributeType.STRING;
-	}
+      if (m_Finished)
+	return null;
+
+      try {
+	row = m_Queue.take();
+      }
+      catch (InterruptedException e) {
+	stop();
+	throw new IOException("Interrupted while waiting for data row!", e);
       }
-      // all columns contain string values, no need to further investigate
-      if (noNumeric)
-	break;
-    }
 
-    // collect nominal values
-    if (hasNominalValues) {
-      for (n = m_FirstDataRow; n < m_Records.size(); n++) {
-	for (i = 0; i < m_Types.length && i < m_Records.get(n).size(); i++) {
-	  if (m_Types[i] == AttributeType.NOMINAL) {
-	    if (!nominalValues.containsKey(i)) {
-	      nominalValues.put(i, new HashSet<String>());
-	      sortLabels.put(i, true);  // label specs override this
-	    }
-	    cell = m_Records.get(n).get(i);
-	    if (cell.equals(m_MissingValue))
-	      continue;
-	    nominalValues.get(i).add(cell);
-	  }
+      if (row.m_Error != null) {
+	m_Finished = true;
+	throw new IOException("Failed to parse data row!", row.m_Error);
+      }
+      if (row.m_Values == null) {
+	m_Finished = true;
+	return null;
+      }
+
+      if (row.m_Strings != null) {
+	for (i = 0; i < row.m_Strings.length; i++) {
+	  if (row.m_Strings[i] != null)
+	    row.m_Values[i] = m_Data.attribute(i).addStringValue(row.m_Strings[i]);
 	}
       }
+
+      return createInstance(row.m_Values);
     }
 
-    // label specs
-    for (String labelSpec: m_nominalLabelSpecs) {
-      parts = labelSpec.split(":");
-      if (parts.length != 2)
-	throw new IllegalStateException("Invalid label specification (required: 'indices/names:list,of,labels'): " + labelSpec);
-      labels = new ArrayList<String>(Arrays.asList(parts[1].split(",")));
-      try {
-	specRange = new Range(parts[0]);
-	specRange.setUpper(m_Types.length + 1);
-	for (int index: specRange.getSelection()) {
-	  nominalValues.put(index, labels);
-	  sortLabels.put(index, false);
-	  m_Types[index] = AttributeType.NOMINAL;
+    /**
+     * Stops the background thread and waits for it to finish, as it shares
+     * the parser and the buffered records with the loader. A thread blocked
+     * in reading gets released by closing the underlying stream, as closing
+     * the reader would wait for the lock held by the blocked read.
+     */
+    public void stop() {
+      boolean	interrupted;
+
+      m_Stopped  = true;
+      m_Finished = true;
+      if (m_Thread == null)
+	return;
+      m_Thread.interrupt();
+      if (m_Thread.isAlive() && (m_SourceStream != null)) {
+	try {
+	  m_SourceStream.close();
+	}
+	catch (Exception e) {
+	  // ignored
 	}
       }
-      catch (Exception e) {
-	attList = parts[0].split(",");
-	for (String name: attList) {
-	  i = attIndex.get(name);
-	  nominalValues.put(i, labels);
-	  sortLabels.put(i, false);
-	  m_Types[i] = AttributeType.NOMINAL;
+
+      // make room in the queue in case the interrupt got swallowed
+      interrupted = false;
+      while (m_Thread.isAlive()) {
+	m_Queue.clear();
+	try {
+	  m_Thread.join(STOP_TIMEOUT);
+	}
+	catch (InterruptedException e) {
+	  interrupted = true;
 	}
       }
+      if (interrupted)
+	Thread.currentThread().interrupt();
+      m_Queue.clear();
     }
+  }
 
-    // header
-    for (i = 0; i < names.size(); i++) {
-      switch (m_Types[i]) {
-	case NUMERIC:
-	  atts.add(new Attribute(names.get(i)));
-	  break;
-	case NOMINAL:
-	  labels = new ArrayList<String>(nominalValues.get(i));
-	  if (sortLabels.get(i))
-	    Collections.sort(labels);
-	  atts.add(new Attribute(names.get(i), labels));
-	  break;
-	case STRING:
-	  atts.add(new Attribute(names.get(i), (List<String>) null));
-	  break;
-	case DATE:
-	  atts.add(new Attribute(names.get(i), m_DateFormat));
-	  break;
-	default:
-	  throw new IllegalStateException("Unhandled attribute type: " + m_Types[i]);
-      }
+  /**
+   * A row converted by the background parser.
+   */
+  protected static class ParsedRow {
+
+    /** the values, null if end of data or error. */
+    protected double[] m_Values;
+
+    /** the string values (null if no string attributes). */
+    protected String[] m_Strings;
+
+    /** the error that occurred, null if none. */
+    protected Exception m_Error;
+
+    /**
+     * Initializes the row.
+     *
+     * @param values	the values, null if end of data or error
+     * @param strings	the string values, can be null
+     * @param error	the error, null if none
+     */
+    public ParsedRow(double[] values, String[] strings, Exception error) {
+      m_Values  = values;
+      m_Strings = strings;
+      m_Error   = error;
     }
-    initInstances(atts, m_Records.size());
+  }
 
-    return true;
+  /**
+   * The converted rows of a chunk.
+   */
+  protected class ParsedChunk {
+
+    /** the values of the rows. */
+    protected List<double[]> m_Values = new ArrayList<double[]>();
+
+    /** the string values of the rows (null if no string attributes). */
+    protected List<String[]> m_Strings = new ArrayList<String[]>();
+
+    /**
+     * Adds the converted row.
+     *
+     * @param values	the values
+     * @param strings	the string values, can be null
+     */
+    public void add(double[] values, String[] strings) {
+      m_Values.add(values);
+      m_Strings.add(strings);
+    }
+
+    /**
+     * Adds the rows to the dataset, adding the string values to the
+     * attributes in the process.
+     *
+     * @param data	the dataset to add the rows to
+     */
+    public void addTo(Instances data) {
+      int	n;
+      int	i;
+      double[]	values;
+      String[]	strings;
+
+      for (n = 0; n < m_Values.size(); n++) {
+	values  = m_Values.get(n);
+	strings = m_Strings.get(n);
+	if (strings != null) {
+	  for (i = 0; i < strings.length; i++) {
+	    if (strings[i] != null)
+	      values[i] = data.attribute(i).addStringValue(strings[i]);
+	  }
+	}
+	appendInstance(createInstance(values));
+      }
+    }
   }
 
   /**
-   * Parses the next record.
+   * Creates copies of the attributes for converting records on another
+   * thread, as date formats are not thread-safe and nominal lookups are
+   * synchronized.
    *
-   * @return		the instance, null if none generated
-   * @throws Exception	if parsing fails
+   * @return		the attributes
    */
-  protected Instance parseNext() throws Exception {
-    int 		i;
-    String 		cell;
-    double[] 		values;
-    CSVRecord		record;
-
-    record = nextRecord();
-    if (record == null)
-      return null;
+  protected Attribute[] createThreadAttributes() {
+    Attribute[]		result;
+    List<String>	labels;
+    int			i;
+    int			n;
 
-    values = new double[m_Types.length];
-    for (i = 0; i < m_Types.length && i < record.size(); i++) {
-      cell = record.get(i);
-      if (cell.equals(m_MissingValue)) {
-	values[i] = Utils.missingValue();
+    result = new Attribute[m_Types.length];
+    for (i = 0; i < result.length; i++) {
+      result[i] = m_Data.attribute(i);
+      if (m_Types[i] == AttributeType.DATE) {
+	result[i] = new Attribute(result[i].name(), m_DateFormat);
       }
-      else {
-	switch (m_Types[i]) {
-	  case NUMERIC:
-	    values[i] = Double.parseDouble(cell);
-	    break;
-	  case NOMINAL:
-	    values[i] = m_Data.attribute(i).indexOfValue(cell);
-	    break;
-	  case STRING:
-	    values[i] = m_Data.attribute(i).addStringValue(cell);
-	    break;
-	  case DATE:
-	    values[i] = m_Data.attribute(i).parseDate(cell);
-	    break;
-	  default:
-	    throw new IllegalStateException("Unhandled attribute type: " + m_Types[i]);
-	}
+      else if (m_Types[i] == AttributeType.NOMINAL) {
+	labels = new ArrayList<String>();
+	for (n = 0; n < result[i].numValues(); n++)
+	  labels.add(result[i].value(n));
+	result[i] = new Attribute(result[i].name(), labels);
       }
     }
 
-    return new DenseInstance(1.0, values);
+    return result;
   }
 
   /**
-   * Determines and returns (if possible) the structure (internally the 
-   * header) of the data set as an empty set of instances.
-   * If not yet read, also reads the full dataset into m_Data.
+   * Checks whether there are any string attributes.
    *
-   * @return 			the structure of the data set as an empty set 
-   * 				of Instances
-   * @throws IOException        if an error occurs
+   * @return		true if at least one string attribute
    */
-  public Instances getStructure() throws IOException {
-    if (m_sourceReader == null)
-      throw new IOException("No source has been specified");
+  protected boolean hasStringAttributes() {
+    for (AttributeType type: m_Types) {
+      if (type == AttributeType.STRING)
+	return true;
+    }
+    return false;
+  }
 
-    if (m_structure != null)
-      return new Instances(m_structure, 0);
+  /**
+   * Opens a reader for a byte range of the source file.
+   *
+   * @param start	the start of the range (inclusive)
+   * @param end		the end of the range (exclusive)
+   * @return		the reader
+   * @throws IOException	if opening fails
+   */
+  protected Reader openRange(long start, long end) throws IOException {
+    if (m_UseMemoryMapping)
+      return createMappedReader(m_sourceFile, start, end, m_ScannedCharset);
+    else
+      return createReader(CommonCsvChunker.openRange(m_sourceFile, start, end), m_ScannedCharset);
+  }
 
+  /**
+   * Checks whether the charset of the source allows splitting it into
+   * byte ranges.
+   *
+   * @return		true if possible
+   */
+  protected boolean isChunkable() {
     try {
-      initParser();
-      if (!initStructure())
-        System.err.println("Cannot add data after initialization of structure!");
-      return new Instances(m_structure, 0);
+      return CommonCsvChunker.isSupported(getSourceCharset());
     }
-    catch (IOException ioe) {
-      // just re-throw it
-      throw ioe;
+    catch (IOException e) {
+      return false;
     }
-    catch (Exception e) {
-      throw new RuntimeException(e);
+  }
+
+  /**
+   * Parses and converts a byte range of the source file.
+   */
+  protected class ChunkParser
+    implements Callable<ParsedChunk> {
+
+    /** the start of the range (inclusive). */
+    protected long m_Start;
+
+    /** the end of the range (exclusive). */
+    protected long m_End;
+
+    /** the number of records to skip. */
+    protected int m_Skip;
+
+    /**
+     * Initializes the parser.
+     *
+     * @param start	the start of the range (inclusive)
+     * @param end	the end of the range (exclusive)
+     * @param skip	the number of records to skip (header)
+     */
+    public ChunkParser(long start, long end, int skip) {
+      m_Start = start;
+      m_End   = end;
+      m_Skip  = skip;
+    }
+
+    /**
+     * Parses the chunk.
+     *
+     * @return		the converted rows
+     * @throws Exception	if parsing fails
+     */
+    public ParsedChunk call() throws Exception {
+      ParsedChunk		result;
+      Attribute[]		atts;
+      boolean			hasStrings;
+      CommonCsvRowSource	parser;
+      CommonCsvRow		row;
+      String[]			strings;
+      int			i;
+
+      atts       = createThreadAttributes();
+      hasStrings = hasStringAttributes();
+      result     = new ParsedChunk();
+      parser     = createParser(createFormat(), openRange(m_Start, m_End));
+      try {
+	for (i = 0; i < m_Skip; i++) {
+	  if (parser.next() == null)
+	    return result;
+	}
+	while ((row = nextFiltered(parser)) != null) {
+	  strings = hasStrings ? new String[m_Types.length] : null;
+	  result.add(convertRecord(row, atts, strings), strings);
+	}
+      }
+      finally {
+	parser.close();
+      }
+
+      return result;
     }
   }
 
   /**
-   * Return the full data set. If the structure hasn't yet been determined
-   * by a call to getStructure then method should do so before processing
-   * the rest of the data set.
-   *
-   * @return 			the structure of the data set as an empty 
-   * 				set of Instances
-   * @throws IOException        if there is no source or parsing fails
+   * Spliterator over the data rows. For uncompressed files, the rows get
+   * re-read from byte ranges aligned to record boundaries, which get
+   * determined on the first split; other sources are read sequentially via
+   * {@link #getNextInstance(Instances)}. The instances use the structure as
+   * dataset.
    */
-  public Instances getDataSet() throws IOException {
-    Instance		inst;
+  protected class InstanceSpliterator
+    implements Spliterator<Instance>, Closeable {
 
-    if (m_sourceReader == null)
-      throw new IOException("No source has been specified");
+    /** the record-aligned byte ranges. */
+    protected long[] m_Bounds;
 
-    if (getRetrieval() == INCREMENTAL)
-      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+    /** the first range to parse (inclusive). */
+    protected int m_Lo;
 
-    setRetrieval(BATCH);
-    if (m_structure == null)
-      getStructure();
+    /** the last range to parse (exclusive). */
+    protected int m_Hi;
 
-    try {
-      while ((inst = parseNext()) != null)
-	m_Data.add(inst);
+    /** whether the byte ranges have been determined. */
+    protected boolean m_Planned;
+
+    /** whether traversal has started. */
+    protected boolean m_Started;
+
+    /** the parser for the current range. */
+    protected CommonCsvRowSource m_RangeParser;
+
+    /** the attributes for converting. */
+    protected Attribute[] m_Atts;
+
+    /** the spliterators with open parsers, shared among the splits, null if not splittable. */
+    protected Set<InstanceSpliterator> m_Open;
+
+    /**
+     * Initializes the spliterator for the whole source.
+     *
+     * @param splittable	whether the source file can be split into byte ranges
+     */
+    public InstanceSpliterator(boolean splittable) {
+      if (splittable) {
+	m_Bounds = new long[]{0, m_sourceFile.length()};
+	m_Lo     = 0;
+	m_Hi     = 1;
+	m_Open   = Collections.synchronizedSet(new HashSet<InstanceSpliterator>());
+      }
     }
-    catch (Exception e) {
-      throw new IOException("Failed to parse data row!", e);
+
+    /**
+     * Initializes the spliterator for a subset of the byte ranges.
+     *
+     * @param bounds	the byte ranges
+     * @param lo	the first range (inclusive)
+     * @param hi	the last range (exclusive)
+     * @param open	the spliterators with open parsers
+     */
+    protected InstanceSpliterator(long[] bounds, int lo, int hi, Set<InstanceSpliterator> open) {
+      m_Bounds  = bounds;
+      m_Lo      = lo;
+      m_Hi      = hi;
+      m_Planned = true;
+      m_Open    = open;
     }
-    finally {
+
+    /**
+     * Returns the next instance.
+     *
+     * @return		the instance, null if no more available
+     * @throws Exception	if parsing fails
+     */
+    protected Instance next() throws Exception {
+      CommonCsvRow	row;
+      String[]		strings;
+      double[]		values;
+      Instance		result;
+      int		i;
+
+      m_Started = true;
+
+      if (m_Open == null) {
+	result = getNextInstance(m_structure);
+	if (result != null)
+	  result.setDataset(m_structure);
+	return result;
+      }
+
+      while (true) {
+	if (m_RangeParser == null) {
+	  if (m_Lo >= m_Hi)
+	    return null;
+	  if (m_Atts == null)
+	    m_Atts = createThreadAttributes();
+	  m_RangeParser = createParser(createFormat(), openRange(m_Bounds[m_Lo], m_Bounds[m_Lo + 1]));
+	  m_Open.add(this);
+	  if ((m_Bounds[m_Lo] == 0) && !m_NoHeader)
+	    m_RangeParser.next();
+	}
+	row = nextFiltered(m_RangeParser);
+	if (row != null)
+	  break;
+	close();
+	m_Lo++;
+      }
+
+      strings = hasStringAttributes() ? new String[m_Types.length] : null;
+      values  = convertRecord(row, m_Atts, strings);
+      if (strings != null) {
+	synchronized (m_structure) {
+	  for (i = 0; i < strings.length; i++) {
+	    if (strings[i] != null)
+	      values[i] = m_structure.attribute(i).addStringValue(strings[i]);
+	  }
+	}
+      }
+      result = createInstance(values);
+      result.setDataset(m_structure);
+
+      return result;
+    }
+
+    /**
+     * Performs the action on the next instance, if available.
+     *
+     * @param action	the action to perform
+     * @return		false if no more instances available
+     */
+    public boolean tryAdvance(Consumer<? super Instance> action) {
+      Instance	inst;
+
+      try {
+	inst = next();
+      }
+      catch (IOException e) {
+	throw new UncheckedIOException(e);
+      }
+      catch (Exception e) {
+	throw new UncheckedIOException(new IOException("Failed to parse data row!", e));
+      }
+      if (inst == null)
+	return false;
+      action.accept(inst);
+      return true;
+    }
+
+    /**
+     * Splits off the first half of the remaining byte ranges. The ranges
+     * get determined on the first call.
+     *
+     * @return		the split, null if not possible
+     */
+    public Spliterator<Instance> trySplit() {
+      InstanceSpliterator	result;
+      int			mid;
+
+      if ((m_Open == null) || m_Started)
+	return null;
+
+      if (!m_Planned) {
+	m_Planned = true;
+	try {
+	  m_Bounds = new CommonCsvChunker(createFormat()).split(
+	    m_sourceFile, ForkJoinPool.getCommonPoolParallelism() * 4, MIN_CHUNK_SIZE);
+	}
+	catch (IOException e) {
+	  throw new UncheckedIOException(e);
+	}
+	m_Lo = 0;
+	m_Hi = m_Bounds.length - 1;
+      }
+
+      if (m_Hi - m_Lo < 2)
+	return null;
+      mid    = (m_Lo + m_Hi) >>> 1;
+      result = new InstanceSpliterator(m_Bounds, m_Lo, mid, m_Open);
+      m_Lo   = mid;
+
+      return result;
+    }
+
+    /**
+     * Returns the estimated number of instances, which is unknown.
+     *
+     * @return		always Long.MAX_VALUE
+     */
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the characteristics.
+     *
+     * @return		the characteristics
+     */
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+
+    /**
+     * Closes the parser of the current range.
+     */
+    public void close() {
+      if (m_RangeParser != null) {
+	try {
+	  m_RangeParser.close();
+	}
+	catch (Exception e) {
+	  // ignored
+	}
+	m_RangeParser = null;
+	m_Open.remove(this);
+      }
+    }
+
+    /**
+     * Closes the parsers of all splits and the source reader.
+     */
+    public void closeAll() {
+      List<InstanceSpliterator>	open;
+
+      if (m_Open != null) {
+	synchronized (m_Open) {
+	  open = new ArrayList<InstanceSpliterator>(m_Open);
+	}
+	for (InstanceSpliterator split: open)
+	  split.close();
+      }
       try {
-	// close the stream
 	m_sourceReader.close();
       }
-      catch (Exception ex) {
+      catch (Exception e) {
 	// ignored
       }
     }
+  }
 
-    return m_Data;
+  /**
+   * Checks whether the source file can be read in byte ranges, i.e., an
+   * uncompressed file with an ASCII-compatible encoding.
+   *
+   * @return		true if splittable
+   */
+  protected boolean canSplit() {
+    return m_SourceIsFile
+      && (m_sourceFile != null)
+      && !m_SourceIsCompressed
+      && !m_SourceIsSplit
+      && (m_Types != null)
+      && isChunkable();
   }
 
   /**
-   * CommonCSVLoader is unable to process a data set incrementally.
+   * Returns a spliterator that reads the data rows lazily. Uncompressed
+   * files get split into byte ranges for parallel parsing. Cannot be mixed
+   * with batch mode.
    *
-   * @param structure		ignored
-   * @return 			never returns without throwing an exception
-   * @throws IOException        always. CommonCSVLoader is unable to process a
-   * 				data set incrementally.
+   * @return		the spliterator
+   * @throws IOException	if no source set or determining the structure fails
    */
-  public Instance getNextInstance(Instances structure) throws IOException {
-    try {
-      return parseNext();
-    }
-    catch (Exception e) {
-      throw new IOException("Failed to parse data row!", e);
-    }
+  public Spliterator<Instance> spliterator() throws IOException {
+    return createSpliterator();
+  }
+
+  /**
+   * Creates the spliterator over the data rows.
+   *
+   * @return		the spliterator
+   * @throws IOException	if no source set or determining the structure fails
+   */
+  protected InstanceSpliterator createSpliterator() throws IOException {
+    if (m_sourceReader == null)
+      throw new IOException("No source has been specified");
+    if (getRetrieval() == BATCH)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+
+    setRetrieval(INCREMENTAL);
+    if (m_structure == null)
+      getStructure();
+
+    return new InstanceSpliterator(canSplit());
+  }
+
+  /**
+   * Returns a stream that reads the data rows lazily; parallel streams
+   * parse byte ranges of uncompressed files in parallel. The stream needs
+   * closing (e.g., with try-with-resources) to release the readers.
+   *
+   * @return		the stream
+   * @throws IOException	if no source set or determining the structure fails
+   */
+  public Stream<Instance> stream() throws IOException {
+    final InstanceSpliterator	spliterator;
+
+    spliterator = createSpliterator();
+    return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+      @Override
+      public void run() {
+	spliterator.closeAll();
+      }
+    });
   }
 
   /**
@@ -35,12 +35,16 @@ import weka.core.Tag;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.zip.Deflater;
 
 /**
  * Writes to a destination that is in the specified CSV format.
@@ -97,6 +101,18 @@ public class CommonCSVSaver
   /** whether the file has no header row. */
   protected boolean m_NoHeader = false;
 
+  /** whether to write block-gzipped output. */
+  protected boolean m_BlockGzip = false;
+
+  /** the default number of threads for compressing. */
+  public final static int DEFAULT_NUM_THREADS = 0;
+
+  /** the number of threads for compressing (<=0 = all cores). */
+  protected int m_NumThreads = DEFAULT_NUM_THREADS;
+
+  /** whether to write a block index file alongside block-gzipped output. */
+  protected boolean m_WriteBlockIndex = false;
+
   /** generates the CSV. */
   protected transient CSVPrinter m_Printer;
 
@@ -405,6 +421,92 @@ public class CommonCSVSaver
     return "If enabled, suppresses header output.";
   }
 
+  /**
+   * Sets whether to write block-gzipped output.
+   *
+   * @param value	true if block-gzipped
+   */
+  public void setBlockGzip(boolean value) {
+    m_BlockGzip = value;
+  }
+
+  /**
+   * Returns whether to write block-gzipped output.
+   *
+   * @return		true if block-gzipped
+   */
+  public boolean getBlockGzip() {
+    return m_BlockGzip;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String blockGzipTipText() {
+    return "If enabled, the output gets compressed in blocks on multiple threads and written as BGZF, i.e., concatenated gzip members readable by any gzip tool.";
+  }
+
+  /**
+   * Sets the number of threads to use for compressing.
+   *
+   * @param value	the number of threads, <=0 for all available cores
+   */
+  public void setNumThreads(int value) {
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the number of threads to use for compressing.
+   *
+   * @return		the number of threads, <=0 for all available cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to use for compressing block-gzipped output; <=0 uses all available cores.";
+  }
+
+  /**
+   * Sets whether to write a block index file (.gzi) alongside
+   * block-gzipped output.
+   *
+   * @param value	true if to write the index
+   */
+  public void setWriteBlockIndex(boolean value) {
+    m_WriteBlockIndex = value;
+  }
+
+  /**
+   * Returns whether to write a block index file (.gzi) alongside
+   * block-gzipped output.
+   *
+   * @return		true if to write the index
+   */
+  public boolean getWriteBlockIndex() {
+    return m_WriteBlockIndex;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String writeBlockIndexTipText() {
+    return "If enabled, an index file with the block offsets (htslib .gzi format) gets written alongside block-gzipped output files.";
+  }
+
   /**
    * Returns an enumeration describing the available options.
    *
@@ -456,6 +558,21 @@ public class CommonCSVSaver
       + "\t(default: outputs header)",
       "no-header", 0, "-no-header"));
 
+    result.addElement(new Option("\tWhether to write block-gzipped output (BGZF),\n"
+      + "\tcompressed on multiple threads\n"
+      + "\t(default: plain text)",
+      "block-gzip", 0, "-block-gzip"));
+
+    result.addElement(new Option("\tThe number of threads to use for compressing\n"
+      + "\t(<=0 = all available cores)\n"
+      + "\t(default: " + DEFAULT_NUM_THREADS + ")",
+      "num-threads", 1, "-num-threads <int>"));
+
+    result.addElement(new Option("\tWhether to write a block index file (.gzi) alongside\n"
+      + "\tblock-gzipped output\n"
+      + "\t(default: no)",
+      "block-index", 0, "-block-index"));
+
     return result.elements();
   }
 
@@ -506,6 +623,16 @@ public class CommonCSVSaver
 
     setNoHeader(Utils.getFlag("no-header", options));
 
+    setBlockGzip(Utils.getFlag("block-gzip", options));
+
+    tmp = Utils.getOption("num-threads", options);
+    if (!tmp.isEmpty())
+      setNumThreads(Integer.parseInt(tmp));
+    else
+      setNumThreads(DEFAULT_NUM_THREADS);
+
+    setWriteBlockIndex(Utils.getFlag("block-index", options));
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -551,6 +678,17 @@ public class CommonCSVSaver
     if (getNoHeader())
       result.add("-no-header");
 
+    if (getBlockGzip())
+      result.add("-block-gzip");
+
+    if (getNumThreads() != DEFAULT_NUM_THREADS) {
+      result.add("-num-threads");
+      result.add("" + getNumThreads());
+    }
+
+    if (getWriteBlockIndex())
+      result.add("-block-index");
+
     return result.toArray(new String[0]);
   }
 
@@ -606,6 +744,28 @@ public class CommonCSVSaver
     return result;
   }
 
+  /**
+   * Sets the output stream, compressing it in blocks if enabled. The index
+   * file only gets written for output files.
+   *
+   * @param output	the output stream
+   * @throws IOException	if setting fails
+   */
+  @Override
+  public void setDestination(OutputStream output) throws IOException {
+    File	indexFile;
+    int		numThreads;
+
+    if (m_BlockGzip) {
+      indexFile = null;
+      if (m_WriteBlockIndex && (output instanceof FileOutputStream) && (retrieveFile() != null))
+	indexFile = CommonCsvBlockGzip.getIndexFile(retrieveFile());
+      numThreads = (m_NumThreads <= 0) ? Runtime.getRuntime().availableProcessors() : m_NumThreads;
+      output     = new CommonCsvBlockGzip.BlockOutputStream(output, indexFile, Deflater.DEFAULT_COMPRESSION, numThreads);
+    }
+    super.setDestination(output);
+  }
+
   /** Sets the writer to null. */
   public void resetWriter() {
     super.resetWriter();
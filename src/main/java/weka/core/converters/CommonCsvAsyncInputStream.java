@@ -0,0 +1,276 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvAsyncInputStream.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the underlying stream (e.g., a decompressing one) on a dedicated
+ * thread, filling large buffers ahead of the consumer. The buffers get
+ * recycled, i.e., no allocations take place once reading is under way.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvAsyncInputStream
+  extends InputStream
+  implements Runnable {
+
+  /** the default buffer size. */
+  public final static int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  /** the default number of buffers. */
+  public final static int DEFAULT_NUM_BUFFERS = 4;
+
+  /** the timeout in msec when waiting for the thread to stop. */
+  public final static int STOP_TIMEOUT = 1000;
+
+  /**
+   * Container for a filled buffer.
+   */
+  protected static class Chunk {
+
+    /** the data. */
+    public byte[] data;
+
+    /** the number of valid bytes, -1 for end of stream. */
+    public int length;
+
+    /** the error that occurred, null if none. */
+    public IOException error;
+  }
+
+  /** the stream to read from. */
+  protected InputStream m_Input;
+
+  /** the empty chunks. */
+  protected BlockingQueue<Chunk> m_Free;
+
+  /** the filled chunks. */
+  protected BlockingQueue<Chunk> m_Filled;
+
+  /** the thread filling the chunks. */
+  protected Thread m_Thread;
+
+  /** the chunk currently being consumed. */
+  protected Chunk m_Current;
+
+  /** the position in the current chunk. */
+  protected int m_Position;
+
+  /** whether the end of the stream has been reached. */
+  protected boolean m_EOF;
+
+  /** whether the stream has been closed. */
+  protected volatile boolean m_Closed;
+
+  /**
+   * Initializes the stream with the default buffers.
+   *
+   * @param in		the stream to read from
+   */
+  public CommonCsvAsyncInputStream(InputStream in) {
+    this(in, DEFAULT_BUFFER_SIZE, DEFAULT_NUM_BUFFERS);
+  }
+
+  /**
+   * Initializes the stream and starts the reading thread.
+   *
+   * @param in		the stream to read from
+   * @param bufferSize	the size of the buffers
+   * @param numBuffers	the number of buffers (at least 2)
+   */
+  public CommonCsvAsyncInputStream(InputStream in, int bufferSize, int numBuffers) {
+    Chunk	chunk;
+    int		i;
+
+    numBuffers = Math.max(2, numBuffers);
+    m_Input    = in;
+    m_Free     = new ArrayBlockingQueue<Chunk>(numBuffers);
+    m_Filled   = new ArrayBlockingQueue<Chunk>(numBuffers);
+    for (i = 0; i < numBuffers; i++) {
+      chunk      = new Chunk();
+      chunk.data = new byte[bufferSize];
+      m_Free.add(chunk);
+    }
+    m_Thread = new Thread(this, getClass().getSimpleName());
+    m_Thread.setDaemon(true);
+    m_Thread.start();
+  }
+
+  /**
+   * Fills the buffers until the end of the stream is reached.
+   */
+  public void run() {
+    Chunk		chunk;
+    int			read;
+    boolean		eof;
+    IOException		error;
+
+    eof   = false;
+    error = null;
+    try {
+      while (!m_Closed && !eof) {
+	chunk        = m_Free.take();
+	chunk.length = 0;
+	chunk.error  = null;
+	try {
+	  while (chunk.length < chunk.data.length) {
+	    read = m_Input.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+	    if (read == -1) {
+	      eof = true;
+	      break;
+	    }
+	    chunk.length += read;
+	  }
+	}
+	catch (IOException e) {
+	  error = e;
+	  eof   = true;
+	}
+	if (chunk.length > 0) {
+	  m_Filled.put(chunk);
+	  if (eof)
+	    chunk = m_Free.take();
+	}
+	// signal end of stream (or error) with a separate chunk
+	if (eof) {
+	  chunk.length = -1;
+	  chunk.error  = error;
+	  m_Filled.put(chunk);
+	}
+      }
+    }
+    catch (InterruptedException e) {
+      // stopped
+    }
+  }
+
+  /**
+   * Makes sure that there is data available in the current chunk.
+   *
+   * @return		true if data available, false if end of stream
+   * @throws IOException	if reading failed
+   */
+  protected boolean fill() throws IOException {
+    if (m_Closed)
+      throw new IOException("Stream closed");
+    if (m_EOF)
+      return false;
+    if ((m_Current != null) && (m_Position < m_Current.length))
+      return true;
+
+    if (m_Current != null) {
+      m_Free.add(m_Current);
+      m_Current = null;
+    }
+    try {
+      m_Current = m_Filled.take();
+    }
+    catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for data!");
+    }
+    m_Position = 0;
+    if (m_Current.error != null) {
+      m_EOF = true;
+      throw m_Current.error;
+    }
+    if (m_Current.length == -1) {
+      m_EOF = true;
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Reads the next byte.
+   *
+   * @return		the byte, -1 if end of stream
+   * @throws IOException	if reading failed
+   */
+  @Override
+  public int read() throws IOException {
+    if (!fill())
+      return -1;
+    return m_Current.data[m_Position++] & 0xFF;
+  }
+
+  /**
+   * Reads up to len bytes into the array.
+   *
+   * @param b		the array to fill
+   * @param off		the offset in the array
+   * @param len		the maximum number of bytes
+   * @return		the number of bytes read, -1 if end of stream
+   * @throws IOException	if reading failed
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int		result;
+
+    if (len == 0)
+      return 0;
+    if (!fill())
+      return -1;
+
+    result = Math.min(len, m_Current.length - m_Position);
+    System.arraycopy(m_Current.data, m_Position, b, off, result);
+    m_Position += result;
+
+    return result;
+  }
+
+  /**
+   * Returns the number of bytes available without blocking.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public int available() {
+    if ((m_Current == null) || m_EOF)
+      return 0;
+    return Math.max(0, m_Current.length - m_Position);
+  }
+
+  /**
+   * Stops the reading thread and closes the underlying stream.
+   *
+   * @throws IOException	if closing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (m_Closed)
+      return;
+    m_Closed = true;
+    m_Thread.interrupt();
+    try {
+      m_Thread.join(STOP_TIMEOUT);
+    }
+    catch (InterruptedException e) {
+      // ignored
+    }
+    m_Input.close();
+  }
+}
@@ -0,0 +1,984 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvBlockGzip.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Support for block-gzipped files, i.e., gzip files consisting of multiple
+ * members that can be inflated independently. The member boundaries are
+ * either read from an index file in the htslib .gzi format (file name plus
+ * ".gzi") or, for BGZF files, determined by walking the block headers,
+ * which store the size of each block. Files written by
+ * {@link BlockOutputStream} are BGZF files.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvBlockGzip {
+
+  /** the extension of the index files. */
+  public final static String INDEX_EXTENSION = ".gzi";
+
+  /** the number of bytes of a BGZF header. */
+  public final static int HEADER_LENGTH = 18;
+
+  /** the minimum number of compressed bytes inflated by a single task. */
+  public final static int TASK_SIZE = 1024 * 1024;
+
+  /** the maximum number of uncompressed bytes in a BGZF block. */
+  public final static int BLOCK_SIZE = 0xff00;
+
+  /** the maximum size of a compressed BGZF block. */
+  public final static int MAX_BLOCK_SIZE = 0x10000;
+
+  /** the number of blocks compressed by a single task. */
+  public final static int BLOCKS_PER_TASK = 16;
+
+  /** the empty block marking the end of a BGZF file. */
+  protected final static byte[] EOF_BLOCK = new byte[]{
+    0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+    0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+  /**
+   * The offsets of the blocks, compressed and uncompressed.
+   */
+  public static class Index {
+
+    /** the compressed start offsets, plus the file length. */
+    protected long[] m_Compressed;
+
+    /** the uncompressed start offsets, plus the total size (-1 if unknown). */
+    protected long[] m_Uncompressed;
+
+    /**
+     * Initializes the index.
+     *
+     * @param compressed	the compressed start offsets, plus the file length
+     * @param uncompressed	the uncompressed start offsets, plus the total size (-1 if unknown)
+     */
+    public Index(long[] compressed, long[] uncompressed) {
+      m_Compressed   = compressed;
+      m_Uncompressed = uncompressed;
+    }
+
+    /**
+     * Returns the number of blocks.
+     *
+     * @return		the number of blocks
+     */
+    public int getNumBlocks() {
+      return m_Compressed.length - 1;
+    }
+
+    /**
+     * Returns the offset of the block in the compressed file.
+     *
+     * @param block	the block index, the number of blocks for the file length
+     * @return		the offset
+     */
+    public long getCompressedOffset(int block) {
+      return m_Compressed[block];
+    }
+
+    /**
+     * Returns the offset of the block in the uncompressed data.
+     *
+     * @param block	the block index, the number of blocks for the total size
+     * @return		the offset, -1 if unknown
+     */
+    public long getUncompressedOffset(int block) {
+      return m_Uncompressed[block];
+    }
+
+    /**
+     * Returns the block that contains the uncompressed offset.
+     *
+     * @param offset	the uncompressed offset
+     * @return		the block index
+     */
+    public int findBlock(long offset) {
+      int	low;
+      int	high;
+      int	mid;
+
+      low  = 0;
+      high = getNumBlocks() - 1;
+      while (low < high) {
+	mid = (low + high + 1) / 2;
+	if (m_Uncompressed[mid] <= offset)
+	  low = mid;
+	else
+	  high = mid - 1;
+      }
+
+      return low;
+    }
+  }
+
+  /**
+   * Inflates a range of blocks.
+   */
+  protected static class InflateTask
+    implements Callable<byte[]> {
+
+    /** the file to read from. */
+    protected FileChannel m_Channel;
+
+    /** the compressed start. */
+    protected long m_Start;
+
+    /** the compressed end. */
+    protected long m_End;
+
+    /** the uncompressed size, -1 if unknown. */
+    protected long m_Size;
+
+    /**
+     * Initializes the task.
+     *
+     * @param channel	the file to read from
+     * @param start	the compressed start
+     * @param end		the compressed end
+     * @param size	the uncompressed size, -1 if unknown
+     */
+    public InflateTask(FileChannel channel, long start, long end, long size) {
+      m_Channel = channel;
+      m_Start   = start;
+      m_End     = end;
+      m_Size    = size;
+    }
+
+    /**
+     * Reads and inflates the blocks.
+     *
+     * @return		the uncompressed data
+     * @throws Exception	if reading or inflating fails
+     */
+    public byte[] call() throws Exception {
+      ByteBuffer		compressed;
+      InputStream		in;
+      ByteArrayOutputStream	out;
+      byte[]			result;
+      byte[]			buffer;
+      int			read;
+      int			pos;
+
+      compressed = ByteBuffer.allocate((int) (m_End - m_Start));
+      while (compressed.hasRemaining()) {
+	if (m_Channel.read(compressed, m_Start + compressed.position()) == -1)
+	  throw new EOFException("Unexpected end of file at " + (m_Start + compressed.position()));
+      }
+
+      in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()), 65536);
+      if (m_Size >= 0) {
+	result = new byte[(int) m_Size];
+	pos    = 0;
+	while ((pos < result.length) && ((read = in.read(result, pos, result.length - pos)) != -1))
+	  pos += read;
+	if (pos < result.length)
+	  throw new EOFException("Expected " + result.length + " bytes, but only inflated " + pos + " at " + m_Start);
+      }
+      else {
+	out    = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, 4 * (m_End - m_Start)));
+	buffer = new byte[65536];
+	while ((read = in.read(buffer)) != -1)
+	  out.write(buffer, 0, read);
+	result = out.toByteArray();
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * Inflates groups of blocks on a thread pool and returns the data in the
+   * original order.
+   */
+  public static class ParallelInputStream
+    extends InputStream {
+
+    /** the file to read from. */
+    protected FileChannel m_Channel;
+
+    /** the index. */
+    protected Index m_Index;
+
+    /** the first block of each task, plus the number of blocks. */
+    protected int[] m_Tasks;
+
+    /** the next task to submit. */
+    protected int m_NextTask;
+
+    /** the pool. */
+    protected ForkJoinPool m_Pool;
+
+    /** the maximum number of tasks to submit ahead. */
+    protected int m_MaxPending;
+
+    /** the submitted tasks. */
+    protected LinkedList<Future<byte[]>> m_Pending;
+
+    /** the current data. */
+    protected byte[] m_Current;
+
+    /** the position in the current data. */
+    protected int m_Position;
+
+    /**
+     * Initializes the stream.
+     *
+     * @param file	the file to read
+     * @param index	the block index
+     * @param startBlock	the block to start at
+     * @param numThreads	the number of threads to use
+     * @throws IOException	if opening fails
+     */
+    public ParallelInputStream(File file, Index index, int startBlock, int numThreads) throws IOException {
+      List<Integer>	tasks;
+      int		i;
+
+      if ((startBlock < 0) || (startBlock >= index.getNumBlocks()))
+	throw new IOException("Block index out of range (0-" + (index.getNumBlocks() - 1) + "): " + startBlock);
+
+      tasks = new ArrayList<Integer>();
+      tasks.add(startBlock);
+      for (i = startBlock + 1; i < index.getNumBlocks(); i++) {
+	if (index.getCompressedOffset(i) - index.getCompressedOffset(tasks.get(tasks.size() - 1)) >= TASK_SIZE)
+	  tasks.add(i);
+      }
+      tasks.add(index.getNumBlocks());
+      m_Tasks = new int[tasks.size()];
+      for (i = 0; i < m_Tasks.length; i++)
+	m_Tasks[i] = tasks.get(i);
+
+      m_Index      = index;
+      m_Channel    = new RandomAccessFile(file, "r").getChannel();
+      m_Pool       = new ForkJoinPool(Math.max(1, numThreads));
+      m_MaxPending = Math.max(2, numThreads * 2);
+      m_Pending    = new LinkedList<Future<byte[]>>();
+      m_NextTask   = 0;
+    }
+
+    /**
+     * Makes sure that data is available.
+     *
+     * @return		true if data available, false if end of stream
+     * @throws IOException	if inflating failed
+     */
+    protected boolean fill() throws IOException {
+      long	size;
+      int	first;
+      int	last;
+
+      if (m_Channel == null)
+	throw new IOException("Stream closed");
+
+      while ((m_Current == null) || (m_Position >= m_Current.length)) {
+	while ((m_Pending.size() < m_MaxPending) && (m_NextTask < m_Tasks.length - 1)) {
+	  first = m_Tasks[m_NextTask];
+	  last  = m_Tasks[m_NextTask + 1];
+	  size  = -1;
+	  if (m_Index.getUncompressedOffset(last) >= 0)
+	    size = m_Index.getUncompressedOffset(last) - m_Index.getUncompressedOffset(first);
+	  m_Pending.add(m_Pool.submit(new InflateTask(
+	    m_Channel, m_Index.getCompressedOffset(first), m_Index.getCompressedOffset(last), size)));
+	  m_NextTask++;
+	}
+	if (m_Pending.isEmpty())
+	  return false;
+	try {
+	  m_Current = m_Pending.removeFirst().get();
+	}
+	catch (InterruptedException e) {
+	  throw new IOException("Interrupted while inflating!", e);
+	}
+	catch (ExecutionException e) {
+	  throw new IOException("Failed to inflate blocks!", e.getCause());
+	}
+	m_Position = 0;
+      }
+
+      return true;
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return		the byte, -1 if end of stream
+     * @throws IOException	if inflating failed
+     */
+    @Override
+    public int read() throws IOException {
+      if (!fill())
+	return -1;
+      return m_Current[m_Position++] & 0xFF;
+    }
+
+    /**
+     * Reads up to len bytes into the array.
+     *
+     * @param b		the array to fill
+     * @param off		the offset in the array
+     * @param len		the maximum number of bytes
+     * @return		the number of bytes read, -1 if end of stream
+     * @throws IOException	if inflating failed
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int	result;
+
+      if (len == 0)
+	return 0;
+      if (!fill())
+	return -1;
+
+      result = Math.min(len, m_Current.length - m_Position);
+      System.arraycopy(m_Current, m_Position, b, off, result);
+      m_Position += result;
+
+      return result;
+    }
+
+    /**
+     * Skips bytes, without copying them.
+     *
+     * @param n		the number of bytes to skip
+     * @return		the number of bytes skipped
+     * @throws IOException	if inflating failed
+     */
+    @Override
+    public long skip(long n) throws IOException {
+      long	result;
+      int	step;
+
+      result = 0;
+      while ((result < n) && fill()) {
+	step        = (int) Math.min(n - result, m_Current.length - m_Position);
+	m_Position += step;
+	result     += step;
+      }
+
+      return result;
+    }
+
+    /**
+     * Stops the pool and closes the file.
+     *
+     * @throws IOException	if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+      if (m_Channel == null)
+	return;
+      m_Pool.shutdownNow();
+      m_Channel.close();
+      m_Channel = null;
+      m_Pending.clear();
+      m_Current = null;
+    }
+  }
+
+  /**
+   * The compressed blocks of a chunk.
+   */
+  protected static class CompressedChunk {
+
+    /** the BGZF blocks. */
+    public byte[] data;
+
+    /** the compressed sizes of the blocks. */
+    public int[] compressedSizes;
+
+    /** the uncompressed sizes of the blocks. */
+    public int[] uncompressedSizes;
+  }
+
+  /**
+   * Compresses a chunk into BGZF blocks.
+   */
+  protected static class DeflateTask
+    implements Callable<CompressedChunk> {
+
+    /** the data to compress. */
+    protected byte[] m_Data;
+
+    /** the number of bytes to compress. */
+    protected int m_Length;
+
+    /** the compression level. */
+    protected int m_Level;
+
+    /**
+     * Initializes the task.
+     *
+     * @param data	the data to compress
+     * @param length	the number of bytes to compress
+     * @param level	the compression level
+     */
+    public DeflateTask(byte[] data, int length, int level) {
+      m_Data   = data;
+      m_Length = length;
+      m_Level  = level;
+    }
+
+    /**
+     * Compresses the blocks.
+     *
+     * @return		the compressed blocks
+     */
+    public CompressedChunk call() {
+      CompressedChunk		result;
+      ByteArrayOutputStream	out;
+      Deflater			deflater;
+      CRC32			crc;
+      byte[]			buffer;
+      int			numBlocks;
+      int			offset;
+      int			len;
+      int			size;
+      int			i;
+
+      numBlocks                = (m_Length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+      result                   = new CompressedChunk();
+      result.compressedSizes   = new int[numBlocks];
+      result.uncompressedSizes = new int[numBlocks];
+      out                      = new ByteArrayOutputStream(m_Length / 2 + 1024);
+      buffer                   = new byte[MAX_BLOCK_SIZE];
+      deflater                 = new Deflater(m_Level, true);
+      crc                      = new CRC32();
+      try {
+	for (i = 0; i < numBlocks; i++) {
+	  offset = i * BLOCK_SIZE;
+	  len    = Math.min(BLOCK_SIZE, m_Length - offset);
+	  size   = deflate(deflater, m_Data, offset, len, buffer);
+	  // incompressible data, store instead
+	  if (size == -1) {
+	    deflater.end();
+	    deflater = new Deflater(Deflater.NO_COMPRESSION, true);
+	    size     = deflate(deflater, m_Data, offset, len, buffer);
+	    deflater.end();
+	    deflater = new Deflater(m_Level, true);
+	  }
+	  crc.reset();
+	  crc.update(m_Data, offset, len);
+	  // header, identical to the one of the end-of-file block apart from BSIZE
+	  out.write(EOF_BLOCK, 0, 16);
+	  writeShort(out, size + 25);
+	  out.write(buffer, 0, size);
+	  writeInt(out, crc.getValue());
+	  writeInt(out, len);
+	  result.compressedSizes[i]   = size + 26;
+	  result.uncompressedSizes[i] = len;
+	}
+      }
+      finally {
+	deflater.end();
+      }
+      result.data = out.toByteArray();
+
+      return result;
+    }
+  }
+
+  /**
+   * Writes the data as BGZF blocks, compressing chunks of blocks on a thread
+   * pool. Flushing only passes on completed blocks, i.e., the blocks always
+   * have the maximum size, apart from the last one. Optionally writes an
+   * index file in htslib .gzi format when closed.
+   */
+  public static class BlockOutputStream
+    extends OutputStream {
+
+    /** the stream to write to. */
+    protected OutputStream m_Output;
+
+    /** the index file to write, null for none. */
+    protected File m_IndexFile;
+
+    /** the compression level. */
+    protected int m_Level;
+
+    /** the pool. */
+    protected ForkJoinPool m_Pool;
+
+    /** the maximum number of chunks being compressed. */
+    protected int m_MaxPending;
+
+    /** the submitted chunks. */
+    protected LinkedList<Future<CompressedChunk>> m_Pending;
+
+    /** the buffer for the current chunk. */
+    protected byte[] m_Buffer;
+
+    /** the number of bytes in the buffer. */
+    protected int m_Count;
+
+    /** the number of compressed bytes written. */
+    protected long m_Compressed;
+
+    /** the number of uncompressed bytes written. */
+    protected long m_Uncompressed;
+
+    /** the compressed/uncompressed offsets of the blocks after the first. */
+    protected List<long[]> m_Offsets;
+
+    /**
+     * Initializes the stream.
+     *
+     * @param out		the stream to write to
+     * @param indexFile	the index file to write, null for none
+     * @param level	the compression level
+     * @param numThreads	the number of threads to use
+     */
+    public BlockOutputStream(OutputStream out, File indexFile, int level, int numThreads) {
+      m_Output     = out;
+      m_IndexFile  = indexFile;
+      m_Level      = level;
+      m_Pool       = new ForkJoinPool(Math.max(1, numThreads));
+      m_MaxPending = Math.max(2, numThreads * 2);
+      m_Pending    = new LinkedList<Future<CompressedChunk>>();
+      m_Buffer     = new byte[BLOCK_SIZE * BLOCKS_PER_TASK];
+      m_Offsets    = new ArrayList<long[]>();
+    }
+
+    /**
+     * Writes the compressed chunk to the output.
+     *
+     * @param future	the chunk to write
+     * @throws IOException	if compressing or writing failed
+     */
+    protected void write(Future<CompressedChunk> future) throws IOException {
+      CompressedChunk	chunk;
+      int		i;
+
+      try {
+	chunk = future.get();
+      }
+      catch (InterruptedException e) {
+	throw new IOException("Interrupted while compressing!", e);
+      }
+      catch (ExecutionException e) {
+	throw new IOException("Failed to compress blocks!", e.getCause());
+      }
+      m_Output.write(chunk.data);
+      for (i = 0; i < chunk.compressedSizes.length; i++) {
+	if (m_Compressed > 0)
+	  m_Offsets.add(new long[]{m_Compressed, m_Uncompressed});
+	m_Compressed   += chunk.compressedSizes[i];
+	m_Uncompressed += chunk.uncompressedSizes[i];
+      }
+    }
+
+    /**
+     * Submits the buffered data for compression.
+     *
+     * @throws IOException	if writing of completed chunks failed
+     */
+    protected void submit() throws IOException {
+      if (m_Count == 0)
+	return;
+      m_Pending.add(m_Pool.submit(new DeflateTask(m_Buffer, m_Count, m_Level)));
+      m_Buffer = new byte[m_Buffer.length];
+      m_Count  = 0;
+      while (m_Pending.size() > m_MaxPending)
+	write(m_Pending.removeFirst());
+    }
+
+    /**
+     * Writes the byte.
+     *
+     * @param b		the byte
+     * @throws IOException	if writing failed
+     */
+    @Override
+    public void write(int b) throws IOException {
+      if (m_Count == m_Buffer.length)
+	submit();
+      m_Buffer[m_Count++] = (byte) b;
+    }
+
+    /**
+     * Writes len bytes from the array.
+     *
+     * @param b		the array
+     * @param off		the offset in the array
+     * @param len		the number of bytes
+     * @throws IOException	if writing failed
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      int	n;
+
+      while (len > 0) {
+	if (m_Count == m_Buffer.length)
+	  submit();
+	n = Math.min(len, m_Buffer.length - m_Count);
+	System.arraycopy(b, off, m_Buffer, m_Count, n);
+	m_Count += n;
+	off     += n;
+	len     -= n;
+      }
+    }
+
+    /**
+     * Writes the chunks that have been compressed already and flushes the
+     * output.
+     *
+     * @throws IOException	if writing failed
+     */
+    @Override
+    public void flush() throws IOException {
+      while (!m_Pending.isEmpty() && m_Pending.getFirst().isDone())
+	write(m_Pending.removeFirst());
+      m_Output.flush();
+    }
+
+    /**
+     * Compresses the remaining data, writes the end-of-file block and the
+     * index file (if any) and closes the output.
+     *
+     * @throws IOException	if writing failed
+     */
+    @Override
+    public void close() throws IOException {
+      if (m_Pool == null)
+	return;
+      try {
+	submit();
+	while (!m_Pending.isEmpty())
+	  write(m_Pending.removeFirst());
+	m_Output.write(EOF_BLOCK);
+	m_Output.close();
+	if (m_IndexFile != null)
+	  writeIndex(m_IndexFile, m_Offsets);
+      }
+      finally {
+	m_Pool.shutdownNow();
+	m_Pool = null;
+      }
+    }
+  }
+
+  /**
+   * Compresses the data, which must fit into a single block.
+   *
+   * @param deflater	the deflater to use
+   * @param data	the data
+   * @param offset	the offset in the data
+   * @param length	the number of bytes to compress
+   * @param buffer	the buffer for the compressed data
+   * @return		the compressed size, -1 if it does not fit a block
+   */
+  protected static int deflate(Deflater deflater, byte[] data, int offset, int length, byte[] buffer) {
+    int		max;
+    int		size;
+
+    max = MAX_BLOCK_SIZE - 26;
+    deflater.reset();
+    deflater.setInput(data, offset, length);
+    deflater.finish();
+    size = 0;
+    while (!deflater.finished() && (size < max))
+      size += deflater.deflate(buffer, size, max - size);
+    if (!deflater.finished())
+      return -1;
+
+    return size;
+  }
+
+  /**
+   * Writes an unsigned little-endian short.
+   *
+   * @param out		the stream to write to
+   * @param value	the value
+   */
+  protected static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write(value & 0xFF);
+    out.write((value >> 8) & 0xFF);
+  }
+
+  /**
+   * Writes an unsigned little-endian int.
+   *
+   * @param out		the stream to write to
+   * @param value	the value
+   */
+  protected static void writeInt(ByteArrayOutputStream out, long value) {
+    writeShort(out, (int) (value & 0xFFFF));
+    writeShort(out, (int) ((value >> 16) & 0xFFFF));
+  }
+
+  /**
+   * Writes the index file in htslib .gzi format.
+   *
+   * @param indexFile	the file to write to
+   * @param offsets	the compressed/uncompressed offsets of the blocks after the first
+   * @throws IOException	if writing fails
+   */
+  public static void writeIndex(File indexFile, List<long[]> offsets) throws IOException {
+    DataOutputStream	out;
+
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+    try {
+      out.writeLong(Long.reverseBytes(offsets.size()));
+      for (long[] offset: offsets) {
+	out.writeLong(Long.reverseBytes(offset[0]));
+	out.writeLong(Long.reverseBytes(offset[1]));
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads an unsigned little-endian short.
+   *
+   * @param data	the bytes
+   * @param offset	the offset
+   * @return		the value
+   */
+  protected static int readShort(byte[] data, int offset) {
+    return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+  }
+
+  /**
+   * Reads an unsigned little-endian int.
+   *
+   * @param data	the bytes
+   * @param offset	the offset
+   * @return		the value
+   */
+  protected static long readInt(byte[] data, int offset) {
+    return (readShort(data, offset) | ((long) readShort(data, offset + 2) << 16)) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Reads a little-endian long.
+   *
+   * @param in		the stream to read from
+   * @return		the value
+   * @throws IOException	if reading fails
+   */
+  protected static long readLong(DataInputStream in) throws IOException {
+    return Long.reverseBytes(in.readLong());
+  }
+
+  /**
+   * Checks whether the header is the one of a BGZF block.
+   *
+   * @param header	the first bytes
+   * @param length	the number of bytes available
+   * @return		true if BGZF
+   */
+  public static boolean isBlockGzip(byte[] header, int length) {
+    return (length >= HEADER_LENGTH)
+      && ((header[0] & 0xFF) == 0x1F)
+      && ((header[1] & 0xFF) == 0x8B)
+      && (header[2] == 8)
+      && ((header[3] & 4) != 0)
+      && (header[12] == 'B')
+      && (header[13] == 'C')
+      && (readShort(header, 14) == 2);
+  }
+
+  /**
+   * Determines the block boundaries of a BGZF file by walking the block
+   * headers and trailers.
+   *
+   * @param file	the file to scan
+   * @return		the index, null if not a BGZF file
+   * @throws IOException	if reading fails
+   */
+  public static Index scan(File file) throws IOException {
+    RandomAccessFile	raf;
+    List<Long>		compressed;
+    List<Long>		uncompressed;
+    byte[]		header;
+    byte[]		extra;
+    long		pos;
+    long		size;
+    long		length;
+    int			blockSize;
+    int			i;
+    int			n;
+    long[]		c;
+    long[]		u;
+
+    compressed   = new ArrayList<Long>();
+    uncompressed = new ArrayList<Long>();
+    header       = new byte[12];
+    raf          = new RandomAccessFile(file, "r");
+    try {
+      length = raf.length();
+      pos    = 0;
+      size   = 0;
+      while (pos < length) {
+	raf.seek(pos);
+	raf.readFully(header);
+	if (((header[0] & 0xFF) != 0x1F) || ((header[1] & 0xFF) != 0x8B) || ((header[3] & 4) == 0))
+	  return null;
+	extra = new byte[readShort(header, 10)];
+	raf.readFully(extra);
+	blockSize = -1;
+	for (i = 0; i + 4 <= extra.length; i += 4 + n) {
+	  n = readShort(extra, i + 2);
+	  if ((extra[i] == 'B') && (extra[i + 1] == 'C') && (n == 2) && (i + 6 <= extra.length))
+	    blockSize = readShort(extra, i + 4) + 1;
+	}
+	if ((blockSize == -1) || (pos + blockSize > length))
+	  return null;
+	compressed.add(pos);
+	uncompressed.add(size);
+	// ISIZE in trailer
+	raf.seek(pos + blockSize - 4);
+	raf.readFully(header, 0, 4);
+	size += readInt(header, 0);
+	pos  += blockSize;
+      }
+    }
+    finally {
+      raf.close();
+    }
+    if (compressed.isEmpty())
+      return null;
+
+    c = new long[compressed.size() + 1];
+    u = new long[compressed.size() + 1];
+    for (i = 0; i < compressed.size(); i++) {
+      c[i] = compressed.get(i);
+      u[i] = uncompressed.get(i);
+    }
+    c[c.length - 1] = pos;
+    u[u.length - 1] = size;
+
+    return new Index(c, u);
+  }
+
+  /**
+   * Reads the index file in htslib .gzi format: the number of entries,
+   * followed by pairs of compressed and uncompressed offsets for all blocks
+   * apart from the first one (all values unsigned 64-bit little-endian).
+   *
+   * @param indexFile	the index file
+   * @param file	the compressed file the index belongs to
+   * @return		the index
+   * @throws IOException	if reading fails
+   */
+  public static Index readIndex(File indexFile, File file) throws IOException {
+    DataInputStream	in;
+    long		n;
+    long[]		c;
+    long[]		u;
+    int			i;
+
+    in = new DataInputStream(new FileInputStream(indexFile));
+    try {
+      n = readLong(in);
+      if ((n < 0) || (n * 16 + 8 != indexFile.length()))
+	throw new IOException("Invalid index file: " + indexFile);
+      c = new long[(int) n + 2];
+      u = new long[(int) n + 2];
+      for (i = 1; i <= n; i++) {
+	c[i] = readLong(in);
+	u[i] = readLong(in);
+	if ((c[i] <= c[i - 1]) || (u[i] < u[i - 1]) || (c[i] >= file.length()))
+	  throw new IOException("Invalid offsets in index file: " + indexFile);
+      }
+    }
+    finally {
+      in.close();
+    }
+    c[c.length - 1] = file.length();
+    u[u.length - 1] = -1;
+
+    return new Index(c, u);
+  }
+
+  /**
+   * Returns the index file for the compressed file.
+   *
+   * @param file	the compressed file
+   * @return		the index file (may not exist)
+   */
+  public static File getIndexFile(File file) {
+    return new File(file.getPath() + INDEX_EXTENSION);
+  }
+
+  /**
+   * Determines the block index of the file, either from the index file or,
+   * for BGZF files, by walking the blocks.
+   *
+   * @param file	the compressed file
+   * @return		the index, null if neither index file nor BGZF
+   * @throws IOException	if reading fails
+   */
+  public static Index getIndex(File file) throws IOException {
+    File	indexFile;
+    byte[]	header;
+    InputStream	in;
+    int		length;
+    int		read;
+
+    indexFile = getIndexFile(file);
+    if (indexFile.exists() && (indexFile.lastModified() >= file.lastModified()))
+      return readIndex(indexFile, file);
+
+    header = new byte[HEADER_LENGTH];
+    length = 0;
+    in     = new FileInputStream(file);
+    try {
+      while ((length < header.length) && ((read = in.read(header, length, header.length - length)) != -1))
+	length += read;
+    }
+    finally {
+      in.close();
+    }
+    if (!isBlockGzip(header, length))
+      return null;
+
+    return scan(file);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvByteReader.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Reader that returns each byte of the stream as a character (i.e.,
+ * ISO-8859-1), without going through a charset decoder. Used for scanning
+ * text in ASCII-compatible encodings, with cells getting decoded on access.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ * @see CommonCsvRow#decode(char[], int, int, java.nio.charset.Charset)
+ */
+public class CommonCsvByteReader
+  extends Reader {
+
+  /** the default buffer size. */
+  public final static int DEFAULT_BUFFER_SIZE = 65536;
+
+  /** the stream to read from. */
+  protected InputStream m_Input;
+
+  /** the buffer for the bytes. */
+  protected byte[] m_Bytes;
+
+  /**
+   * Initializes the reader.
+   *
+   * @param in		the stream to read from
+   */
+  public CommonCsvByteReader(InputStream in) {
+    m_Input = in;
+    m_Bytes = new byte[DEFAULT_BUFFER_SIZE];
+  }
+
+  /**
+   * Reads characters into a portion of an array.
+   *
+   * @param cbuf	the destination buffer
+   * @param off		the offset at which to start storing characters
+   * @param len		the maximum number of characters to read
+   * @return		the number of characters read, -1 if end of input
+   * @throws IOException	if reading fails
+   */
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    int		read;
+    int		i;
+
+    if (m_Input == null)
+      throw new IOException("Reader closed");
+    if (len == 0)
+      return 0;
+
+    read = m_Input.read(m_Bytes, 0, Math.min(len, m_Bytes.length));
+    for (i = 0; i < read; i++)
+      cbuf[off + i] = (char) (m_Bytes[i] & 0xFF);
+
+    return read;
+  }
+
+  /**
+   * Closes the stream.
+   *
+   * @throws IOException	if closing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (m_Input != null) {
+      m_Input.close();
+      m_Input = null;
+    }
+  }
+}
@@ -0,0 +1,493 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvChunker.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import org.apache.commons.csv.CSVFormat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Determines byte offsets of record boundaries in a CSV file, taking quoted
+ * cells that span multiple lines into account. Works on the raw bytes,
+ * which is only valid for ASCII-compatible encodings (see
+ * {@link #isSupported(Charset)}).
+ * <br>
+ * As the quote state at an arbitrary offset cannot be determined without
+ * context, the file is scanned sequentially from the start. This is a pure
+ * byte scan, considerably cheaper than parsing.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvChunker {
+
+  /** the size of the read buffer. */
+  public final static int BUFFER_SIZE = 1024 * 1024;
+
+  /** placeholder for optional characters that are not set. */
+  protected final static int NONE = -3;
+
+  /** the delimiter. */
+  protected int m_Delimiter;
+
+  /** the quote character, NONE if not set. */
+  protected int m_Quote;
+
+  /** the escape character, NONE if not set. */
+  protected int m_Escape;
+
+  /** the comment marker, NONE if not set. */
+  protected int m_Comment;
+
+  /** whether to ignore spaces around values. */
+  protected boolean m_IgnoreSurroundingSpaces;
+
+  /** whether inside a quoted cell. */
+  protected boolean m_InQuotes;
+
+  /** whether the last byte closed a quoted cell. */
+  protected boolean m_AfterQuote;
+
+  /** whether the next byte is escaped. */
+  protected boolean m_Escaped;
+
+  /** whether inside a comment line. */
+  protected boolean m_InComment;
+
+  /** whether at the start of a cell. */
+  protected boolean m_CellStart;
+
+  /** whether at the start of a line. */
+  protected boolean m_LineStart;
+
+  /** whether the last byte was a CR. */
+  protected boolean m_PendingCR;
+
+  /**
+   * Initializes the chunker.
+   *
+   * @param format	the format defining the dialect
+   */
+  public CommonCsvChunker(CSVFormat format) {
+    if (format.getDelimiterString().length() != 1)
+      throw new IllegalArgumentException("Only single character delimiters are supported: " + format.getDelimiterString());
+    m_Delimiter               = format.getDelimiterString().charAt(0);
+    m_Quote                   = (format.getQuoteCharacter() == null)  ? NONE : format.getQuoteCharacter();
+    m_Escape                  = (format.getEscapeCharacter() == null) ? NONE : format.getEscapeCharacter();
+    m_Comment                 = (format.getCommentMarker() == null)   ? NONE : format.getCommentMarker();
+    m_IgnoreSurroundingSpaces = format.getIgnoreSurroundingSpaces();
+    reset();
+  }
+
+  /**
+   * Checks whether the charset can be scanned at byte level, i.e., all
+   * special characters are single bytes that cannot occur within multi-byte
+   * sequences.
+   *
+   * @param charset	the charset to check
+   * @return		true if supported
+   */
+  public static boolean isSupported(Charset charset) {
+    return charset.equals(StandardCharsets.UTF_8)
+      || charset.equals(StandardCharsets.US_ASCII)
+      || charset.equals(StandardCharsets.ISO_8859_1)
+      || charset.name().startsWith("windows-125");
+  }
+
+  /**
+   * Resets the state, i.e., the next byte is assumed to start a record.
+   */
+  public void reset() {
+    m_InQuotes   = false;
+    m_AfterQuote = false;
+    m_Escaped    = false;
+    m_InComment  = false;
+    m_CellStart  = true;
+    m_LineStart  = true;
+    m_PendingCR  = false;
+  }
+
+  /**
+   * Returns whether the last byte was part of a comment line.
+   *
+   * @return		true if inside a comment
+   */
+  public boolean isInComment() {
+    return m_InComment;
+  }
+
+  /**
+   * Processes the next byte.
+   *
+   * @param b		the byte to process
+   * @return		1 if the byte starts a new record, 0 if the byte
+   * 			ends a record (LF), -1 otherwise
+   */
+  public int process(int b) {
+    if (m_PendingCR) {
+      m_PendingCR = false;
+      if (b == '\n')
+        return 0;
+      process(b);
+      return 1;
+    }
+
+    if (m_Escaped) {
+      m_Escaped   = false;
+      m_CellStart = false;
+      m_LineStart = false;
+      return -1;
+    }
+
+    if (m_InQuotes) {
+      if (b == m_Quote) {
+        m_InQuotes   = false;
+        m_AfterQuote = true;
+      }
+      else if (b == m_Escape) {
+        m_Escaped = true;
+      }
+      return -1;
+    }
+
+    if (m_AfterQuote) {
+      m_AfterQuote = false;
+      // doubled quote
+      if (b == m_Quote) {
+        m_InQuotes = true;
+        return -1;
+      }
+    }
+
+    if ((b == '\n') || (b == '\r')) {
+      m_InComment = false;
+      m_CellStart = true;
+      m_LineStart = true;
+      if (b == '\r') {
+        m_PendingCR = true;
+        return -1;
+      }
+      return 0;
+    }
+
+    if (m_InComment)
+      return -1;
+
+    if (b == m_Delimiter) {
+      m_CellStart = true;
+      m_LineStart = false;
+      return -1;
+    }
+
+    if (m_LineStart && (b == m_Comment)) {
+      m_InComment = true;
+      return -1;
+    }
+
+    if (m_CellStart && (b == m_Quote)) {
+      m_InQuotes = true;
+    }
+    else if (b == m_Escape) {
+      m_Escaped = true;
+    }
+    else if (m_CellStart && m_IgnoreSurroundingSpaces && Character.isWhitespace((char) b)) {
+      m_LineStart = false;
+      return -1;
+    }
+    m_CellStart = false;
+    m_LineStart = false;
+
+    return -1;
+  }
+
+  /**
+   * Splits the file into chunks that start at record boundaries.
+   *
+   * @param file	the file to split
+   * @param numChunks	the desired number of chunks
+   * @param minSize	the minimum size of a chunk in bytes
+   * @return		the chunk boundaries, starting with 0 and ending with
+   * 			the file length (i.e., numChunks + 1 elements at most)
+   * @throws IOException	if reading fails
+   */
+  public long[] split(File file, int numChunks, long minSize) throws IOException {
+    long[]		targets;
+    List<Long>		bounds;
+    long[]		result;
+    long		length;
+    long		chunkSize;
+    int			i;
+
+    length    = file.length();
+    chunkSize = Math.max(minSize, length / Math.max(1, numChunks));
+    targets   = new long[(int) Math.max(0, (length - 1) / Math.max(1, chunkSize))];
+    for (i = 0; i < targets.length; i++)
+      targets[i] = (i + 1) * chunkSize;
+
+    bounds = new ArrayList<Long>();
+    bounds.add(0L);
+    for (long bound: findRecordStarts(file, 0, targets)) {
+      if ((bound > bounds.get(bounds.size() - 1)) && (bound < length))
+        bounds.add(bound);
+    }
+    bounds.add(length);
+
+    result = new long[bounds.size()];
+    for (i = 0; i < result.length; i++)
+      result[i] = bounds.get(i);
+
+    return result;
+  }
+
+  /**
+   * Determines for each target offset the first record start at or after
+   * it. Scanning begins at the given offset, which must be a record start.
+   *
+   * @param file	the file to scan
+   * @param start	the record start to begin scanning at
+   * @param targets	the sorted target offsets
+   * @return		the record starts, the file length if none found
+   * @throws IOException	if reading fails
+   */
+  public long[] findRecordStarts(File file, long start, long[] targets) throws IOException {
+    long[]		result;
+    InputStream		in;
+    byte[]		buffer;
+    int			read;
+    int			i;
+    int			next;
+    long		pos;
+    int			state;
+
+    result = new long[targets.length];
+    next   = 0;
+    while ((next < targets.length) && (targets[next] <= start))
+      result[next++] = start;
+    if (next == targets.length)
+      return result;
+
+    reset();
+    buffer = new byte[BUFFER_SIZE];
+    pos    = start;
+    in     = openRange(file, start, file.length());
+    try {
+      while ((next < targets.length) && ((read = in.read(buffer)) != -1)) {
+        for (i = 0; i < read; i++) {
+          state = process(buffer[i] & 0xFF);
+          // record starts with current byte or after current LF
+          if ((state == 1) && (pos + i >= targets[next])) {
+            while ((next < targets.length) && (pos + i >= targets[next]))
+              result[next++] = pos + i;
+          }
+          else if ((state == 0) && (pos + i + 1 >= targets[next])) {
+            while ((next < targets.length) && (pos + i + 1 >= targets[next]))
+              result[next++] = pos + i + 1;
+          }
+          if (next == targets.length)
+            break;
+        }
+        pos += read;
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    // trailing CR
+    if (m_PendingCR) {
+      while ((next < targets.length) && (pos >= targets[next]))
+        result[next++] = pos;
+    }
+    while (next < targets.length)
+      result[next++] = file.length();
+
+    return result;
+  }
+
+  /**
+   * Determines the first line start at or after the offset, i.e., the
+   * offset itself if it follows a line break. Does not take quoted cells
+   * spanning multiple lines into account.
+   *
+   * @param file	the file to scan
+   * @param offset	the offset
+   * @return		the line start, the file length if none found
+   * @throws IOException	if reading fails
+   */
+  public static long findLineStart(File file, long offset) throws IOException {
+    InputStream		in;
+    byte[]		buffer;
+    long		pos;
+    int			read;
+    int			i;
+    boolean		pendingCR;
+
+    if (offset <= 0)
+      return 0;
+    if (offset >= file.length())
+      return file.length();
+
+    // start with the byte before the offset
+    buffer    = new byte[BUFFER_SIZE];
+    pos       = offset - 1;
+    pendingCR = false;
+    in        = openRange(file, pos, file.length());
+    try {
+      while ((read = in.read(buffer)) != -1) {
+        for (i = 0; i < read; i++) {
+          if (pendingCR)
+            return (buffer[i] == '\n') ? pos + i + 1 : pos + i;
+          if (buffer[i] == '\n')
+            return pos + i + 1;
+          if (buffer[i] == '\r')
+            pendingCR = true;
+        }
+        pos += read;
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    return file.length();
+  }
+
+  /**
+   * Opens an input stream for the specified byte range of the file.
+   *
+   * @param file	the file to read
+   * @param start	the first byte (inclusive)
+   * @param end		the last byte (exclusive)
+   * @return		the stream
+   * @throws IOException	if opening fails
+   */
+  public static InputStream openRange(File file, long start, long end) throws IOException {
+    FileInputStream	fis;
+
+    fis = new FileInputStream(file);
+    fis.getChannel().position(start);
+    return new RangeInputStream(fis, end - start);
+  }
+
+  /**
+   * Stream that stops after a maximum number of bytes.
+   */
+  public static class RangeInputStream
+    extends FilterInputStream {
+
+    /** the remaining bytes. */
+    protected long m_Remaining;
+
+    /**
+     * Initializes the stream.
+     *
+     * @param in	the stream to read from
+     * @param length	the maximum number of bytes to read
+     */
+    public RangeInputStream(InputStream in, long length) {
+      super(in);
+      m_Remaining = length;
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return		the byte, -1 if end of range
+     * @throws IOException	if reading fails
+     */
+    @Override
+    public int read() throws IOException {
+      int	result;
+
+      if (m_Remaining <= 0)
+        return -1;
+      result = super.read();
+      if (result != -1)
+        m_Remaining--;
+      return result;
+    }
+
+    /**
+     * Reads bytes into the array.
+     *
+     * @param b		the array to fill
+     * @param off	the offset in the array
+     * @param len	the maximum number of bytes
+     * @return		the number of bytes read, -1 if end of range
+     * @throws IOException	if reading fails
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int	result;
+
+      if (m_Remaining <= 0)
+        return -1;
+      result = super.read(b, off, (int) Math.min(len, m_Remaining));
+      if (result > 0)
+        m_Remaining -= result;
+      return result;
+    }
+
+    /**
+     * Skips bytes.
+     *
+     * @param n		the number of bytes to skip
+     * @return		the number of bytes skipped
+     * @throws IOException	if skipping fails
+     */
+    @Override
+    public long skip(long n) throws IOException {
+      long	result;
+
+      result = super.skip(Math.min(n, m_Remaining));
+      m_Remaining -= result;
+      return result;
+    }
+
+    /**
+     * Returns the number of bytes that can be read without blocking.
+     *
+     * @return		the number of bytes
+     * @throws IOException	if determining fails
+     */
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(super.available(), m_Remaining);
+    }
+
+    /**
+     * Marking is not supported.
+     *
+     * @return		always false
+     */
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvCodec.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Interface for compression formats that can be detected from the first
+ * bytes of a stream. Additional codecs can be registered via
+ * META-INF/services/weka.core.converters.CommonCsvCodec.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ * @see CommonCsvCodecs
+ */
+public interface CommonCsvCodec {
+
+  /**
+   * Returns the name of the compression format.
+   *
+   * @return		the name
+   */
+  public String getName();
+
+  /**
+   * Checks whether the first bytes of a stream identify the format.
+   *
+   * @param header	the first bytes
+   * @param length	the number of bytes available (may be less than requested)
+   * @return		true if the format matches
+   */
+  public boolean matches(byte[] header, int length);
+
+  /**
+   * Wraps the compressed stream in a decompressing one.
+   *
+   * @param in		the compressed stream, positioned at the start
+   * @return		the decompressed stream
+   * @throws IOException	if the stream cannot be decompressed
+   */
+  public InputStream decompress(InputStream in) throws IOException;
+}
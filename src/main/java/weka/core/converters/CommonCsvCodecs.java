@@ -0,0 +1,276 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvCodecs.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Detects compression formats from the magic bytes at the start of a
+ * stream. Supports GZIP out of the box, codecs registered as services of
+ * {@link CommonCsvCodec} and, if Apache Commons Compress is on the
+ * classpath, the formats it can detect (bzip2, xz, zstd, etc).
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvCodecs {
+
+  /** the number of bytes to inspect. */
+  public final static int HEADER_LENGTH = 16;
+
+  /** the class of the commons-compress factory. */
+  public final static String COMMONS_COMPRESS_FACTORY = "org.apache.commons.compress.compressors.CompressorStreamFactory";
+
+  /** the available codecs. */
+  protected static List<CommonCsvCodec> m_Codecs;
+
+  /**
+   * The GZIP format (also handles concatenated members).
+   */
+  public static class GzipCodec
+    implements CommonCsvCodec {
+
+    /**
+     * Returns the name of the compression format.
+     *
+     * @return		the name
+     */
+    public String getName() {
+      return "gzip";
+    }
+
+    /**
+     * Checks for the GZIP magic bytes.
+     *
+     * @param header	the first bytes
+     * @param length	the number of bytes available
+     * @return		true if GZIP
+     */
+    public boolean matches(byte[] header, int length) {
+      return (length >= 2) && ((header[0] & 0xFF) == 0x1F) && ((header[1] & 0xFF) == 0x8B);
+    }
+
+    /**
+     * Wraps the compressed stream in a decompressing one.
+     *
+     * @param in		the compressed stream
+     * @return		the decompressed stream
+     * @throws IOException	if the stream cannot be decompressed
+     */
+    public InputStream decompress(InputStream in) throws IOException {
+      return new GZIPInputStream(in, 65536);
+    }
+  }
+
+  /**
+   * Uses Apache Commons Compress (via reflection, if available) for
+   * detecting and decompressing the formats it supports.
+   */
+  public static class CommonsCompressCodec
+    implements CommonCsvCodec {
+
+    /** the factory instance. */
+    protected Object m_Factory;
+
+    /** the detection method. */
+    protected Method m_Detect;
+
+    /** the method for creating the stream. */
+    protected Method m_Create;
+
+    /**
+     * Initializes the codec.
+     *
+     * @throws Exception	if commons-compress is not available
+     */
+    public CommonsCompressCodec() throws Exception {
+      Class<?>	cls;
+
+      cls       = Class.forName(COMMONS_COMPRESS_FACTORY);
+      m_Factory = cls.getDeclaredConstructor().newInstance();
+      m_Detect  = cls.getMethod("detect", InputStream.class);
+      m_Create  = cls.getMethod("createCompressorInputStream", String.class, InputStream.class);
+    }
+
+    /**
+     * Returns the name of the compression format.
+     *
+     * @return		the name
+     */
+    public String getName() {
+      return "commons-compress";
+    }
+
+    /**
+     * Detects the format of the header.
+     *
+     * @param header	the first bytes
+     * @param length	the number of bytes available
+     * @return		the format name, null if not detected
+     */
+    protected String detect(byte[] header, int length) {
+      try {
+	return (String) m_Detect.invoke(null, new BufferedInputStream(new ByteArrayInputStream(header, 0, length)));
+      }
+      catch (Exception e) {
+	return null;
+      }
+    }
+
+    /**
+     * Checks whether commons-compress detects a format.
+     *
+     * @param header	the first bytes
+     * @param length	the number of bytes available
+     * @return		true if detected
+     */
+    public boolean matches(byte[] header, int length) {
+      return (detect(header, length) != null);
+    }
+
+    /**
+     * Wraps the compressed stream in a decompressing one.
+     *
+     * @param in		the compressed stream
+     * @return		the decompressed stream
+     * @throws IOException	if the stream cannot be decompressed
+     */
+    public InputStream decompress(InputStream in) throws IOException {
+      byte[]	header;
+      int	length;
+
+      if (!in.markSupported())
+	in = new BufferedInputStream(in);
+      header = new byte[HEADER_LENGTH];
+      length = peek(in, header);
+      try {
+	return (InputStream) m_Create.invoke(m_Factory, detect(header, length), in);
+      }
+      catch (Exception e) {
+	throw new IOException("Failed to decompress stream!", e);
+      }
+    }
+  }
+
+  /**
+   * Returns the available codecs, in the order they get checked.
+   *
+   * @return		the codecs
+   */
+  public static synchronized List<CommonCsvCodec> getCodecs() {
+    if (m_Codecs == null) {
+      m_Codecs = new ArrayList<CommonCsvCodec>();
+      m_Codecs.add(new GzipCodec());
+      for (CommonCsvCodec codec: ServiceLoader.load(CommonCsvCodec.class))
+	m_Codecs.add(codec);
+      try {
+	m_Codecs.add(new CommonsCompressCodec());
+      }
+      catch (Throwable t) {
+	// not available
+      }
+    }
+    return m_Codecs;
+  }
+
+  /**
+   * Reads the first bytes of the stream, without consuming them.
+   *
+   * @param in		the stream, must support mark/reset
+   * @param header	the array to fill
+   * @return		the number of bytes read
+   * @throws IOException	if reading fails
+   */
+  public static int peek(InputStream in, byte[] header) throws IOException {
+    int		length;
+    int		read;
+
+    in.mark(header.length);
+    length = 0;
+    while (length < header.length) {
+      read = in.read(header, length, header.length - length);
+      if (read == -1)
+	break;
+      length += read;
+    }
+    in.reset();
+
+    return length;
+  }
+
+  /**
+   * Determines the codec from the first bytes.
+   *
+   * @param header	the first bytes
+   * @param length	the number of bytes available
+   * @return		the codec, null if not compressed
+   */
+  public static CommonCsvCodec detect(byte[] header, int length) {
+    for (CommonCsvCodec codec: getCodecs()) {
+      if (codec.matches(header, length))
+	return codec;
+    }
+    return null;
+  }
+
+  /**
+   * Determines the codec from the first bytes of the stream, without
+   * consuming them.
+   *
+   * @param in		the stream, must support mark/reset
+   * @return		the codec, null if not compressed
+   * @throws IOException	if reading fails
+   */
+  public static CommonCsvCodec detect(InputStream in) throws IOException {
+    byte[]	header;
+
+    header = new byte[HEADER_LENGTH];
+    return detect(header, peek(in, header));
+  }
+
+  /**
+   * Determines the codec from the first bytes of the file.
+   *
+   * @param file	the file to check
+   * @return		the codec, null if not compressed
+   * @throws IOException	if reading fails
+   */
+  public static CommonCsvCodec detect(File file) throws IOException {
+    InputStream	in;
+
+    in = new BufferedInputStream(new FileInputStream(file), HEADER_LENGTH);
+    try {
+      return detect(in);
+    }
+    finally {
+      in.close();
+    }
+  }
+}
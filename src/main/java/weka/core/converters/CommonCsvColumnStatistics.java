@@ -0,0 +1,204 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvColumnStatistics.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.converters.CommonCSVLoader.AttributeType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Statistics for determining the column types, collected from data rows
+ * without converting them: whether numeric columns contain only numbers,
+ * the labels of nominal columns and the number of rows. With a nominal
+ * threshold, non-numeric columns with few distinct values get turned into
+ * nominal ones (the values get collected until there are more than the
+ * threshold).
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvColumnStatistics {
+
+  /** the types of the columns. */
+  protected AttributeType[] m_Types;
+
+  /** the missing value string. */
+  protected String m_MissingValue;
+
+  /** the labels of the nominal columns (null for other columns). */
+  protected List<Set<String>> m_NominalValues;
+
+  /** the number of rows. */
+  protected long m_NumRows;
+
+  /** the maximum number of distinct values for turning string columns into nominal ones (0 = off). */
+  protected int m_NominalThreshold;
+
+  /** the values of the columns that can turn nominal (null for other columns or if above threshold). */
+  protected List<Set<String>> m_CandidateValues;
+
+  /**
+   * Initializes the statistics.
+   *
+   * @param types	the initial types of the columns (numeric ones can turn into string ones)
+   * @param missingValue	the missing value string
+   */
+  public CommonCsvColumnStatistics(AttributeType[] types, String missingValue) {
+    this(types, missingValue, 0);
+  }
+
+  /**
+   * Initializes the statistics.
+   *
+   * @param types	the initial types of the columns (numeric ones can turn into string or nominal ones)
+   * @param missingValue	the missing value string
+   * @param nominalThreshold	the maximum number of distinct values for turning string columns into nominal ones, 0 to turn off
+   */
+  public CommonCsvColumnStatistics(AttributeType[] types, String missingValue, int nominalThreshold) {
+    int		i;
+
+    m_Types            = types.clone();
+    m_MissingValue     = missingValue;
+    m_NominalThreshold = nominalThreshold;
+    m_NominalValues    = new ArrayList<Set<String>>();
+    m_CandidateValues  = new ArrayList<Set<String>>();
+    for (i = 0; i < m_Types.length; i++) {
+      m_NominalValues.add((m_Types[i] == AttributeType.NOMINAL) ? new HashSet<String>() : null);
+      m_CandidateValues.add(((m_NominalThreshold > 0) && (m_Types[i] == AttributeType.NUMERIC)) ? new HashSet<String>() : null);
+    }
+    m_NumRows = 0;
+  }
+
+  /**
+   * Updates the statistics with the data row.
+   *
+   * @param row		the row
+   */
+  public void add(CommonCsvRow row) {
+    Set<String>	values;
+    int		i;
+
+    m_NumRows++;
+    for (i = 0; i < m_Types.length && i < row.size(); i++) {
+      switch (m_Types[i]) {
+	case NUMERIC:
+	  if (!row.isMissing(i, m_MissingValue) && !row.isNumeric(i))
+	    m_Types[i] = AttributeType.STRING;
+	  break;
+	case NOMINAL:
+	  if (!row.isMissing(i, m_MissingValue))
+	    m_NominalValues.get(i).add(row.get(i));
+	  break;
+	default:
+	  break;
+      }
+
+      values = m_CandidateValues.get(i);
+      if ((values != null) && !row.isMissing(i, m_MissingValue)) {
+	values.add(row.get(i));
+	if (values.size() > m_NominalThreshold)
+	  m_CandidateValues.set(i, null);
+      }
+    }
+  }
+
+  /**
+   * Merges the statistics into this one.
+   *
+   * @param other	the statistics to merge
+   */
+  public void merge(CommonCsvColumnStatistics other) {
+    Set<String>	values;
+    int		i;
+
+    m_NumRows += other.m_NumRows;
+    for (i = 0; i < m_Types.length; i++) {
+      if ((m_Types[i] == AttributeType.NUMERIC) && (other.m_Types[i] == AttributeType.STRING))
+	m_Types[i] = AttributeType.STRING;
+      else if (m_Types[i] == AttributeType.NOMINAL)
+	m_NominalValues.get(i).addAll(other.m_NominalValues.get(i));
+
+      values = m_CandidateValues.get(i);
+      if (values != null) {
+	if (other.m_CandidateValues.get(i) == null)
+	  values = null;
+	else
+	  values.addAll(other.m_CandidateValues.get(i));
+	if ((values != null) && (values.size() > m_NominalThreshold))
+	  values = null;
+	m_CandidateValues.set(i, values);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the string column has few enough distinct values to turn
+   * it into a nominal one.
+   *
+   * @param index	the column
+   * @return		true if below the threshold
+   */
+  protected boolean isLowCardinality(int index) {
+    return (m_Types[index] == AttributeType.STRING)
+      && (m_CandidateValues.get(index) != null);
+  }
+
+  /**
+   * Returns the determined types of the columns.
+   *
+   * @return		the types
+   */
+  public AttributeType[] getTypes() {
+    AttributeType[]	result;
+    int			i;
+
+    result = m_Types.clone();
+    for (i = 0; i < result.length; i++) {
+      if (isLowCardinality(i))
+	result[i] = AttributeType.NOMINAL;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the labels of the nominal column.
+   *
+   * @param index	the column
+   * @return		the labels, null if not a nominal column
+   */
+  public Set<String> getNominalValues(int index) {
+    if (isLowCardinality(index))
+      return m_CandidateValues.get(index);
+    return m_NominalValues.get(index);
+  }
+
+  /**
+   * Returns the number of rows.
+   *
+   * @return		the number of rows
+   */
+  public long getNumRows() {
+    return m_NumRows;
+  }
+}
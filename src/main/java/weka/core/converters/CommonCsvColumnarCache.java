@@ -0,0 +1,495 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvColumnarCache.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary columnar cache of a parsed dataset, stored next to the CSV file.
+ * Numeric and date columns are stored as doubles, nominal and string
+ * columns as dictionary codes of 1, 2 or 4 bytes. The metadata (file size,
+ * modification time, loader options, header, dictionaries) precedes the
+ * column data, which gets read with bulk reads of the file channel.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvColumnarCache {
+
+  /** the extension of the cache files. */
+  public final static String FILE_EXTENSION = ".columns";
+
+  /** the magic number ("CCVC"). */
+  public final static int MAGIC = 0x43435643;
+
+  /** the format version. */
+  public final static int VERSION = 1;
+
+  /** the size of the preamble (magic, version, metadata length). */
+  public final static int PREAMBLE_LENGTH = 12;
+
+  /** column stored as doubles. */
+  public final static byte KIND_DOUBLE = 0;
+
+  /** column stored as dictionary codes. */
+  public final static byte KIND_CODES = 1;
+
+  /** the size of the file. */
+  protected long m_Length;
+
+  /** the modification time of the file. */
+  protected long m_LastModified;
+
+  /** the options of the loader. */
+  protected String m_Options;
+
+  /** the header (without string values). */
+  protected Instances m_Header;
+
+  /** the number of rows. */
+  protected int m_NumRows;
+
+  /** the string values per column, null for non-string columns. */
+  protected List<List<String>> m_Dictionaries;
+
+  /** how the columns are stored. */
+  protected byte[] m_Kinds;
+
+  /** the number of bytes per value. */
+  protected int[] m_Widths;
+
+  /** the column data. */
+  protected double[][] m_Columns;
+
+  /**
+   * Returns the cache file for the CSV file.
+   *
+   * @param file	the CSV file
+   * @return		the cache file
+   */
+  public static File getCacheFile(File file) {
+    return new File(file.getPath() + FILE_EXTENSION);
+  }
+
+  /**
+   * Returns the header, without any string values.
+   *
+   * @return		the header
+   */
+  public Instances getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * Returns the number of rows.
+   *
+   * @return		the number of rows
+   */
+  public int getNumRows() {
+    return m_NumRows;
+  }
+
+  /**
+   * Returns the string values of the column, in the order of their indices.
+   *
+   * @param index	the column
+   * @return		the values, null if not a string column
+   */
+  public List<String> getDictionary(int index) {
+    return m_Dictionaries.get(index);
+  }
+
+  /**
+   * Fills the array with the internal values of the row.
+   *
+   * @param row		the row
+   * @param values	the array to fill
+   */
+  public void getValues(int row, double[] values) {
+    int		i;
+
+    for (i = 0; i < m_Columns.length; i++)
+      values[i] = m_Columns[i][row];
+  }
+
+  /**
+   * Returns the number of bytes required for the codes of the values,
+   * leaving room for the missing value marker.
+   *
+   * @param numValues	the number of values
+   * @return		the width in bytes
+   */
+  protected static int determineWidth(int numValues) {
+    if (numValues < 0xFF)
+      return 1;
+    else if (numValues < 0xFFFF)
+      return 2;
+    else
+      return 4;
+  }
+
+  /**
+   * Returns the marker for missing values for the given width.
+   *
+   * @param width	the width in bytes
+   * @return		the marker
+   */
+  protected static int missingCode(int width) {
+    switch (width) {
+      case 1:
+	return 0xFF;
+      case 2:
+	return 0xFFFF;
+      default:
+	return Integer.MIN_VALUE;
+    }
+  }
+
+  /**
+   * Checks whether the column only contains missing values or valid
+   * indices of the attribute's values, i.e., whether it can be stored
+   * as codes.
+   *
+   * @param data	the dataset
+   * @param index	the column
+   * @return		true if codes can be used
+   */
+  protected static boolean canUseCodes(Instances data, int index) {
+    Attribute	att;
+    double	value;
+    int		i;
+
+    att = data.attribute(index);
+    if (!att.isNominal() && !att.isString())
+      return false;
+    for (i = 0; i < data.numInstances(); i++) {
+      value = data.instance(i).value(index);
+      if (Utils.isMissingValue(value))
+	continue;
+      if ((value < 0) || (value >= att.numValues()) || (value != (int) value))
+	return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes the string in UTF-8, prefixed by the number of bytes.
+   *
+   * @param out		the stream to write to
+   * @param s		the string to write
+   * @throws IOException	if writing fails
+   */
+  protected static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[]	bytes;
+
+    bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written with {@link #writeString(DataOutputStream, String)}.
+   *
+   * @param in		the stream to read from
+   * @return		the string
+   * @throws IOException	if reading fails
+   */
+  protected static String readString(DataInputStream in) throws IOException {
+    byte[]	bytes;
+
+    bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the buffer completely to the channel.
+   *
+   * @param channel	the channel to write to
+   * @param buffer	the buffer to write
+   * @throws IOException	if writing fails
+   */
+  protected static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  /**
+   * Fills the buffer completely from the channel.
+   *
+   * @param channel	the channel to read from
+   * @param buffer	the buffer to fill
+   * @throws IOException	if reading fails or the end of the file is reached
+   */
+  protected static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) == -1)
+	throw new EOFException("Unexpected end of cache file!");
+    }
+    buffer.flip();
+  }
+
+  /**
+   * Writes the dataset as cache file next to the CSV file.
+   *
+   * @param file	the CSV file
+   * @param options	the options of the loader
+   * @param data	the dataset loaded from the file
+   * @throws IOException	if writing fails
+   */
+  public static void write(File file, String options, Instances data) throws IOException {
+    File			cacheFile;
+    File			tmpFile;
+    ByteArrayOutputStream	bytes;
+    DataOutputStream		meta;
+    ObjectOutputStream		oos;
+    byte[]			header;
+    byte[]			kinds;
+    int[]			widths;
+    FileOutputStream		fos;
+    FileChannel			channel;
+    ByteBuffer			buffer;
+    Attribute			att;
+    double			value;
+    int				missing;
+    int				i;
+    int				n;
+
+    // header
+    bytes = new ByteArrayOutputStream();
+    oos   = new ObjectOutputStream(bytes);
+    oos.writeObject(data.stringFreeStructure());
+    oos.close();
+    header = bytes.toByteArray();
+
+    // metadata
+    kinds  = new byte[data.numAttributes()];
+    widths = new int[data.numAttributes()];
+    bytes  = new ByteArrayOutputStream();
+    meta   = new DataOutputStream(bytes);
+    meta.writeLong(file.length());
+    meta.writeLong(file.lastModified());
+    writeString(meta, options);
+    meta.writeInt(header.length);
+    meta.write(header);
+    meta.writeInt(data.numInstances());
+    meta.writeInt(data.numAttributes());
+    for (n = 0; n < data.numAttributes(); n++) {
+      att = data.attribute(n);
+      if (canUseCodes(data, n)) {
+	kinds[n]  = KIND_CODES;
+	widths[n] = determineWidth(att.numValues());
+      }
+      else {
+	kinds[n]  = KIND_DOUBLE;
+	widths[n] = 8;
+      }
+      meta.writeByte(kinds[n]);
+      meta.writeByte(widths[n]);
+      if (att.isString() && (kinds[n] == KIND_CODES)) {
+	meta.writeInt(att.numValues());
+	for (i = 0; i < att.numValues(); i++)
+	  writeString(meta, att.value(i));
+      }
+      else {
+	meta.writeInt(-1);
+      }
+    }
+    meta.close();
+
+    cacheFile = getCacheFile(file);
+    tmpFile   = new File(cacheFile.getPath() + ".tmp");
+    fos       = new FileOutputStream(tmpFile);
+    channel   = fos.getChannel();
+    try {
+      buffer = ByteBuffer.allocate(PREAMBLE_LENGTH + bytes.size());
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(bytes.size());
+      buffer.put(bytes.toByteArray());
+      writeFully(channel, buffer);
+
+      // columns
+      for (n = 0; n < data.numAttributes(); n++) {
+	buffer  = ByteBuffer.allocate(data.numInstances() * widths[n]);
+	missing = missingCode(widths[n]);
+	for (i = 0; i < data.numInstances(); i++) {
+	  value = data.instance(i).value(n);
+	  if (kinds[n] == KIND_DOUBLE) {
+	    buffer.putDouble(value);
+	    continue;
+	  }
+	  switch (widths[n]) {
+	    case 1:
+	      buffer.put((byte) (Utils.isMissingValue(value) ? missing : (int) value));
+	      break;
+	    case 2:
+	      buffer.putShort((short) (Utils.isMissingValue(value) ? missing : (int) value));
+	      break;
+	    default:
+	      buffer.putInt(Utils.isMissingValue(value) ? missing : (int) value);
+	      break;
+	  }
+	}
+	writeFully(channel, buffer);
+      }
+    }
+    finally {
+      channel.close();
+      fos.close();
+    }
+
+    if (cacheFile.exists() && !cacheFile.delete())
+      throw new IOException("Failed to replace cache file: " + cacheFile);
+    if (!tmpFile.renameTo(cacheFile))
+      throw new IOException("Failed to rename cache file: " + tmpFile);
+  }
+
+  /**
+   * Reads the cache file of the CSV file, if still valid.
+   *
+   * @param file	the CSV file
+   * @param options	the options of the loader
+   * @return		the cache, null if none, outdated or unreadable
+   */
+  public static CommonCsvColumnarCache read(File file, String options) {
+    CommonCsvColumnarCache	result;
+    File			cacheFile;
+    FileInputStream		fis;
+    FileChannel			channel;
+    ByteBuffer			buffer;
+    DataInputStream		meta;
+    ObjectInputStream		ois;
+    byte[]			header;
+    List<String>		dict;
+    int				numCols;
+    int				size;
+    int				missing;
+    int				code;
+    int				i;
+    int				n;
+
+    cacheFile = getCacheFile(file);
+    if (!cacheFile.exists())
+      return null;
+
+    try {
+      fis     = new FileInputStream(cacheFile);
+      channel = fis.getChannel();
+      try {
+	buffer = ByteBuffer.allocate(PREAMBLE_LENGTH);
+	readFully(channel, buffer);
+	if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION))
+	  return null;
+	buffer = ByteBuffer.allocate(buffer.getInt());
+	readFully(channel, buffer);
+	meta = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+
+	result = new CommonCsvColumnarCache();
+	result.m_Length       = meta.readLong();
+	result.m_LastModified = meta.readLong();
+	result.m_Options      = readString(meta);
+	if ((result.m_Length != file.length())
+	  || (result.m_LastModified != file.lastModified())
+	  || !result.m_Options.equals(options))
+	  return null;
+
+	header = new byte[meta.readInt()];
+	meta.readFully(header);
+	ois = new ObjectInputStream(new ByteArrayInputStream(header));
+	result.m_Header = (Instances) ois.readObject();
+	ois.close();
+	result.m_NumRows      = meta.readInt();
+	numCols               = meta.readInt();
+	result.m_Kinds        = new byte[numCols];
+	result.m_Widths       = new int[numCols];
+	result.m_Dictionaries = new ArrayList<List<String>>();
+	for (n = 0; n < numCols; n++) {
+	  result.m_Kinds[n]  = meta.readByte();
+	  result.m_Widths[n] = meta.readByte();
+	  size = meta.readInt();
+	  dict = null;
+	  if (size > -1) {
+	    dict = new ArrayList<String>(size);
+	    for (i = 0; i < size; i++)
+	      dict.add(readString(meta));
+	  }
+	  result.m_Dictionaries.add(dict);
+	}
+
+	// columns
+	result.m_Columns = new double[numCols][];
+	for (n = 0; n < numCols; n++) {
+	  buffer = ByteBuffer.allocate(result.m_NumRows * result.m_Widths[n]);
+	  readFully(channel, buffer);
+	  result.m_Columns[n] = new double[result.m_NumRows];
+	  if (result.m_Kinds[n] == KIND_DOUBLE) {
+	    buffer.asDoubleBuffer().get(result.m_Columns[n]);
+	    continue;
+	  }
+	  missing = missingCode(result.m_Widths[n]);
+	  for (i = 0; i < result.m_NumRows; i++) {
+	    switch (result.m_Widths[n]) {
+	      case 1:
+		code = buffer.get() & 0xFF;
+		break;
+	      case 2:
+		code = buffer.getShort() & 0xFFFF;
+		break;
+	      default:
+		code = buffer.getInt();
+		break;
+	    }
+	    result.m_Columns[n][i] = (code == missing) ? Utils.missingValue() : code;
+	  }
+	}
+      }
+      finally {
+	channel.close();
+	fis.close();
+      }
+    }
+    catch (Exception e) {
+      return null;
+    }
+
+    return result;
+  }
+}
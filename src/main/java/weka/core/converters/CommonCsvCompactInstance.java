@@ -0,0 +1,728 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvCompactInstance.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.AbstractInstance;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+import java.io.Serializable;
+
+/**
+ * Dense instance that stores each value at the width required by its
+ * column: nominal values as byte/short codes, string indices and
+ * integer-valued numeric values as int, other numeric values as double
+ * (or float, if requested). The column widths are defined by a
+ * {@link Layout} that is shared between instances. Values that do not fit
+ * the width of their column switch the instance to a layout with that
+ * column widened to double.
+ * <br>
+ * Like {@link DenseInstance}, copies share the values until they get
+ * modified.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvCompactInstance
+  extends AbstractInstance {
+
+  private static final long serialVersionUID = -2319518524432938652L;
+
+  /** the layout of the values. */
+  protected Layout m_Layout;
+
+  /** the packed values. */
+  protected byte[] m_Values;
+
+  /**
+   * Initializes the instance with the values.
+   *
+   * @param layout	the preferred layout
+   * @param weight	the weight of the instance
+   * @param values	the values
+   */
+  public CommonCsvCompactInstance(Layout layout, double weight, double[] values) {
+    m_Layout  = layout.fit(values);
+    m_Values  = m_Layout.encode(values);
+    m_Weight  = weight;
+    m_Dataset = null;
+  }
+
+  /**
+   * Initializes the instance as a shallow copy of the other one.
+   *
+   * @param instance	the instance to copy
+   */
+  public CommonCsvCompactInstance(CommonCsvCompactInstance instance) {
+    m_Layout  = instance.m_Layout;
+    m_Values  = instance.m_Values;
+    m_Weight  = instance.m_Weight;
+    m_Dataset = instance.m_Dataset;
+  }
+
+  /**
+   * Returns the layout of the values.
+   *
+   * @return		the layout
+   */
+  public Layout getLayout() {
+    return m_Layout;
+  }
+
+  /**
+   * Produces a shallow copy of this instance.
+   *
+   * @return		the copy
+   */
+  @Override
+  public Object copy() {
+    return new CommonCsvCompactInstance(this);
+  }
+
+  /**
+   * Copies the instance but fills in the given values.
+   *
+   * @param values	the values to use
+   * @return		the copy
+   */
+  @Override
+  public Instance copy(double[] values) {
+    CommonCsvCompactInstance	result;
+
+    result           = new CommonCsvCompactInstance(m_Layout, m_Weight, values);
+    result.m_Dataset = m_Dataset;
+
+    return result;
+  }
+
+  /**
+   * Returns the index of the attribute stored at the given position.
+   *
+   * @param position	the position
+   * @return		the index of the attribute
+   */
+  @Override
+  public int index(int position) {
+    return position;
+  }
+
+  /**
+   * Merges this instance with the given instance and returns the result.
+   * The dataset is set to null.
+   *
+   * @param inst	the instance to be merged with this one
+   * @return		the merged instance
+   */
+  @Override
+  public Instance mergeInstance(Instance inst) {
+    double[]	values;
+    int		m;
+    int		i;
+
+    values = new double[numAttributes() + inst.numAttributes()];
+    m      = 0;
+    for (i = 0; i < numAttributes(); i++)
+      values[m++] = value(i);
+    for (i = 0; i < inst.numAttributes(); i++)
+      values[m++] = inst.value(i);
+
+    return new DenseInstance(1.0, values);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return		the number of attributes
+   */
+  @Override
+  public int numAttributes() {
+    return m_Layout.numAttributes();
+  }
+
+  /**
+   * Returns the number of values present, i.e., the number of attributes.
+   *
+   * @return		the number of values
+   */
+  @Override
+  public int numValues() {
+    return m_Layout.numAttributes();
+  }
+
+  /**
+   * Replaces all missing values in the instance with the values contained
+   * in the given array.
+   *
+   * @param array	containing the means and modes
+   * @throws IllegalArgumentException	if numbers of attributes are unequal
+   */
+  @Override
+  public void replaceMissingValues(double[] array) {
+    double[]	values;
+    int		i;
+
+    if ((array == null) || (array.length != numAttributes()))
+      throw new IllegalArgumentException("Unequal number of attributes!");
+
+    values = toDoubleArray();
+    for (i = 0; i < values.length; i++) {
+      if (Utils.isMissingValue(values[i]))
+	values[i] = array[i];
+    }
+    m_Layout = m_Layout.fit(values);
+    m_Values = m_Layout.encode(values);
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value.
+   *
+   * @param attIndex	the attribute's index
+   * @param value	the new attribute value
+   */
+  @Override
+  public void setValue(int attIndex, double value) {
+    double[]	values;
+
+    if (m_Layout.fits(attIndex, value)) {
+      m_Values = m_Values.clone();
+      m_Layout.set(m_Values, attIndex, value);
+    }
+    else {
+      values           = toDoubleArray();
+      values[attIndex] = value;
+      m_Layout         = m_Layout.widen(attIndex);
+      m_Values         = m_Layout.encode(values);
+    }
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value.
+   *
+   * @param indexOfIndex	the index of the attribute's index
+   * @param value		the new attribute value
+   */
+  @Override
+  public void setValueSparse(int indexOfIndex, double value) {
+    setValue(indexOfIndex, value);
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return		the values
+   */
+  @Override
+  public double[] toDoubleArray() {
+    double[]	result;
+    int		i;
+
+    result = new double[numAttributes()];
+    for (i = 0; i < result.length; i++)
+      result[i] = m_Layout.get(m_Values, i);
+
+    return result;
+  }
+
+  /**
+   * Returns the description of one instance without the weight appended.
+   *
+   * @return		the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight() {
+    return toStringNoWeight(AbstractInstance.s_numericAfterDecimalPoint);
+  }
+
+  /**
+   * Returns the description of one instance without the weight appended.
+   *
+   * @param afterDecimalPoint	maximum number of digits after the decimal
+   * 				point for numeric values
+   * @return			the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight(int afterDecimalPoint) {
+    StringBuffer	text;
+    int		i;
+
+    text = new StringBuffer();
+    for (i = 0; i < numAttributes(); i++) {
+      if (i > 0)
+	text.append(",");
+      text.append(toString(i, afterDecimalPoint));
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format.
+   *
+   * @param attIndex	the attribute's index
+   * @return		the specified value as a double
+   */
+  @Override
+  public double value(int attIndex) {
+    return m_Layout.get(m_Values, attIndex);
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format, given an
+   * index in the sparse representation (same as the attribute index).
+   *
+   * @param indexOfIndex	the index of the attribute's index
+   * @return			the specified value as a double
+   */
+  @Override
+  public double valueSparse(int indexOfIndex) {
+    return m_Layout.get(m_Values, indexOfIndex);
+  }
+
+  /**
+   * Deletes an attribute at the given position (0 to numAttributes() - 1).
+   *
+   * @param position	the attribute's position
+   */
+  @Override
+  protected void forceDeleteAttributeAt(int position) {
+    double[]	values;
+    double[]	newValues;
+
+    values    = toDoubleArray();
+    newValues = new double[values.length - 1];
+    System.arraycopy(values, 0, newValues, 0, position);
+    System.arraycopy(values, position + 1, newValues, position, values.length - position - 1);
+    m_Layout = m_Layout.delete(position);
+    m_Values = m_Layout.encode(newValues);
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to numAttributes()) and
+   * sets its value to be missing.
+   *
+   * @param position	the attribute's position
+   */
+  @Override
+  protected void forceInsertAttributeAt(int position) {
+    double[]	values;
+    double[]	newValues;
+
+    values    = toDoubleArray();
+    newValues = new double[values.length + 1];
+    System.arraycopy(values, 0, newValues, 0, position);
+    newValues[position] = Utils.missingValue();
+    System.arraycopy(values, position, newValues, position + 1, values.length - position);
+    m_Layout = m_Layout.insert(position);
+    m_Values = m_Layout.encode(newValues);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1 $");
+  }
+
+  /**
+   * The storage widths of the columns and their offsets in the packed
+   * values.
+   */
+  public static class Layout
+    implements Serializable {
+
+    private static final long serialVersionUID = 4405236385717826105L;
+
+    /** unsigned byte, 255 = missing. */
+    public final static byte BYTE = 0;
+
+    /** unsigned short, 65535 = missing. */
+    public final static byte SHORT = 1;
+
+    /** int, Integer.MIN_VALUE = missing. */
+    public final static byte INT = 2;
+
+    /** float, NaN = missing. */
+    public final static byte FLOAT = 3;
+
+    /** double, NaN = missing. */
+    public final static byte DOUBLE = 4;
+
+    /** the number of bytes per type. */
+    protected final static int[] SIZES = {1, 2, 4, 4, 8};
+
+    /** the types of the columns. */
+    protected byte[] m_Types;
+
+    /** the offsets of the columns. */
+    protected int[] m_Offsets;
+
+    /** the number of bytes of all columns. */
+    protected int m_Size;
+
+    /** the layouts with a single column widened to double (lazily created). */
+    protected transient Layout[] m_Widened;
+
+    /**
+     * Initializes the layout.
+     *
+     * @param types	the types of the columns
+     */
+    public Layout(byte[] types) {
+      int	i;
+
+      m_Types   = types.clone();
+      m_Offsets = new int[types.length];
+      m_Size    = 0;
+      for (i = 0; i < types.length; i++) {
+	m_Offsets[i] = m_Size;
+	m_Size      += SIZES[types[i]];
+      }
+    }
+
+    /**
+     * Creates the layout for the dataset.
+     *
+     * @param header	the dataset structure
+     * @param integers	whether numeric columns only contain integer values,
+     * 			can be null
+     * @param useFloat	whether to store non-integer numeric values as float
+     * @return		the layout
+     */
+    public static Layout create(Instances header, boolean[] integers, boolean useFloat) {
+      byte[]	types;
+      int	i;
+      Attribute	att;
+
+      types = new byte[header.numAttributes()];
+      for (i = 0; i < types.length; i++) {
+	att = header.attribute(i);
+	if (att.isNominal()) {
+	  if (att.numValues() < 255)
+	    types[i] = BYTE;
+	  else if (att.numValues() < 65535)
+	    types[i] = SHORT;
+	  else
+	    types[i] = INT;
+	}
+	else if (att.isString()) {
+	  types[i] = INT;
+	}
+	else if ((att.type() == Attribute.NUMERIC) && (integers != null) && (i < integers.length) && integers[i]) {
+	  types[i] = INT;
+	}
+	else if ((att.type() == Attribute.NUMERIC) && useFloat) {
+	  types[i] = FLOAT;
+	}
+	else {
+	  types[i] = DOUBLE;
+	}
+      }
+
+      return new Layout(types);
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return		the number of columns
+     */
+    public int numAttributes() {
+      return m_Types.length;
+    }
+
+    /**
+     * Returns the type of the column.
+     *
+     * @param index	the column
+     * @return		the type
+     */
+    public byte getType(int index) {
+      return m_Types[index];
+    }
+
+    /**
+     * Returns the number of bytes required for all columns.
+     *
+     * @return		the number of bytes
+     */
+    public int getSize() {
+      return m_Size;
+    }
+
+    /**
+     * Checks whether the value can be stored in the column without loss.
+     *
+     * @param index	the column
+     * @param value	the value
+     * @return		true if the value fits
+     */
+    public boolean fits(int index, double value) {
+      if (Double.isNaN(value))
+	return true;
+
+      switch (m_Types[index]) {
+	case BYTE:
+	  return (value >= 0) && (value < 255) && (value == (int) value);
+	case SHORT:
+	  return (value >= 0) && (value < 65535) && (value == (int) value);
+	case INT:
+	  return (value == (int) value) && ((int) value != Integer.MIN_VALUE)
+	    && ((value != 0) || (Double.doubleToRawLongBits(value) == 0L));
+	case FLOAT:
+	  return Double.isInfinite(value) || (Math.abs(value) <= Float.MAX_VALUE);
+	default:
+	  return true;
+      }
+    }
+
+    /**
+     * Returns the layout that can store all the values, i.e., this layout
+     * or one with the offending columns widened to double.
+     *
+     * @param values	the values to store
+     * @return		the layout
+     */
+    public Layout fit(double[] values) {
+      Layout	result;
+      int	i;
+
+      result = this;
+      for (i = 0; i < values.length; i++) {
+	if (!result.fits(i, values[i]))
+	  result = result.widen(i);
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns the layout with the specified column stored as double.
+     *
+     * @param index	the column to widen
+     * @return		the layout
+     */
+    public synchronized Layout widen(int index) {
+      byte[]	types;
+
+      if (m_Types[index] == DOUBLE)
+	return this;
+      if (m_Widened == null)
+	m_Widened = new Layout[m_Types.length];
+      if (m_Widened[index] == null) {
+	types            = m_Types.clone();
+	types[index]     = DOUBLE;
+	m_Widened[index] = new Layout(types);
+      }
+
+      return m_Widened[index];
+    }
+
+    /**
+     * Returns the layout without the specified column.
+     *
+     * @param index	the column to remove
+     * @return		the layout
+     */
+    public Layout delete(int index) {
+      byte[]	types;
+
+      types = new byte[m_Types.length - 1];
+      System.arraycopy(m_Types, 0, types, 0, index);
+      System.arraycopy(m_Types, index + 1, types, index, m_Types.length - index - 1);
+
+      return new Layout(types);
+    }
+
+    /**
+     * Returns the layout with a double column inserted at the position.
+     *
+     * @param index	the position of the new column
+     * @return		the layout
+     */
+    public Layout insert(int index) {
+      byte[]	types;
+
+      types = new byte[m_Types.length + 1];
+      System.arraycopy(m_Types, 0, types, 0, index);
+      types[index] = DOUBLE;
+      System.arraycopy(m_Types, index, types, index + 1, m_Types.length - index);
+
+      return new Layout(types);
+    }
+
+    /**
+     * Packs the values, which must fit the layout.
+     *
+     * @param values	the values to pack
+     * @return		the packed values
+     */
+    public byte[] encode(double[] values) {
+      byte[]	result;
+      int	i;
+
+      result = new byte[m_Size];
+      for (i = 0; i < m_Types.length; i++)
+	set(result, i, (i < values.length) ? values[i] : Utils.missingValue());
+
+      return result;
+    }
+
+    /**
+     * Stores the value, which must fit the column.
+     *
+     * @param data	the packed values
+     * @param index	the column
+     * @param value	the value to store
+     */
+    public void set(byte[] data, int index, double value) {
+      int	offset;
+      boolean	missing;
+
+      offset  = m_Offsets[index];
+      missing = Double.isNaN(value);
+      switch (m_Types[index]) {
+	case BYTE:
+	  data[offset] = (byte) (missing ? 255 : (int) value);
+	  break;
+	case SHORT:
+	  putShort(data, offset, missing ? 65535 : (int) value);
+	  break;
+	case INT:
+	  putInt(data, offset, missing ? Integer.MIN_VALUE : (int) value);
+	  break;
+	case FLOAT:
+	  putInt(data, offset, Float.floatToRawIntBits(missing ? Float.NaN : (float) value));
+	  break;
+	default:
+	  putLong(data, offset, Double.doubleToRawLongBits(value));
+      }
+    }
+
+    /**
+     * Returns the value of the column.
+     *
+     * @param data	the packed values
+     * @param index	the column
+     * @return		the value, NaN if missing
+     */
+    public double get(byte[] data, int index) {
+      int	offset;
+      int	value;
+
+      offset = m_Offsets[index];
+      switch (m_Types[index]) {
+	case BYTE:
+	  value = data[offset] & 0xFF;
+	  return (value == 255) ? Utils.missingValue() : value;
+	case SHORT:
+	  value = getShort(data, offset);
+	  return (value == 65535) ? Utils.missingValue() : value;
+	case INT:
+	  value = getInt(data, offset);
+	  return (value == Integer.MIN_VALUE) ? Utils.missingValue() : value;
+	case FLOAT:
+	  return Float.intBitsToFloat(getInt(data, offset));
+	default:
+	  return Double.longBitsToDouble(getLong(data, offset));
+      }
+    }
+
+    /**
+     * Stores an unsigned short.
+     *
+     * @param data	the packed values
+     * @param offset	the offset
+     * @param value	the value
+     */
+    protected static void putShort(byte[] data, int offset, int value) {
+      data[offset]     = (byte) (value >>> 8);
+      data[offset + 1] = (byte) value;
+    }
+
+    /**
+     * Reads an unsigned short.
+     *
+     * @param data	the packed values
+     * @param offset	the offset
+     * @return		the value
+     */
+    protected static int getShort(byte[] data, int offset) {
+      return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Stores an int.
+     *
+     * @param data	the packed values
+     * @param offset	the offset
+     * @param value	the value
+     */
+    protected static void putInt(byte[] data, int offset, int value) {
+      data[offset]     = (byte) (value >>> 24);
+      data[offset + 1] = (byte) (value >>> 16);
+      data[offset + 2] = (byte) (value >>> 8);
+      data[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @param data	the packed values
+     * @param offset	the offset
+     * @return		the value
+     */
+    protected static int getInt(byte[] data, int offset) {
+      return ((data[offset] & 0xFF) << 24)
+	| ((data[offset + 1] & 0xFF) << 16)
+	| ((data[offset + 2] & 0xFF) << 8)
+	| (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Stores a long.
+     *
+     * @param data	the packed values
+     * @param offset	the offset
+     * @param value	the value
+     */
+    protected static void putLong(byte[] data, int offset, long value) {
+      putInt(data, offset, (int) (value >>> 32));
+      putInt(data, offset + 4, (int) value);
+    }
+
+    /**
+     * Reads a long.
+     *
+     * @param data	the packed values
+     * @param offset	the offset
+     * @return		the value
+     */
+    protected static long getLong(byte[] data, int offset) {
+      return ((long) getInt(data, offset) << 32) | (getInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvEngines.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.Tag;
+
+/**
+ * The available parsing engines.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvEngines {
+
+  /** the Apache Commons CSV parser. */
+  public static final int COMMONS_CSV = 0;
+
+  /** the built-in tokenizer working on a reusable char buffer. */
+  public static final int NATIVE = 1;
+
+  public static final Tag[] TAGS_ENGINES = {
+    new Tag(COMMONS_CSV, "COMMONS_CSV", "Apache Commons CSV"),
+    new Tag(NATIVE, "NATIVE", "Native tokenizer"),
+  };
+}
@@ -0,0 +1,46 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvInstanceTypes.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.Tag;
+
+/**
+ * The types of instances that can be generated in batch mode.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvInstanceTypes {
+
+  /** weka.core.DenseInstance. */
+  public static final int DENSE = 0;
+
+  /** CommonCsvCompactInstance, storing columns at their natural width. */
+  public static final int COMPACT = 1;
+
+  /** CommonCsvCompactInstance, storing non-integer numeric columns as float. */
+  public static final int COMPACT_FLOAT = 2;
+
+  public static final Tag[] TAGS_INSTANCE_TYPES = {
+    new Tag(DENSE, "DENSE", "Dense instances"),
+    new Tag(COMPACT, "COMPACT", "Compact instances"),
+    new Tag(COMPACT_FLOAT, "COMPACT_FLOAT", "Compact instances (float precision)"),
+  };
+}
@@ -0,0 +1,82 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvInstances.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+
+/**
+ * Dataset that allows the loader to append rows without the defensive copy
+ * that {@link Instances#add(Instance)} makes, as the loader creates each
+ * row solely for this dataset.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvInstances
+  extends Instances {
+
+  private static final long serialVersionUID = 8245329768165384227L;
+
+  /**
+   * Creates an empty set of instances.
+   *
+   * @param name	the name of the relation
+   * @param attInfo	the attribute information
+   * @param capacity	the capacity of the set
+   */
+  public CommonCsvInstances(String name, ArrayList<Attribute> attInfo, int capacity) {
+    super(name, attInfo, capacity);
+  }
+
+  /**
+   * Creates an empty set of instances, sharing the attributes of the
+   * dataset.
+   *
+   * @param dataset	the dataset to get the header from
+   * @param capacity	the capacity of the set
+   */
+  public CommonCsvInstances(Instances dataset, int capacity) {
+    super(dataset, capacity);
+  }
+
+  /**
+   * Increases the capacity of the set, if necessary.
+   *
+   * @param capacity	the minimum capacity
+   */
+  public void ensureCapacity(int capacity) {
+    m_Instances.ensureCapacity(capacity);
+  }
+
+  /**
+   * Adds the instance without copying it. The instance must not be
+   * referenced elsewhere, as its dataset gets set to this one.
+   *
+   * @param instance	the instance to add
+   */
+  public void addDirectly(Instance instance) {
+    instance.setDataset(this);
+    m_Instances.add(instance);
+  }
+}
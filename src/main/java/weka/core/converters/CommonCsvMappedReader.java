@@ -0,0 +1,184 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvMappedReader.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reader that decodes a (range of a) file straight from memory-mapped
+ * windows of the file. The windows get remapped while reading, which
+ * allows files larger than 2GB. Characters that span window boundaries are
+ * handled by starting the next window at the first undecoded byte.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvMappedReader
+  extends Reader {
+
+  /** the default window size in bytes. */
+  public final static int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  /** the file. */
+  protected RandomAccessFile m_File;
+
+  /** the channel of the file. */
+  protected FileChannel m_Channel;
+
+  /** the decoder. */
+  protected CharsetDecoder m_Decoder;
+
+  /** the window size. */
+  protected int m_WindowSize;
+
+  /** the end of the range (exclusive). */
+  protected long m_End;
+
+  /** the file offset of the current window. */
+  protected long m_WindowStart;
+
+  /** the current window. */
+  protected MappedByteBuffer m_Window;
+
+  /** whether the current window needs replacing. */
+  protected boolean m_Remap;
+
+  /** whether the end has been reached and the decoder flushed. */
+  protected boolean m_EndOfInput;
+
+  /**
+   * Initializes the reader for the whole file.
+   *
+   * @param file	the file to read
+   * @param charset	the encoding of the file
+   * @throws IOException	if opening fails
+   */
+  public CommonCsvMappedReader(File file, Charset charset) throws IOException {
+    this(file, 0, file.length(), charset, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Initializes the reader for a range of the file.
+   *
+   * @param file	the file to read
+   * @param start	the first byte (inclusive)
+   * @param end		the last byte (exclusive)
+   * @param charset	the encoding of the file
+   * @param windowSize	the maximum number of bytes to map at a time
+   * @throws IOException	if opening fails
+   */
+  public CommonCsvMappedReader(File file, long start, long end, Charset charset, int windowSize) throws IOException {
+    m_File        = new RandomAccessFile(file, "r");
+    m_Channel     = m_File.getChannel();
+    m_WindowStart = start;
+    m_End         = Math.min(end, m_Channel.size());
+    m_WindowSize  = Math.max(16, windowSize);
+    m_Remap       = true;
+    m_Decoder     = charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * Maps the next window, starting at the first byte not yet decoded.
+   */
+  protected void remap() throws IOException {
+    long	pos;
+
+    pos = m_WindowStart;
+    if (m_Window != null)
+      pos += m_Window.position();
+    m_WindowStart = pos;
+    m_Window      = m_Channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(m_WindowSize, m_End - pos));
+    m_Remap       = false;
+  }
+
+  /**
+   * Reads characters into a portion of an array.
+   *
+   * @param cbuf	the destination buffer
+   * @param off		the offset at which to start storing characters
+   * @param len		the maximum number of characters to read
+   * @return		the number of characters read, -1 if end of input
+   * @throws IOException	if reading fails
+   */
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    CharBuffer	out;
+    CoderResult	result;
+    boolean	last;
+
+    if (m_Channel == null)
+      throw new IOException("Reader closed");
+    if (len == 0)
+      return 0;
+    if (m_EndOfInput)
+      return -1;
+
+    out = CharBuffer.wrap(cbuf, off, len);
+    while (out.position() == off) {
+      if (m_Remap)
+        remap();
+      last   = (m_WindowStart + m_Window.limit() == m_End);
+      result = m_Decoder.decode(m_Window, out, last);
+      if (result.isError())
+        result.throwException();
+      if (result.isOverflow())
+        break;
+      // underflow: either all bytes decoded or incomplete character at end of window
+      if (last) {
+        m_Decoder.flush(out);
+        m_EndOfInput = true;
+        break;
+      }
+      m_Remap = true;
+    }
+
+    if (out.position() == off)
+      return -1;
+    return out.position() - off;
+  }
+
+  /**
+   * Closes the file. The mapped windows get released by the garbage
+   * collector.
+   *
+   * @throws IOException	if closing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (m_Channel != null) {
+      m_Channel.close();
+      m_File.close();
+      m_Channel = null;
+      m_Window  = null;
+    }
+  }
+}
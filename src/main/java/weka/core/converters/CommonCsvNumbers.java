@@ -0,0 +1,533 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvNumbers.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.math.BigInteger;
+
+/**
+ * Helper methods for recognizing and parsing numbers without the overhead of
+ * exceptions and strings. The accepted grammar is the one of
+ * {@link Double#parseDouble(String)}: surrounding whitespace, optional sign,
+ * NaN/Infinity, decimal numbers with optional exponent and hexadecimal
+ * numbers with binary exponent, each with an optional f/F/d/D suffix.
+ * <br>
+ * Decimal numbers are parsed with the Clinger fast path and the
+ * Eisel-Lemire algorithm (see "Number Parsing at a Gigabyte per Second",
+ * D. Lemire, 2021). Whenever these cannot guarantee the correctly rounded
+ * result, as well as for all other forms, {@link Double#parseDouble(String)}
+ * is used.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvNumbers {
+
+  /** the smallest decimal exponent with a non-zero result. */
+  protected final static int SMALLEST_POWER_OF_TEN = -342;
+
+  /** the largest decimal exponent with a finite result. */
+  protected final static int LARGEST_POWER_OF_TEN = 308;
+
+  /** the maximum number of significant digits that fit into a long. */
+  protected final static int MAX_DIGITS = 19;
+
+  /** exact powers of ten for the fast path. */
+  protected final static double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  /** 128-bit approximations of the powers of five (high/low pairs). */
+  protected final static long[] POWERS_OF_FIVE = computePowersOfFive();
+
+  /**
+   * Checks whether the string can be parsed by
+   * {@link Double#parseDouble(String)}.
+   *
+   * @param s		the string to check
+   * @return		true if numeric
+   */
+  public static boolean isNumeric(CharSequence s) {
+    if (s == null)
+      return false;
+    return isNumeric(s, 0, s.length());
+  }
+
+  /**
+   * Checks whether the range of characters can be parsed by
+   * {@link Double#parseDouble(String)}.
+   *
+   * @param s		the characters to check
+   * @param start	the first character (inclusive)
+   * @param end		the last character (exclusive)
+   * @return		true if numeric
+   */
+  public static boolean isNumeric(CharSequence s, int start, int end) {
+    int		i;
+    char	c;
+    int		digits;
+
+    // same as String.trim()
+    while ((start < end) && (s.charAt(start) <= ' '))
+      start++;
+    while ((end > start) && (s.charAt(end - 1) <= ' '))
+      end--;
+    if (start == end)
+      return false;
+
+    i = start;
+    c = s.charAt(i);
+    if ((c == '+') || (c == '-')) {
+      i++;
+      if (i == end)
+	return false;
+      c = s.charAt(i);
+    }
+
+    if (c == 'N')
+      return matches(s, i, end, "NaN");
+    if (c == 'I')
+      return matches(s, i, end, "Infinity");
+    if ((c == '0') && (i + 1 < end) && ((s.charAt(i + 1) == 'x') || (s.charAt(i + 1) == 'X')))
+      return isHex(s, i + 2, end);
+
+    // mantissa
+    digits = 0;
+    while ((i < end) && isDigit(s.charAt(i))) {
+      i++;
+      digits++;
+    }
+    if ((i < end) && (s.charAt(i) == '.')) {
+      i++;
+      while ((i < end) && isDigit(s.charAt(i))) {
+	i++;
+	digits++;
+      }
+    }
+    if (digits == 0)
+      return false;
+
+    // exponent
+    if ((i < end) && ((s.charAt(i) == 'e') || (s.charAt(i) == 'E'))) {
+      i++;
+      i = skipSign(s, i, end);
+      digits = 0;
+      while ((i < end) && isDigit(s.charAt(i))) {
+	i++;
+	digits++;
+      }
+      if (digits == 0)
+	return false;
+    }
+
+    return isEndOrSuffix(s, i, end);
+  }
+
+  /**
+   * Computes the normalized 128-bit approximations of 5^q for the range
+   * of decimal exponents, truncated for positive and rounded up for
+   * negative exponents.
+   *
+   * @return		the table, high and low 64 bits for each exponent
+   */
+  protected static long[] computePowersOfFive() {
+    long[]	result;
+    int		q;
+    BigInteger	power5;
+    BigInteger	c;
+    int		z;
+
+    result = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+    for (q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+      if (q < 0) {
+	power5 = BigInteger.valueOf(5).pow(-q);
+	z      = power5.subtract(BigInteger.ONE).bitLength();
+	if (q >= -27)
+	  c = BigInteger.ONE.shiftLeft(z + 127).divide(power5).add(BigInteger.ONE);
+	else
+	  c = BigInteger.ONE.shiftLeft(2 * z + 128).divide(power5).add(BigInteger.ONE);
+      }
+      else {
+	c = BigInteger.valueOf(5).pow(q);
+      }
+      // normalize to 128 bits
+      if (c.bitLength() > 128)
+	c = c.shiftRight(c.bitLength() - 128);
+      else
+	c = c.shiftLeft(128 - c.bitLength());
+      result[2 * (q - SMALLEST_POWER_OF_TEN)]     = c.shiftRight(64).longValue();
+      result[2 * (q - SMALLEST_POWER_OF_TEN) + 1] = c.longValue();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the high 64 bits of the unsigned 128-bit product.
+   *
+   * @param a		the first factor (unsigned)
+   * @param b		the second factor (unsigned)
+   * @return		the high bits of the product
+   */
+  protected static long multiplyHigh(long a, long b) {
+    long	aLo;
+    long	aHi;
+    long	bLo;
+    long	bHi;
+    long	loLo;
+    long	hiLo;
+    long	loHi;
+    long	cross;
+
+    aLo   = a & 0xFFFFFFFFL;
+    aHi   = a >>> 32;
+    bLo   = b & 0xFFFFFFFFL;
+    bHi   = b >>> 32;
+    loLo  = aLo * bLo;
+    hiLo  = aHi * bLo;
+    loHi  = aLo * bHi;
+    cross = (loLo >>> 32) + (hiLo & 0xFFFFFFFFL) + (loHi & 0xFFFFFFFFL);
+
+    return aHi * bHi + (hiLo >>> 32) + (loHi >>> 32) + (cross >>> 32);
+  }
+
+  /**
+   * Computes the bits of the double closest to w * 10^q with the
+   * Eisel-Lemire algorithm.
+   *
+   * @param q		the decimal exponent
+   * @param w		the decimal significand (unsigned, non-zero)
+   * @return		the bits of the (positive) double, -1 if the result
+   * 			cannot be determined reliably
+   */
+  protected static long eiselLemire(int q, long w) {
+    int		lz;
+    int		index;
+    long	hi;
+    long	lo;
+    long	hi2;
+    int		upperbit;
+    int		shift;
+    long	mantissa;
+    int		power2;
+
+    if (q < SMALLEST_POWER_OF_TEN)
+      return 0L;
+    if (q > LARGEST_POWER_OF_TEN)
+      return Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+
+    lz    = Long.numberOfLeadingZeros(w);
+    w   <<= lz;
+    index = 2 * (q - SMALLEST_POWER_OF_TEN);
+    hi    = multiplyHigh(w, POWERS_OF_FIVE[index]);
+    lo    = w * POWERS_OF_FIVE[index];
+    // not enough precision in the upper bits, use the lower half of 5^q
+    if ((hi & 0x1FF) == 0x1FF) {
+      hi2 = multiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+      lo += hi2;
+      if (Long.compareUnsigned(hi2, lo) > 0)
+	hi++;
+      if ((lo == -1L) && ((q < -27) || (q > 55)))
+	return -1L;
+    }
+
+    upperbit = (int) (hi >>> 63);
+    shift    = upperbit + 64 - 52 - 3;
+    mantissa = hi >>> shift;
+    power2   = (((152170 + 65536) * q) >> 16) + 63 + upperbit - lz + 1023;
+
+    // subnormal
+    if (power2 <= 0) {
+      if (-power2 + 1 >= 64)
+	return 0L;
+      mantissa >>>= -power2 + 1;
+      mantissa += mantissa & 1;
+      mantissa >>>= 1;
+      power2 = (mantissa < (1L << 52)) ? 0 : 1;
+      return ((long) power2 << 52) | (mantissa & ~(1L << 52));
+    }
+
+    // exactly halfway between two doubles: round to even
+    if (((lo == 0) || (lo == 1)) && (q >= -4) && (q <= 23) && ((mantissa & 3) == 1)) {
+      if ((mantissa << shift) == hi)
+	mantissa &= ~1L;
+    }
+    mantissa += mantissa & 1;
+    mantissa >>>= 1;
+    if (mantissa >= (2L << 52)) {
+      mantissa = 1L << 52;
+      power2++;
+    }
+    mantissa &= ~(1L << 52);
+    if (power2 >= 0x7FF)
+      return Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+
+    return ((long) power2 << 52) | mantissa;
+  }
+
+  /**
+   * Parses the range of characters like {@link Double#parseDouble(String)},
+   * but without creating a string for plain decimal numbers.
+   *
+   * @param chars	the characters to parse
+   * @param start	the first character (inclusive)
+   * @param end		the last character (exclusive)
+   * @return		the parsed value
+   * @throws NumberFormatException	if not a number
+   */
+  public static double parseDouble(char[] chars, int start, int end) {
+    int		i;
+    int		first;
+    int		last;
+    boolean	negative;
+    long	w;
+    int		digits;
+    int		q;
+    int		exp;
+    boolean	expNegative;
+    boolean	truncated;
+    boolean	any;
+    char	c;
+    long	bits;
+
+    first = start;
+    last  = end;
+    while ((first < last) && (chars[first] <= ' '))
+      first++;
+    while ((last > first) && (chars[last - 1] <= ' '))
+      last--;
+
+    i        = first;
+    negative = false;
+    if ((i < last) && ((chars[i] == '-') || (chars[i] == '+'))) {
+      negative = (chars[i] == '-');
+      i++;
+    }
+
+    // significand
+    w         = 0;
+    digits    = 0;
+    q         = 0;
+    truncated = false;
+    any       = false;
+    while ((i < last) && ((c = chars[i]) >= '0') && (c <= '9')) {
+      any = true;
+      if (digits < MAX_DIGITS) {
+	if ((digits > 0) || (c != '0')) {
+	  w = w * 10 + (c - '0');
+	  digits++;
+	}
+      }
+      else {
+	truncated |= (c != '0');
+	q++;
+      }
+      i++;
+    }
+    if ((i < last) && (chars[i] == '.')) {
+      i++;
+      while ((i < last) && ((c = chars[i]) >= '0') && (c <= '9')) {
+	any = true;
+	if (digits < MAX_DIGITS) {
+	  if ((digits > 0) || (c != '0')) {
+	    w = w * 10 + (c - '0');
+	    digits++;
+	  }
+	  q--;
+	}
+	else {
+	  truncated |= (c != '0');
+	}
+	i++;
+      }
+    }
+    if (!any)
+      return Double.parseDouble(new String(chars, start, end - start));
+
+    // exponent
+    if ((i < last) && ((chars[i] == 'e') || (chars[i] == 'E'))) {
+      i++;
+      expNegative = false;
+      if ((i < last) && ((chars[i] == '-') || (chars[i] == '+'))) {
+	expNegative = (chars[i] == '-');
+	i++;
+      }
+      exp = 0;
+      any = false;
+      while ((i < last) && ((c = chars[i]) >= '0') && (c <= '9')) {
+	any = true;
+	if (exp < 100000)
+	  exp = exp * 10 + (c - '0');
+	i++;
+      }
+      if (!any)
+	return Double.parseDouble(new String(chars, start, end - start));
+      q += expNegative ? -exp : exp;
+    }
+
+    // optional suffix
+    if ((i < last) && (i == last - 1)) {
+      c = chars[i];
+      if ((c == 'f') || (c == 'F') || (c == 'd') || (c == 'D'))
+	i++;
+    }
+    if (i != last)
+      return Double.parseDouble(new String(chars, start, end - start));
+
+    if (w == 0)
+      return negative ? -0.0 : 0.0;
+
+    // Clinger: both significand and power of ten are exact
+    if (!truncated && (w > 0) && (w <= (1L << 53)) && (q >= -22) && (q <= 22)) {
+      if (q < 0)
+	return negative ? -(w / POWERS_OF_TEN[-q]) : (w / POWERS_OF_TEN[-q]);
+      else
+	return negative ? -(w * POWERS_OF_TEN[q]) : (w * POWERS_OF_TEN[q]);
+    }
+
+    bits = eiselLemire(q, w);
+    // dropped digits: the result must not depend on them
+    if ((bits != -1L) && truncated && (bits != eiselLemire(q, w + 1)))
+      bits = -1L;
+    if (bits == -1L)
+      return Double.parseDouble(new String(chars, start, end - start));
+
+    if (negative)
+      bits |= 1L << 63;
+    return Double.longBitsToDouble(bits);
+  }
+
+  /**
+   * Checks the remainder of a hexadecimal number, i.e., after "0x".
+   *
+   * @param s		the characters to check
+   * @param i		the position after "0x"
+   * @param end		the last character (exclusive)
+   * @return		true if valid
+   */
+  protected static boolean isHex(CharSequence s, int i, int end) {
+    int		digits;
+
+    // mantissa
+    digits = 0;
+    while ((i < end) && isHexDigit(s.charAt(i))) {
+      i++;
+      digits++;
+    }
+    if ((i < end) && (s.charAt(i) == '.')) {
+      i++;
+      while ((i < end) && isHexDigit(s.charAt(i))) {
+	i++;
+	digits++;
+      }
+    }
+    if (digits == 0)
+      return false;
+
+    // binary exponent is mandatory
+    if ((i == end) || ((s.charAt(i) != 'p') && (s.charAt(i) != 'P')))
+      return false;
+    i++;
+    i = skipSign(s, i, end);
+    digits = 0;
+    while ((i < end) && isDigit(s.charAt(i))) {
+      i++;
+      digits++;
+    }
+    if (digits == 0)
+      return false;
+
+    return isEndOrSuffix(s, i, end);
+  }
+
+  /**
+   * Skips an optional sign.
+   *
+   * @param s		the characters
+   * @param i		the current position
+   * @param end		the last character (exclusive)
+   * @return		the position after the sign
+   */
+  protected static int skipSign(CharSequence s, int i, int end) {
+    if ((i < end) && ((s.charAt(i) == '+') || (s.charAt(i) == '-')))
+      return i + 1;
+    return i;
+  }
+
+  /**
+   * Checks whether the position is the end or a float/double suffix that
+   * is the last character.
+   *
+   * @param s		the characters
+   * @param i		the current position
+   * @param end		the last character (exclusive)
+   * @return		true if end or suffix
+   */
+  protected static boolean isEndOrSuffix(CharSequence s, int i, int end) {
+    char	c;
+
+    if (i == end)
+      return true;
+    if (i + 1 != end)
+      return false;
+    c = s.charAt(i);
+    return (c == 'f') || (c == 'F') || (c == 'd') || (c == 'D');
+  }
+
+  /**
+   * Checks whether the range matches the given word exactly.
+   *
+   * @param s		the characters
+   * @param i		the current position
+   * @param end		the last character (exclusive)
+   * @param word	the word to match
+   * @return		true if match
+   */
+  protected static boolean matches(CharSequence s, int i, int end, String word) {
+    int		n;
+
+    if (end - i != word.length())
+      return false;
+    for (n = 0; n < word.length(); n++) {
+      if (s.charAt(i + n) != word.charAt(n))
+	return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether the character is an ASCII digit.
+   *
+   * @param c		the character to check
+   * @return		true if digit
+   */
+  protected static boolean isDigit(char c) {
+    return (c >= '0') && (c <= '9');
+  }
+
+  /**
+   * Checks whether the character is an ASCII hexadecimal digit.
+   *
+   * @param c		the character to check
+   * @return		true if hexadecimal digit
+   */
+  protected static boolean isHexDigit(char c) {
+    return ((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'f')) || ((c >= 'A') && (c <= 'F'));
+  }
+}
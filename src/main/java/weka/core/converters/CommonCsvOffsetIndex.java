@@ -0,0 +1,346 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvOffsetIndex.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import org.apache.commons.csv.CSVFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the byte offsets of every n-th record in a CSV file, stored as
+ * sidecar file next to it. The records get determined with a byte scan
+ * (see {@link CommonCsvChunker}), i.e., quoted cells spanning multiple
+ * lines, comment lines and empty lines are handled like the parser does.
+ * An index is only valid for the file size, modification time and CSV
+ * dialect it got built for.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvOffsetIndex {
+
+  /** the extension of the index files. */
+  public final static String FILE_EXTENSION = ".offsets";
+
+  /** the magic number ("CCOI"). */
+  public final static int MAGIC = 0x43434F49;
+
+  /** the format version. */
+  public final static int VERSION = 1;
+
+  /** the size of the file. */
+  protected long m_Length;
+
+  /** the modification time of the file. */
+  protected long m_LastModified;
+
+  /** the CSV dialect. */
+  protected String m_Dialect;
+
+  /** the number of records between indexed offsets. */
+  protected int m_Interval;
+
+  /** the total number of records (incl header). */
+  protected long m_NumRecords;
+
+  /** the offsets of records 0, interval, 2*interval, etc. */
+  protected long[] m_Offsets;
+
+  /**
+   * Returns the index file for the CSV file.
+   *
+   * @param file	the CSV file
+   * @return		the index file
+   */
+  public static File getIndexFile(File file) {
+    return new File(file.getPath() + FILE_EXTENSION);
+  }
+
+  /**
+   * Returns the string describing the dialect of the format.
+   *
+   * @param format	the format
+   * @return		the dialect
+   */
+  public static String getDialect(CSVFormat format) {
+    return format.toString();
+  }
+
+  /**
+   * Returns the number of records between indexed offsets.
+   *
+   * @return		the interval
+   */
+  public int getInterval() {
+    return m_Interval;
+  }
+
+  /**
+   * Returns the total number of records, including the header.
+   *
+   * @return		the number of records
+   */
+  public long getNumRecords() {
+    return m_NumRecords;
+  }
+
+  /**
+   * Returns the offset of the closest indexed record at or before the
+   * specified one.
+   *
+   * @param record	the 0-based record (incl header)
+   * @return		the byte offset
+   */
+  public long getOffset(long record) {
+    return m_Offsets[(int) (record / m_Interval)];
+  }
+
+  /**
+   * Returns the closest indexed record at or before the specified one.
+   *
+   * @param record	the 0-based record (incl header)
+   * @return		the indexed record
+   */
+  public long getIndexedRecord(long record) {
+    return (record / m_Interval) * m_Interval;
+  }
+
+  /**
+   * Returns the largest indexed offset at or before the specified position.
+   *
+   * @param pos		the byte position
+   * @return		the offset of an indexed record
+   */
+  public long getOffsetBefore(long pos) {
+    int		lo;
+    int		hi;
+    int		mid;
+
+    lo = 0;
+    hi = m_Offsets.length - 1;
+    if ((hi < 0) || (pos < m_Offsets[0]))
+      return 0;
+    while (lo < hi) {
+      mid = (lo + hi + 1) / 2;
+      if (m_Offsets[mid] <= pos)
+	lo = mid;
+      else
+	hi = mid - 1;
+    }
+    return m_Offsets[lo];
+  }
+
+  /**
+   * Checks whether the index belongs to the file and dialect.
+   *
+   * @param file	the CSV file
+   * @param format	the format
+   * @return		true if applicable
+   */
+  public boolean isValid(File file, CSVFormat format) {
+    return (m_Length == file.length())
+      && (m_LastModified == file.lastModified())
+      && m_Dialect.equals(getDialect(format));
+  }
+
+  /**
+   * Scans the file and indexes every n-th record.
+   *
+   * @param file	the CSV file
+   * @param format	the format
+   * @param interval	the number of records between indexed offsets
+   * @return		the index
+   * @throws IOException	if reading fails
+   */
+  public static CommonCsvOffsetIndex build(File file, CSVFormat format, int interval) throws IOException {
+    CommonCsvOffsetIndex	result;
+    CommonCsvChunker		chunker;
+    List<Long>			offsets;
+    InputStream			in;
+    byte[]			buffer;
+    boolean			ignoreEmpty;
+    boolean			counted;
+    boolean			comment;
+    long			numRecords;
+    long			start;
+    long			pos;
+    int				read;
+    int				state;
+    int				b;
+    int				i;
+
+    result                = new CommonCsvOffsetIndex();
+    result.m_Length       = file.length();
+    result.m_LastModified = file.lastModified();
+    result.m_Dialect      = getDialect(format);
+    result.m_Interval     = Math.max(1, interval);
+
+    chunker     = new CommonCsvChunker(format);
+    ignoreEmpty = format.getIgnoreEmptyLines();
+    offsets     = new ArrayList<Long>();
+    numRecords  = 0;
+    start       = 0;
+    counted     = false;
+    comment     = false;
+    pos         = 0;
+    buffer      = new byte[CommonCsvChunker.BUFFER_SIZE];
+    in          = new FileInputStream(file);
+    try {
+      while ((read = in.read(buffer)) != -1) {
+	for (i = 0; i < read; i++) {
+	  b     = buffer[i] & 0xFF;
+	  state = chunker.process(b);
+	  // record boundary before current byte (after CR)
+	  if (state == 1) {
+	    if (!counted && !comment && !ignoreEmpty) {
+	      if (numRecords % result.m_Interval == 0)
+		offsets.add(start);
+	      numRecords++;
+	    }
+	    start   = pos + i;
+	    counted = false;
+	    comment = false;
+	  }
+	  if (chunker.isInComment())
+	    comment = true;
+	  // first content byte of a record
+	  if (!counted && !comment && (state != 0) && (b != '\r') && (b != '\n')) {
+	    if (numRecords % result.m_Interval == 0)
+	      offsets.add(start);
+	    numRecords++;
+	    counted = true;
+	  }
+	  // record boundary after current byte (LF)
+	  if (state == 0) {
+	    if (!counted && !comment && !ignoreEmpty) {
+	      if (numRecords % result.m_Interval == 0)
+		offsets.add(start);
+	      numRecords++;
+	    }
+	    start   = pos + i + 1;
+	    counted = false;
+	    comment = false;
+	  }
+	}
+	pos += read;
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    result.m_NumRecords = numRecords;
+    result.m_Offsets    = new long[offsets.size()];
+    for (i = 0; i < offsets.size(); i++)
+      result.m_Offsets[i] = offsets.get(i);
+
+    return result;
+  }
+
+  /**
+   * Reads the index file of the CSV file, if still valid.
+   *
+   * @param file	the CSV file
+   * @param format	the format
+   * @return		the index, null if none, outdated or unreadable
+   */
+  public static CommonCsvOffsetIndex read(File file, CSVFormat format) {
+    CommonCsvOffsetIndex	result;
+    File			indexFile;
+    DataInputStream		in;
+    int				i;
+
+    indexFile = getIndexFile(file);
+    if (!indexFile.exists())
+      return null;
+
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      try {
+	if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+	  return null;
+	result                = new CommonCsvOffsetIndex();
+	result.m_Length       = in.readLong();
+	result.m_LastModified = in.readLong();
+	result.m_Dialect      = in.readUTF();
+	result.m_Interval     = in.readInt();
+	result.m_NumRecords   = in.readLong();
+	result.m_Offsets      = new long[in.readInt()];
+	for (i = 0; i < result.m_Offsets.length; i++)
+	  result.m_Offsets[i] = in.readLong();
+      }
+      finally {
+	in.close();
+      }
+      if (!result.isValid(file, format))
+	return null;
+      return result;
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the index next to the CSV file.
+   *
+   * @param file	the CSV file
+   * @throws IOException	if writing fails
+   */
+  public void write(File file) throws IOException {
+    File		indexFile;
+    File		tmpFile;
+    DataOutputStream	out;
+    int			i;
+
+    indexFile = getIndexFile(file);
+    tmpFile   = new File(indexFile.getPath() + ".tmp");
+    out       = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(m_Length);
+      out.writeLong(m_LastModified);
+      out.writeUTF(m_Dialect);
+      out.writeInt(m_Interval);
+      out.writeLong(m_NumRecords);
+      out.writeInt(m_Offsets.length);
+      for (i = 0; i < m_Offsets.length; i++)
+	out.writeLong(m_Offsets[i]);
+    }
+    finally {
+      out.close();
+    }
+    if (indexFile.exists() && !indexFile.delete())
+      throw new IOException("Failed to replace index file: " + indexFile);
+    if (!tmpFile.renameTo(indexFile))
+      throw new IOException("Failed to rename index file: " + tmpFile);
+  }
+}
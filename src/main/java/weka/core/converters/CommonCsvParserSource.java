@@ -0,0 +1,110 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvParserSource.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+/**
+ * Row source that uses the Apache Commons CSV parser.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvParserSource
+  implements CommonCsvRowSource {
+
+  /** the parser. */
+  protected CSVParser m_Parser;
+
+  /** the iterator of the parser. */
+  protected Iterator<CSVRecord> m_Iterator;
+
+  /** the sorted indices of the cells to return, null for all. */
+  protected int[] m_Columns;
+
+  /** the encoding of the bytes held by the characters, null if decoded. */
+  protected Charset m_Encoding;
+
+  /**
+   * Initializes the parser.
+   *
+   * @param format	the format to use
+   * @param reader	the reader to read from
+   * @throws IOException	if initialization fails
+   */
+  public CommonCsvParserSource(CSVFormat format, Reader reader) throws IOException {
+    m_Parser   = format.parse(reader);
+    m_Iterator = m_Parser.iterator();
+  }
+
+  /**
+   * Reads the next record.
+   *
+   * @return		the row, null if no more records
+   * @throws IOException	if reading fails
+   */
+  public CommonCsvRow next() throws IOException {
+    try {
+      if (!m_Iterator.hasNext())
+	return null;
+      if (m_Columns == null)
+	return new CommonCsvRow.CSVRecordRow(m_Iterator.next(), m_Encoding);
+      return new CommonCsvRow.ProjectedRow(new CommonCsvRow.CSVRecordRow(m_Iterator.next(), m_Encoding), m_Columns);
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Sets the cells to return for subsequent records.
+   *
+   * @param columns	the sorted indices of the cells, null for all
+   */
+  public void setColumns(int[] columns) {
+    m_Columns = columns;
+  }
+
+  /**
+   * Sets the encoding of the text if the characters read hold its bytes.
+   *
+   * @param encoding	the ASCII-compatible encoding, null if already decoded
+   */
+  public void setEncoding(Charset encoding) {
+    m_Encoding = encoding;
+  }
+
+  /**
+   * Closes the parser.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    m_Parser.close();
+  }
+}
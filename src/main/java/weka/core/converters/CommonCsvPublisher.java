@@ -0,0 +1,315 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvPublisher.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the rows of a {@link CommonCSVLoader} to a single subscriber,
+ * following the semantics of java.util.concurrent.Flow (which is not
+ * available in Java 8): rows only get parsed when the subscriber has
+ * requested them and cancelling closes the source reader immediately.
+ * Signals get delivered serially on the executor.
+ * <br>
+ * The loader's read-ahead should be left at 0, as it parses rows
+ * independently of the demand.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvPublisher {
+
+  /**
+   * Receiver of the rows, see java.util.concurrent.Flow.Subscriber.
+   */
+  public interface Subscriber {
+
+    /**
+     * Gets called before any other method.
+     *
+     * @param subscription	the subscription for requesting rows
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Gets called with the next row.
+     *
+     * @param item	the row
+     */
+    void onNext(Instance item);
+
+    /**
+     * Gets called when reading failed, no more calls follow.
+     *
+     * @param throwable	the error
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Gets called when all rows have been delivered, no more calls follow.
+     */
+    void onComplete();
+  }
+
+  /**
+   * Link between publisher and subscriber, see
+   * java.util.concurrent.Flow.Subscription.
+   */
+  public interface Subscription {
+
+    /**
+     * Requests more rows.
+     *
+     * @param n		the number of additional rows, must be positive
+     */
+    void request(long n);
+
+    /**
+     * Stops the delivery of rows and closes the source.
+     */
+    void cancel();
+  }
+
+  /** the loader to publish the rows of. */
+  protected CommonCSVLoader m_Loader;
+
+  /** the executor for delivering the signals. */
+  protected Executor m_Executor;
+
+  /** whether a subscriber has subscribed already. */
+  protected AtomicBoolean m_Subscribed;
+
+  /**
+   * Initializes the publisher, delivering the rows on the common pool.
+   *
+   * @param loader	the loader with the source already set
+   */
+  public CommonCsvPublisher(CommonCSVLoader loader) {
+    this(loader, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Initializes the publisher.
+   *
+   * @param loader	the loader with the source already set
+   * @param executor	the executor for delivering the rows
+   */
+  public CommonCsvPublisher(CommonCSVLoader loader, Executor executor) {
+    m_Loader     = loader;
+    m_Executor   = executor;
+    m_Subscribed = new AtomicBoolean(false);
+  }
+
+  /**
+   * Subscribes the subscriber. As the rows can only be read once, only a
+   * single subscriber is supported, further ones receive an error.
+   *
+   * @param subscriber	the subscriber
+   */
+  public void subscribe(Subscriber subscriber) {
+    LoaderSubscription	subscription;
+
+    if (subscriber == null)
+      throw new NullPointerException("Subscriber cannot be null!");
+
+    if (m_Subscribed.compareAndSet(false, true)) {
+      subscription = new LoaderSubscription(subscriber, true);
+    }
+    else {
+      subscription         = new LoaderSubscription(subscriber, false);
+      subscription.m_Error = new IllegalStateException("Publisher supports only a single subscriber!");
+    }
+    subscription.schedule();
+  }
+
+  /**
+   * Parses the rows on demand and delivers them to the subscriber. All
+   * signals get emitted from a drain loop that only ever runs on one thread
+   * at a time.
+   */
+  protected class LoaderSubscription
+    implements Subscription, Runnable {
+
+    /** the subscriber. */
+    protected Subscriber m_Subscriber;
+
+    /** whether the subscription owns the source, i.e., may read and close it. */
+    protected boolean m_OwnsSource;
+
+    /** the outstanding demand. */
+    protected AtomicLong m_Requested;
+
+    /** the number of pending drain requests. */
+    protected AtomicInteger m_Pending;
+
+    /** whether the subscription got cancelled. */
+    protected volatile boolean m_Cancelled;
+
+    /** the error to signal, null if none. */
+    protected volatile Throwable m_Error;
+
+    /** whether onSubscribe has been called. */
+    protected boolean m_Started;
+
+    /** whether a terminal signal has been emitted. */
+    protected boolean m_Done;
+
+    /** the structure of the data. */
+    protected Instances m_Structure;
+
+    /**
+     * Initializes the subscription.
+     *
+     * @param subscriber	the subscriber
+     * @param ownsSource	whether the subscription may read and close the source
+     */
+    public LoaderSubscription(Subscriber subscriber, boolean ownsSource) {
+      m_Subscriber = subscriber;
+      m_OwnsSource = ownsSource;
+      m_Requested  = new AtomicLong();
+      m_Pending    = new AtomicInteger();
+    }
+
+    /**
+     * Requests more rows.
+     *
+     * @param n		the number of additional rows
+     */
+    public void request(long n) {
+      long	current;
+
+      if (n <= 0) {
+	m_Error = new IllegalArgumentException("Number of requested rows must be positive: " + n);
+      }
+      else {
+	do {
+	  current = m_Requested.get();
+	  if (current == Long.MAX_VALUE)
+	    break;
+	}
+	while (!m_Requested.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE : current + n));
+      }
+      schedule();
+    }
+
+    /**
+     * Stops the delivery and closes the source reader.
+     */
+    public void cancel() {
+      if (m_Cancelled)
+	return;
+      m_Cancelled = true;
+      closeSource();
+    }
+
+    /**
+     * Closes the source reader of the loader.
+     */
+    protected void closeSource() {
+      if (!m_OwnsSource)
+	return;
+      try {
+	if (m_Loader.m_sourceReader != null)
+	  m_Loader.m_sourceReader.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+    }
+
+    /**
+     * Schedules the drain loop, unless already running.
+     */
+    protected void schedule() {
+      if (m_Pending.getAndIncrement() == 0)
+	m_Executor.execute(this);
+    }
+
+    /**
+     * Runs the drain loop until no more drain requests are pending.
+     */
+    public void run() {
+      int	missed;
+
+      missed = 1;
+      do {
+	drain();
+	missed = m_Pending.addAndGet(-missed);
+      }
+      while (missed != 0);
+    }
+
+    /**
+     * Delivers as many rows as requested.
+     */
+    protected void drain() {
+      Instance	inst;
+
+      if (m_Done)
+	return;
+
+      if (!m_Started) {
+	m_Started = true;
+	m_Subscriber.onSubscribe(this);
+      }
+
+      try {
+	while (!m_Cancelled && (m_Error == null) && (m_Requested.get() > 0)) {
+	  if (m_Structure == null)
+	    m_Structure = m_Loader.getStructure();
+	  inst = m_Loader.getNextInstance(m_Structure);
+	  if (m_Cancelled)
+	    break;
+	  if (inst == null) {
+	    m_Done = true;
+	    closeSource();
+	    m_Subscriber.onComplete();
+	    return;
+	  }
+	  inst.setDataset(m_Structure);
+	  if (m_Requested.get() != Long.MAX_VALUE)
+	    m_Requested.decrementAndGet();
+	  m_Subscriber.onNext(inst);
+	}
+      }
+      catch (Exception e) {
+	if (!m_Cancelled)
+	  m_Error = e;
+      }
+
+      if (m_Cancelled) {
+	m_Done = true;
+      }
+      else if (m_Error != null) {
+	m_Done = true;
+	m_Cancelled = true;
+	closeSource();
+	m_Subscriber.onError(m_Error);
+      }
+    }
+  }
+}
@@ -0,0 +1,388 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvRow.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import org.apache.commons.csv.CSVRecord;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single parsed CSV record, independent of the engine that produced it.
+ * Cells that the format maps to null (see CSVFormat.getNullString()) are
+ * returned as null.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public abstract class CommonCsvRow {
+
+  /**
+   * Returns the number of cells in the row.
+   *
+   * @return		the number of cells
+   */
+  public abstract int size();
+
+  /**
+   * Returns the cell content as string.
+   *
+   * @param index	the cell index
+   * @return		the content, null if null value
+   */
+  public abstract String get(int index);
+
+  /**
+   * Checks whether the cell represents a missing value, i.e., is null or
+   * matches the supplied missing value string.
+   *
+   * @param index	the cell index
+   * @param missing	the missing value string
+   * @return		true if missing
+   */
+  public abstract boolean isMissing(int index, String missing);
+
+  /**
+   * Parses the cell as double.
+   *
+   * @param index	the cell index
+   * @return		the parsed value
+   * @throws NumberFormatException	if not a number
+   */
+  public abstract double parseDouble(int index);
+
+  /**
+   * Returns the cell content as character sequence, which may be a view
+   * on the underlying data that is only valid until the next record.
+   *
+   * @param index	the cell index
+   * @return		the content, null if null value
+   */
+  public CharSequence getSequence(int index) {
+    return get(index);
+  }
+
+  /**
+   * Checks whether the cell content equals the value.
+   *
+   * @param index	the cell index
+   * @param value	the value to compare with
+   * @return		true if equal, false if different or null value
+   */
+  public boolean matches(int index, String value) {
+    return value.equals(get(index));
+  }
+
+  /**
+   * Checks whether the cell can be parsed as double.
+   *
+   * @param index	the cell index
+   * @return		true if numeric
+   */
+  public boolean isNumeric(int index) {
+    return CommonCsvNumbers.isNumeric(getSequence(index));
+  }
+
+  /**
+   * Returns a copy of the row that is not affected by any further parsing.
+   *
+   * @return		the detached copy
+   */
+  public abstract CommonCsvRow copy();
+
+  /**
+   * Checks whether the characters are all ASCII.
+   *
+   * @param chars	the characters
+   * @param offset	the first character
+   * @param length	the number of characters
+   * @return		true if ASCII only
+   */
+  public static boolean isAscii(char[] chars, int offset, int length) {
+    int		i;
+
+    for (i = offset; i < offset + length; i++) {
+      if (chars[i] >= 0x80)
+	return false;
+    }
+    return true;
+  }
+
+  /**
+   * Decodes characters that each hold a byte of text in the specified
+   * (ASCII-compatible) encoding, as obtained by reading the text as
+   * ISO-8859-1.
+   *
+   * @param chars	the characters holding the bytes
+   * @param offset	the first character
+   * @param length	the number of characters
+   * @param encoding	the actual encoding of the bytes
+   * @return		the decoded string
+   */
+  public static String decode(char[] chars, int offset, int length, Charset encoding) {
+    byte[]	bytes;
+    int		i;
+
+    if (isAscii(chars, offset, length))
+      return new String(chars, offset, length);
+    bytes = new byte[length];
+    for (i = 0; i < length; i++)
+      bytes[i] = (byte) chars[offset + i];
+    return new String(bytes, encoding);
+  }
+
+  /**
+   * Decodes a string that holds the bytes of text in the specified
+   * (ASCII-compatible) encoding, as obtained by reading the text as
+   * ISO-8859-1.
+   *
+   * @param s		the string holding the bytes, can be null
+   * @param encoding	the actual encoding of the bytes
+   * @return		the decoded string
+   */
+  public static String decode(String s, Charset encoding) {
+    int		i;
+
+    if (s == null)
+      return null;
+    for (i = 0; i < s.length(); i++) {
+      if (s.charAt(i) >= 0x80)
+	return new String(s.getBytes(StandardCharsets.ISO_8859_1), encoding);
+    }
+    return s;
+  }
+
+  /**
+   * Wraps a {@link CSVRecord} generated by the Apache Commons CSV parser.
+   */
+  public static class CSVRecordRow
+    extends CommonCsvRow {
+
+    /** the underlying record. */
+    protected CSVRecord m_Record;
+
+    /** the encoding of the bytes held by the cells, null if already decoded. */
+    protected Charset m_Encoding;
+
+    /**
+     * Initializes the row with the record.
+     *
+     * @param record	the record to wrap
+     */
+    public CSVRecordRow(CSVRecord record) {
+      this(record, null);
+    }
+
+    /**
+     * Initializes the row with the record.
+     *
+     * @param record	the record to wrap
+     * @param encoding	the encoding of the bytes held by the cells, null if already decoded
+     */
+    public CSVRecordRow(CSVRecord record, Charset encoding) {
+      m_Record   = record;
+      m_Encoding = encoding;
+    }
+
+    /**
+     * Returns the number of cells in the row.
+     *
+     * @return		the number of cells
+     */
+    @Override
+    public int size() {
+      return m_Record.size();
+    }
+
+    /**
+     * Returns the cell content as string.
+     *
+     * @param index	the cell index
+     * @return		the content, null if null value
+     */
+    @Override
+    public String get(int index) {
+      if (m_Encoding != null)
+	return decode(m_Record.get(index), m_Encoding);
+      return m_Record.get(index);
+    }
+
+    /**
+     * Checks whether the cell represents a missing value.
+     *
+     * @param index	the cell index
+     * @param missing	the missing value string
+     * @return		true if missing
+     */
+    @Override
+    public boolean isMissing(int index, String missing) {
+      String	cell;
+
+      cell = get(index);
+      return (cell == null) || cell.equals(missing);
+    }
+
+    /**
+     * Parses the cell as double.
+     *
+     * @param index	the cell index
+     * @return		the parsed value
+     * @throws NumberFormatException	if not a number
+     */
+    @Override
+    public double parseDouble(int index) {
+      return Double.parseDouble(m_Record.get(index));
+    }
+
+    /**
+     * Returns the row itself, as records are immutable.
+     *
+     * @return		the row
+     */
+    @Override
+    public CommonCsvRow copy() {
+      return this;
+    }
+  }
+
+  /**
+   * Presents a subset of the cells of another row.
+   */
+  public static class ProjectedRow
+    extends CommonCsvRow {
+
+    /** the underlying row. */
+    protected CommonCsvRow m_Row;
+
+    /** the sorted indices of the cells to present. */
+    protected int[] m_Columns;
+
+    /** the number of cells. */
+    protected int m_Size;
+
+    /**
+     * Initializes the row.
+     *
+     * @param row	the row to wrap
+     * @param columns	the sorted indices of the cells to present
+     */
+    public ProjectedRow(CommonCsvRow row, int[] columns) {
+      m_Row     = row;
+      m_Columns = columns;
+      m_Size    = 0;
+      while ((m_Size < columns.length) && (columns[m_Size] < row.size()))
+	m_Size++;
+    }
+
+    /**
+     * Returns the number of cells in the row.
+     *
+     * @return		the number of cells
+     */
+    @Override
+    public int size() {
+      return m_Size;
+    }
+
+    /**
+     * Returns the cell content as string.
+     *
+     * @param index	the cell index
+     * @return		the content, null if null value
+     */
+    @Override
+    public String get(int index) {
+      return m_Row.get(m_Columns[index]);
+    }
+
+    /**
+     * Checks whether the cell represents a missing value.
+     *
+     * @param index	the cell index
+     * @param missing	the missing value string
+     * @return		true if missing
+     */
+    @Override
+    public boolean isMissing(int index, String missing) {
+      return m_Row.isMissing(m_Columns[index], missing);
+    }
+
+    /**
+     * Parses the cell as double.
+     *
+     * @param index	the cell index
+     * @return		the parsed value
+     * @throws NumberFormatException	if not a number
+     */
+    @Override
+    public double parseDouble(int index) {
+      return m_Row.parseDouble(m_Columns[index]);
+    }
+
+    /**
+     * Returns the cell content as character sequence.
+     *
+     * @param index	the cell index
+     * @return		the content, null if null value
+     */
+    @Override
+    public CharSequence getSequence(int index) {
+      return m_Row.getSequence(m_Columns[index]);
+    }
+
+    /**
+     * Checks whether the cell content equals the value.
+     *
+     * @param index	the cell index
+     * @param value	the value to compare with
+     * @return		true if equal
+     */
+    @Override
+    public boolean matches(int index, String value) {
+      return m_Row.matches(m_Columns[index], value);
+    }
+
+    /**
+     * Checks whether the cell can be parsed as double.
+     *
+     * @param index	the cell index
+     * @return		true if numeric
+     */
+    @Override
+    public boolean isNumeric(int index) {
+      return m_Row.isNumeric(m_Columns[index]);
+    }
+
+    /**
+     * Returns a projection of a copy of the underlying row.
+     *
+     * @return		the detached copy
+     */
+    @Override
+    public CommonCsvRow copy() {
+      CommonCsvRow	row;
+
+      row = m_Row.copy();
+      if (row == m_Row)
+	return this;
+      return new ProjectedRow(row, m_Columns);
+    }
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvRowFilter.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Filter that gets applied to the raw cells of a row, before any conversion
+ * takes place. The expression consists of one or more conditions that are
+ * combined with "&amp;&amp;", each condition of the form
+ * "&lt;column&gt; &lt;operator&gt; &lt;value&gt;". The column is either a
+ * column name or a 1-based index. Supported operators:
+ * <ul>
+ *   <li>=, !=, &lt;, &lt;=, &gt;, &gt;= - compares numerically if both value
+ *   and cell are numeric, otherwise lexicographically</li>
+ *   <li>in - whether the cell is one of the comma-separated values</li>
+ *   <li>~, !~ - whether the cell matches/does not match the regular expression</li>
+ * </ul>
+ * Values can be surrounded by single or double quotes. Missing cells never
+ * satisfy a condition. Example:
+ * <pre>
+ * class in a,b &amp;&amp; 3 &gt;= 1.5 &amp;&amp; name ~ [A-Z].*
+ * </pre>
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvRowFilter
+  implements Serializable {
+
+  private static final long serialVersionUID = 8245061963620158203L;
+
+  /** the separator for conditions. */
+  public final static String SEPARATOR = "&&";
+
+  /**
+   * The supported operators, longer ones before their prefixes.
+   */
+  public enum Operator {
+    NOT_EQUAL("!="),
+    NOT_MATCHES("!~"),
+    LESS_OR_EQUAL("<="),
+    GREATER_OR_EQUAL(">="),
+    EQUAL("="),
+    LESS("<"),
+    GREATER(">"),
+    MATCHES("~"),
+    IN(" in ");
+
+    /** the symbol. */
+    private final String m_Symbol;
+
+    /**
+     * Initializes the operator.
+     *
+     * @param symbol	the symbol
+     */
+    Operator(String symbol) {
+      m_Symbol = symbol;
+    }
+
+    /**
+     * Returns the symbol.
+     *
+     * @return		the symbol
+     */
+    public String getSymbol() {
+      return m_Symbol;
+    }
+  }
+
+  /**
+   * A single condition.
+   */
+  public static class Condition
+    implements Serializable {
+
+    private static final long serialVersionUID = -2519466377410345417L;
+
+    /** the column index (0-based). */
+    protected int m_Column;
+
+    /** the operator. */
+    protected Operator m_Operator;
+
+    /** the values to compare against. */
+    protected String[] m_Values;
+
+    /** whether the (first) value is numeric. */
+    protected boolean m_Numeric;
+
+    /** the numeric (first) value. */
+    protected double m_Number;
+
+    /** the regular expression. */
+    protected Pattern m_Pattern;
+
+    /**
+     * Initializes the condition.
+     *
+     * @param column	the column index (0-based)
+     * @param operator	the operator
+     * @param value	the value
+     */
+    public Condition(int column, Operator operator, String value) {
+      int	i;
+
+      m_Column   = column;
+      m_Operator = operator;
+      if (operator == Operator.IN) {
+	m_Values = value.split(",");
+	for (i = 0; i < m_Values.length; i++)
+	  m_Values[i] = unquote(m_Values[i].trim());
+      }
+      else {
+	m_Values = new String[]{unquote(value)};
+      }
+      m_Numeric = CommonCsvNumbers.isNumeric(m_Values[0]);
+      if (m_Numeric)
+	m_Number = Double.parseDouble(m_Values[0]);
+      if ((operator == Operator.MATCHES) || (operator == Operator.NOT_MATCHES))
+	m_Pattern = Pattern.compile(m_Values[0]);
+    }
+
+    /**
+     * Compares the cell with the value, numerically if possible.
+     *
+     * @param row	the row to get the cell from
+     * @return		the comparison result
+     */
+    protected int compare(CommonCsvRow row) {
+      CharSequence	cell;
+      String		value;
+      int		len;
+      int		i;
+
+      if (m_Numeric && row.isNumeric(m_Column))
+	return Double.compare(row.parseDouble(m_Column), m_Number);
+
+      cell  = row.getSequence(m_Column);
+      value = m_Values[0];
+      len   = Math.min(cell.length(), value.length());
+      for (i = 0; i < len; i++) {
+	if (cell.charAt(i) != value.charAt(i))
+	  return cell.charAt(i) - value.charAt(i);
+      }
+      return cell.length() - value.length();
+    }
+
+    /**
+     * Checks whether the cell equals the value, numerically if possible.
+     *
+     * @param row	the row to get the cell from
+     * @return		true if equal
+     */
+    protected boolean isEqual(CommonCsvRow row) {
+      if (row.matches(m_Column, m_Values[0]))
+	return true;
+      if (m_Numeric && row.isNumeric(m_Column))
+	return row.parseDouble(m_Column) == m_Number;
+      return false;
+    }
+
+    /**
+     * Checks whether the row satisfies the condition.
+     *
+     * @param row	the row to check
+     * @param missing	the missing value string
+     * @return		true if satisfied
+     */
+    public boolean accept(CommonCsvRow row, String missing) {
+      if ((m_Column >= row.size()) || row.isMissing(m_Column, missing))
+	return false;
+
+      switch (m_Operator) {
+	case EQUAL:
+	  return isEqual(row);
+	case NOT_EQUAL:
+	  return !isEqual(row);
+	case LESS:
+	  return compare(row) < 0;
+	case LESS_OR_EQUAL:
+	  return compare(row) <= 0;
+	case GREATER:
+	  return compare(row) > 0;
+	case GREATER_OR_EQUAL:
+	  return compare(row) >= 0;
+	case IN:
+	  for (String value: m_Values) {
+	    if (row.matches(m_Column, value))
+	      return true;
+	  }
+	  return false;
+	case MATCHES:
+	  return m_Pattern.matcher(row.getSequence(m_Column)).matches();
+	case NOT_MATCHES:
+	  return !m_Pattern.matcher(row.getSequence(m_Column)).matches();
+	default:
+	  throw new IllegalStateException("Unhandled operator: " + m_Operator);
+      }
+    }
+  }
+
+  /** the conditions. */
+  protected Condition[] m_Conditions;
+
+  /** the missing value string. */
+  protected String m_MissingValue;
+
+  /**
+   * Initializes the filter.
+   *
+   * @param conditions	the conditions that all need to be satisfied
+   * @param missing	the missing value string
+   */
+  public CommonCsvRowFilter(Condition[] conditions, String missing) {
+    m_Conditions   = conditions;
+    m_MissingValue = missing;
+  }
+
+  /**
+   * Checks whether the row satisfies all conditions.
+   *
+   * @param row		the row to check
+   * @return		true if accepted
+   */
+  public boolean accept(CommonCsvRow row) {
+    for (Condition condition: m_Conditions) {
+      if (!condition.accept(row, m_MissingValue))
+	return false;
+    }
+    return true;
+  }
+
+  /**
+   * Removes surrounding single or double quotes.
+   *
+   * @param s		the string to process
+   * @return		the unquoted string
+   */
+  protected static String unquote(String s) {
+    if ((s.length() >= 2)
+      && ((s.charAt(0) == '"') || (s.charAt(0) == '\''))
+      && (s.charAt(s.length() - 1) == s.charAt(0)))
+      return s.substring(1, s.length() - 1);
+    return s;
+  }
+
+  /**
+   * Parses the expression.
+   *
+   * @param expr	the expression to parse
+   * @param names	the column names
+   * @param missing	the missing value string
+   * @return		the filter
+   * @throws IllegalArgumentException	if the expression is invalid
+   */
+  public static CommonCsvRowFilter parse(String expr, List<String> names, String missing) {
+    List<Condition>	conditions;
+    Operator		operator;
+    String		column;
+    int			index;
+    int			pos;
+    int			i;
+
+    conditions = new ArrayList<Condition>();
+    for (String cond: expr.split(Pattern.quote(SEPARATOR))) {
+      // locate earliest operator
+      operator = null;
+      pos      = -1;
+      for (Operator op: Operator.values()) {
+	i = cond.indexOf(op.getSymbol());
+	if ((i > -1) && ((pos == -1) || (i < pos))) {
+	  operator = op;
+	  pos      = i;
+	}
+      }
+      if (operator == null)
+	throw new IllegalArgumentException("No operator in condition: " + cond.trim());
+
+      // column
+      column = unquote(cond.substring(0, pos).trim());
+      index  = names.indexOf(column);
+      if (index == -1) {
+	try {
+	  index = Integer.parseInt(column) - 1;
+	}
+	catch (NumberFormatException e) {
+	  throw new IllegalArgumentException("Column not found: " + column);
+	}
+	if ((index < 0) || (index >= names.size()))
+	  throw new IllegalArgumentException("Column index out of range: " + column);
+      }
+
+      conditions.add(new Condition(index, operator, cond.substring(pos + operator.getSymbol().length()).trim()));
+    }
+
+    return new CommonCsvRowFilter(conditions.toArray(new Condition[conditions.size()]), missing);
+  }
+}
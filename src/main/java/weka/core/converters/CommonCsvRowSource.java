@@ -0,0 +1,64 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvRowSource.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Interface for engines that turn a stream of characters into rows.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public interface CommonCsvRowSource {
+
+  /**
+   * Reads the next record. The row may get reused by the next call,
+   * use {@link CommonCsvRow#copy()} to retain it.
+   *
+   * @return		the row, null if no more records
+   * @throws IOException	if reading fails
+   */
+  public CommonCsvRow next() throws IOException;
+
+  /**
+   * Sets the cells to return for subsequent records, all others get
+   * skipped.
+   *
+   * @param columns	the sorted indices of the cells, null for all
+   */
+  public void setColumns(int[] columns);
+
+  /**
+   * Sets the encoding of the text if the characters read hold its bytes
+   * (i.e., text read as ISO-8859-1), so that cells get decoded on access.
+   *
+   * @param encoding	the ASCII-compatible encoding, null if already decoded
+   */
+  public void setEncoding(Charset encoding);
+
+  /**
+   * Closes the underlying reader.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException;
+}
@@ -0,0 +1,273 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvSchemaCache.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.converters.CommonCSVLoader.AttributeType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache entry for the structure inferred from a CSV file, stored in a cache
+ * directory. An entry is only valid for the file with the same canonical
+ * path, size and modification time that got loaded with the same
+ * (structure-relevant) options.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvSchemaCache
+  implements Serializable {
+
+  private static final long serialVersionUID = 4493622137068351570L;
+
+  /** the extension of the cache files. */
+  public final static String FILE_EXTENSION = ".schema";
+
+  /** the canonical path of the file. */
+  protected String m_Path;
+
+  /** the size of the file. */
+  protected long m_Length;
+
+  /** the modification time of the file. */
+  protected long m_LastModified;
+
+  /** the options of the loader. */
+  protected String m_Options;
+
+  /** the cells of the header row, null if the file has no header. */
+  protected List<String> m_Header;
+
+  /** the number of columns. */
+  protected int m_NumColumns;
+
+  /** the types of the columns. */
+  protected AttributeType[] m_Types;
+
+  /** the attributes. */
+  protected ArrayList<Attribute> m_Attributes;
+
+  /** which numeric columns contain only integer values. */
+  protected boolean[] m_IntegerColumns;
+
+  /** the average number of bytes per row, -1 if unknown. */
+  protected double m_BytesPerRow;
+
+  /**
+   * Initializes the entry.
+   *
+   * @param file	the CSV file
+   * @param options	the options of the loader
+   * @param header	the header row, null if none
+   * @param types	the types of the columns
+   * @param attributes	the attributes (get copied)
+   * @param integerColumns	which numeric columns contain only integer values
+   * @param bytesPerRow	the average number of bytes per row, -1 if unknown
+   * @throws IOException	if the canonical path cannot be determined
+   */
+  public CommonCsvSchemaCache(File file, String options, CommonCsvRow header, AttributeType[] types,
+			      List<Attribute> attributes, boolean[] integerColumns, double bytesPerRow) throws IOException {
+    int		i;
+
+    m_Path           = file.getCanonicalPath();
+    m_Length         = file.length();
+    m_LastModified   = file.lastModified();
+    m_Options        = options;
+    m_NumColumns     = types.length;
+    m_Types          = types.clone();
+    m_IntegerColumns = integerColumns.clone();
+    m_BytesPerRow    = bytesPerRow;
+    if (header != null) {
+      m_Header = new ArrayList<String>();
+      for (i = 0; i < header.size(); i++)
+	m_Header.add(header.get(i));
+    }
+    m_Attributes = new ArrayList<Attribute>();
+    for (Attribute att: attributes)
+      m_Attributes.add((Attribute) att.copy());
+  }
+
+  /**
+   * Returns the types of the columns.
+   *
+   * @return		the types
+   */
+  public AttributeType[] getTypes() {
+    return m_Types.clone();
+  }
+
+  /**
+   * Returns copies of the attributes.
+   *
+   * @return		the attributes
+   */
+  public ArrayList<Attribute> getAttributes() {
+    ArrayList<Attribute>	result;
+
+    result = new ArrayList<Attribute>();
+    for (Attribute att: m_Attributes)
+      result.add((Attribute) att.copy());
+
+    return result;
+  }
+
+  /**
+   * Returns which numeric columns contain only integer values.
+   *
+   * @return		the flags
+   */
+  public boolean[] getIntegerColumns() {
+    return m_IntegerColumns.clone();
+  }
+
+  /**
+   * Returns the average number of bytes per row.
+   *
+   * @return		the bytes, -1 if unknown
+   */
+  public double getBytesPerRow() {
+    return m_BytesPerRow;
+  }
+
+  /**
+   * Checks whether the entry belongs to the file and options.
+   *
+   * @param file	the CSV file
+   * @param options	the options of the loader
+   * @return		true if applicable
+   * @throws IOException	if the canonical path cannot be determined
+   */
+  public boolean appliesTo(File file, String options) throws IOException {
+    return m_Path.equals(file.getCanonicalPath())
+      && (m_Length == file.length())
+      && (m_LastModified == file.lastModified())
+      && m_Options.equals(options);
+  }
+
+  /**
+   * Checks whether the first row of the file is consistent with the cached
+   * structure, i.e., identical header or same number of columns if no
+   * header.
+   *
+   * @param first	the first row
+   * @return		true if consistent
+   */
+  public boolean isValid(CommonCsvRow first) {
+    int		i;
+
+    if (first.size() != m_NumColumns)
+      return false;
+    if (m_Header == null)
+      return true;
+    for (i = 0; i < m_NumColumns; i++) {
+      if (!m_Header.get(i).equals(first.get(i)))
+	return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the cache file for the CSV file.
+   *
+   * @param dir		the cache directory
+   * @param file	the CSV file
+   * @return		the cache file
+   * @throws IOException	if the canonical path cannot be determined
+   */
+  public static File getCacheFile(File dir, File file) throws IOException {
+    String	path;
+
+    path = file.getCanonicalPath();
+    return new File(dir, file.getName() + "-" + Integer.toHexString(path.hashCode()) + FILE_EXTENSION);
+  }
+
+  /**
+   * Reads the cache entry for the file.
+   *
+   * @param dir		the cache directory
+   * @param file	the CSV file
+   * @param options	the options of the loader
+   * @return		the entry, null if none, outdated or unreadable
+   */
+  public static CommonCsvSchemaCache read(File dir, File file, String options) {
+    CommonCsvSchemaCache	result;
+    File			cacheFile;
+    ObjectInputStream		in;
+
+    try {
+      cacheFile = getCacheFile(dir, file);
+      if (!cacheFile.exists())
+	return null;
+      in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+      try {
+	result = (CommonCsvSchemaCache) in.readObject();
+      }
+      finally {
+	in.close();
+      }
+      if (!result.appliesTo(file, options))
+	return null;
+      return result;
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the entry to the cache directory, replacing any existing entry
+   * for the file.
+   *
+   * @param dir		the cache directory
+   * @throws IOException	if writing fails
+   */
+  public void write(File dir) throws IOException {
+    File			cacheFile;
+    File			tmpFile;
+    ObjectOutputStream		out;
+
+    if (!dir.exists() && !dir.mkdirs())
+      throw new IOException("Failed to create cache directory: " + dir);
+    cacheFile = getCacheFile(dir, new File(m_Path));
+    tmpFile   = new File(cacheFile.getPath() + ".tmp");
+    out       = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    try {
+      out.writeObject(this);
+    }
+    finally {
+      out.close();
+    }
+    if (cacheFile.exists() && !cacheFile.delete())
+      throw new IOException("Failed to replace cache file: " + cacheFile);
+    if (!tmpFile.renameTo(cacheFile))
+      throw new IOException("Failed to rename cache file: " + tmpFile);
+  }
+}
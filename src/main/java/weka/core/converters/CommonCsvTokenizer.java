@@ -0,0 +1,936 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCsvTokenizer.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.QuoteMode;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Tokenizer that scans a reusable char buffer and returns the cells of a
+ * record as slices (offset/length) into that buffer, rather than creating
+ * a string for each cell. Unescaping of quoted/escaped content is performed
+ * in-place, as it never grows the content.
+ * <br>
+ * The dialect is taken from the supplied CSVFormat and follows the
+ * semantics of the Apache Commons CSV lexer (delimiter, quote, escape,
+ * comment marker, empty lines, surrounding spaces, trimming, null string,
+ * trailing delimiter, lenient EOF and trailing data).
+ * <br>
+ * NB: the row returned by {@link #next()} is reused, use
+ * {@link CommonCsvRow#copy()} to retain it.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCsvTokenizer
+  implements CommonCsvRowSource {
+
+  /** the default buffer size. */
+  public final static int DEFAULT_BUFFER_SIZE = 65536;
+
+  /** end of file. */
+  protected final static int EOF = -1;
+
+  /** undefined character, i.e., before reading the first character. */
+  protected final static int UNDEFINED = -2;
+
+  /** placeholder for optional characters that are not set. */
+  protected final static int NONE = -3;
+
+  /** carriage return. */
+  protected final static char CR = '\r';
+
+  /** line feed. */
+  protected final static char LF = '\n';
+
+  /** token type: cell followed by delimiter. */
+  protected final static int TOKEN = 0;
+
+  /** token type: cell that ends the record. */
+  protected final static int EORECORD = 1;
+
+  /** token type: end of file. */
+  protected final static int EOFTOKEN = 2;
+
+  /** token type: comment line. */
+  protected final static int COMMENT = 3;
+
+  /** the reader to read from. */
+  protected Reader m_Reader;
+
+  /** the delimiter. */
+  protected char m_Delimiter;
+
+  /** the quote character, NONE if not set. */
+  protected int m_Quote;
+
+  /** the escape character, NONE if not set. */
+  protected int m_Escape;
+
+  /** the comment marker, NONE if not set. */
+  protected int m_Comment;
+
+  /** whether to ignore empty lines. */
+  protected boolean m_IgnoreEmptyLines;
+
+  /** whether to ignore spaces around values. */
+  protected boolean m_IgnoreSurroundingSpaces;
+
+  /** whether to trim values. */
+  protected boolean m_Trim;
+
+  /** whether a trailing delimiter is present. */
+  protected boolean m_TrailingDelimiter;
+
+  /** whether EOF within a quoted value is acceptable. */
+  protected boolean m_LenientEof;
+
+  /** whether data after a closing quote gets appended. */
+  protected boolean m_TrailingData;
+
+  /** the string to interpret as null, can be null. */
+  protected char[] m_NullString;
+
+  /** whether the quote mode distinguishes quoted/unquoted null strings. */
+  protected boolean m_StrictQuoteMode;
+
+  /** the buffer. */
+  protected char[] m_Buffer;
+
+  /** the position of the next character to read. */
+  protected int m_Pos;
+
+  /** the number of valid characters in the buffer. */
+  protected int m_Limit;
+
+  /** whether the end of the reader has been reached. */
+  protected boolean m_EndOfReader;
+
+  /** the start of the current record in the buffer. */
+  protected int m_RecordStart;
+
+  /** the start of the current cell in the buffer. */
+  protected int m_CellStart;
+
+  /** the write position for the current cell content. */
+  protected int m_Write;
+
+  /** the last character read. */
+  protected int m_LastChar;
+
+  /** whether the last token ended with a delimiter. */
+  protected boolean m_LastTokenDelimiter;
+
+  /** whether the current token is quoted. */
+  protected boolean m_Quoted;
+
+  /** whether the EOF token carries content. */
+  protected boolean m_Ready;
+
+  /** the number of records read so far. */
+  protected long m_RecordCount;
+
+  /** the reusable row. */
+  protected Row m_Row;
+
+  /** the cells to return, null for all. */
+  protected boolean[] m_Selected;
+
+  /** the index of the current cell in the record. */
+  protected int m_Column;
+
+  /**
+   * Initializes the tokenizer with the default buffer size.
+   *
+   * @param format	the format defining the dialect
+   * @param reader	the reader to read from
+   */
+  public CommonCsvTokenizer(CSVFormat format, Reader reader) {
+    this(format, reader, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Initializes the tokenizer.
+   *
+   * @param format	the format defining the dialect
+   * @param reader	the reader to read from
+   * @param bufferSize	the initial size of the buffer, grows if required
+   */
+  public CommonCsvTokenizer(CSVFormat format, Reader reader, int bufferSize) {
+    if (format.getDelimiterString().length() != 1)
+      throw new IllegalArgumentException("Only single character delimiters are supported: " + format.getDelimiterString());
+
+    m_Reader                  = reader;
+    m_Delimiter               = format.getDelimiterString().charAt(0);
+    m_Quote                   = (format.getQuoteCharacter() == null)   ? NONE : format.getQuoteCharacter();
+    m_Escape                  = (format.getEscapeCharacter() == null)  ? NONE : format.getEscapeCharacter();
+    m_Comment                 = (format.getCommentMarker() == null)    ? NONE : format.getCommentMarker();
+    m_IgnoreEmptyLines        = format.getIgnoreEmptyLines();
+    m_IgnoreSurroundingSpaces = format.getIgnoreSurroundingSpaces();
+    m_Trim                    = format.getTrim();
+    m_TrailingDelimiter       = format.getTrailingDelimiter();
+    m_LenientEof              = format.getLenientEof();
+    m_TrailingData            = format.getTrailingData();
+    m_NullString              = (format.getNullString() == null) ? null : format.getNullString().toCharArray();
+    m_StrictQuoteMode         = (format.getQuoteMode() == QuoteMode.ALL_NON_NULL) || (format.getQuoteMode() == QuoteMode.NON_NUMERIC);
+    m_Buffer                  = new char[Math.max(16, bufferSize)];
+    m_LastChar                = UNDEFINED;
+    m_Row                     = new Row();
+  }
+
+  /**
+   * Sets the encoding of the text if the characters read hold its bytes
+   * (i.e., text read as ISO-8859-1). Delimiters, quotes and numbers then get
+   * scanned on the bytes and only cells accessed as strings get decoded.
+   *
+   * @param encoding	the ASCII-compatible encoding, null if already decoded
+   */
+  public void setEncoding(Charset encoding) {
+    m_Row.m_Encoding = encoding;
+  }
+
+  /**
+   * Sets the cells to return for subsequent records. The content of all
+   * other cells is only scanned, but not recorded.
+   *
+   * @param columns	the sorted indices of the cells, null for all
+   */
+  public void setColumns(int[] columns) {
+    if (columns == null) {
+      m_Selected = null;
+    }
+    else {
+      m_Selected = new boolean[(columns.length == 0) ? 0 : columns[columns.length - 1] + 1];
+      for (int column : columns)
+        m_Selected[column] = true;
+    }
+  }
+
+  /**
+   * Returns the number of records read so far.
+   *
+   * @return		the number of records
+   */
+  public long getRecordCount() {
+    return m_RecordCount;
+  }
+
+  /**
+   * Reads more data into the buffer. Moves the current record to the start
+   * of the buffer first and grows the buffer if the record fills it.
+   *
+   * @return		true if data was read, false if end of reader
+   * @throws IOException	if reading fails
+   */
+  protected boolean fill() throws IOException {
+    int		shift;
+    int		i;
+    int		read;
+
+    if (m_EndOfReader)
+      return false;
+
+    if (m_RecordStart > 0) {
+      shift = m_RecordStart;
+      System.arraycopy(m_Buffer, shift, m_Buffer, 0, m_Limit - shift);
+      m_Limit       -= shift;
+      m_Pos         -= shift;
+      m_Write       -= shift;
+      m_CellStart   -= shift;
+      m_RecordStart  = 0;
+      for (i = 0; i < m_Row.m_Size; i++)
+        m_Row.m_Offsets[i] -= shift;
+    }
+    if (m_Limit == m_Buffer.length)
+      m_Buffer = Arrays.copyOf(m_Buffer, m_Buffer.length * 2);
+
+    do {
+      read = m_Reader.read(m_Buffer, m_Limit, m_Buffer.length - m_Limit);
+    }
+    while (read == 0);
+    if (read == EOF) {
+      m_EndOfReader = true;
+      return false;
+    }
+    m_Limit += read;
+
+    return true;
+  }
+
+  /**
+   * Reads the next character.
+   *
+   * @return		the character, EOF if end of reader
+   * @throws IOException	if reading fails
+   */
+  protected int read() throws IOException {
+    if ((m_Pos >= m_Limit) && !fill()) {
+      m_LastChar = EOF;
+      return EOF;
+    }
+    m_LastChar = m_Buffer[m_Pos++];
+    return m_LastChar;
+  }
+
+  /**
+   * Returns the next character without consuming it.
+   *
+   * @return		the character, EOF if end of reader
+   * @throws IOException	if reading fails
+   */
+  protected int peek() throws IOException {
+    if ((m_Pos >= m_Limit) && !fill())
+      return EOF;
+    return m_Buffer[m_Pos];
+  }
+
+  /**
+   * Checks whether the character ends a line, consuming the LF of a CRLF.
+   *
+   * @param c		the character to check
+   * @return		true if end of line
+   * @throws IOException	if reading fails
+   */
+  protected boolean readEndOfLine(int c) throws IOException {
+    if ((c == CR) && (peek() == LF)) {
+      read();
+      return true;
+    }
+    return (c == LF) || (c == CR);
+  }
+
+  /**
+   * Checks whether the character represents the start of a line.
+   *
+   * @param c		the last character read
+   * @return		true if start of line
+   */
+  protected boolean isStartOfLine(int c) {
+    return (c == LF) || (c == CR) || (c == UNDEFINED);
+  }
+
+  /**
+   * Appends the character to the current cell.
+   *
+   * @param c		the character to append
+   */
+  protected void append(int c) {
+    m_Buffer[m_Write++] = (char) c;
+  }
+
+  /**
+   * Processes an escape sequence, the escape character itself has already
+   * been consumed.
+   *
+   * @throws IOException	if EOF is encountered
+   */
+  protected void appendEscape() throws IOException {
+    int		c;
+
+    c = read();
+    if (c == m_Delimiter) {
+      append(c);
+      return;
+    }
+    switch (c) {
+      case 'r':
+        append(CR);
+        break;
+      case 'n':
+        append(LF);
+        break;
+      case 't':
+        append('\t');
+        break;
+      case 'b':
+        append('\b');
+        break;
+      case 'f':
+        append('\f');
+        break;
+      case CR:
+      case LF:
+      case '\t':
+      case '\b':
+      case '\f':
+        append(c);
+        break;
+      case EOF:
+        throw new IOException("EOF whilst processing escape sequence (record " + (m_RecordCount + 1) + ")");
+      default:
+        if ((c == m_Escape) || (c == m_Quote) || (c == m_Comment)) {
+          append(c);
+        }
+        else {
+          append(m_Escape);
+          append(c);
+        }
+    }
+  }
+
+  /**
+   * Consumes a run of plain characters straight from the buffer, i.e.,
+   * without any per-character bookkeeping. Only moves data if unescaping
+   * has already shortened the cell.
+   *
+   * @param quoted	whether inside a quoted cell
+   */
+  protected void appendRun(boolean quoted) {
+    int		end;
+    char	c;
+
+    end = m_Pos;
+    if (quoted) {
+      while (end < m_Limit) {
+        c = m_Buffer[end];
+        if ((c == m_Quote) || (c == m_Escape))
+          break;
+        end++;
+      }
+    }
+    else {
+      while (end < m_Limit) {
+        c = m_Buffer[end];
+        if ((c == m_Delimiter) || (c == LF) || (c == CR) || (c == m_Escape))
+          break;
+        end++;
+      }
+    }
+    if (end == m_Pos)
+      return;
+
+    if (m_Write != m_Pos)
+      System.arraycopy(m_Buffer, m_Pos, m_Buffer, m_Write, end - m_Pos);
+    m_Write   += end - m_Pos;
+    m_Pos      = end;
+    m_LastChar = m_Buffer[end - 1];
+  }
+
+  /**
+   * Parses an unquoted cell.
+   *
+   * @param c		the first character of the cell
+   * @return		the token type
+   * @throws IOException	if reading fails
+   */
+  protected int parseSimpleToken(int c) throws IOException {
+    int		result;
+
+    while (true) {
+      if (readEndOfLine(c)) {
+        result = EORECORD;
+        break;
+      }
+      if (c == EOF) {
+        m_Ready = true;
+        result  = EOFTOKEN;
+        break;
+      }
+      if (c == m_Delimiter) {
+        result = TOKEN;
+        break;
+      }
+      if (c == m_Escape) {
+        appendEscape();
+      }
+      else {
+        append(c);
+        appendRun(false);
+      }
+      c = read();
+    }
+
+    if (m_IgnoreSurroundingSpaces) {
+      while ((m_Write > m_CellStart) && Character.isWhitespace(m_Buffer[m_Write - 1]))
+        m_Write--;
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses a quoted cell, the opening quote has already been consumed.
+   *
+   * @return		the token type
+   * @throws IOException	if reading fails or the cell is malformed
+   */
+  protected int parseEncapsulatedToken() throws IOException {
+    int		c;
+
+    m_Quoted = true;
+    while (true) {
+      c = read();
+      if (c == m_Quote) {
+        if (peek() == m_Quote) {
+          append(read());
+        }
+        else {
+          while (true) {
+            c = read();
+            if (c == m_Delimiter)
+              return TOKEN;
+            if (c == EOF) {
+              m_Ready = true;
+              return EOFTOKEN;
+            }
+            if (readEndOfLine(c))
+              return EORECORD;
+            if (m_TrailingData)
+              append(c);
+            else if (!Character.isWhitespace((char) c))
+              throw new IOException("Invalid character between encapsulated token and delimiter (record " + (m_RecordCount + 1) + ")");
+          }
+        }
+      }
+      else if (c == m_Escape) {
+        appendEscape();
+      }
+      else if (c == EOF) {
+        if (m_LenientEof) {
+          m_Ready = true;
+          return EOFTOKEN;
+        }
+        throw new IOException("EOF reached before encapsulated token finished (record " + (m_RecordCount + 1) + ")");
+      }
+      else {
+        append(c);
+        appendRun(true);
+      }
+    }
+  }
+
+  /**
+   * Skips the remainder of a comment line.
+   *
+   * @return		false if EOF was reached without any content
+   * @throws IOException	if reading fails
+   */
+  protected boolean skipComment() throws IOException {
+    int		c;
+    boolean	content;
+
+    content = false;
+    while (true) {
+      c = read();
+      if (c == EOF)
+        return content;
+      if (readEndOfLine(c))
+        return true;
+      content = true;
+    }
+  }
+
+  /**
+   * Reads the next token, the cell content gets written starting at
+   * m_CellStart.
+   *
+   * @return		the token type
+   * @throws IOException	if reading fails
+   */
+  protected int nextToken() throws IOException {
+    int		lastChar;
+    int		c;
+    boolean	eol;
+    int		result;
+
+    m_Quoted = false;
+    m_Ready  = false;
+    lastChar = m_LastChar;
+    c        = read();
+    eol      = readEndOfLine(c);
+
+    if (m_IgnoreEmptyLines) {
+      while (eol && isStartOfLine(lastChar)) {
+        lastChar = c;
+        c        = read();
+        eol      = readEndOfLine(c);
+        if (c == EOF)
+          return EOFTOKEN;
+      }
+    }
+
+    if ((lastChar == EOF) || (!m_LastTokenDelimiter && (c == EOF)))
+      return EOFTOKEN;
+
+    if (isStartOfLine(lastChar) && (c == m_Comment)) {
+      if (!skipComment())
+        return EOFTOKEN;
+      return COMMENT;
+    }
+
+    // cell content starts after any skipped characters
+    m_Write     = m_Pos;
+    m_CellStart = m_Write;
+
+    if (m_IgnoreSurroundingSpaces) {
+      while (Character.isWhitespace((char) c) && (c != m_Delimiter) && !eol) {
+        c   = read();
+        eol = readEndOfLine(c);
+      }
+      m_Write     = m_Pos;
+      m_CellStart = m_Write;
+    }
+
+    if (c == m_Delimiter) {
+      result = TOKEN;
+    }
+    else if (eol) {
+      result = EORECORD;
+    }
+    else if (c == m_Quote) {
+      result = parseEncapsulatedToken();
+    }
+    else if (c == EOF) {
+      m_Ready = true;
+      result  = EOFTOKEN;
+    }
+    else {
+      // first character has been consumed already
+      m_Write--;
+      m_CellStart--;
+      result = parseSimpleToken(c);
+    }
+
+    m_LastTokenDelimiter = (result == TOKEN);
+
+    return result;
+  }
+
+  /**
+   * Checks whether the cell content equals the null string.
+   *
+   * @param offset	the offset of the cell
+   * @param length	the length of the cell
+   * @return		true if a match
+   */
+  protected boolean isNullString(int offset, int length) {
+    int		i;
+
+    if (length != m_NullString.length)
+      return false;
+    for (i = 0; i < length; i++) {
+      if (m_Buffer[offset + i] != m_NullString[i])
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Adds the current cell to the row.
+   *
+   * @param last	whether the last cell of the record
+   */
+  protected void addCell(boolean last) {
+    int		offset;
+    int		length;
+
+    offset = m_CellStart;
+    length = m_Write - m_CellStart;
+    if (m_Trim) {
+      while ((length > 0) && (m_Buffer[offset] <= ' ')) {
+        offset++;
+        length--;
+      }
+      while ((length > 0) && (m_Buffer[offset + length - 1] <= ' '))
+        length--;
+    }
+    if (last && (length == 0) && m_TrailingDelimiter)
+      return;
+    m_Column++;
+    if ((m_Selected != null) && ((m_Column > m_Selected.length) || !m_Selected[m_Column - 1]))
+      return;
+    if (m_NullString != null) {
+      if (isNullString(offset, length)) {
+        if (!(m_StrictQuoteMode && m_Quoted))
+          length = -1;
+      }
+    }
+    else if (m_StrictQuoteMode && (length == 0) && !m_Quoted) {
+      length = -1;
+    }
+    m_Row.add(offset, length);
+  }
+
+  /**
+   * Reads the next record.
+   *
+   * @return		the row (reused between calls), null if no more records
+   * @throws IOException	if reading fails
+   */
+  public Row next() throws IOException {
+    int		type;
+
+    m_Row.m_Size  = 0;
+    m_Column      = 0;
+    m_RecordStart = m_Pos;
+    m_Write       = m_Pos;
+    m_CellStart   = m_Pos;
+
+    do {
+      type = nextToken();
+      switch (type) {
+        case TOKEN:
+          addCell(false);
+          break;
+        case EORECORD:
+          addCell(true);
+          break;
+        case EOFTOKEN:
+          if (m_Ready)
+            addCell(true);
+          break;
+        case COMMENT:
+          type = TOKEN;
+          break;
+      }
+    }
+    while (type == TOKEN);
+
+    if (m_Column == 0)
+      return null;
+
+    m_Row.m_Chars = m_Buffer;
+    m_RecordCount++;
+
+    return m_Row;
+  }
+
+  /**
+   * Closes the underlying reader.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    m_Reader.close();
+  }
+
+  /**
+   * Row whose cells are slices of a char array. Null values are
+   * represented by a length of -1.
+   */
+  public static class Row
+    extends CommonCsvRow {
+
+    /** the underlying characters. */
+    protected char[] m_Chars;
+
+    /** the cell offsets. */
+    protected int[] m_Offsets;
+
+    /** the cell lengths. */
+    protected int[] m_Lengths;
+
+    /** the number of cells. */
+    protected int m_Size;
+
+    /** the encoding of the bytes held by the characters, null if decoded. */
+    protected Charset m_Encoding;
+
+    /**
+     * Initializes an empty row.
+     */
+    public Row() {
+      m_Offsets = new int[16];
+      m_Lengths = new int[16];
+    }
+
+    /**
+     * Adds the cell.
+     *
+     * @param offset	the offset in the char array
+     * @param length	the length of the cell, -1 for null
+     */
+    protected void add(int offset, int length) {
+      if (m_Size == m_Offsets.length) {
+        m_Offsets = Arrays.copyOf(m_Offsets, m_Size * 2);
+        m_Lengths = Arrays.copyOf(m_Lengths, m_Size * 2);
+      }
+      m_Offsets[m_Size] = offset;
+      m_Lengths[m_Size] = length;
+      m_Size++;
+    }
+
+    /**
+     * Returns the number of cells in the row.
+     *
+     * @return		the number of cells
+     */
+    @Override
+    public int size() {
+      return m_Size;
+    }
+
+    /**
+     * Returns the underlying characters.
+     *
+     * @return		the characters
+     */
+    public char[] getChars() {
+      return m_Chars;
+    }
+
+    /**
+     * Returns the offset of the cell in the underlying characters.
+     *
+     * @param index	the cell index
+     * @return		the offset
+     */
+    public int getOffset(int index) {
+      return m_Offsets[index];
+    }
+
+    /**
+     * Returns the length of the cell.
+     *
+     * @param index	the cell index
+     * @return		the length, -1 if null value
+     */
+    public int getLength(int index) {
+      return m_Lengths[index];
+    }
+
+    /**
+     * Returns the cell content as string.
+     *
+     * @param index	the cell index
+     * @return		the content, null if null value
+     */
+    @Override
+    public String get(int index) {
+      if (index >= m_Size)
+        throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for " + m_Size + " cells");
+      if (m_Lengths[index] < 0)
+        return null;
+      if (m_Encoding != null)
+        return decode(m_Chars, m_Offsets[index], m_Lengths[index], m_Encoding);
+      return new String(m_Chars, m_Offsets[index], m_Lengths[index]);
+    }
+
+    /**
+     * Checks whether the cell represents a missing value.
+     *
+     * @param index	the cell index
+     * @param missing	the missing value string
+     * @return		true if missing
+     */
+    @Override
+    public boolean isMissing(int index, String missing) {
+      return (m_Lengths[index] < 0) || matches(index, missing);
+    }
+
+    /**
+     * Returns the cell content as view on the underlying characters.
+     *
+     * @param index	the cell index
+     * @return		the content, null if null value
+     */
+    @Override
+    public CharSequence getSequence(int index) {
+      if (m_Lengths[index] < 0)
+        return null;
+      if ((m_Encoding != null) && !isAscii(m_Chars, m_Offsets[index], m_Lengths[index]))
+        return get(index);
+      return CharBuffer.wrap(m_Chars, m_Offsets[index], m_Lengths[index]);
+    }
+
+    /**
+     * Checks whether the cell content equals the value, without creating
+     * a string.
+     *
+     * @param index	the cell index
+     * @param value	the value to compare with
+     * @return		true if equal, false if different or null value
+     */
+    @Override
+    public boolean matches(int index, String value) {
+      int	offset;
+      int	length;
+      int	i;
+
+      length = m_Lengths[index];
+      // an ASCII value can only match cells with the same bytes
+      if ((m_Encoding != null) && (length >= 0)) {
+        for (i = 0; i < value.length(); i++) {
+          if (value.charAt(i) >= 0x80)
+            return value.equals(get(index));
+        }
+      }
+      if (length != value.length())
+        return false;
+      offset = m_Offsets[index];
+      for (i = 0; i < length; i++) {
+        if (m_Chars[offset + i] != value.charAt(i))
+          return false;
+      }
+      return true;
+    }
+
+    /**
+     * Parses the cell as double.
+     *
+     * @param index	the cell index
+     * @return		the parsed value
+     * @throws NumberFormatException	if not a number
+     */
+    @Override
+    public double parseDouble(int index) {
+      if (m_Lengths[index] < 0)
+        throw new NumberFormatException("null");
+      return CommonCsvNumbers.parseDouble(m_Chars, m_Offsets[index], m_Offsets[index] + m_Lengths[index]);
+    }
+
+    /**
+     * Returns a copy of the row with its own compact char array.
+     *
+     * @return		the detached copy
+     */
+    @Override
+    public CommonCsvRow copy() {
+      Row	result;
+      int	start;
+      int	end;
+      int	i;
+
+      start = Integer.MAX_VALUE;
+      end   = 0;
+      for (i = 0; i < m_Size; i++) {
+        start = Math.min(start, m_Offsets[i]);
+        end   = Math.max(end, m_Offsets[i] + Math.max(0, m_Lengths[i]));
+      }
+
+      result            = new Row();
+      result.m_Chars    = Arrays.copyOfRange(m_Chars, start, end);
+      result.m_Offsets  = new int[m_Size];
+      result.m_Lengths  = Arrays.copyOf(m_Lengths, m_Size);
+      result.m_Size     = m_Size;
+      result.m_Encoding = m_Encoding;
+      for (i = 0; i < m_Size; i++)
+        result.m_Offsets[i] = m_Offsets[i] - start;
+
+      return result;
+    }
+  }
+}
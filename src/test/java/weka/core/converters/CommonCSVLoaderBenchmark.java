@@ -0,0 +1,1069 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CommonCSVLoaderBenchmark.java
+ * Copyright (C) 2024 FracPete
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Range;
+import weka.core.SelectedTag;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Simple benchmarks for CommonCSVLoader, not run as part of the unit tests.
+ * Run from the command line with:<p/>
+ * java weka.core.converters.CommonCSVLoaderBenchmark [num-rows]
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class CommonCSVLoaderBenchmark {
+
+  /** the number of repetitions per measurement. */
+  public final static int REPETITIONS = 3;
+
+  /** prevents the JIT from removing the simulated consumer work. */
+  protected static volatile double m_Sink;
+
+  /**
+   * Generates a CSV file with numeric, nominal and string columns.
+   *
+   * @param numRows	the number of data rows
+   * @return		the generated (temporary) file
+   * @throws IOException	if writing fails
+   */
+  public static File generateMixed(int numRows) throws IOException {
+    File		result;
+    BufferedWriter	writer;
+    Random		rnd;
+    int			i;
+
+    result = File.createTempFile("commoncsv-", ".csv");
+    result.deleteOnExit();
+    rnd    = new Random(42);
+    writer = new BufferedWriter(new FileWriter(result));
+    writer.write("id,x,y,label,text\n");
+    for (i = 0; i < numRows; i++) {
+      writer.write(i + "," + rnd.nextDouble() + "," + rnd.nextInt(1000) + ",");
+      writer.write("c" + rnd.nextInt(5) + ",");
+      writer.write("\"text " + rnd.nextInt(100) + "\"\n");
+    }
+    writer.close();
+
+    return result;
+  }
+
+  /**
+   * Loads the file in batch mode and returns the best time in msec.
+   *
+   * @param file	the file to load
+   * @param loader	the configured loader
+   * @return		the best time of the repetitions
+   * @throws Exception	if loading fails
+   */
+  public static long timeLoad(File file, CommonCSVLoader loader) throws Exception {
+    long	best;
+    long	start;
+    int		i;
+    Instances	data;
+
+    best = Long.MAX_VALUE;
+    for (i = 0; i < REPETITIONS; i++) {
+      start = System.currentTimeMillis();
+      loader.setSource(file);
+      data = loader.getDataSet();
+      best = Math.min(best, System.currentTimeMillis() - start);
+      if (data.numInstances() == 0)
+        throw new IllegalStateException("No data loaded!");
+    }
+
+    return best;
+  }
+
+  /**
+   * Measures the load time with increasing type detection windows. With a
+   * linear replay of the detection buffer, the time stays roughly constant
+   * as the whole file is parsed in each run.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkTypeDetectionWindow(File file) throws Exception {
+    CommonCSVLoader	loader;
+    int[]		windows;
+    int			engine;
+
+    System.out.println("Type detection window");
+    windows = new int[]{100, 1000, 10000, 100000, 1000000};
+    for (engine = 0; engine < CommonCsvEngines.TAGS_ENGINES.length; engine++) {
+      for (int window : windows) {
+        loader = new CommonCSVLoader();
+        loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+        loader.setNumRowsTypeDetection(window);
+        System.out.println("  " + CommonCsvEngines.TAGS_ENGINES[engine].getIDStr()
+          + "\twindow=" + window + "\t" + timeLoad(file, loader) + "ms");
+      }
+    }
+  }
+
+  /**
+   * Generates a wide CSV file that consists mostly of text columns.
+   *
+   * @param numRows	the number of data rows
+   * @param numCols	the number of columns
+   * @return		the generated (temporary) file
+   * @throws IOException	if writing fails
+   */
+  public static File generateStrings(int numRows, int numCols) throws IOException {
+    File		result;
+    BufferedWriter	writer;
+    Random		rnd;
+    int			i;
+    int			n;
+
+    result = File.createTempFile("commoncsv-", ".csv");
+    result.deleteOnExit();
+    rnd    = new Random(42);
+    writer = new BufferedWriter(new FileWriter(result));
+    for (n = 0; n < numCols; n++)
+      writer.write((n > 0 ? "," : "") + "col" + n);
+    writer.write("\n");
+    for (i = 0; i < numRows; i++) {
+      for (n = 0; n < numCols; n++) {
+	if (n > 0)
+	  writer.write(",");
+	if (n % 10 == 0)
+	  writer.write("" + rnd.nextInt(1000));
+	else
+	  writer.write("word" + rnd.nextInt(100000));
+      }
+      writer.write("\n");
+    }
+    writer.close();
+
+    return result;
+  }
+
+  /**
+   * Loads the structure and returns the best time in msec.
+   *
+   * @param file	the file to load
+   * @param loader	the configured loader
+   * @return		the best time of the repetitions
+   * @throws Exception	if loading fails
+   */
+  public static long timeStructure(File file, CommonCSVLoader loader) throws Exception {
+    long	best;
+    long	start;
+    int		i;
+
+    best = Long.MAX_VALUE;
+    for (i = 0; i < REPETITIONS; i++) {
+      start = System.currentTimeMillis();
+      loader.setSource(file);
+      loader.getStructure();
+      best = Math.min(best, System.currentTimeMillis() - start);
+    }
+
+    return best;
+  }
+
+  /**
+   * Checks the cells with Double.parseDouble, relying on the exception.
+   *
+   * @param cells	the cells to check
+   * @return		the number of numeric cells
+   */
+  public static int countNumericExceptions(String[] cells) {
+    int		result;
+
+    result = 0;
+    for (String cell: cells) {
+      try {
+	Double.parseDouble(cell);
+	result++;
+      }
+      catch (Exception e) {
+	// ignored
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks the cells with the exception-free recognizer.
+   *
+   * @param cells	the cells to check
+   * @return		the number of numeric cells
+   */
+  public static int countNumericRecognizer(String[] cells) {
+    int		result;
+
+    result = 0;
+    for (String cell: cells) {
+      if (CommonCsvNumbers.isNumeric(cell))
+	result++;
+    }
+
+    return result;
+  }
+
+  /**
+   * Compares the exception-free number recognizer against Double.parseDouble
+   * with exception handling: once on string-heavy cells directly and once
+   * for the type detection phase of a very wide file with mostly text
+   * columns (each text column fails the numeric check once).
+   *
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkNumericDetection() throws Exception {
+    String[]		cells;
+    Random		rnd;
+    long		start;
+    long		best;
+    int			i;
+    int			mode;
+    File		file;
+    CommonCSVLoader	recognizer;
+    CommonCSVLoader	exceptions;
+
+    System.out.println("Numeric detection (string-heavy cells, 1000000 values)");
+    rnd   = new Random(42);
+    cells = new String[1000000];
+    for (i = 0; i < cells.length; i++)
+      cells[i] = (i % 10 == 0) ? ("" + rnd.nextDouble()) : ("word" + rnd.nextInt(100000));
+    for (mode = 0; mode < 2; mode++) {
+      best = Long.MAX_VALUE;
+      for (i = 0; i < REPETITIONS + 1; i++) {
+	start = System.currentTimeMillis();
+	if (((mode == 0) ? countNumericRecognizer(cells) : countNumericExceptions(cells)) == 0)
+	  throw new IllegalStateException("No numbers found!");
+	best = Math.min(best, System.currentTimeMillis() - start);
+      }
+      System.out.println("  " + ((mode == 0) ? "recognizer" : "exceptions") + "\t" + best + "ms");
+    }
+
+    System.out.println("Numeric detection (getStructure, 20000 columns, 100 rows)");
+    file       = generateStrings(100, 20000);
+    recognizer = new CommonCSVLoader();
+    exceptions = new CommonCSVLoader() {
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean isNumeric(String s) {
+	try {
+	  Double.parseDouble(s);
+	  return true;
+	}
+	catch (Exception e) {
+	  return false;
+	}
+      }
+    };
+    // warm up
+    timeStructure(file, recognizer);
+    timeStructure(file, exceptions);
+    System.out.println("  recognizer\t" + timeStructure(file, recognizer) + "ms");
+    System.out.println("  exceptions\t" + timeStructure(file, exceptions) + "ms");
+  }
+
+  /**
+   * Compares parsing numbers from char ranges with the fast parser against
+   * Double.parseDouble on strings created from the same ranges, in the
+   * style of a JMH average-time measurement (warm-up iterations followed by
+   * measured iterations, results consumed to prevent dead-code elimination).
+   */
+  public static void benchmarkDoubleParsing() {
+    char[]	chars;
+    int[]	offsets;
+    int[]	lengths;
+    StringBuilder	buffer;
+    Random	rnd;
+    String	cell;
+    int		i;
+    int		iter;
+    int		mode;
+    long	start;
+    long	best;
+    double	sum;
+
+    System.out.println("Double parsing (1000000 values, 10-20 digits)");
+    rnd     = new Random(42);
+    offsets = new int[1000000];
+    lengths = new int[offsets.length];
+    buffer  = new StringBuilder();
+    for (i = 0; i < offsets.length; i++) {
+      cell = (rnd.nextInt(1000000) - 500000) + "." + Math.abs(rnd.nextLong() % 100000000000000L);
+      offsets[i] = buffer.length();
+      lengths[i] = cell.length();
+      buffer.append(cell);
+    }
+    chars = buffer.toString().toCharArray();
+
+    for (mode = 0; mode < 2; mode++) {
+      best = Long.MAX_VALUE;
+      sum  = 0;
+      // 5 warm-up iterations, 10 measured
+      for (iter = 0; iter < 15; iter++) {
+	start = System.nanoTime();
+	for (i = 0; i < offsets.length; i++) {
+	  if (mode == 0)
+	    sum += CommonCsvNumbers.parseDouble(chars, offsets[i], offsets[i] + lengths[i]);
+	  else
+	    sum += Double.parseDouble(new String(chars, offsets[i], lengths[i]));
+	}
+	if (iter >= 5)
+	  best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.println("  " + ((mode == 0) ? "fast parser" : "JDK parser") + "\t"
+	+ (best / offsets.length) + "ns/op\t(checksum " + sum + ")");
+    }
+  }
+
+  /**
+   * Returns the used heap after garbage collection.
+   *
+   * @return		the used bytes
+   */
+  public static long usedHeap() {
+    Runtime	rt;
+    int		i;
+
+    rt = Runtime.getRuntime();
+    for (i = 0; i < 3; i++)
+      System.gc();
+
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  /**
+   * Generates a CSV file with 8 nominal, 6 integer and 6 floating point
+   * columns.
+   *
+   * @param numRows	the number of data rows
+   * @return		the generated (temporary) file
+   * @throws IOException	if writing fails
+   */
+  public static File generateWide(int numRows) throws IOException {
+    File		result;
+    BufferedWriter	writer;
+    Random		rnd;
+    int			i;
+    int			n;
+
+    result = File.createTempFile("commoncsv-", ".csv");
+    result.deleteOnExit();
+    rnd    = new Random(42);
+    writer = new BufferedWriter(new FileWriter(result));
+    for (n = 0; n < 20; n++)
+      writer.write((n > 0 ? "," : "") + "col" + n);
+    writer.write("\n");
+    for (i = 0; i < numRows; i++) {
+      for (n = 0; n < 20; n++) {
+	if (n > 0)
+	  writer.write(",");
+	if (n < 8)
+	  writer.write("v" + rnd.nextInt(10));
+	else if (n < 14)
+	  writer.write("" + rnd.nextInt(100000));
+	else
+	  writer.write("" + (rnd.nextInt(100000) / 100.0));
+      }
+      writer.write("\n");
+    }
+    writer.close();
+
+    return result;
+  }
+
+  /**
+   * Compares the heap occupied by the loaded dataset for the different
+   * instance types, using a file with mostly nominal and integer columns.
+   *
+   * @param numRows	the number of rows to generate
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkInstanceMemory(int numRows) throws Exception {
+    File		file;
+    CommonCSVLoader	loader;
+    Instances		data;
+    long		before;
+    long		after;
+    int			type;
+
+    System.out.println("Heap used by dataset (8 nominal, 6 integer, 6 numeric columns)");
+    file = generateWide(numRows);
+    for (type = 0; type < CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES.length; type++) {
+      loader = new CommonCSVLoader();
+      loader.setNominalRange(new Range("1-8"));
+      loader.setInstanceType(new SelectedTag(type, CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES));
+      before = usedHeap();
+      loader.setSource(file);
+      data   = loader.getDataSet();
+      loader = null;
+      after  = usedHeap();
+      System.out.println("  " + CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES[type].getIDStr()
+	+ "\t" + ((after - before) / 1024 / 1024) + "MB\t(" + data.numInstances() + " rows)");
+      data = null;
+    }
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far.
+   *
+   * @return		the bytes, -1 if not supported by the JVM
+   */
+  public static long allocatedBytes() {
+    java.lang.management.ThreadMXBean	bean;
+
+    bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean)
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    return -1;
+  }
+
+  /**
+   * Measures the bytes allocated per row in batch mode, appending the rows
+   * without copying (current) and via Instances.add (previous behavior).
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkAllocation(File file) throws Exception {
+    CommonCSVLoader	loader;
+    Instances		data;
+    long		start;
+    long		best;
+    int			mode;
+    int			i;
+
+    if (allocatedBytes() == -1) {
+      System.out.println("Allocation: not supported by JVM");
+      return;
+    }
+
+    System.out.println("Allocation per row (sequential, native engine)");
+    for (mode = 0; mode < 2; mode++) {
+      if (mode == 0) {
+	loader = new CommonCSVLoader();
+      }
+      else {
+	loader = new CommonCSVLoader() {
+	  private static final long serialVersionUID = 1L;
+	  @Override
+	  protected void appendInstance(Instance inst) {
+	    m_Data.add(inst);
+	  }
+	};
+      }
+      loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+      best = Long.MAX_VALUE;
+      data = null;
+      for (i = 0; i < REPETITIONS; i++) {
+	data  = null;
+	start = allocatedBytes();
+	loader.setSource(file);
+	data  = loader.getDataSet();
+	best  = Math.min(best, allocatedBytes() - start);
+      }
+      System.out.println("  " + ((mode == 0) ? "bulk append" : "Instances.add") + "\t"
+	+ (best / data.numInstances()) + " bytes/row");
+    }
+  }
+
+  /**
+   * Compares applying a row filter while loading with loading all rows and
+   * removing the rejected ones afterwards.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkRowFilter(File file) throws Exception {
+    CommonCSVLoader	loader;
+    Instances		data;
+    Instances		filtered;
+    long		start;
+    long		best;
+    int			i;
+    int			n;
+
+    System.out.println("Row filter (label = c1, sequential, native engine)");
+    loader = new CommonCSVLoader();
+    loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+    loader.setRowFilter("label = c1");
+    System.out.println("  pushdown\t" + timeLoad(file, loader) + "ms");
+
+    loader = new CommonCSVLoader();
+    loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+    best = Long.MAX_VALUE;
+    for (i = 0; i < REPETITIONS; i++) {
+      start = System.currentTimeMillis();
+      loader.setSource(file);
+      data     = loader.getDataSet();
+      filtered = new Instances(data, 0);
+      for (n = 0; n < data.numInstances(); n++) {
+	if (data.instance(n).stringValue(3).equals("c1"))
+	  filtered.add(data.instance(n));
+      }
+      best = Math.min(best, System.currentTimeMillis() - start);
+    }
+    System.out.println("  post-load\t" + best + "ms");
+  }
+
+  /**
+   * Compares incremental loading on the calling thread with parsing ahead
+   * on a background thread, with the consumer spending some time on each
+   * instance (as an incremental learner would).
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkReadAhead(File file) throws Exception {
+    CommonCSVLoader	loader;
+    Instances		structure;
+    Instance		inst;
+    long		start;
+    long		best;
+    double		sum;
+    int			i;
+    int			n;
+
+    System.out.println("Incremental loading with consumer work (" + Runtime.getRuntime().availableProcessors() + " cores)");
+    for (int readAhead: new int[]{0, 16, 1024}) {
+      loader = new CommonCSVLoader();
+      loader.setReadAhead(readAhead);
+      best = Long.MAX_VALUE;
+      sum  = 0;
+      for (i = 0; i < REPETITIONS; i++) {
+	start = System.currentTimeMillis();
+	loader.setSource(file);
+	structure = loader.getStructure();
+	while ((inst = loader.getNextInstance(structure)) != null) {
+	  for (n = 0; n < 200; n++)
+	    sum += Math.sqrt(inst.value(1) + n);
+	}
+	best = Math.min(best, System.currentTimeMillis() - start);
+      }
+      m_Sink = sum;
+      System.out.println("  read-ahead=" + readAhead + "\t" + best + "ms");
+    }
+  }
+
+  /**
+   * Compares reading single instances with reading blocks of instances in
+   * incremental mode.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkNextInstances(File file) throws Exception {
+    CommonCSVLoader	loader;
+    Instances		structure;
+    Instances		block;
+    long		start;
+    long		best;
+    int			count;
+    int			i;
+
+    System.out.println("Incremental loading, single vs blocks (native engine)");
+    for (int size: new int[]{1, 100, 10000}) {
+      loader = new CommonCSVLoader();
+      loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+      best  = Long.MAX_VALUE;
+      count = 0;
+      for (i = 0; i < REPETITIONS; i++) {
+	start = System.currentTimeMillis();
+	loader.setSource(file);
+	structure = loader.getStructure();
+	count     = 0;
+	if (size == 1) {
+	  while (loader.getNextInstance(structure) != null)
+	    count++;
+	}
+	else {
+	  while ((block = loader.getNextInstances(structure, size)) != null)
+	    count += block.numInstances();
+	}
+	best = Math.min(best, System.currentTimeMillis() - start);
+      }
+      System.out.println("  block=" + size + "\t" + best + "ms (" + count + " rows)");
+    }
+  }
+
+  /**
+   * Compares sequential with parallel streams.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkStream(File file) throws Exception {
+    CommonCSVLoader	loader;
+    Stream<Instance>	stream;
+    long		start;
+    long		best;
+    long		count;
+    int			i;
+
+    System.out.println("Stream (native engine, " + Runtime.getRuntime().availableProcessors() + " cores)");
+    for (boolean parallel: new boolean[]{false, true}) {
+      loader = new CommonCSVLoader();
+      loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+      best  = Long.MAX_VALUE;
+      count = 0;
+      for (i = 0; i < REPETITIONS; i++) {
+	start = System.currentTimeMillis();
+	loader.setSource(file);
+	stream = loader.stream();
+	try {
+	  count = parallel ? stream.parallel().count() : stream.count();
+	}
+	finally {
+	  stream.close();
+	}
+	best = Math.min(best, System.currentTimeMillis() - start);
+      }
+      System.out.println("  " + (parallel ? "parallel" : "sequential") + "\t" + best + "ms (" + count + " rows)");
+    }
+  }
+
+  /**
+   * Compares scanning the bytes of UTF-8 files with decoding all characters
+   * before tokenizing.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkByteScanning(File file) throws Exception {
+    CommonCSVLoader	loader;
+
+    System.out.println("Byte scanning (UTF-8, sequential, native engine)");
+    for (boolean scan: new boolean[]{false, true}) {
+      if (scan) {
+	loader = new CommonCSVLoader();
+      }
+      else {
+	loader = new CommonCSVLoader() {
+	  private static final long serialVersionUID = 1L;
+	  @Override
+	  protected boolean canScanBytes() {
+	    return false;
+	  }
+	};
+      }
+      loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+      loader.setCharset("UTF-8");
+      System.out.println("  " + (scan ? "scan bytes" : "decode all") + "\t" + timeLoad(file, loader) + "ms");
+    }
+  }
+
+  /**
+   * Compares decompressing a gzip-compressed copy of the file inline with
+   * decompressing it on a separate thread.
+   *
+   * @param file	the file to compress and load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkPipelinedDecompression(File file) throws Exception {
+    File		compressed;
+    InputStream		in;
+    OutputStream	out;
+    byte[]		buffer;
+    int			read;
+    CommonCSVLoader	loader;
+
+    compressed = new File(file.getAbsolutePath() + ".gz");
+    in         = new FileInputStream(file);
+    out        = new GZIPOutputStream(new FileOutputStream(compressed), 65536);
+    buffer     = new byte[65536];
+    while ((read = in.read(buffer)) != -1)
+      out.write(buffer, 0, read);
+    in.close();
+    out.close();
+
+    System.out.println("Decompression (gzip, " + compressed.length() + " bytes)");
+    for (boolean pipelined: new boolean[]{false, true}) {
+      loader = new CommonCSVLoader();
+      loader.setPipelinedDecompression(pipelined);
+      System.out.println("  " + (pipelined ? "pipelined" : "inline") + "\t" + timeLoad(compressed, loader) + "ms");
+    }
+    compressed.delete();
+  }
+
+  /**
+   * Compares inflating a block-gzipped copy of the file (64KB members plus
+   * .gzi index) sequentially with inflating the blocks in parallel.
+   *
+   * @param file	the file to compress and load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkBlockGzip(File file) throws Exception {
+    File			compressed;
+    InputStream			in;
+    OutputStream		out;
+    DataOutputStream		index;
+    ByteArrayOutputStream	block;
+    OutputStream		gz;
+    List<long[]>		offsets;
+    byte[]			buffer;
+    long			pos;
+    long			size;
+    int				read;
+    CommonCSVLoader		loader;
+
+    compressed = new File(file.getAbsolutePath() + ".gz");
+    in         = new FileInputStream(file);
+    out        = new FileOutputStream(compressed);
+    offsets    = new ArrayList<long[]>();
+    buffer     = new byte[65536];
+    pos        = 0;
+    size       = 0;
+    while ((read = in.read(buffer)) != -1) {
+      if (size > 0)
+	offsets.add(new long[]{pos, size});
+      block = new ByteArrayOutputStream();
+      gz    = new GZIPOutputStream(block);
+      gz.write(buffer, 0, read);
+      gz.close();
+      block.writeTo(out);
+      pos  += block.size();
+      size += read;
+    }
+    in.close();
+    out.close();
+    index = new DataOutputStream(new FileOutputStream(CommonCsvBlockGzip.getIndexFile(compressed)));
+    index.writeLong(Long.reverseBytes(offsets.size()));
+    for (long[] offset: offsets) {
+      index.writeLong(Long.reverseBytes(offset[0]));
+      index.writeLong(Long.reverseBytes(offset[1]));
+    }
+    index.close();
+
+    System.out.println("Block gzip (" + (offsets.size() + 1) + " members, " + compressed.length() + " bytes)");
+    for (int numThreads: new int[]{1, 0}) {
+      loader = new CommonCSVLoader();
+      loader.setNumThreads(numThreads);
+      System.out.println("  " + ((numThreads == 1) ? "sequential" : "parallel") + "\t" + timeLoad(compressed, loader) + "ms");
+    }
+    compressed.delete();
+    CommonCsvBlockGzip.getIndexFile(compressed).delete();
+  }
+
+  /**
+   * Compares saving plain text, gzip via a wrapped stream and block-gzipped
+   * output compressed on one and on all cores.
+   *
+   * @param file	the file to load and save
+   * @throws Exception	if loading or saving fails
+   */
+  public static void benchmarkBlockGzipSaver(File file) throws Exception {
+    CommonCSVLoader	loader;
+    CommonCSVSaver	saver;
+    Instances		data;
+    File		output;
+    String[]		labels;
+    long		best;
+    long		start;
+    int			i;
+    int			n;
+
+    loader = new CommonCSVLoader();
+    loader.setFile(file);
+    data   = loader.getDataSet();
+    output = new File(file.getAbsolutePath() + ".out.gz");
+    labels = new String[]{"plain", "gzip stream", "block gzip (1 thread)", "block gzip (all cores)"};
+
+    System.out.println("Saving");
+    for (n = 0; n < labels.length; n++) {
+      best = Long.MAX_VALUE;
+      for (i = 0; i < REPETITIONS; i++) {
+	output.delete();
+	saver = new CommonCSVSaver();
+	saver.setInstances(data);
+	saver.setBlockGzip(n >= 2);
+	saver.setNumThreads((n == 2) ? 1 : 0);
+	start = System.currentTimeMillis();
+	if (n == 1)
+	  saver.setDestination(new GZIPOutputStream(new FileOutputStream(output), 65536));
+	else
+	  saver.setFile(output);
+	saver.writeBatch();
+	best = Math.min(best, System.currentTimeMillis() - start);
+      }
+      System.out.println("  " + labels[n] + "\t" + best + "ms (" + output.length() + " bytes)");
+    }
+    output.delete();
+  }
+
+  /**
+   * Compares obtaining the structure with and without the schema cache,
+   * for increasing type detection windows.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkSchemaCache(File file) throws Exception {
+    CommonCSVLoader	loader;
+    File		dir;
+    int[]		windows;
+
+    System.out.println("Schema cache");
+    dir     = Files.createTempDirectory("commoncsv-").toFile();
+    windows = new int[]{100, 10000, 1000000};
+    for (int window : windows) {
+      loader = new CommonCSVLoader();
+      loader.setNumRowsTypeDetection(window);
+      System.out.println("  window=" + window + "\tdetection\t" + timeStructure(file, loader) + "ms");
+      loader = new CommonCSVLoader();
+      loader.setNumRowsTypeDetection(window);
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setSource(file);
+      loader.getStructure();
+      System.out.println("  window=" + window + "\tcached\t\t" + timeStructure(file, loader) + "ms");
+    }
+    for (File f: dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+
+  /**
+   * Compares parsing the file with reading it from the columnar cache.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkColumnarCache(File file) throws Exception {
+    CommonCSVLoader	loader;
+    File		cacheFile;
+
+    System.out.println("Columnar cache");
+    cacheFile = CommonCsvColumnarCache.getCacheFile(file);
+    loader    = new CommonCSVLoader();
+    System.out.println("  parsing\t" + timeLoad(file, loader) + "ms");
+    loader = new CommonCSVLoader();
+    loader.setColumnarCache(true);
+    loader.setSource(file);
+    loader.getDataSet();
+    System.out.println("  cached\t" + timeLoad(file, loader) + "ms (" + cacheFile.length() + " bytes)");
+    cacheFile.delete();
+  }
+
+  /**
+   * Compares retrieving a row near the end of the file by streaming through
+   * the loader with random access via the offset index.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkRandomAccess(File file) throws Exception {
+    CommonCSVLoader	loader;
+    Instances		structure;
+    long		start;
+    int			numRows;
+    int			i;
+
+    System.out.println("Random access");
+    loader    = new CommonCSVLoader();
+    loader.setFile(file);
+    structure = loader.getStructure();
+    numRows   = 0;
+    start     = System.currentTimeMillis();
+    while (loader.getNextInstance(structure) != null)
+      numRows++;
+    System.out.println("  streaming\t" + (System.currentTimeMillis() - start) + "ms");
+
+    loader = new CommonCSVLoader();
+    loader.setOffsetIndex(CommonCSVLoader.DEFAULT_RANDOM_ACCESS_INTERVAL);
+    loader.setFile(file);
+    start = System.currentTimeMillis();
+    loader.getRow(0);
+    System.out.println("  index\t\t" + (System.currentTimeMillis() - start) + "ms");
+    start = System.currentTimeMillis();
+    for (i = 0; i < 100; i++)
+      loader.getRow(numRows - 1 - i * 997);
+    System.out.println("  100 rows\t" + (System.currentTimeMillis() - start) + "ms");
+    CommonCsvOffsetIndex.getIndexFile(file).delete();
+  }
+
+  /**
+   * Measures planning splits and loading them one after the other (as
+   * separate workers would) with the header of the first split, compared
+   * to loading the whole file.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkSplits(File file) throws Exception {
+    CommonCSVLoader	loader;
+    Instances		header;
+    long[]		bounds;
+    long		start;
+    long		slowest;
+    long		time;
+    int			i;
+
+    System.out.println("Splits");
+    loader = new CommonCSVLoader();
+    loader.setNumThreads(1);
+    System.out.println("  whole file\t" + timeLoad(file, loader) + "ms");
+    start  = System.currentTimeMillis();
+    bounds = loader.planSplits(file, 8);
+    System.out.println("  planning\t" + (System.currentTimeMillis() - start) + "ms");
+    header  = null;
+    slowest = 0;
+    for (i = 0; i < bounds.length - 1; i++) {
+      loader = new CommonCSVLoader();
+      loader.setSplitStart(bounds[i]);
+      loader.setSplitEnd(bounds[i + 1]);
+      loader.setExternalStructure(header);
+      start = System.currentTimeMillis();
+      loader.setFile(file);
+      if (header == null)
+	header = loader.getStructure();
+      loader.getDataSet();
+      time    = System.currentTimeMillis() - start;
+      slowest = Math.max(slowest, time);
+    }
+    System.out.println("  slowest of " + (bounds.length - 1) + "\t" + slowest + "ms");
+  }
+
+  /**
+   * Compares loading with type detection from a small window, from a window
+   * covering the whole file and from a first pass over the whole file.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkTwoPassDetection(File file) throws Exception {
+    CommonCSVLoader	loader;
+
+    System.out.println("Two-pass detection");
+    loader = new CommonCSVLoader();
+    System.out.println("  window=" + loader.getNumRowsTypeDetection() + "\t" + timeLoad(file, loader) + "ms");
+    loader = new CommonCSVLoader();
+    loader.setNumRowsTypeDetection(Integer.MAX_VALUE);
+    System.out.println("  window=all\t" + timeLoad(file, loader) + "ms");
+    loader = new CommonCSVLoader();
+    loader.setTwoPassDetection(true);
+    System.out.println("  two-pass\t" + timeLoad(file, loader) + "ms");
+  }
+
+  /**
+   * Compares determining the structure from the first rows, from windows
+   * sampled across the file and from a first pass over the whole file.
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkSampleWindows(File file) throws Exception {
+    CommonCSVLoader	loader;
+    int[]		windows;
+
+    System.out.println("Sample windows");
+    windows = new int[]{0, 10, 100};
+    for (int window : windows) {
+      loader = new CommonCSVLoader();
+      loader.setSampleWindows(window);
+      System.out.println("  windows=" + window + "\t" + timeStructure(file, loader) + "ms");
+    }
+    loader = new CommonCSVLoader();
+    loader.setTwoPassDetection(true);
+    System.out.println("  two-pass\t" + timeStructure(file, loader) + "ms");
+  }
+
+  /**
+   * Compares type detection and loading with and without turning columns
+   * with few distinct values into nominal ones (with two-pass detection,
+   * as the threshold requires seeing all rows).
+   *
+   * @param file	the file to load
+   * @throws Exception	if loading fails
+   */
+  public static void benchmarkNominalThreshold(File file) throws Exception {
+    CommonCSVLoader	loader;
+    int[]		thresholds;
+
+    System.out.println("Nominal threshold");
+    thresholds = new int[]{0, 100};
+    for (int threshold : thresholds) {
+      loader = new CommonCSVLoader();
+      loader.setTwoPassDetection(true);
+      loader.setNominalThreshold(threshold);
+      System.out.println("  threshold=" + threshold + "\tdetection\t" + timeStructure(file, loader) + "ms");
+      loader = new CommonCSVLoader();
+      loader.setTwoPassDetection(true);
+      loader.setNominalThreshold(threshold);
+      System.out.println("  threshold=" + threshold + "\tloading\t\t" + timeLoad(file, loader) + "ms");
+    }
+  }
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args	optional number of rows to generate
+   * @throws Exception	if benchmark fails
+   */
+  public static void main(String[] args) throws Exception {
+    int		numRows;
+    File	file;
+
+    numRows = 1000000;
+    if (args.length > 0)
+      numRows = Integer.parseInt(args[0]);
+    file = generateMixed(numRows);
+    System.out.println("Rows: " + numRows + ", file: " + file + " (" + file.length() + " bytes)");
+
+    benchmarkTypeDetectionWindow(file);
+    benchmarkNumericDetection();
+    benchmarkDoubleParsing();
+    benchmarkInstanceMemory(numRows);
+    benchmarkAllocation(file);
+    benchmarkRowFilter(file);
+    benchmarkReadAhead(file);
+    benchmarkNextInstances(file);
+    benchmarkStream(file);
+    benchmarkByteScanning(file);
+    benchmarkPipelinedDecompression(file);
+    benchmarkBlockGzip(file);
+    benchmarkBlockGzipSaver(file);
+    benchmarkSchemaCache(file);
+    benchmarkColumnarCache(file);
+    benchmarkRandomAccess(file);
+    benchmarkSplits(file);
+    benchmarkTwoPassDetection(file);
+    benchmarkSampleWindows(file);
+    benchmarkNominalThreshold(file);
+  }
+}
@@ -31,10 +31,30 @@ import weka.core.converters.ConverterUtils.DataSource;
 import weka.test.Regression;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Tests CommonCSVLoader/CommonCSVSaver. Run from the command line with:<p/>
@@ -308,6 +328,42 @@ public class CommonCSVTest
     return result.toString();
   }
 
+  /**
+   * Writes the content to the file, using UTF-8.
+   *
+   * @param file	the file to write to
+   * @param content	the content to write
+   * @throws IOException	if writing fails
+   */
+  protected void writeFile(File file, String content) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Writes a temporary test file with the columns id, cat (4 labels),
+   * value (missing for every 11th row) and text (quoted, with comma and
+   * quote).
+   *
+   * @param numRows	the number of data rows
+   * @return		the file
+   * @throws IOException	if writing fails
+   */
+  protected File writeTestFile(int numRows) throws IOException {
+    File		result;
+    StringBuilder	content;
+    int			i;
+
+    content = new StringBuilder("id,cat,value,text\n");
+    for (i = 0; i < numRows; i++)
+      content.append(i + ",c" + (i % 4) + "," + ((i % 11 == 0) ? "" : (i * 0.5)) + ",\"t,\"\"" + i + "\"\n");
+    result = File.createTempFile("commoncsv-", ".csv");
+    writeFile(result, content.toString());
+
+    return result;
+  }
+
   /**
    * Runs a regression test -- this checks that the output of the tested object
    * matches that in a reference version. When this test is run without any
@@ -431,6 +487,1963 @@ public class CommonCSVTest
     }
   }
 
+  /**
+   * Tests the native tokenizer against the Apache Commons CSV engine.
+   */
+  public void testNativeVsCommonsCsv() {
+    String[]		files;
+    CommonCSVLoader[]	setups;
+    CommonCSVLoader	actual;
+    InputStream		in;
+    Instances		commons;
+    Instances		nativ;
+    int			i;
+
+    files  = getLoaderRegressionFiles();
+    setups = getLoaderRegressionSetups();
+    if (files.length != setups.length)
+      fail("Number of files does not match setups: " + files.length + " != " + setups.length);
+    for (i = 0; i < files.length; i++) {
+      try {
+	in = ClassLoader.getSystemResourceAsStream(files[i]);
+	if (in == null)
+	  throw new IOException("Failed to load: " + files[i]);
+	setups[i].setSource(in);
+	commons = setups[i].getDataSet();
+
+	actual = (CommonCSVLoader) new SerializedObject(getLoaderRegressionSetups()[i]).getObject();
+	actual.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+	in = ClassLoader.getSystemResourceAsStream(files[i]);
+	if (in == null)
+	  throw new IOException("Failed to load: " + files[i]);
+	actual.setSource(in);
+	nativ = actual.getDataSet();
+
+	assertEquals("Output differs (commons-csv vs native): " + files[i], commons.toString(), nativ.toString());
+      }
+      catch (Exception e) {
+        e.printStackTrace();
+        fail("Failed to test '" + Utils.toCommandLine(setups[i]) + "' on '" + files[i] + "': " + e);
+      }
+    }
+  }
+
+  /**
+   * Tests parallel parsing against sequential parsing, using a generated
+   * file with quoted cells that span multiple lines.
+   */
+  public void testParallelVsSequential() {
+    File		file;
+    StringBuilder	content;
+    Random		rnd;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		sequential;
+    Instances		parallel;
+
+    file = null;
+    try {
+      rnd     = new Random(1);
+      content = new StringBuilder("id,num,nom,text\n");
+      for (i = 0; i < 100000; i++) {
+	content.append(i + "," + rnd.nextDouble() + ",n" + rnd.nextInt(3) + ",");
+	if (i % 7 == 0)
+	  content.append("\"multi\nline \"\"" + i + "\"\"\"\n");
+	else
+	  content.append("text" + i + "\n");
+      }
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+
+      for (int engine: new int[]{CommonCsvEngines.COMMONS_CSV, CommonCsvEngines.NATIVE}) {
+	loader = new CommonCSVLoader();
+	loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	loader.setNominalRange(new Range("3"));
+	loader.setFile(file);
+	sequential = loader.getDataSet();
+
+	loader = new CommonCSVLoader();
+	loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	loader.setNominalRange(new Range("3"));
+	loader.setNumThreads(3);
+	loader.setFile(file);
+	parallel = loader.getDataSet();
+
+	assertEquals("Number of rows differ", sequential.numInstances(), parallel.numInstances());
+	assertEquals("Output differs (sequential vs parallel)", sequential.toString(), parallel.toString());
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test parallel parsing: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Compares loading a subset of the columns (by range and by name) with
+   * loading all columns and removing the unwanted ones.
+   */
+  public void testColumnProjection() {
+    File		file;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		full;
+    Instances		projected;
+
+    file = null;
+    try {
+      content = new StringBuilder("id,a,b,text,c\n");
+      for (i = 0; i < 500; i++)
+	content.append(i + ",\"x" + i + "\"," + (i * 0.5) + ",\"t,\"\"" + (i % 7) + "\"\"\"" + ((i % 3 == 0) ? "" : ("," + i)) + "\n");
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+
+      for (int engine: new int[]{CommonCsvEngines.COMMONS_CSV, CommonCsvEngines.NATIVE}) {
+	loader = new CommonCSVLoader();
+	loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	loader.setFile(file);
+	full = loader.getDataSet();
+	full.deleteAttributeAt(4);
+	full.deleteAttributeAt(1);
+	full.deleteAttributeAt(0);
+
+	loader = new CommonCSVLoader();
+	loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	loader.setColumnRange(new Range("3-4"));
+	loader.setFile(file);
+	projected = loader.getDataSet();
+	assertEquals("Output differs (range)", full.toString(), projected.toString());
+
+	loader = new CommonCSVLoader();
+	loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	loader.setColumnNames("text,b");
+	loader.setNumThreads(2);
+	loader.setFile(file);
+	projected = loader.getDataSet();
+	assertEquals("Output differs (names)", full.toString(), projected.toString());
+      }
+
+      // estimate for pre-sizing the dataset must not be based on the projected cells only
+      loader = new CommonCSVLoader();
+      loader.setColumnRange(new Range("1"));
+      loader.setFile(file);
+      loader.getStructure();
+      assertTrue("Row estimate not bounded", loader.estimateNumRows() <= 2 * 500);
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test column projection: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Tests the row filter against loading a file that only contains the
+   * accepted rows, in batch and incremental mode.
+   */
+  public void testRowFilter() {
+    File		file;
+    File		expectedFile;
+    List<String>	lines;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		filtered;
+    Instance		inst;
+
+    file         = null;
+    expectedFile = null;
+    try {
+      file    = writeTestFile(500);
+      lines   = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      content = new StringBuilder(lines.get(0) + "\n");
+      for (i = 0; i < 500; i++) {
+	if ((i % 11 != 0) && (i * 0.5 >= 50) && ((i % 4 == 1) || (i % 4 == 3)) && !("" + i).endsWith("7"))
+	  content.append(lines.get(i + 1)).append("\n");
+      }
+      expectedFile = File.createTempFile("commoncsv-", ".csv");
+      writeFile(expectedFile, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setFile(expectedFile);
+      expected = loader.getDataSet();
+      assertTrue("No rows accepted", expected.numInstances() > 0);
+
+      for (int engine: new int[]{CommonCsvEngines.COMMONS_CSV, CommonCsvEngines.NATIVE}) {
+	for (int threads: new int[]{1, 2}) {
+	  loader = new CommonCSVLoader();
+	  loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	  loader.setNumThreads(threads);
+	  loader.setRowFilter("value >= 50 && cat in c1,\"c3\" && 4 !~ .*7");
+	  loader.setFile(file);
+	  filtered = loader.getDataSet();
+	  filtered.setRelationName(expected.relationName());
+	  assertEquals("Output differs (batch)", expected.toString(), filtered.toString());
+	}
+
+	loader = new CommonCSVLoader();
+	loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	loader.setRowFilter("value >= 50 && cat in c1,\"c3\" && 4 !~ .*7");
+	loader.setFile(file);
+	filtered = loader.getStructure();
+	while ((inst = loader.getNextInstance(filtered)) != null)
+	  filtered.add(inst);
+	filtered.setRelationName(expected.relationName());
+	assertEquals("Output differs (incremental)", expected.toString(), filtered.toString());
+      }
+
+      // estimate for pre-sizing the dataset must not include the rejected rows
+      loader = new CommonCSVLoader();
+      loader.setRowFilter("value >= 50 && cat in c1,\"c3\" && 4 !~ .*7");
+      loader.setFile(file);
+      loader.getStructure();
+      assertTrue("Row estimate not bounded", loader.estimateNumRows() <= 2 * expected.numInstances());
+
+      loader = new CommonCSVLoader();
+      loader.setRowFilter("unknown = 1");
+      loader.setFile(file);
+      try {
+	loader.getDataSet();
+	fail("Invalid column accepted");
+      }
+      catch (IOException e) {
+	// expected
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test row filter: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+      if (expectedFile != null)
+	expectedFile.delete();
+    }
+  }
+
+  /**
+   * Tests parsing ahead on a background thread in incremental mode, including
+   * passing through errors and stopping early.
+   */
+  public void testReadAhead() {
+    File		file;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+    Instance		inst;
+    Thread		thread;
+    ByteArrayOutputStream	stream;
+    List<String>		lines;
+
+    file = null;
+    try {
+      file = writeTestFile(2000);
+      Files.write(file.toPath(), "2000,c0,oops,t2000\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+      loader = new CommonCSVLoader();
+      loader.setStringRange(new Range("last"));
+      loader.setFile(file);
+      expected = loader.getStructure();
+      try {
+	while ((inst = loader.getNextInstance(expected)) != null)
+	  expected.add(inst);
+	fail("Invalid numeric value accepted");
+      }
+      catch (IOException e) {
+	// expected
+      }
+
+      for (int capacity: new int[]{1, 100}) {
+	loader = new CommonCSVLoader();
+	loader.setStringRange(new Range("last"));
+	loader.setReadAhead(capacity);
+	loader.setFile(file);
+	actual = loader.getStructure();
+	try {
+	  while ((inst = loader.getNextInstance(actual)) != null)
+	    actual.add(inst);
+	  fail("Invalid numeric value accepted (read-ahead)");
+	}
+	catch (IOException e) {
+	  // expected
+	}
+	assertNull("Error should be final", loader.getNextInstance(actual));
+	assertEquals("Output differs (capacity=" + capacity + ")", expected.toString(), actual.toString());
+      }
+
+      // stop early
+      loader = new CommonCSVLoader();
+      loader.setReadAhead(10);
+      loader.setFile(file);
+      actual = loader.getStructure();
+      for (i = 0; i < 5; i++)
+	assertNotNull("Instance missing", loader.getNextInstance(actual));
+      thread = loader.m_ReadAheadParser.m_Thread;
+      assertTrue("Background thread not running", thread.isAlive());
+      loader.reset();
+      assertNull("Background parser not removed", loader.m_ReadAheadParser);
+      assertFalse("Background thread not stopped", thread.isAlive());
+      actual = loader.getStructure();
+      actual.add(loader.getNextInstance(actual));
+      assertEquals("Row after reset differs", expected.instance(0).toString(), actual.instance(0).toString());
+
+      // stop while blocked in reading
+      lines  = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      stream = new ByteArrayOutputStream();
+      for (i = 0; i <= 300; i++)
+	stream.write((lines.get(i) + "\n").getBytes(StandardCharsets.UTF_8));
+      loader = new CommonCSVLoader();
+      loader.setReadAhead(1000);
+      loader.setSource(new StallingInputStream(stream.toByteArray()));
+      actual = loader.getStructure();
+      for (i = 0; i < 5; i++)
+	assertNotNull("Instance missing", loader.getNextInstance(actual));
+      thread = loader.m_ReadAheadParser.m_Thread;
+      loader.setFile(file);
+      assertFalse("Blocked background thread not stopped", thread.isAlive());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test read-ahead: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Tests reading blocks of instances against reading single instances.
+   */
+  public void testNextInstances() {
+    File		file;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+    Instances		block;
+    Instance		inst;
+
+    file = null;
+    try {
+      file = writeTestFile(1000);
+
+      for (int engine: new int[]{CommonCsvEngines.COMMONS_CSV, CommonCsvEngines.NATIVE}) {
+	loader = new CommonCSVLoader();
+	loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	loader.setStringRange(new Range("last"));
+	loader.setFile(file);
+	expected = loader.getStructure();
+	while ((inst = loader.getNextInstance(expected)) != null)
+	  expected.add(inst);
+
+	for (int readAhead: new int[]{0, 10}) {
+	  loader = new CommonCSVLoader();
+	  loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	  loader.setStringRange(new Range("last"));
+	  loader.setReadAhead(readAhead);
+	  loader.setFile(file);
+	  actual = loader.getStructure();
+	  while ((block = loader.getNextInstances(actual, 7)) != null) {
+	    assertTrue("Block too large", block.numInstances() <= 7);
+	    for (i = 0; i < block.numInstances(); i++)
+	      actual.add(block.instance(i));
+	  }
+	  assertEquals("Output differs (read-ahead=" + readAhead + ")", expected.toString(), actual.toString());
+	}
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test blocks of instances: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Tests sequential and parallel streams against incremental loading.
+   */
+  public void testStream() {
+    File		file;
+    CommonCSVLoader	loader;
+    Instances		structure;
+    Instance		inst;
+    List<String>	expected;
+    List<String>	actual;
+    Stream<Instance>	stream;
+
+    file = null;
+    try {
+      // large enough to get split into several byte ranges
+      file = writeTestFile(100000);
+      assertTrue("File too small", file.length() > 2 * CommonCSVLoader.MIN_CHUNK_SIZE);
+
+      loader = new CommonCSVLoader();
+      loader.setStringRange(new Range("last"));
+      loader.setFile(file);
+      structure = loader.getStructure();
+      expected  = new ArrayList<String>();
+      while ((inst = loader.getNextInstance(structure)) != null) {
+	inst.setDataset(structure);
+	expected.add(inst.toString());
+      }
+
+      for (boolean parallel: new boolean[]{false, true}) {
+	for (int engine: new int[]{CommonCsvEngines.COMMONS_CSV, CommonCsvEngines.NATIVE}) {
+	  loader = new CommonCSVLoader();
+	  loader.setEngine(new SelectedTag(engine, CommonCsvEngines.TAGS_ENGINES));
+	  loader.setStringRange(new Range("last"));
+	  loader.setFile(file);
+	  stream = loader.stream();
+	  try {
+	    if (parallel)
+	      stream = stream.parallel();
+	    actual = new ArrayList<String>();
+	    for (Object row: stream.toArray())
+	      actual.add(row.toString());
+	  }
+	  finally {
+	    stream.close();
+	  }
+	  assertEquals("Output differs (parallel=" + parallel + ", engine=" + engine + ")", expected, actual);
+	}
+      }
+
+      // stream from non-file source
+      loader = new CommonCSVLoader();
+      loader.setSource(new FileInputStream(file));
+      stream = loader.stream();
+      try {
+	assertEquals("Number of rows differs (stream source)", expected.size(), stream.parallel().count());
+      }
+      finally {
+	stream.close();
+      }
+
+      // short-circuiting
+      loader = new CommonCSVLoader();
+      loader.setFile(file);
+      stream = loader.stream();
+      try {
+	assertEquals("First row differs", expected.get(0).split(",")[0], "" + (int) stream.parallel().findFirst().get().value(0));
+      }
+      finally {
+	stream.close();
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test stream: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Stream that stalls after its data until closed, ignoring interrupts
+   * like a blocked socket read.
+   */
+  protected static class StallingInputStream
+    extends InputStream {
+
+    /** the data to return before stalling. */
+    protected byte[] m_Data;
+
+    /** the position in the data. */
+    protected int m_Pos;
+
+    /** whether the stream got closed. */
+    protected volatile boolean m_Closed;
+
+    /**
+     * Initializes the stream.
+     *
+     * @param data	the data to return before stalling
+     */
+    public StallingInputStream(byte[] data) {
+      m_Data = data;
+    }
+
+    /**
+     * Returns the next byte, stalls at the end of the data until closed.
+     *
+     * @return		the byte
+     * @throws IOException	if closed
+     */
+    public int read() throws IOException {
+      if (m_Pos == m_Data.length)
+	stall();
+      return m_Data[m_Pos++] & 0xff;
+    }
+
+    /**
+     * Returns the remaining data, stalls at the end of the data until closed.
+     *
+     * @param b		the buffer to fill
+     * @param off	the offset in the buffer
+     * @param len	the maximum number of bytes
+     * @return		the number of bytes read
+     * @throws IOException	if closed
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+	return 0;
+      if (m_Pos == m_Data.length)
+	stall();
+      len = Math.min(len, m_Data.length - m_Pos);
+      System.arraycopy(m_Data, m_Pos, b, off, len);
+      m_Pos += len;
+      return len;
+    }
+
+    /**
+     * Waits until the stream gets closed.
+     *
+     * @throws IOException	always, once closed
+     */
+    protected void stall() throws IOException {
+      while (!m_Closed) {
+	try {
+	  Thread.sleep(10);
+	}
+	catch (InterruptedException e) {
+	  // ignored
+	}
+      }
+      throw new IOException("Stream closed");
+    }
+
+    /**
+     * Closes the stream, releasing a stalled read.
+     */
+    public void close() {
+      m_Closed = true;
+    }
+  }
+
+  /**
+   * Subscriber for testing the publisher, requesting rows in blocks.
+   */
+  protected static class BlockSubscriber
+    implements CommonCsvPublisher.Subscriber {
+
+    /** the size of the blocks to request, 0 for only requesting once. */
+    protected int m_Block;
+
+    /** the number of rows after which to cancel, -1 for never. */
+    protected int m_CancelAfter;
+
+    /** the subscription. */
+    protected CommonCsvPublisher.Subscription m_Subscription;
+
+    /** the received rows. */
+    protected List<String> m_Rows = new ArrayList<String>();
+
+    /** the error, if any. */
+    protected Throwable m_Error;
+
+    /** whether completed. */
+    protected boolean m_Completed;
+
+    /**
+     * Initializes the subscriber.
+     *
+     * @param block		the block size
+     * @param cancelAfter	the number of rows after which to cancel, -1 for never
+     */
+    public BlockSubscriber(int block, int cancelAfter) {
+      m_Block       = block;
+      m_CancelAfter = cancelAfter;
+    }
+
+    /**
+     * Stores the subscription and requests the first block.
+     *
+     * @param subscription	the subscription
+     */
+    public void onSubscribe(CommonCsvPublisher.Subscription subscription) {
+      m_Subscription = subscription;
+      m_Subscription.request(Math.max(3, m_Block));
+    }
+
+    /**
+     * Stores the row and requests the next block or cancels.
+     *
+     * @param item	the row
+     */
+    public void onNext(Instance item) {
+      m_Rows.add(item.toString());
+      if (m_Rows.size() == m_CancelAfter)
+	m_Subscription.cancel();
+      else if ((m_Block > 0) && (m_Rows.size() % m_Block == 0))
+	m_Subscription.request(m_Block);
+    }
+
+    /**
+     * Stores the error.
+     *
+     * @param throwable	the error
+     */
+    public void onError(Throwable throwable) {
+      m_Error = throwable;
+    }
+
+    /**
+     * Records the completion.
+     */
+    public void onComplete() {
+      m_Completed = true;
+    }
+  }
+
+  /**
+   * Tests the publisher regarding demand, completion and cancellation.
+   */
+  public void testPublisher() {
+    File		file;
+    CommonCSVLoader	loader;
+    Instances		structure;
+    Instance		inst;
+    List<String>	expected;
+    Executor		executor;
+    CommonCsvPublisher	publisher;
+    BlockSubscriber	subscriber;
+    BlockSubscriber	second;
+
+    file = null;
+    try {
+      file = writeTestFile(500);
+
+      loader = new CommonCSVLoader();
+      loader.setFile(file);
+      structure = loader.getStructure();
+      expected  = new ArrayList<String>();
+      while ((inst = loader.getNextInstance(structure)) != null) {
+	inst.setDataset(structure);
+	expected.add(inst.toString());
+      }
+
+      executor = new Executor() {
+	public void execute(Runnable command) {
+	  command.run();
+	}
+      };
+
+      // all rows, in blocks
+      loader = new CommonCSVLoader();
+      loader.setFile(file);
+      publisher  = new CommonCsvPublisher(loader, executor);
+      subscriber = new BlockSubscriber(7, -1);
+      publisher.subscribe(subscriber);
+      assertNull("Error occurred", subscriber.m_Error);
+      assertTrue("Not completed", subscriber.m_Completed);
+      assertEquals("Rows differ", expected, subscriber.m_Rows);
+
+      // second subscriber gets rejected
+      second = new BlockSubscriber(7, -1);
+      publisher.subscribe(second);
+      assertTrue("Second subscriber not rejected", second.m_Error instanceof IllegalStateException);
+      assertEquals("Second subscriber received rows", 0, second.m_Rows.size());
+
+      // demand only
+      loader = new CommonCSVLoader();
+      loader.setFile(file);
+      subscriber = new BlockSubscriber(0, -1);
+      new CommonCsvPublisher(loader, executor).subscribe(subscriber);
+      assertEquals("Rows delivered beyond demand", 3, subscriber.m_Rows.size());
+      assertFalse("Completed prematurely", subscriber.m_Completed);
+
+      // cancel
+      loader = new CommonCSVLoader();
+      loader.setFile(file);
+      subscriber = new BlockSubscriber(7, 10);
+      new CommonCsvPublisher(loader, executor).subscribe(subscriber);
+      assertEquals("Rows delivered after cancel", 10, subscriber.m_Rows.size());
+      assertFalse("Completed after cancel", subscriber.m_Completed);
+      assertNull("Error after cancel", subscriber.m_Error);
+      try {
+	loader.m_sourceReader.read();
+	fail("Source not closed after cancel");
+      }
+      catch (IOException e) {
+	// expected
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test publisher: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Tests loading files with non-ASCII content in different charsets,
+   * scanning the bytes with the native engine.
+   */
+  public void testCharset() {
+    File		utf8;
+    File		latin1;
+    StringBuilder	content;
+    String[]		cities;
+    OutputStream	out;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+
+    utf8   = null;
+    latin1 = null;
+    try {
+      cities  = new String[]{"Z\u00fcrich", "K\u00f6ln", "Aarhus", "Besan\u00e7on", "Malm\u00f6"};
+      content = new StringBuilder("id,city,name,value\n");
+      for (i = 0; i < 300; i++)
+	content.append(i + "," + cities[i % cities.length] + ",\"na\u00efve " + i + "\"," + ((i % 7 == 0) ? "\u00f8" : ("" + (i * 0.25))) + "\n");
+      utf8   = File.createTempFile("commoncsv-", ".csv");
+      latin1 = File.createTempFile("commoncsv-", ".csv");
+      out    = new FileOutputStream(utf8);
+      out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+      out.close();
+      out    = new FileOutputStream(latin1);
+      out.write(content.toString().getBytes(StandardCharsets.ISO_8859_1));
+      out.close();
+
+      loader = new CommonCSVLoader();
+      loader.setCharset("UTF-8");
+      loader.setMissingValue("\u00f8");
+      loader.setStringRange(new Range("3"));
+      loader.setRowFilter("city != K\u00f6ln");
+      loader.setFile(utf8);
+      expected = loader.getDataSet();
+      assertNull("Bytes scanned with commons-csv engine", loader.m_ScannedCharset);
+      assertEquals("Nominal label not decoded", "Z\u00fcrich", expected.attribute(1).value(0));
+      assertTrue("Missing value not detected", expected.instance(0).isMissing(3));
+
+      for (File file: new File[]{utf8, latin1}) {
+	for (boolean mapped: new boolean[]{false, true}) {
+	  loader = new CommonCSVLoader();
+	  loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+	  loader.setCharset((file == utf8) ? "UTF-8" : "ISO-8859-1");
+	  loader.setMissingValue("\u00f8");
+	  loader.setStringRange(new Range("3"));
+	  loader.setRowFilter("city != K\u00f6ln");
+	  loader.setUseMemoryMapping(mapped);
+	  loader.setNumThreads(mapped ? 2 : 1);
+	  loader.setNumRowsTypeDetection(50);
+	  loader.setFile(file);
+	  actual = loader.getDataSet();
+	  assertNotNull("Bytes not scanned", loader.m_ScannedCharset);
+	  actual.setRelationName(expected.relationName());
+	  assertEquals("Output differs (" + loader.getCharset() + ", mapped=" + mapped + ")", expected.toString(), actual.toString());
+	}
+      }
+
+      // engine changed after setting the source
+      loader = new CommonCSVLoader();
+      loader.setEngine(new SelectedTag(CommonCsvEngines.NATIVE, CommonCsvEngines.TAGS_ENGINES));
+      loader.setCharset("UTF-8");
+      loader.setMissingValue("\u00f8");
+      loader.setStringRange(new Range("3"));
+      loader.setRowFilter("city != K\u00f6ln");
+      loader.setFile(utf8);
+      loader.setEngine(new SelectedTag(CommonCsvEngines.COMMONS_CSV, CommonCsvEngines.TAGS_ENGINES));
+      actual = loader.getDataSet();
+      assertEquals("Output differs (engine changed)", expected.toString(), actual.toString());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test charset: " + e);
+    }
+    finally {
+      if (utf8 != null)
+	utf8.delete();
+      if (latin1 != null)
+	latin1.delete();
+    }
+  }
+
+  /**
+   * Tests loading gzip-compressed data that is detected via the magic bytes
+   * rather than the file extension, decompressed inline and pipelined.
+   */
+  public void testCompressedSource() {
+    File		plain;
+    File		compressed;
+    StringBuilder	content;
+    OutputStream	out;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+    Instance		inst;
+    int			count;
+
+    plain      = null;
+    compressed = null;
+    try {
+      content = new StringBuilder("id,name,value,class\n");
+      for (i = 0; i < 20000; i++)
+	content.append(i + ",name" + (i % 97) + "," + (i * 0.5) + "," + ((i % 3 == 0) ? "yes" : "no") + "\n");
+      plain      = File.createTempFile("commoncsv-", ".csv");
+      compressed = File.createTempFile("commoncsv-", ".csv");
+      out        = new FileOutputStream(plain);
+      out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+      out.close();
+      out        = new GZIPOutputStream(new FileOutputStream(compressed));
+      out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+      out.close();
+
+      loader = new CommonCSVLoader();
+      loader.setFile(plain);
+      expected = loader.getDataSet();
+      assertFalse("Plain file flagged as compressed", loader.m_SourceIsCompressed);
+
+      for (boolean pipelined: new boolean[]{false, true}) {
+	loader = new CommonCSVLoader();
+	loader.setPipelinedDecompression(pipelined);
+	loader.setFile(compressed);
+	actual = loader.getDataSet();
+	assertTrue("Compressed file not detected", loader.m_SourceIsCompressed);
+	actual.setRelationName(expected.relationName());
+	assertEquals("Output differs (pipelined=" + pipelined + ")", expected.toString(), actual.toString());
+
+	loader = new CommonCSVLoader();
+	loader.setPipelinedDecompression(pipelined);
+	loader.setSource(new FileInputStream(compressed));
+	actual = loader.getStructure();
+	count  = 0;
+	while ((inst = loader.getNextInstance(actual)) != null) {
+	  actual.add(inst);
+	  count++;
+	}
+	assertEquals("Number of rows differs (pipelined=" + pipelined + ")", expected.numInstances(), count);
+	actual.setRelationName(expected.relationName());
+	assertEquals("Incremental output differs (pipelined=" + pipelined + ")", expected.toString(), actual.toString());
+      }
+
+      // closing the source stops the decompression thread
+      loader = new CommonCSVLoader();
+      loader.setPipelinedDecompression(true);
+      loader.setFile(compressed);
+      actual = loader.getStructure();
+      assertNotNull("No first row", loader.getNextInstance(actual));
+      loader.reset();
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test compressed source: " + e);
+    }
+    finally {
+      if (plain != null)
+	plain.delete();
+      if (compressed != null)
+	compressed.delete();
+    }
+  }
+
+  /**
+   * Writes the data as block-gzipped file, either as BGZF or as plain
+   * gzip members with a .gzi index file.
+   *
+   * @param file	the file to write to
+   * @param data	the uncompressed data
+   * @param blockSize	the number of uncompressed bytes per block
+   * @param bgzf	whether to write BGZF or plain members plus index
+   * @throws IOException	if writing fails
+   */
+  protected void writeBlockGzip(File file, byte[] data, int blockSize, boolean bgzf) throws IOException {
+    ByteArrayOutputStream	out;
+    ByteArrayOutputStream	block;
+    OutputStream		gz;
+    DataOutputStream		index;
+    List<long[]>		offsets;
+    Deflater			deflater;
+    CRC32			crc;
+    byte[]			buffer;
+    int				len;
+    int				n;
+    int				i;
+
+    out     = new ByteArrayOutputStream();
+    offsets = new ArrayList<long[]>();
+    buffer  = new byte[2 * blockSize + 1024];
+    for (i = 0; i < data.length; i += blockSize) {
+      len = Math.min(blockSize, data.length - i);
+      if (i > 0)
+	offsets.add(new long[]{out.size(), i});
+      block = new ByteArrayOutputStream();
+      if (bgzf) {
+	deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	deflater.setInput(data, i, len);
+	deflater.finish();
+	n = deflater.deflate(buffer);
+	deflater.end();
+	crc = new CRC32();
+	crc.update(data, i, len);
+	block.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+	writeLittleEndian(block, n + 25, 2);
+	block.write(buffer, 0, n);
+	writeLittleEndian(block, crc.getValue(), 4);
+	writeLittleEndian(block, len, 4);
+      }
+      else {
+	gz = new GZIPOutputStream(block);
+	gz.write(data, i, len);
+	gz.close();
+      }
+      block.writeTo(out);
+    }
+    Files.write(file.toPath(), out.toByteArray());
+
+    if (!bgzf) {
+      index = new DataOutputStream(new FileOutputStream(CommonCsvBlockGzip.getIndexFile(file)));
+      index.writeLong(Long.reverseBytes(offsets.size()));
+      for (long[] offset: offsets) {
+	index.writeLong(Long.reverseBytes(offset[0]));
+	index.writeLong(Long.reverseBytes(offset[1]));
+      }
+      index.close();
+    }
+  }
+
+  /**
+   * Writes the value in little-endian order.
+   *
+   * @param out		the stream to write to
+   * @param value	the value
+   * @param numBytes	the number of bytes to write
+   */
+  protected void writeLittleEndian(ByteArrayOutputStream out, long value, int numBytes) {
+    int		i;
+
+    for (i = 0; i < numBytes; i++)
+      out.write((int) ((value >> (8 * i)) & 0xFF));
+  }
+
+  /**
+   * Tests loading block-gzipped files (BGZF and members with index), inflated
+   * in parallel and starting at a block.
+   */
+  public void testBlockGzip() {
+    File			plain;
+    File			compressed;
+    StringBuilder		content;
+    byte[]			data;
+    int				i;
+    int				start;
+    CommonCSVLoader		loader;
+    Instances			expected;
+    Instances			actual;
+    CommonCsvBlockGzip.Index	index;
+    OutputStream		out;
+
+    plain      = null;
+    compressed = null;
+    try {
+      content = new StringBuilder("id,name,value,class\n");
+      for (i = 0; i < 20000; i++)
+	content.append(i + ",\"name " + (i % 97) + "\"," + (i * 0.5) + "," + ((i % 3 == 0) ? "yes" : "no") + "\n");
+      data       = content.toString().getBytes(StandardCharsets.UTF_8);
+      plain      = File.createTempFile("commoncsv-", ".csv");
+      compressed = File.createTempFile("commoncsv-", ".csv.gz");
+      Files.write(plain.toPath(), data);
+
+      loader = new CommonCSVLoader();
+      loader.setFile(plain);
+      expected = loader.getDataSet();
+
+      for (boolean bgzf: new boolean[]{true, false}) {
+	writeBlockGzip(compressed, data, 16384, bgzf);
+	index = CommonCsvBlockGzip.getIndex(compressed);
+	assertNotNull("No block index (bgzf=" + bgzf + ")", index);
+	assertEquals("Number of blocks differs (bgzf=" + bgzf + ")", (data.length + 16383) / 16384, index.getNumBlocks());
+	assertEquals("Block not found", 3, index.findBlock(index.getUncompressedOffset(3) + 10));
+
+	for (int numThreads: new int[]{1, 2}) {
+	  loader = new CommonCSVLoader();
+	  loader.setNumThreads(numThreads);
+	  loader.setFile(compressed);
+	  actual = loader.getDataSet();
+	  actual.setRelationName(expected.relationName());
+	  assertEquals("Output differs (bgzf=" + bgzf + ", threads=" + numThreads + ")", expected.toString(), actual.toString());
+	}
+
+	// start at block, i.e., first line after block start
+	start = (int) index.getUncompressedOffset(3);
+	while ((start < data.length) && (data[start - 1] != '\n'))
+	  start++;
+	Files.write(plain.toPath(), (content.substring(0, content.indexOf("\n") + 1) + content.substring(start)).getBytes(StandardCharsets.UTF_8));
+	loader = new CommonCSVLoader();
+	loader.setFile(plain);
+	expected = loader.getDataSet();
+	loader = new CommonCSVLoader();
+	loader.setNumThreads(2);
+	loader.setStartBlock(3);
+	loader.setFile(compressed);
+	actual = loader.getDataSet();
+	actual.setRelationName(expected.relationName());
+	assertEquals("Output differs (bgzf=" + bgzf + ", start block)", expected.toString(), actual.toString());
+
+	Files.write(plain.toPath(), data);
+	loader = new CommonCSVLoader();
+	loader.setFile(plain);
+	expected = loader.getDataSet();
+	CommonCsvBlockGzip.getIndexFile(compressed).delete();
+      }
+
+      // plain gzip cannot start at a block
+      out = new GZIPOutputStream(new FileOutputStream(compressed));
+      out.write(data);
+      out.close();
+      loader = new CommonCSVLoader();
+      loader.setStartBlock(1);
+      try {
+	loader.setFile(compressed);
+	fail("Plain gzip started at block");
+      }
+      catch (IOException e) {
+	// expected
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test block gzip: " + e);
+    }
+    finally {
+      if (plain != null)
+	plain.delete();
+      if (compressed != null) {
+	compressed.delete();
+	CommonCsvBlockGzip.getIndexFile(compressed).delete();
+      }
+    }
+  }
+
+  /**
+   * Tests writing block-gzipped output, in batch and incremental mode.
+   */
+  public void testBlockGzipSaver() {
+    File			plain;
+    File			compressed;
+    StringBuilder		content;
+    int				i;
+    CommonCSVLoader		loader;
+    CommonCSVSaver		saver;
+    Instances			data;
+    Instances			actual;
+    CommonCsvBlockGzip.Index	scanned;
+    CommonCsvBlockGzip.Index	index;
+    InputStream			in;
+    ByteArrayOutputStream	out;
+    byte[]			buffer;
+    int				read;
+
+    plain      = null;
+    compressed = null;
+    try {
+      content = new StringBuilder("id,name,value,class\n");
+      for (i = 0; i < 20000; i++)
+	content.append(i + ",name" + (i % 97) + "," + (i * 0.5) + "," + ((i % 3 == 0) ? "yes" : "no") + "\n");
+      plain      = File.createTempFile("commoncsv-", ".csv");
+      compressed = File.createTempFile("commoncsv-", ".csv.gz");
+      Files.write(plain.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+      loader = new CommonCSVLoader();
+      loader.setFile(plain);
+      data = loader.getDataSet();
+
+      // plain output for comparison
+      saver = new CommonCSVSaver();
+      saver.setInstances(data);
+      saver.setFile(plain);
+      saver.writeBatch();
+
+      for (boolean incremental: new boolean[]{false, true}) {
+	compressed.delete();
+	CommonCsvBlockGzip.getIndexFile(compressed).delete();
+	saver = new CommonCSVSaver();
+	saver.setBlockGzip(true);
+	saver.setWriteBlockIndex(true);
+	saver.setNumThreads(2);
+	if (incremental) {
+	  saver.setRetrieval(AbstractSaver.INCREMENTAL);
+	  saver.setStructure(new Instances(data, 0));
+	  saver.setFile(compressed);
+	  for (i = 0; i < data.numInstances(); i++)
+	    saver.writeIncremental(data.instance(i));
+	  saver.writeIncremental(null);
+	}
+	else {
+	  saver.setInstances(data);
+	  saver.setFile(compressed);
+	  saver.writeBatch();
+	}
+
+	// readable with standard gzip
+	in     = new GZIPInputStream(new FileInputStream(compressed));
+	out    = new ByteArrayOutputStream();
+	buffer = new byte[65536];
+	while ((read = in.read(buffer)) != -1)
+	  out.write(buffer, 0, read);
+	in.close();
+	assertTrue("Decompressed output differs (incremental=" + incremental + ")",
+	  Arrays.equals(Files.readAllBytes(plain.toPath()), out.toByteArray()));
+
+	// BGZF blocks and index
+	scanned = CommonCsvBlockGzip.scan(compressed);
+	assertNotNull("Not BGZF (incremental=" + incremental + ")", scanned);
+	assertTrue("Index file missing", CommonCsvBlockGzip.getIndexFile(compressed).exists());
+	index = CommonCsvBlockGzip.readIndex(CommonCsvBlockGzip.getIndexFile(compressed), compressed);
+	assertTrue("Too few blocks", index.getNumBlocks() > 2);
+	// scanning includes the empty end-of-file block
+	assertEquals("Number of blocks differs", scanned.getNumBlocks() - 1, index.getNumBlocks());
+	for (i = 0; i < index.getNumBlocks(); i++) {
+	  assertEquals("Compressed offset differs", scanned.getCompressedOffset(i), index.getCompressedOffset(i));
+	  assertEquals("Uncompressed offset differs", scanned.getUncompressedOffset(i), index.getUncompressedOffset(i));
+	}
+
+	loader = new CommonCSVLoader();
+	loader.setNumThreads(2);
+	loader.setFile(compressed);
+	actual = loader.getDataSet();
+	actual.setRelationName(data.relationName());
+	assertEquals("Loaded data differs (incremental=" + incremental + ")", data.toString(), actual.toString());
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test block gzip saver: " + e);
+    }
+    finally {
+      if (plain != null)
+	plain.delete();
+      if (compressed != null) {
+	compressed.delete();
+	CommonCsvBlockGzip.getIndexFile(compressed).delete();
+      }
+    }
+  }
+
+  /**
+   * Tests caching the inferred structure, including invalidation when
+   * options, file or header change.
+   */
+  public void testSchemaCache() {
+    File		file;
+    File		dir;
+    File		cacheFile;
+    StringBuilder	content;
+    int			i;
+    long		lastModified;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+
+    file = null;
+    dir  = null;
+    try {
+      content = new StringBuilder("id,name,value,class\n");
+      for (i = 0; i < 5000; i++)
+	content.append(i + ",name" + (i % 97) + "," + (i * 0.5) + "," + ((i % 3 == 0) ? "yes" : "no") + "\n");
+      file = File.createTempFile("commoncsv-", ".csv");
+      dir  = Files.createTempDirectory("commoncsv-").toFile();
+      writeFile(file, content.toString());
+      cacheFile = CommonCsvSchemaCache.getCacheFile(dir, file);
+
+      loader = new CommonCSVLoader();
+      loader.setFile(file);
+      expected = loader.getDataSet();
+
+      loader = new CommonCSVLoader();
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertNull("Structure should not be cached yet", loader.m_CachedSchema);
+      assertTrue("Cache file not written", cacheFile.exists());
+      assertEquals("Output differs", expected.toString(), actual.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertNotNull("Structure should be cached", loader.m_CachedSchema);
+      assertEquals("Output differs (cached)", expected.toString(), actual.toString());
+
+      // options that do not influence the structure
+      loader = new CommonCSVLoader();
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setNumThreads(2);
+      loader.setFile(file);
+      loader.getStructure();
+      assertNotNull("Structure should be cached (threads)", loader.m_CachedSchema);
+
+      // options that influence the structure
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-nominal", "last", "-schema-cache", dir.getAbsolutePath()});
+      loader.setFile(file);
+      actual = loader.getStructure();
+      assertNull("Structure should not be cached (options)", loader.m_CachedSchema);
+      assertTrue("Last column not nominal", actual.attribute(3).isNominal());
+
+      // re-cache with default options
+      loader = new CommonCSVLoader();
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setFile(file);
+      loader.getStructure();
+      loader = new CommonCSVLoader();
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setFile(file);
+      loader.getStructure();
+      assertNotNull("Structure should be cached again", loader.m_CachedSchema);
+
+      // modified file
+      content.append("5000,name0,0.5,maybe\n");
+      writeFile(file, content.toString().replace("id,name", "id,label"));
+      loader = new CommonCSVLoader();
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setFile(file);
+      actual = loader.getStructure();
+      assertNull("Structure should not be cached (modified)", loader.m_CachedSchema);
+      assertEquals("Header not updated", "label", actual.attribute(1).name());
+
+      // header differs from cached one, with size and modification time preserved
+      lastModified = file.lastModified();
+      writeFile(file, content.toString().replace("id,name", "id,title"));
+      assertTrue("Failed to restore modification time", file.setLastModified(lastModified));
+      loader = new CommonCSVLoader();
+      loader.setSchemaCache(dir.getAbsolutePath());
+      loader.setFile(file);
+      actual = loader.getStructure();
+      assertNull("Structure should not be cached (header)", loader.m_CachedSchema);
+      assertEquals("Header not updated", "title", actual.attribute(1).name());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test schema cache: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+      if (dir != null) {
+	for (File f: dir.listFiles())
+	  f.delete();
+	dir.delete();
+      }
+    }
+  }
+
+  /**
+   * Tests the columnar cache with numeric, nominal (2-byte codes) and string
+   * columns, including missing values and invalidation.
+   */
+  public void testColumnarCache() {
+    File		file;
+    File		cacheFile;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+
+    file      = null;
+    cacheFile = null;
+    try {
+      content = new StringBuilder("id,name,value,text,class\n");
+      for (i = 0; i < 5000; i++)
+	content.append(i + ",name" + (i % 300) + "," + ((i % 7 == 0) ? "?" : "" + (i * 0.5)) + ","
+	  + ((i % 11 == 0) ? "?" : "text \u00e9" + (i % 1000)) + "," + ((i % 3 == 0) ? "yes" : "no") + "\n");
+      file      = File.createTempFile("commoncsv-", ".csv");
+      cacheFile = CommonCsvColumnarCache.getCacheFile(file);
+      writeFile(file, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-string", "4", "-nominal", "2"});
+      loader.setFile(file);
+      expected = loader.getDataSet();
+      assertFalse("Cache file should not exist", cacheFile.exists());
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-string", "4", "-nominal", "2", "-columnar-cache"});
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertFalse("Data should not be cached yet", loader.m_ColumnarCacheUsed);
+      assertTrue("Cache file not written", cacheFile.exists());
+      assertEquals("Output differs", expected.toString(), actual.toString());
+
+      for (String type: new String[]{"dense", "compact"}) {
+	loader = new CommonCSVLoader();
+	loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-string", "4", "-nominal", "2", "-columnar-cache", "-instance-type", type});
+	loader.setFile(file);
+	actual = loader.getDataSet();
+	assertTrue("Data should be cached (" + type + ")", loader.m_ColumnarCacheUsed);
+	assertEquals("Output differs (cached, " + type + ")", expected.toString(), actual.toString());
+      }
+
+      // options that influence the data
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-string", "4", "-columnar-cache"});
+      loader.setFile(file);
+      loader.getDataSet();
+      assertFalse("Data should not be cached (options)", loader.m_ColumnarCacheUsed);
+
+      // modified file
+      content.append("5000,name0,1.5,text,yes\n");
+      writeFile(file, content.toString());
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-string", "4", "-columnar-cache"});
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertFalse("Data should not be cached (modified)", loader.m_ColumnarCacheUsed);
+      assertEquals("Number of rows differs", expected.numInstances() + 1, actual.numInstances());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test columnar cache: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+      if (cacheFile != null)
+	cacheFile.delete();
+    }
+  }
+
+  /**
+   * Tests random access to rows via the offset index, with quoted cells
+   * spanning multiple lines, empty lines and mixed line endings.
+   */
+  public void testRandomAccess() {
+    File		file;
+    File		indexFile;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+    Instance		inst;
+
+    file      = null;
+    indexFile = null;
+    try {
+      content = new StringBuilder("id,text,value\r\n");
+      for (i = 0; i < 1000; i++) {
+	content.append(i + "," + ((i % 5 == 0) ? "\"multi\nline, " + i + "\"" : "text" + i) + "," + (i * 0.5));
+	content.append((i % 2 == 0) ? "\n" : "\r\n");
+	if (i % 50 == 0)
+	  content.append("\n");
+      }
+      file      = File.createTempFile("commoncsv-", ".csv");
+      indexFile = CommonCsvOffsetIndex.getIndexFile(file);
+      writeFile(file, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-string", "2", "-offset-index", "7"});
+      loader.setFile(file);
+      expected = loader.getDataSet();
+      assertTrue("Index file not written", indexFile.exists());
+      assertEquals("Number of records differs", expected.numInstances() + 1,
+	CommonCsvOffsetIndex.read(file, loader.createFormat()).getNumRecords());
+
+      for (int interval: new int[]{7, 0}) {
+	loader = new CommonCSVLoader();
+	loader.setOptions(new String[]{"-string", "2", "-offset-index", "" + interval});
+	loader.setFile(file);
+	for (int index: new int[]{0, 1, 6, 7, 8, 250, 500, 998, 999}) {
+	  inst = loader.getRow(index);
+	  assertNotNull("Row #" + index + " not found (interval=" + interval + ")", inst);
+	  assertEquals("Row #" + index + " differs (interval=" + interval + ")", expected.instance(index).toString(), inst.toString());
+	}
+	assertNull("Row beyond end", loader.getRow(1000));
+	actual = loader.getRows(95, 20);
+	assertEquals("Number of rows differs", 20, actual.numInstances());
+	for (i = 0; i < actual.numInstances(); i++)
+	  assertEquals("Row #" + (95 + i) + " differs", expected.instance(95 + i).toString(), actual.instance(i).toString());
+	assertEquals("Number of rows at end differs", 5, loader.getRows(995, 20).numInstances());
+      }
+
+      // modified file invalidates index
+      content.append("1000,appended,1.5\n");
+      writeFile(file, content.toString());
+      assertNull("Index should be outdated", CommonCsvOffsetIndex.read(file, loader.createFormat()));
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-string", "2", "-offset-index", "7"});
+      loader.setFile(file);
+      inst = loader.getRow(1000);
+      assertNotNull("Appended row not found", inst);
+      assertEquals("Appended row differs", "appended", inst.stringValue(1));
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test random access: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+      if (indexFile != null)
+	indexFile.delete();
+    }
+  }
+
+  /**
+   * Returns the rows of the dataset as string, one per line.
+   *
+   * @param data	the dataset
+   * @return		the rows
+   */
+  protected String rowsToString(Instances data) {
+    StringBuilder	result;
+    int			i;
+
+    result = new StringBuilder();
+    for (i = 0; i < data.numInstances(); i++)
+      result.append(data.instance(i).toString()).append("\n");
+
+    return result.toString();
+  }
+
+  /**
+   * Loads the file in the given byte ranges and concatenates the rows.
+   *
+   * @param file	the file to load
+   * @param bounds	the range boundaries
+   * @param header	the header to use, null to use the one of the first range
+   * @return		the combined rows, one per line
+   * @throws Exception	if loading fails
+   */
+  protected String loadSplits(File file, long[] bounds, Instances header) throws Exception {
+    StringBuilder	result;
+    Instances		split;
+    CommonCSVLoader	loader;
+    int			i;
+
+    result = new StringBuilder();
+    for (i = 0; i < bounds.length - 1; i++) {
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-string", "2", "-split-start", "" + bounds[i], "-split-end", "" + bounds[i + 1]});
+      loader.setExternalStructure(header);
+      loader.setFile(file);
+      split = loader.getDataSet();
+      if (header == null)
+	header = new Instances(split, 0);
+      result.append(rowsToString(split));
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Tests loading byte ranges of a file, with planned and arbitrary split
+   * boundaries, with and without offset index.
+   */
+  public void testSplits() {
+    File		file;
+    File		headerFile;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+    String		rows;
+    long[]		bounds;
+
+    file       = null;
+    headerFile = null;
+    try {
+      content = new StringBuilder("id,text,value\n");
+      for (i = 0; i < 1000; i++)
+	content.append(i + ",text" + i + "," + (i * 0.5) + ((i % 2 == 0) ? "\n" : "\r\n"));
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-string", "2"});
+      loader.setFile(file);
+      expected = loader.getDataSet();
+
+      // planned splits
+      bounds = loader.planSplits(file, 4);
+      assertEquals("Number of splits differs", 5, bounds.length);
+      rows   = loadSplits(file, bounds, null);
+      assertEquals("Output differs (planned)", rowsToString(expected), rows);
+
+      // arbitrary boundaries, within records and line breaks
+      bounds = new long[]{0, 1, 100, 101, 4567, 4568, 9000, file.length()};
+      rows   = loadSplits(file, bounds, expected);
+      assertEquals("Output differs (arbitrary)", rowsToString(expected), rows);
+
+      // external header file
+      headerFile = File.createTempFile("commoncsv-", ".arff");
+      writeFile(headerFile, new Instances(expected, 0).toString());
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-split-start", "5000", "-external-header", headerFile.getAbsolutePath()});
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertTrue("Text not a string attribute", actual.attribute(1).isString());
+      assertEquals("Last row differs", expected.lastInstance().toString(), actual.lastInstance().toString());
+
+      // no columnar cache for byte ranges
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-split-start", "5000", "-external-header", headerFile.getAbsolutePath(), "-columnar-cache"});
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertEquals("Last row differs (columnar cache)", expected.lastInstance().toString(), actual.lastInstance().toString());
+      assertFalse("Columnar cache written for split", CommonCsvColumnarCache.getCacheFile(file).exists());
+
+      // quoted cells spanning multiple lines require offset index
+      content = new StringBuilder("id,text,value\n");
+      for (i = 0; i < 1000; i++)
+	content.append(i + ",\"text\n" + i + "\"," + (i * 0.5) + "\n");
+      writeFile(file, content.toString());
+      CommonCsvOffsetIndex.getIndexFile(file).delete();
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-string", "2"});
+      loader.setFile(file);
+      expected = loader.getDataSet();
+
+      // planned splits are aligned to records without offset index
+      bounds = loader.planSplits(file, 4);
+      assertEquals("Number of splits differs (multi-line)", 5, bounds.length);
+      rows   = loadSplits(file, bounds, expected);
+      assertEquals("Output differs (multi-line, planned)", rowsToString(expected), rows);
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-string", "2", "-offset-index", "10"});
+      loader.setFile(file);
+      expected = loader.getDataSet();
+      bounds = new long[]{0, 1234, 5000, 5003, 5004, 9876, file.length()};
+      rows   = loadSplits(file, bounds, expected);
+      assertEquals("Output differs (multi-line)", rowsToString(expected), rows);
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test splits: " + e);
+    }
+    finally {
+      if (file != null) {
+	file.delete();
+	CommonCsvOffsetIndex.getIndexFile(file).delete();
+	CommonCsvColumnarCache.getCacheFile(file).delete();
+      }
+      if (headerFile != null)
+	headerFile.delete();
+    }
+  }
+
+  /**
+   * Tests determining the types from a first pass over the whole file, with
+   * values after the detection window that change the types.
+   */
+  public void testTwoPassDetection() {
+    File		file;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+    Instance		inst;
+    int			count;
+
+    file = null;
+    try {
+      content = new StringBuilder("id,value,label\n");
+      for (i = 0; i < 1000; i++)
+	content.append(i + "," + ((i == 900) ? "n/a" : "" + (i * 0.5)) + "," + ((i == 950) ? "c" : ((i % 2 == 0) ? "a" : "b")) + "\n");
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-nominal", "3"});
+      loader.setFile(file);
+      expected = loader.getDataSet();
+
+      // batch
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10", "-nominal", "3", "-two-pass-detection"});
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertTrue("Value not a string attribute", actual.attribute(1).isString());
+      assertEquals("Number of labels differs", 3, actual.attribute(2).numValues());
+      assertEquals("Number of rows differs", 1000, actual.numInstances());
+      assertEquals("Output differs", rowsToString(expected), rowsToString(actual));
+
+      // incremental
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10", "-nominal", "3", "-two-pass-detection"});
+      loader.setFile(file);
+      actual = loader.getStructure();
+      assertTrue("Value not a string attribute", actual.attribute(1).isString());
+      count = 0;
+      while ((inst = loader.getNextInstance(actual)) != null) {
+	inst.setDataset(actual);
+	assertEquals("Value #" + count + " differs", expected.instance(count).stringValue(1), inst.stringValue(1));
+	assertEquals("Label #" + count + " differs", expected.instance(count).stringValue(2), inst.stringValue(2));
+	count++;
+      }
+      assertEquals("Number of rows differs", 1000, count);
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test two-pass detection: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Tests type detection from windows sampled across the file.
+   */
+  public void testSampleWindows() {
+    File		file;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		expected;
+    Instances		actual;
+
+    file = null;
+    try {
+      content = new StringBuilder("id,value,label\n");
+      for (i = 0; i < 1000; i++)
+	content.append(i + "," + ((i >= 770) && (i < 780) ? "n/a" : "" + (i * 0.5)) + "," + ((i < 500) ? "a" : "b") + "\n");
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-nominal", "3"});
+      loader.setFile(file);
+      expected = loader.getDataSet();
+
+      // windows at 1/4, 2/4 and 3/4 of the file (the latter covers the non-numeric cells)
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "50", "-nominal", "3", "-sample-windows", "3"});
+      loader.setFile(file);
+      actual = loader.getDataSet();
+      assertTrue("Value not a string attribute", actual.attribute(1).isString());
+      assertEquals("Number of labels differs", 2, actual.attribute(2).numValues());
+      assertEquals("Output differs", rowsToString(expected), rowsToString(actual));
+
+      // first rows only
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "50", "-nominal", "3"});
+      loader.setFile(file);
+      actual = loader.getStructure();
+      assertTrue("Value not a numeric attribute", actual.attribute(1).isNumeric());
+      assertEquals("Number of labels differs", 1, actual.attribute(2).numValues());
+
+      // windows starting within multi-line quoted cells
+      file.delete();
+      content = new StringBuilder("id,text,value\n");
+      for (i = 0; i < 5000; i++)
+	content.append(i + ",\"a\nb, c\nd\"," + (i * 0.5) + "\n");
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+      for (int windows: new int[]{3, 7}) {
+	loader = new CommonCSVLoader();
+	loader.setOptions(new String[]{"-sample-windows", "" + windows});
+	loader.setFile(file);
+	actual = loader.getDataSet();
+	assertTrue("Id not a numeric attribute (windows=" + windows + ")", actual.attribute(0).isNumeric());
+	assertTrue("Value not a numeric attribute (windows=" + windows + ")", actual.attribute(2).isNumeric());
+	assertEquals("Number of rows differs (windows=" + windows + ")", 5000, actual.numInstances());
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test sample windows: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Tests automatically turning string columns with few distinct values
+   * into nominal ones, including a label after the detection window.
+   */
+  public void testNominalThreshold() {
+    File		file;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		data;
+
+    file = null;
+    try {
+      content = new StringBuilder("id,color,text,num\n");
+      for (i = 0; i < 1000; i++)
+	content.append(i + "," + ((i == 500) ? "late" : (i % 7 == 0) ? "" : "c" + (i % 5)) + ",text" + i + "," + (i * 0.5) + "\n");
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-nominal-threshold", "10"});
+      loader.setFile(file);
+      data = loader.getDataSet();
+      assertTrue("ID not numeric", data.attribute(0).isNumeric());
+      assertTrue("Color not nominal", data.attribute(1).isNominal());
+      assertEquals("Number of labels differs", 6, data.attribute(1).numValues());
+      assertEquals("First label differs", "c0", data.attribute(1).value(0));
+      assertTrue("Text not string", data.attribute(2).isString());
+      assertTrue("Num not numeric", data.attribute(3).isNumeric());
+      assertEquals("Value differs", "c3", data.instance(3).stringValue(1));
+      assertTrue("Value not missing", data.instance(7).isMissing(1));
+      assertEquals("Late value differs", "late", data.instance(500).stringValue(1));
+
+      // label after the detection window: stays string
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-nominal-threshold", "10"});
+      loader.setFile(file);
+      data = loader.getDataSet();
+      assertTrue("Color not string", data.attribute(1).isString());
+      assertEquals("Late value differs", "late", data.instance(500).stringValue(1));
+      assertEquals("Late row differs", "500,late,text500,250", data.instance(500).toString());
+
+      // label after the detection window: sampled windows do not see all rows either
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-nominal-threshold", "10", "-sample-windows", "3"});
+      loader.setFile(file);
+      data = loader.getStructure();
+      assertTrue("Color not string (sampled)", data.attribute(1).isString());
+
+      // label after the detection window: two-pass detection sees all labels
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-nominal-threshold", "10", "-two-pass-detection"});
+      loader.setFile(file);
+      data = loader.getDataSet();
+      assertTrue("Color not nominal (two-pass)", data.attribute(1).isNominal());
+      assertEquals("Number of labels differs (two-pass)", 6, data.attribute(1).numValues());
+      assertEquals("Late value differs (two-pass)", "late", data.instance(500).stringValue(1));
+      assertEquals("Late row differs (two-pass)", "500,late,text500,250", data.instance(500).toString());
+
+      // explicit string columns stay string
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000", "-nominal-threshold", "10", "-string", "2"});
+      loader.setFile(file);
+      data = loader.getStructure();
+      assertTrue("Color not string", data.attribute(1).isString());
+
+      // turned off
+      loader = new CommonCSVLoader();
+      loader.setOptions(new String[]{"-num-rows-type-detection", "10000"});
+      loader.setFile(file);
+      data = loader.getStructure();
+      assertTrue("Color not string", data.attribute(1).isString());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test nominal threshold: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Compares compact with dense instances, including values that do not
+   * fit the layout determined from the type detection rows.
+   */
+  public void testCompactVsDense() {
+    File		file;
+    StringBuilder	content;
+    int			i;
+    CommonCSVLoader	loader;
+    Instances		dense;
+    Instances		compact;
+    Instance		inst;
+
+    file = null;
+    try {
+      content = new StringBuilder("int,num,nom,text\n");
+      for (i = 0; i < 1000; i++) {
+	// integer column turns non-integer/huge after the detection window
+	content.append(((i < 500) ? ("" + i) : (i == 600) ? "1e12" : (i + ".5")) + ",");
+	content.append(((i % 13 == 0) ? "?" : ("" + (i / 7.0))) + ",n" + (i % 3) + ",text" + i + "\n");
+      }
+      file = File.createTempFile("commoncsv-", ".csv");
+      writeFile(file, content.toString());
+
+      loader = new CommonCSVLoader();
+      loader.setNominalRange(new Range("3"));
+      loader.setFile(file);
+      dense = loader.getDataSet();
+
+      loader = new CommonCSVLoader();
+      loader.setNominalRange(new Range("3"));
+      loader.setInstanceType(new SelectedTag(CommonCsvInstanceTypes.COMPACT, CommonCsvInstanceTypes.TAGS_INSTANCE_TYPES));
+      loader.setFile(file);
+      compact = loader.getDataSet();
+
+      assertTrue("Not compact", compact.instance(0) instanceof CommonCsvCompactInstance);
+      assertEquals("Output differs (dense vs compact)", dense.toString(), compact.toString());
+
+      inst = compact.instance(0);
+      inst.setValue(0, 0.25);
+      inst.setValue(2, 1);
+      assertEquals("Widened value differs", 0.25, inst.value(0));
+      assertEquals("Nominal value differs", 1.0, inst.value(2));
+      compact.deleteAttributeAt(1);
+      assertEquals("Number of values differs", 3, compact.instance(0).numAttributes());
+      assertEquals("Value differs after delete", "text0", compact.instance(0).stringValue(2));
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test compact instances: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
+  /**
+   * Compares the number recognizer used for type detection with
+   * Double.parseDouble.
+   */
+  public void testIsNumeric() {
+    String[]	values;
+    boolean	expected;
+
+    values = new String[]{
+      "", " ", "1", "-1", "+1.5", " 2 ", "1.", ".5", ".", "-", "1e", "1e5",
+      "1E-5", "1e+", "1.5f", "2D", "1fd", "1 2", "NaN", "-Infinity", "Inf",
+      "0x1p3", "0x1.8P-1d", "0x1", "0xp1", "abc", "1,5", "\u0661"};
+    for (String value: values) {
+      try {
+	Double.parseDouble(value);
+	expected = true;
+      }
+      catch (Exception e) {
+	expected = false;
+      }
+      assertEquals("Recognition differs for '" + value + "'", expected, CommonCsvNumbers.isNumeric(value));
+    }
+  }
+
+  /**
+   * Compares the fast double parser with Double.parseDouble on random
+   * input, including long significands and values halfway between two
+   * doubles.
+   */
+  public void testParseDouble() {
+    Random		rnd;
+    List<String>	values;
+    StringBuilder	digits;
+    BigDecimal		halfway;
+    double		d;
+    int			i;
+    int			n;
+    long		expected;
+    long		actual;
+    char[]		chars;
+
+    rnd    = new Random(42);
+    values = new ArrayList<String>(Arrays.asList(
+      "0", "-0", "1", "-1.5", " 2 ", "1e23", "8.41e21", "4.9e-324", "2.4703282292062328e-324",
+      "1.7976931348623157e308", "1.7976931348623159e308", "9007199254740993", "1e-400", "1e400",
+      "123456789012345678901234567890", "0.1", "1.0f", "NaN", "-Infinity", "0x1p3"));
+    for (i = 0; i < 100000; i++) {
+      switch (i % 4) {
+	case 0:
+	  values.add(Double.toString(Double.longBitsToDouble(rnd.nextLong())));
+	  break;
+	case 1:
+	  digits = new StringBuilder();
+	  for (n = 1 + rnd.nextInt(25); n > 0; n--)
+	    digits.append((char) ('0' + rnd.nextInt(10)));
+	  digits.insert(rnd.nextInt(digits.length() + 1), '.');
+	  if (rnd.nextBoolean())
+	    digits.append('e').append(rnd.nextInt(700) - 350);
+	  values.add(digits.toString());
+	  break;
+	default:
+	  d = Double.longBitsToDouble(rnd.nextLong() & 0x7FEFFFFFFFFFFFFFL);
+	  halfway = new BigDecimal(d).add(new BigDecimal(Math.nextUp(d))).divide(BigDecimal.valueOf(2));
+	  if (i % 4 == 2)
+	    values.add(halfway.toString());
+	  else
+	    values.add(halfway.round(new MathContext(1 + rnd.nextInt(25))).toString());
+      }
+    }
+
+    for (String value: values) {
+      chars    = ("#" + value + "#").toCharArray();
+      expected = Double.doubleToRawLongBits(Double.parseDouble(value));
+      actual   = Double.doubleToRawLongBits(CommonCsvNumbers.parseDouble(chars, 1, chars.length - 1));
+      assertEquals("Parsed value differs for '" + value + "'", expected, actual);
+    }
+
+    try {
+      chars = "1e".toCharArray();
+      CommonCsvNumbers.parseDouble(chars, 0, chars.length);
+      fail("Expected NumberFormatException");
+    }
+    catch (NumberFormatException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Tests reading via memory-mapped windows, using tiny windows so that
+   * multi-byte characters span window boundaries.
+   */
+  public void testMemoryMappedReader() {
+    File			file;
+    StringBuilder		expected;
+    StringBuilder		actual;
+    CommonCsvMappedReader	reader;
+    char[]			buffer;
+    int				read;
+    int				i;
+
+    file = null;
+    try {
+      file     = File.createTempFile("commoncsv-", ".csv");
+      expected = new StringBuilder();
+      for (i = 0; i < 1000; i++)
+	expected.append(i).append(",\u00e4\u00f6\u20ac\ud83d\ude00,x").append(i % 3 == 0 ? "\r\n" : "\n");
+      writeFile(file, expected.toString());
+
+      for (int window: new int[]{16, 17, 18, 19, 1024}) {
+	reader = new CommonCsvMappedReader(file, 0, file.length(), StandardCharsets.UTF_8, window);
+	actual = new StringBuilder();
+	buffer = new char[13];
+	while ((read = reader.read(buffer)) != -1)
+	  actual.append(buffer, 0, read);
+	reader.close();
+	assertEquals("Content differs (window=" + window + ")", expected.toString(), actual.toString());
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Failed to test memory-mapped reader: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
   /**
    * returns a test suite
    * 